@@ -262,7 +262,14 @@ public final class YaFormEditor extends SimpleEditor implements FormChangeListen
         super.onFailure(caught);
       }
     };
-    Ode.getInstance().getProjectService().load2(projectId, fileId, callback);
+    // Screen1's sources usually came along with the project
+    ChecksumedLoadFile preloaded =
+        Ode.getInstance().getProjectManager().getProject(projectId).takePreloadedFile(fileId);
+    if (preloaded != null) {
+      callback.onSuccess(preloaded);
+    } else {
+      Ode.getInstance().getProjectService().load2(projectId, fileId, callback);
+    }
   }
 
   @Override
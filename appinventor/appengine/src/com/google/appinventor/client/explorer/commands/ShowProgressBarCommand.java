@@ -16,7 +16,6 @@ import com.google.appinventor.client.explorer.dialogs.ProgressBarDialogBox;
 import com.google.appinventor.shared.rpc.RpcResult;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.gwt.i18n.client.DateTimeFormat;
-import com.google.gwt.user.client.Timer;
 
 /**
  * Command for displaying a barcode for the target of a project.
@@ -37,7 +36,8 @@ public class ShowProgressBarCommand extends ChainableCommand {
   private String target;
   private ChainableCommand nextCommand;
   private final String buildRequestTime;
-  private static final int WAIT_INTERVAL_MILLIS = 5000;
+  // The build progress last reported by the server
+  private int lastProgress = 0;
   private ProjectNode projectNode;
   private ProgressBarDialogBox minPB;
   private String serviceName;
@@ -83,15 +83,9 @@ public class ShowProgressBarCommand extends ChainableCommand {
           if (result.succeeded()) {
             minPB.hide();
           } else if (inProgress && progressBarShow != 2) {
-            // Build isn't done yet
-            Timer timer = new Timer() {
-                @Override
-                  public void run() {
-                  execute(node);
-                }
-              };
-            // TODO(user): Maybe do an exponential backoff here.
-            timer.schedule(WAIT_INTERVAL_MILLIS);
+            // Build isn't done yet. The server waits for the progress to change before
+            // answering, so ask again right away.
+            execute(node);
           }
         }
 
@@ -101,7 +95,8 @@ public class ShowProgressBarCommand extends ChainableCommand {
           executionFailedOrCanceled();
         }
     };
-    ode.getProjectService().getBuildResult(node.getProjectId(), target, callback);
+    ode.getProjectService().getBuildProgress(node.getProjectId(), target, lastProgress,
+        callback);
   }
 
   /**
@@ -128,6 +123,7 @@ public class ShowProgressBarCommand extends ChainableCommand {
       try {
         currentProgress = Math.max(currentProgress,
             Integer.parseInt(result.getOutput()));
+        lastProgress = currentProgress;
         if (currentProgress <= 10) {
           labelContent = "<br />" + MESSAGES.preparingApplicationIcon();
         } else if (currentProgress < 15) {
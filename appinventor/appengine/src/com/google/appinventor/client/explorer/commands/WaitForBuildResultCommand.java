@@ -22,7 +22,6 @@ import com.google.gwt.json.client.JSONObject;
 import com.google.gwt.json.client.JSONParser;
 import com.google.gwt.json.client.JSONString;
 import com.google.gwt.json.client.JSONValue;
-import com.google.gwt.user.client.Timer;
 
 import java.util.Date;
 import java.util.logging.Logger;
@@ -39,8 +38,9 @@ public class WaitForBuildResultCommand extends ChainableCommand {
 
   // The build target
   private final String target;
-  private static final int WAIT_INTERVAL_MILLIS = 10000;
   private final String buildRequestTime;
+  // The build progress last reported by the server
+  private int lastProgress = 0;
 
   /**
    * Creates a new WaitForBuildResultCommand.
@@ -111,15 +111,14 @@ public class WaitForBuildResultCommand extends ChainableCommand {
           }
           executionFailedOrCanceled();
         } else {
-          // Build isn't done yet
-          Timer timer = new Timer() {
-            @Override
-            public void run() {
-              execute(node);
-            }
-          };
-          // TODO(user): Maybe do an exponential backoff here.
-          timer.schedule(WAIT_INTERVAL_MILLIS);
+          // Build isn't done yet. The server only answers once the progress has changed or
+          // some time has passed, so ask again right away.
+          try {
+            lastProgress = Integer.parseInt(result.getOutput());
+          } catch (NumberFormatException e) {
+            // Keep the last progress
+          }
+          execute(node);
         }
       }
 
@@ -130,7 +129,8 @@ public class WaitForBuildResultCommand extends ChainableCommand {
       }
     };
 
-    ode.getProjectService().getBuildResult(node.getProjectId(), target, callback);
+    ode.getProjectService().getBuildProgress(node.getProjectId(), target, lastProgress,
+        callback);
   }
 
   private static YoungAndroidBlocksNode findBlocksNode(YoungAndroidProjectNode projectRootNode,
@@ -11,6 +11,8 @@ import static com.google.appinventor.client.Ode.MESSAGES;
 import com.google.appinventor.client.OdeAsyncCallback;
 import com.google.appinventor.client.settings.project.ProjectSettings;
 import com.google.appinventor.client.tracking.Tracking;
+import com.google.appinventor.shared.rpc.project.ChecksumedLoadFile;
+import com.google.appinventor.shared.rpc.project.OpenedProject;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.UserProject;
@@ -18,6 +20,7 @@ import com.google.appinventor.client.explorer.folder.ProjectFolder;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This class represents a project.
@@ -40,6 +43,10 @@ public final class Project {
 
   private ProjectFolder homeFolder = null;
 
+  // Contents of source files sent along when the project was opened, until
+  // the editors take them
+  private Map<String, ChecksumedLoadFile> preloadedFiles;
+
   /**
    * Creates a new project.
    *
@@ -58,19 +65,25 @@ public final class Project {
     if (projectRoot == null && !loadingInProgress) {
       loadingInProgress = true;
 
-      if (settings == null) {
+      final boolean loadSettings = settings == null;
+      if (loadSettings) {
         settings = new ProjectSettings(Project.this);
-        settings.loadSettings();
       }
 
-      Ode.getInstance().getProjectService().getProject(
+      // The tree, the settings and the sources of the first screen come back
+      // in one response.
+      Ode.getInstance().getProjectService().openProject(
           getProjectId(),
-          new OdeAsyncCallback<ProjectRootNode>(
+          new OdeAsyncCallback<OpenedProject>(
               // failure message
               MESSAGES.projectLoadError()) {
             @Override
-            public void onSuccess(ProjectRootNode result) {
-              projectRoot = result;
+            public void onSuccess(OpenedProject result) {
+              if (loadSettings) {
+                settings.loadSettings(result.getSettings());
+              }
+              preloadedFiles = result.getFiles();
+              projectRoot = result.getRootNode();
 
               loadingInProgress = false;
               fireProjectLoaded();
@@ -188,6 +201,18 @@ public final class Project {
     return projectRoot;
   }
 
+  /**
+   * Returns the content of a source file that was sent along when the project
+   * was opened, or null if it wasn't. The content is only returned once; later
+   * loads of the file must go to the server, since the file may have changed.
+   *
+   * @param fileId  file ID
+   * @return  the file content, or null
+   */
+  public ChecksumedLoadFile takePreloadedFile(String fileId) {
+    return preloadedFiles == null ? null : preloadedFiles.remove(fileId);
+  }
+
   /**
    * Adds the given node to the project.
    *
@@ -62,6 +62,17 @@ public final class ProjectSettings extends CommonSettings implements SettingsAcc
         });
   }
 
+  /**
+   * Initializes the settings from their encoded form, as received along with
+   * the project when it was opened.
+   *
+   * @param encodedSettings  encoded project settings
+   */
+  public void loadSettings(String encodedSettings) {
+    decodeSettings(encodedSettings);
+    changed = false;
+  }
+
   @Override
   public void saveSettings(final Command command) {
     if (Ode.getInstance().isReadOnly()) {
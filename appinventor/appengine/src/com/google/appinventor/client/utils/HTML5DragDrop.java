@@ -94,6 +94,8 @@ public final class HTML5DragDrop {
       $entry(@com.google.appinventor.client.utils.HTML5DragDrop::getOpenProjectId());
     top.HTML5DragDrop_handleUploadResponse =
       $entry(@com.google.appinventor.client.utils.HTML5DragDrop::handleUploadResponse(*));
+    top.HTML5DragDrop_getUploadedChunkName =
+      $entry(@com.google.appinventor.client.utils.HTML5DragDrop::getUploadedChunkName(*));
     top.HTML5DragDrop_reportError =
       $entry(@com.google.appinventor.client.utils.HTML5DragDrop::reportError(*));
     top.HTML5DragDrop_confirmOverwriteKey =
@@ -234,6 +236,18 @@ public final class HTML5DragDrop {
     }, filename, true);
   }
 
+  /**
+   * Returns the name under which the server stored one piece of a project
+   * archive that is uploaded in pieces, or null if the server refused it.
+   */
+  protected static String getUploadedChunkName(String body) {
+    UploadResponse response = UploadResponse.extractUploadResponse(body);
+    if (response != null && response.getStatus() == UploadResponse.Status.SUCCESS) {
+      return response.getInfo();
+    }
+    return null;
+  }
+
   protected static void handleUploadResponse(String projectIdStr, String type, String name,
       String body) {
     Ode ode = Ode.getInstance();
@@ -21,6 +21,7 @@ top.HTML5DragDrop_isBlocksEditorOpen = function() { return false; };
  */
 top.HTML5DragDrop_getOpenProjectId = function() { return ''; };
 top.HTML5DragDrop_handleUploadResponse = function(_projectId, type, name, response) {};
+top.HTML5DragDrop_getUploadedChunkName = function(response) { return null; };
 top.HTML5DragDrop_reportError = function(errorCode) {};
 top.HTML5DragDrop_confirmOverwriteKey = function(callback) {};
 top.HTML5DragDrop_getNewProjectName = function(filename, callback) {};
@@ -81,11 +82,120 @@ function handleDroppedItem(item, cb) {
   }
 }
 
+/**
+ * Size of the pieces in which large projects are uploaded. Must not exceed the server's
+ * upload.chunk.maxbytes.
+ */
+var CHUNK_SIZE = 1024 * 1024;
+
+/**
+ * How many times a piece is sent again before the upload is given up.
+ */
+var MAX_CHUNK_RETRIES = 5;
+
+function chunkedUploadKey(blob) {
+  return 'HTML5DragDrop.upload:' + CHUNK_SIZE + ':' + blob.name + ':' + blob.size + ':' +
+    (blob.lastModified || 0);
+}
+
+function loadUploadedChunks(key) {
+  try {
+    return JSON.parse(window.localStorage.getItem(key)) || [];
+  } catch (e) {
+    // Storage is disabled or the entry is damaged, so start over
+    return [];
+  }
+}
+
+function saveUploadedChunks(key, chunks) {
+  try {
+    if (chunks) {
+      window.localStorage.setItem(key, JSON.stringify(chunks));
+    } else {
+      window.localStorage.removeItem(key);
+    }
+  } catch (e) {
+    // Without storage an interrupted upload starts over when the file is dropped again
+  }
+}
+
+/**
+ * Uploads a project archive in pieces and then creates the project from them, so that a network
+ * error only costs one piece. Failed pieces are sent again with increasing delays. The names of
+ * the pieces the server has stored are remembered, so dropping the same file again after an
+ * interruption only uploads the pieces that are missing.
+ */
+function uploadProjectInChunks(blob, projectName) {
+  var key = chunkedUploadKey(blob);
+  var chunks = loadUploadedChunks(key);
+  var count = Math.ceil(blob.size / CHUNK_SIZE);
+  function finish() {
+    var xhr = new XMLHttpRequest();
+    xhr.open('POST', '/ode/upload/projectchunks/' + projectName);
+    xhr.setRequestHeader('Content-Type', 'text/plain; charset=utf-8');
+    xhr.onreadystatechange = function() {
+      if (xhr.readyState === 4) {
+        if (xhr.status === 200) {
+          // The server has either used or discarded the pieces
+          saveUploadedChunks(key, null);
+          top.HTML5DragDrop_handleUploadResponse(null, 'project', blob.name, xhr.response);
+        } else {
+          top.HTML5DragDrop_reportError(xhr.status);
+        }
+      }
+    };
+    xhr.send(chunks.join('\n'));
+  }
+  function uploadChunk(index, attempt) {
+    if (index === count) {
+      finish();
+      return;
+    } else if (chunks[index]) {
+      // Uploaded before an interruption
+      uploadChunk(index + 1, 0);
+      return;
+    }
+    var xhr = new XMLHttpRequest();
+    xhr.open('POST', '/ode/upload/projectchunk');
+    xhr.setRequestHeader('Content-Type', 'application/octet-stream');
+    xhr.onreadystatechange = function() {
+      if (xhr.readyState !== 4) {
+        return;
+      }
+      if (xhr.status === 200) {
+        var name = top.HTML5DragDrop_getUploadedChunkName(xhr.response);
+        if (name) {
+          chunks[index] = name;
+          saveUploadedChunks(key, chunks);
+          uploadChunk(index + 1, 0);
+        } else {
+          // The server refused the piece, so report why
+          saveUploadedChunks(key, null);
+          top.HTML5DragDrop_handleUploadResponse(null, 'project', blob.name, xhr.response);
+        }
+      } else if (attempt < MAX_CHUNK_RETRIES) {
+        // Lost connections (status 0) and server errors are usually temporary
+        setTimeout(function() {
+          uploadChunk(index, attempt + 1);
+        }, 1000 * Math.pow(2, attempt));
+      } else {
+        top.HTML5DragDrop_reportError(xhr.status);
+      }
+    };
+    xhr.send(blob.slice(index * CHUNK_SIZE, Math.min((index + 1) * CHUNK_SIZE, blob.size)));
+  }
+  uploadChunk(0, 0);
+}
+
 function importProject(droppedItem) {
   var filename = droppedItem.name;
   filename = filename.substring(filename.lastIndexOf('/') + 1);
   var projectName = filename.substring(0, filename.length - 4);
   function doUploadProject(blob) {
+    if (blob.size > CHUNK_SIZE) {
+      uploadProjectInChunks(blob, projectName);
+      return;
+    }
     // Upload project
     var xhr = new XMLHttpRequest();
     var formData = new FormData();
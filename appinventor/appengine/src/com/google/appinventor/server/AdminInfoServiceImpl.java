@@ -67,6 +67,9 @@ public class AdminInfoServiceImpl extends OdeRemoteServiceServlet implements Adm
       }
     }
     storageIo.storeUser(user);
+    if (user.getId() != null) {
+      OdeAuthFilter.invalidateUser(user.getId());
+    }
   }
 
   @Override
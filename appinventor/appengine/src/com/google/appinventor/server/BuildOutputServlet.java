@@ -84,6 +84,7 @@ public class BuildOutputServlet extends OdeServlet {
       storageIo.cleanupNonces(); // This removes expired Nonce objects
                                  // (10 at a time so we don't spend too
                                  // much time doing it)
+      storageIo.cleanupBlobs();  // Likewise for unused shared blobs
 
       Nonce nonce = storageIo.getNoncebyValue(nonceValue);
       if (nonce == null) {
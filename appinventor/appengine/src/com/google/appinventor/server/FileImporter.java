@@ -13,6 +13,7 @@ import java.io.File;
 import java.io.InputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.List;
 import java.util.Set;
 
 import javax.annotation.Nullable;
@@ -55,6 +56,26 @@ public interface FileImporter {
                             InputStream uploadedFileStream, @Nullable String projectHistory)
       throws FileImporterException, IOException;
 
+  /**
+   * Creates the project on the server from a project archive that was
+   * uploaded in pieces, each of which was stored with
+   * {@link #importTempFile}. The pieces are read one at a time, in order,
+   * while the archive is imported. They are deleted once the import has
+   * succeeded or has failed for good, and kept if the import fails with an
+   * IOException, so that it can be retried.
+   *
+   * @param userId the userId
+   * @param projectName project name
+   * @param tempFileNames names of the temporary files holding the archive,
+   *        in order
+   * @return the UserProject
+   * @throws FileImporterException if the archive is not a valid project
+   *         archive or one of its pieces doesn't exist
+   * @throws IOException if any file operation fails
+   */
+  UserProject importProjectFromTempFiles(String userId, String projectName,
+      List<String> tempFileNames) throws FileImporterException, IOException;
+
   /**
    * Adds the file to the project on the server and imports its content.
    *
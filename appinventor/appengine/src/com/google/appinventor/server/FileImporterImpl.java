@@ -28,8 +28,10 @@ import com.google.common.io.ByteStreams;
 import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
@@ -214,6 +216,86 @@ public final class FileImporterImpl implements FileImporter {
     return storageIo.uploadTempFile(ByteStreams.toByteArray(inStream));
   }
 
+  @Override
+  public UserProject importProjectFromTempFiles(String userId, String projectName,
+      List<String> tempFileNames) throws FileImporterException, IOException {
+    UserProject userProject;
+    try {
+      userProject = importProject(userId, projectName, new TempFilesInputStream(tempFileNames));
+    } catch (FileNotFoundException e) {
+      // A piece expired or was already imported; the client has to start over
+      LOG.log(Level.INFO, "Missing part of uploaded project archive", e);
+      deleteTempFiles(tempFileNames);
+      throw new FileImporterException(UploadResponse.Status.IO_EXCEPTION);
+    } catch (FileImporterException e) {
+      deleteTempFiles(tempFileNames);
+      throw e;
+    }
+    deleteTempFiles(tempFileNames);
+    return userProject;
+  }
+
+  private void deleteTempFiles(List<String> tempFileNames) {
+    for (String tempFileName : tempFileNames) {
+      try {
+        storageIo.deleteTempFile(tempFileName);
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to delete " + tempFileName, e);
+      }
+    }
+  }
+
+  /*
+   * Reads the concatenated content of temporary files, holding only one of
+   * them in memory at a time.
+   */
+  private class TempFilesInputStream extends InputStream {
+    private final Iterator<String> tempFileNames;
+    private InputStream current;
+
+    TempFilesInputStream(List<String> tempFileNames) {
+      this.tempFileNames = tempFileNames.iterator();
+    }
+
+    @Override
+    public int read() throws IOException {
+      while (next()) {
+        int b = current.read();
+        if (b != -1) {
+          return b;
+        }
+        current = null;
+      }
+      return -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      while (next()) {
+        int count = current.read(b, off, len);
+        if (count != -1) {
+          return count;
+        }
+        current = null;
+      }
+      return -1;
+    }
+
+    /*
+     * Opens the next file if the current one is used up, and returns false
+     * at the end of the last file.
+     */
+    private boolean next() throws IOException {
+      if (current == null && tempFileNames.hasNext()) {
+        current = storageIo.openTempFile(tempFileNames.next());
+      }
+      return current != null;
+    }
+  }
+
   @Override
   public Set<String> getProjectNames(final String userId) {
     List<Long> projectIds = storageIo.getProjects(userId);
@@ -449,6 +449,7 @@ public class LoginServlet extends HttpServlet {
       }
 
       storageIo.setUserPassword(user.getUserId(),  hashedPassword);
+      OdeAuthFilter.invalidateUser(user.getUserId());
       String uri = new UriBuilder("/")
         .add("locale", locale)
         .add("repo", repo)
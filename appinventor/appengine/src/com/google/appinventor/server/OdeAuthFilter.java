@@ -18,10 +18,14 @@ import com.google.appinventor.shared.rpc.ServerLayout;
 import com.google.appinventor.shared.rpc.user.User;
 
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 import java.io.IOException;
 import java.io.PrintWriter;
 
+import java.util.concurrent.TimeUnit;
+
 import java.util.logging.Logger;
 import java.util.logging.Level;
 
@@ -49,14 +53,21 @@ import org.keyczar.util.Base64Coder;
 @SuppressWarnings({"ThrowableInstanceNeverThrown"})
 public class OdeAuthFilter implements Filter {
 
-  public OdeAuthFilter() {}
+  public OdeAuthFilter() {
+    this(StorageIoInstanceHolder.getInstance());
+  }
+
+  @VisibleForTesting
+  OdeAuthFilter(StorageIo storageIo) {
+    this.storageIo = storageIo;
+  }
 
   private static final Logger LOG = Logger.getLogger(OdeAuthFilter.class.getName());
 
-  private static Crypter crypter = null; // accessed through getCrypter only
+  private static volatile Crypter crypter = null; // accessed through getCrypter only
   private static final Object crypterSync = new Object();
 
-  private final StorageIo storageIo = StorageIoInstanceHolder.getInstance();
+  private final StorageIo storageIo;
 
   // Whether this server should use a whitelist to determine who can
   // access it. Value is specified in the <system-properties> section
@@ -66,6 +77,31 @@ public class OdeAuthFilter implements Filter {
   static final Flag<String> sessionKeyFile = Flag.createFlag("session.keyfile", "WEB-INF/authkey");
   static final Flag<Integer> idleTimeout = Flag.createFlag("session.idletimeout", 120);
   static final Flag<Integer> renewTime = Flag.createFlag("session.renew", 30);
+  // How many verified cookies to remember, so that each is only decrypted once
+  static final Flag<Integer> cookieCacheSize = Flag.createFlag("session.cookiecachesize", 10000);
+  // How long, in seconds, to reuse a User fetched from storage before fetching it again
+  static final Flag<Integer> userCacheTime = Flag.createFlag("session.usercachetime", 10);
+
+  // Maps the value of an AppInventor cookie that has been decrypted and parsed to the resulting
+  // UserInfo. Entries are never handed out directly; see getUserInfo. A cookie stops being valid
+  // idleTimeout minutes after it was issued, so there is no point keeping it longer.
+  private static final Cache<String, UserInfo> verifiedCookies = CacheBuilder.newBuilder()
+      .maximumSize(cookieCacheSize.get())
+      .expireAfterWrite(idleTimeout.get(), TimeUnit.MINUTES)
+      .build();
+
+  // Users recently fetched from storage, by userId. Only users who have accepted the terms of
+  // service are kept, as with the memcache copy kept by storage. Copies are handed out because
+  // the filter and the services modify the User of the current request. invalidateUser only
+  // reaches this instance, so nothing that another instance may change is trusted from here:
+  // the session id changes whenever the user opens Ode (ProjectServiceImpl asks storage for it
+  // when needed), the password hash is only read by LoginServlet, which asks storage, and
+  // admins are not kept at all, so that revoking admin access takes effect everywhere at once.
+  // The read-only flag and backpack id come from the cookie on every request.
+  private static final Cache<String, User> recentUsers = CacheBuilder.newBuilder()
+      .maximumSize(cookieCacheSize.get())
+      .expireAfterWrite(userCacheTime.get(), TimeUnit.SECONDS)
+      .build();
 
   private final LocalUser localUser = LocalUser.getInstance();
   private static final boolean DEBUG = Flag.createFlag("appinventor.debugging", false).get();
@@ -214,7 +250,18 @@ public class OdeAuthFilter implements Filter {
    * that was encrypted in the URL.
    */
   void setUserFromUserId(String userId, boolean isAdmin, boolean isReadOnly) {
-    User user = storageIo.getUser(userId);
+    User user = recentUsers.getIfPresent(userId);
+    if (user != null) {
+      user = user.copy();
+    } else {
+      user = storageIo.getUser(userId);
+      if (user.getUserTosAccepted() && !user.getIsAdmin()) {
+        User cached = user.copy();
+        cached.setSessionId(null);
+        cached.setPassword(null);
+        recentUsers.put(userId, cached);
+      }
+    }
     if (!user.getIsAdmin() && isAdmin) {
       user.setIsAdmin(true);    // If session says they are an admin (which is the case
                                 // if they are a Google Account with Developer access
@@ -236,6 +283,17 @@ public class OdeAuthFilter implements Filter {
     localUser.set(null);
   }
 
+  /**
+   * Forgets the copy of a user kept by this instance, so that the next request fetches it from
+   * storage again. This must be called after changing any of the user's stored fields. Other
+   * instances may keep their copy for up to {@code session.usercachetime} seconds, which only
+   * delays changes that do not grant or revoke anything, such as a new email address or a
+   * newly granted admin flag.
+   */
+  public static void invalidateUser(String userId) {
+    recentUsers.invalidate(userId);
+  }
+
   /* (non-Javadoc)
    * @see javax.servlet.Filter#destroy()
    */
@@ -274,6 +332,13 @@ public class OdeAuthFilter implements Filter {
       this.ts = System.currentTimeMillis();
     }
 
+    private UserInfo(UserInfo other) {
+      this.userId = other.userId;
+      this.isAdmin = other.isAdmin;
+      this.isReadOnly = other.isReadOnly;
+      this.ts = other.ts;
+    }
+
     public void setUserId(String userId) {
       this.userId = userId;
       modified = true;
@@ -349,6 +414,13 @@ public class OdeAuthFilter implements Filter {
             if (DEBUG) {
               LOG.info("getUserInfo: rawCookie = " + rawData);
             }
+            // A cookie we have already decrypted doesn't need to be decrypted again. Each request
+            // gets its own copy, because buildCookie updates the timestamp when renewing.
+            UserInfo verified = verifiedCookies.getIfPresent(rawData);
+            if (verified != null) {
+              UserInfo uInfo = new UserInfo(verified);
+              return uInfo.isValid() ? uInfo : null;
+            }
             Crypter crypter = getCrypter();
             CookieAuth.cookie cookieToken = CookieAuth.cookie.parseFrom(
               crypter.decrypt(Base64Coder.decode(rawData)));
@@ -358,6 +430,7 @@ public class OdeAuthFilter implements Filter {
             uInfo.isAdmin = cookieToken.getIsAdmin();
             uInfo.isReadOnly = cookieToken.getIsReadOnly();
             if (uInfo.isValid()) {
+              verifiedCookies.put(rawData, new UserInfo(uInfo));
               return uInfo;
             } else {
               return null;
@@ -373,14 +446,18 @@ public class OdeAuthFilter implements Filter {
     }
   }
 
+  // The Crypter is safe to share between threads, so only its creation is synchronized.
   private static Crypter getCrypter() throws KeyczarException {
-    synchronized(crypterSync) {
-      if (crypter != null) {
-        return crypter;
-      } else {
-        crypter = new Crypter(sessionKeyFile.get());
-        return crypter;
+    Crypter result = crypter;
+    if (result == null) {
+      synchronized(crypterSync) {
+        result = crypter;
+        if (result == null) {
+          result = new Crypter(sessionKeyFile.get());
+          crypter = result;
+        }
       }
     }
+    return result;
   }
 }
@@ -11,14 +11,11 @@ import com.google.appinventor.common.version.AppInventorFeatures;
 import com.google.appinventor.server.flags.Flag;
 import com.google.appinventor.server.project.CommonProjectService;
 import com.google.appinventor.server.project.youngandroid.YoungAndroidProjectService;
-import com.google.appinventor.server.properties.json.ServerJsonParser;
 import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.server.util.CsvParser;
 
-import com.google.appinventor.shared.properties.json.JSONArray;
-import com.google.appinventor.shared.properties.json.JSONObject;
-import com.google.appinventor.shared.properties.json.JSONValue;
+import com.google.appinventor.shared.properties.json.JSONUtil;
 import com.google.appinventor.shared.rpc.BlocksTruncatedException;
 import com.google.appinventor.shared.rpc.InvalidSessionException;
 import com.google.appinventor.shared.rpc.RpcResult;
@@ -27,31 +24,40 @@ import com.google.appinventor.shared.rpc.project.ChecksumedLoadFile;
 import com.google.appinventor.shared.rpc.project.FileDescriptor;
 import com.google.appinventor.shared.rpc.project.FileDescriptorWithContent;
 import com.google.appinventor.shared.rpc.project.NewProjectParameters;
+import com.google.appinventor.shared.rpc.project.OpenedProject;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.ProjectService;
 import com.google.appinventor.shared.rpc.project.TextFile;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
+import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.appinventor.shared.util.Base64Util;
 
 import com.google.common.collect.Lists;
 
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.MalformedJsonException;
+
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.json.JSONException;
-
 /**
  * The implementation of the RPC service which runs on the server.
  *
@@ -322,6 +328,19 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
     return getProjectRpcImpl(userId, projectId).getRootNode(userId, projectId);
   }
 
+  /**
+   * Returns the root node, the settings and the initial source files of the
+   * given project.
+   * @param projectId  project ID as received by {@link #getProjects()}
+   *
+   * @return  the opened project
+   */
+  @Override
+  public OpenedProject openProject(long projectId) throws ChecksumedFileException {
+    final String userId = userInfoProvider.getUserId();
+    return getProjectRpcImpl(userId, projectId).openProject(userId, projectId);
+  }
+
   /**
    * Returns a string with the project settings.
    * @param projectId  project ID
@@ -425,38 +444,65 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
   @Override
   public List<List<String>> loadDataFile(long projectId, String fileId) {
     final int maxRows = 10; // Parse a maximum of 10 rows
+    final String userId = userInfoProvider.getUserId();
 
-    // Load the contents of the specified file
-    String result = load(projectId, fileId);
-
-    // If the contents of the file start with a curly bracket, assume JSON
-    // and attempt parsing the contents as JSON. Otherwise, attempt to parse
-    // the contents as a CSV file.
-    if (result.startsWith("{")) {
-      try {
-        return parseJsonColumns(result, maxRows);
-      } catch (JSONException e) {
-        // JSON parsing failed; Attempt CSV parsing instead
-        return parseCsvColumns(result, maxRows);
+    // Only the first few rows are needed, so stream the file from storage
+    // instead of loading the whole of it.
+    InputStream inputStream = openDataFile(userId, projectId, fileId);
+    try {
+      inputStream.mark(1);
+      int first = inputStream.read();
+      inputStream.reset();
+
+      // If the contents of the file start with a curly bracket, assume JSON
+      // and attempt parsing the contents as JSON. Otherwise, attempt to parse
+      // the contents as a CSV file.
+      if (first == '{') {
+        try {
+          return parseJsonColumns(inputStream, maxRows);
+        } catch (MalformedJsonException | EOFException e) {
+          // JSON parsing failed; Attempt CSV parsing instead. The stream has
+          // been consumed, so start again from the beginning of the file.
+          closeQuietly(inputStream);
+          inputStream = openDataFile(userId, projectId, fileId);
+          return parseCsvColumns(inputStream, maxRows);
+        }
+      } else {
+        return parseCsvColumns(inputStream, maxRows);
       }
-    } else {
-      return parseCsvColumns(result, maxRows);
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, getThreadLocalRequest(),
+          "user=" + userId + ", project=" + projectId + ", file=" + fileId, e);
+    } finally {
+      closeQuietly(inputStream);
+    }
+  }
+
+  private InputStream openDataFile(String userId, long projectId, String fileId) {
+    return new BufferedInputStream(storageIo.openRawFile(userId, projectId, fileId));
+  }
+
+  private static void closeQuietly(InputStream inputStream) {
+    try {
+      inputStream.close();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to close data file stream", e);
     }
   }
 
   /**
-   * Parses and returns columns from the specified String formatted
-   * in CSV.
+   * Parses and returns columns from the specified stream formatted
+   * in CSV. Only as much of the stream as is needed for the requested
+   * number of rows is read.
    *
-   * @param source  Source String to parse CSV columns from
+   * @param inputStream  Source stream to parse CSV columns from
    * @param rows  Number of rows to parse
    * @return  List representing the columns (each column is a List of Strings)
    */
-  private List<List<String>> parseCsvColumns(String source, int rows) {
+  private List<List<String>> parseCsvColumns(InputStream inputStream, int rows) {
     List<List<String>> columns = new ArrayList<List<String>>();
 
-    // Construct an InputStream and a CSVParser for the contents of the file
-    ByteArrayInputStream inputStream = new ByteArrayInputStream(source.getBytes());
+    // Construct a CSVParser for the contents of the file
     CsvParser csvParser = new CsvParser(inputStream);
 
     for (int i = 0; i <= rows && csvParser.hasNext(); ++i) {
@@ -482,63 +528,131 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
   }
 
   /**
-   * Parses and returns columns from the specified String formatted
+   * Parses and returns columns from the specified stream formatted
    * in JSON.
    *
-   * @param source  Source String to parse JSON columns from
+   * <p>The stream is read incrementally rather than into a tree. Every key
+   * of the top level object is a column, so the whole stream has to be read,
+   * but array elements past the requested number of rows are skipped without
+   * being kept.
+   *
+   * @param inputStream  Source stream to parse JSON columns from
    * @param rows  Number of rows to parse
    * @return  List representing the columns (each column is a List of Strings)
    */
-  private List<List<String>> parseJsonColumns(String source, int rows) throws JSONException {
+  private List<List<String>> parseJsonColumns(InputStream inputStream, int rows)
+      throws IOException {
     List<List<String>> columns = new ArrayList<List<String>>();
 
-    // Parse a JSON value from the specified source String
-    ServerJsonParser jsonParser = new ServerJsonParser();
-    JSONValue value = jsonParser.parse(source);
-
-    // Value must be a JSONObject for the parsing to be valid. If
-    // that is not the case, skip column parsing.
-    if (value instanceof JSONObject) {
-      // Get the value as a JSONObject and retrieve the properties (key-value pairs)
-      Map<String, JSONValue> properties = value.asObject().getProperties();
+    JsonReader reader = new JsonReader(
+        new InputStreamReader(inputStream, StorageUtil.DEFAULT_CHARSET));
+    try {
+      // Value must be a JSON object for the parsing to be valid. If
+      // that is not the case, skip column parsing.
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        return columns;
+      }
 
       // Iterate over all the entries (one entry is interpreted as a single column)
-      for (final Map.Entry<String, JSONValue> entry : properties.entrySet()) {
+      reader.beginObject();
+      while (reader.hasNext()) {
         List<String> column = new ArrayList<String>();
 
         // Add the key as the first entry in the column
-        column.add(entry.getKey());
-
-        // Get the actual value of the column
-        JSONValue entryValue = entry.getValue();
-
-        // JSONArrays require different handling
-        if (entryValue instanceof JSONArray) {
-          // Retrieve the value as an Array, and get it's elements
-          JSONArray entryArray = entryValue.asArray();
-          List<JSONValue> jsonElements = entryArray.getElements();
+        column.add(reader.nextName());
 
+        // Arrays require different handling
+        if (reader.peek() == JsonToken.BEGIN_ARRAY) {
           // A maximum of the specified rows should be parsed.
-          int entries = Math.min(jsonElements.size(), rows);
-
-          // Add all the entries from the array to the column
-          for (int i = 0; i < entries; ++i) {
-            JSONValue arrayValue = jsonElements.get(i);
-            column.add(arrayValue.toString()); // Value has to be converted to String
+          int entries = 0;
+          reader.beginArray();
+          while (reader.hasNext()) {
+            if (entries < rows) {
+              column.add(jsonValueToString(reader));
+              ++entries;
+            } else {
+              reader.skipValue();
+            }
           }
+          reader.endArray();
         } else {
           // Add the value as a String to the elements of the column
-          column.add(entryValue.toString());
+          column.add(jsonValueToString(reader));
         }
 
         // Add the constructed column to the resulting columns List
         columns.add(column);
       }
+      reader.endObject();
+    } finally {
+      reader.close();
     }
 
     return columns;
   }
 
+  /**
+   * Reads the next value from the reader and converts it to a String the
+   * way the json.org based JSONValue classes did: strings without quotes,
+   * and nested objects and arrays as JSON text.
+   */
+  private static String jsonValueToString(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.STRING) {
+      return reader.nextString();
+    }
+    StringBuilder sb = new StringBuilder();
+    appendJson(reader, sb);
+    return sb.toString();
+  }
+
+  /**
+   * Reads the next value from the reader and appends it to sb as JSON.
+   * Numbers are converted by json.org, as they were when data files were
+   * parsed into a tree, so that for example 1.50 is shown as 1.5 and 1e3
+   * as 1000.0.
+   */
+  private static void appendJson(JsonReader reader, StringBuilder sb) throws IOException {
+    String separator = "";
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        sb.append("{");
+        reader.beginObject();
+        while (reader.hasNext()) {
+          sb.append(separator).append("\"").append(reader.nextName()).append("\":");
+          appendJson(reader, sb);
+          separator = ",";
+        }
+        reader.endObject();
+        sb.append("}");
+        break;
+      case BEGIN_ARRAY:
+        sb.append("[");
+        reader.beginArray();
+        while (reader.hasNext()) {
+          sb.append(separator);
+          appendJson(reader, sb);
+          separator = ",";
+        }
+        reader.endArray();
+        sb.append("]");
+        break;
+      case STRING:
+        sb.append(JSONUtil.toJson(reader.nextString()));
+        break;
+      case NUMBER:
+        // The reader returns the number as it appears in the file
+        sb.append(org.json.JSONObject.stringToValue(reader.nextString()));
+        break;
+      case BOOLEAN:
+        sb.append(reader.nextBoolean());
+        break;
+      default:
+        reader.nextNull();
+        sb.append("null");
+        break;
+    }
+  }
+
   /**
    * Loads the file information associated with a node in the project tree. The
    * actual return value depends on the file kind. Source (text) files should
@@ -611,14 +725,29 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
    */
   @Override
   public List<FileDescriptorWithContent> load(List<FileDescriptor> files) {
-    List<FileDescriptorWithContent> result = Lists.newArrayList();
     final String userId = userInfoProvider.getUserId();
+    // Read the files of each project from storage in one go
+    Map<Long, List<String>> fileIdsByProject = new LinkedHashMap<Long, List<String>>();
+    for (FileDescriptor file : files) {
+      List<String> fileIds = fileIdsByProject.get(file.getProjectId());
+      if (fileIds == null) {
+        fileIds = new ArrayList<String>();
+        fileIdsByProject.put(file.getProjectId(), fileIds);
+      }
+      fileIds.add(file.getFileId());
+    }
+    Map<Long, Map<String, String>> contents = new LinkedHashMap<Long, Map<String, String>>();
+    for (Map.Entry<Long, List<String>> entry : fileIdsByProject.entrySet()) {
+      long projectId = entry.getKey();
+      contents.put(projectId,
+          getProjectRpcImpl(userId, projectId).load(userId, projectId, entry.getValue()));
+    }
+    List<FileDescriptorWithContent> result = Lists.newArrayList();
     for (FileDescriptor file : files) {
       long projectId = file.getProjectId();
       String fileId = file.getFileId();
-      result.add(new FileDescriptorWithContent(
-          projectId, fileId,
-          getProjectRpcImpl(userId, projectId).load(userId, projectId, fileId)));
+      result.add(new FileDescriptorWithContent(projectId, fileId,
+          contents.get(projectId).get(fileId)));
     }
     return result;
   }
@@ -680,11 +809,21 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
       BlocksTruncatedException {
     validateSessionId(sessionId);
     final String userId = userInfoProvider.getUserId();
-    long date = 0;
+    // Group the files by project so that each project is written with a
+    // single batch upload rather than one storage job per file.
+    Map<Long, Map<String, String>> filesByProject = new LinkedHashMap<Long, Map<String, String>>();
     for (FileDescriptorWithContent fileAndContent : filesAndContent) {
-     long projectId = fileAndContent.getProjectId();
-     date = getProjectRpcImpl(userId, projectId).
-         save(userId, projectId, fileAndContent.getFileId(), fileAndContent.getContent());
+      Map<String, String> projectFiles = filesByProject.get(fileAndContent.getProjectId());
+      if (projectFiles == null) {
+        projectFiles = new LinkedHashMap<String, String>();
+        filesByProject.put(fileAndContent.getProjectId(), projectFiles);
+      }
+      projectFiles.put(fileAndContent.getFileId(), fileAndContent.getContent());
+    }
+    long date = 0;
+    for (Map.Entry<Long, Map<String, String>> entry : filesByProject.entrySet()) {
+      long projectId = entry.getKey();
+      date = getProjectRpcImpl(userId, projectId).save(userId, projectId, entry.getValue());
     }
     return date;
   }
@@ -733,6 +872,24 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
       userInfoProvider.getUser(), projectId, target);
   }
 
+  /**
+   * Waits for the progress of a build to change and returns the result of
+   * the build.
+   *
+   * @param projectId  project ID
+   * @param target  build target (optional, implementation dependent)
+   * @param lastProgress  the progress the client last received
+   *
+   * @return  results of build, as for {@link #getBuildResult(long, String)}
+   */
+  @Override
+  public RpcResult getBuildProgress(long projectId, String target, int lastProgress) {
+    // Dispatch
+    final String userId = userInfoProvider.getUserId();
+    return getProjectRpcImpl(userId, projectId).getBuildProgress(
+      userInfoProvider.getUser(), projectId, target, lastProgress);
+  }
+
   /*
    * Write the serialized response out to stdout. This is a very unusual thing
    * to do, but it allows us to create a static file version of the response
@@ -809,9 +966,16 @@ public class ProjectServiceImpl extends OdeRemoteServiceServlet implements Proje
     if (sessionId.equals("force")) { // If we are forcing our way -- no check
       return;
     }
-    if (!storedSessionId.equals(sessionId))
+    if (!sessionId.equals(storedSessionId))
       if (AppInventorFeatures.requireOneLogin()) {
-        throw new InvalidSessionException("A more recent login has occurred since we started. No further changes will be saved.");
+        // The user may have come from OdeAuthFilter's cache, which doesn't keep the session id,
+        // or the user may have logged in again since the request started. Check with storage
+        // before rejecting the request.
+        storedSessionId = storageIo.getUser(userInfoProvider.getUserId()).getSessionId();
+        userInfoProvider.setSessionId(storedSessionId);
+        if (!sessionId.equals(storedSessionId)) {
+          throw new InvalidSessionException("A more recent login has occurred since we started. No further changes will be saved.");
+        }
       }
   }
 
@@ -29,6 +29,11 @@ import javax.servlet.http.HttpServletResponse;
  * safety they contain an encrypted user and project ID as part of
  * their URL.
  *
+ * <p>Build progress is posted here as a plain text number, which is only
+ * kept in memcache (see {@link StorageIo#storeBuildProgress}). Older build
+ * servers post it as a zip containing a build.status file. Progress that
+ * arrives after the output of the build is ignored.
+ *
  * @author markf@google.com (Mark Friedman)
  */
 public class ReceiveBuildServlet extends OdeServlet {
@@ -58,10 +63,25 @@ public class ReceiveBuildServlet extends OdeServlet {
       throw CrashReport.createAndLogError(LOG, req, null, e);
     }
 
+    String contentType = req.getContentType();
+    if (contentType != null && contentType.startsWith("text/plain")) {
+      String body = new String(ByteStreams.toByteArray(req.getInputStream()), "UTF-8");
+      int progress;
+      try {
+        progress = Integer.parseInt(body.trim());
+      } catch (NumberFormatException e) {
+        resp.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid progress");
+        return;
+      }
+      storageIo.storeBuildProgress(userId, projectId, progress);
+      return;
+    }
+
     // Set the user in the OdeFilter, which is used everywhere as the UserInfoProvider.
     odeFilter.setUserFromUserId(userId, false, false);
     try {
       String buildFileDirPath = uriComponents[4];
+      boolean receivedOutput = false;
       ZipInputStream zipInputStream = new ZipInputStream(req.getInputStream());
       while (true) {
         ZipEntry zipEntry = zipInputStream.getNextEntry();
@@ -69,23 +89,29 @@ public class ReceiveBuildServlet extends OdeServlet {
           break;
         }
         String fileName = zipEntry.getName();
-        byte[] fileBytes = ByteStreams.toByteArray(zipInputStream);
         if (StorageUtil.ANDROID_KEYSTORE_FILENAME.equals(fileName)) {
           LOG.info("Saving android.keystore for user: " + userId);
+          byte[] fileBytes = ByteStreams.toByteArray(zipInputStream);
           storageIo.addFilesToUser(userId, StorageUtil.ANDROID_KEYSTORE_FILENAME);
           storageIo.uploadRawUserFile(userId, fileName, fileBytes);
         } else if (fileName.equals("build.status")) {
+          byte[] fileBytes = ByteStreams.toByteArray(zipInputStream);
           int progress = Integer.parseInt((new String(fileBytes)).trim());
           LOG.info("Received a build.status file contents = " + progress);
-          storageIo.storeBuildStatus(userId, projectId, progress);
+          storageIo.storeBuildProgress(userId, projectId, progress);
         } else {
           String filePath = buildFileDirPath + "/" + fileName;
           LOG.info("Saving build output files: " + filePath);
           storageIo.addOutputFilesToProject(userId, projectId, filePath);
-          storageIo.uploadRawFileForce(projectId, filePath, userId, fileBytes);
-          storageIo.storeBuildStatus(userId, projectId, 0); // Reset for the next build
+          // Stream the entry into storage so that large packages aren't held in memory
+          storageIo.uploadRawFileForce(projectId, filePath, userId, zipInputStream);
+          receivedOutput = true;
         }
       }
+      if (receivedOutput) {
+        // Tell clients waiting in getBuildProgress to pick up the result
+        storageIo.storeBuildStatus(userId, projectId, StorageIo.BUILD_FINISHED);
+      }
     } finally {
       odeFilter.removeUser();
     }
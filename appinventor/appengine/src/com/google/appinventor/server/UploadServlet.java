@@ -6,20 +6,29 @@
 
 package com.google.appinventor.server;
 
+import com.google.appinventor.server.flags.Flag;
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.server.util.CacheHeaders;
 import com.google.appinventor.server.util.CacheHeadersImpl;
 import com.google.appinventor.shared.rpc.ServerLayout;
 import com.google.appinventor.shared.rpc.UploadResponse;
 import com.google.appinventor.shared.rpc.component.Component;
 import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
 
 import org.apache.commons.fileupload.FileItemStream;
 import org.apache.commons.fileupload.FileItemIterator;
 import org.apache.commons.fileupload.servlet.ServletFileUpload;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Logger;
 
 import javax.servlet.http.HttpServletRequest;
@@ -34,18 +43,21 @@ public class UploadServlet extends OdeServlet {
   /*
    * URIs for upload requests are structured as follows:
    *    /<baseurl>/upload/project/<projectname>}
+   *    /<baseurl>/upload/projectchunk
+   *    /<baseurl>/upload/projectchunks/<projectname>
    *    /<baseurl>/upload/file/<projectId>/<filePath>
    *    /<baseurl>/upload/userfile/<filePath>
    */
 
   // Constants for accessing split URI
   /*
-   * Upload kind can be: "project", "file", or "userfile".
+   * Upload kind can be: "project", "projectchunk", "projectchunks", "file",
+   * "userfile" or "component".
    * Constants for these are defined in ServerLayout.
    */
   private static final int UPLOAD_KIND_INDEX = 3;
 
-  // Constants used when upload kind is "project".
+  // Constants used when upload kind is "project" or "projectchunks".
   private static final int PROJECT_TITLE_INDEX = 4;
   private static final int SPLIT_LIMIT_PROJECT_SOURCE = 5;
 
@@ -75,7 +87,16 @@ public class UploadServlet extends OdeServlet {
   // Content type for response header (to avoid security vulnerabilities)
   private static final String CONTENT_TYPE = "text/html; charset=utf-8";
 
+  // Largest piece of a project archive accepted in one request
+  @VisibleForTesting
+  static final Flag<Integer> MAX_CHUNK_BYTES =
+      Flag.createFlag("upload.chunk.maxbytes", 4 * 1024 * 1024);
+
+  // Names of temporary files, which hold the pieces of project archives
+  private static final String TEMP_FILE_PREFIX = "__TEMP__/";
+
   private final FileImporter fileImporter = new FileImporterImpl();
+  private final StorageIo storageIo = StorageIoInstanceHolder.getInstance();
 
   @Override
   public void doPost(HttpServletRequest req, HttpServletResponse resp) {
@@ -107,6 +128,51 @@ public class UploadServlet extends OdeServlet {
         } catch (FileImporterException e) {
           uploadResponse = e.uploadResponse;
         }
+      } else if (uploadKind.equals(ServerLayout.UPLOAD_PROJECT_CHUNK)) {
+        // Large project archives are uploaded in pieces, so that a failed
+        // request only has to resend one piece. The body is the raw content of
+        // the piece, which is kept in a temporary file until the project is
+        // created from the pieces.
+        int maxChunkBytes = MAX_CHUNK_BYTES.get();
+        byte[] content = ByteStreams.toByteArray(
+            ByteStreams.limit(req.getInputStream(), maxChunkBytes + 1L));
+        if (content.length > maxChunkBytes) {
+          uploadResponse = new UploadResponse(UploadResponse.Status.FILE_TOO_LARGE);
+        } else {
+          uploadResponse = new UploadResponse(UploadResponse.Status.SUCCESS, 0,
+              fileImporter.importTempFile(new ByteArrayInputStream(content)));
+        }
+        // The pieces of uploads that are never finished are left behind
+        storageIo.cleanupTempFiles();
+      } else if (uploadKind.equals(ServerLayout.UPLOAD_PROJECT_FROM_CHUNKS)) {
+        uriComponents = uri.split("/", SPLIT_LIMIT_PROJECT_SOURCE);
+        String projectName = uriComponents[PROJECT_TITLE_INDEX];
+        // The body lists the names returned for the pieces, in order, one per line
+        List<String> chunkNames = new ArrayList<String>();
+        for (String line : CharStreams.readLines(req.getReader())) {
+          line = line.trim();
+          if (line.isEmpty()) {
+            continue;
+          }
+          if (!line.startsWith(TEMP_FILE_PREFIX)) {
+            throw CrashReport.createAndLogError(LOG, req, null,
+                new IllegalArgumentException("Not a project archive piece: " + line));
+          }
+          chunkNames.add(line);
+        }
+        if (chunkNames.isEmpty()) {
+          throw CrashReport.createAndLogError(LOG, req, null,
+              new IllegalArgumentException("Missing project archive pieces."));
+        }
+
+        try {
+          UserProject userProject = fileImporter.importProjectFromTempFiles(
+              userInfoProvider.getUserId(), projectName, chunkNames);
+          String info = userProject.toString();
+          uploadResponse = new UploadResponse(UploadResponse.Status.SUCCESS, 0, info);
+        } catch (FileImporterException e) {
+          uploadResponse = e.uploadResponse;
+        }
       } else if (uploadKind.equals(ServerLayout.UPLOAD_FILE)) {
         uriComponents = uri.split("/", SPLIT_LIMIT_FILE);
         long projectId = Long.parseLong(uriComponents[PROJECT_ID_INDEX]);
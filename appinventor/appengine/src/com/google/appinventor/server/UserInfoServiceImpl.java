@@ -54,6 +54,7 @@ public class UserInfoServiceImpl extends OdeRemoteServiceServlet implements User
     User user = userInfoProvider.getUser();
     user.setSessionId(sessionId);
     storageIo.setUserSessionId(userInfoProvider.getUserId(), sessionId);
+    OdeAuthFilter.invalidateUser(userInfoProvider.getUserId());
     Flag<String> rendezvousFlag = Flag.createFlag("use.rendezvousserver", "");
     if (!rendezvousFlag.get().equals("")) {
       config.setRendezvousServer(rendezvousFlag.get());
@@ -139,6 +140,7 @@ public class UserInfoServiceImpl extends OdeRemoteServiceServlet implements User
     user.setSessionId(sessionId); // Store local copy
     // Store it in the data store
     storageIo.setUserSessionId(userInfoProvider.getUserId(), sessionId);
+    OdeAuthFilter.invalidateUser(userInfoProvider.getUserId());
     return user;
   }
 
@@ -229,6 +231,7 @@ public class UserInfoServiceImpl extends OdeRemoteServiceServlet implements User
       return ("");
     }
     if (storageIo.deleteAccount(userInfoProvider.getUserId())) {
+      OdeAuthFilter.invalidateUser(userInfoProvider.getUserId());
       String delAccountUrl = Flag.createFlag("deleteaccount.url", "NONE").get();
       if (delAccountUrl.equals("NONE")) {
         return (delAccountUrl);
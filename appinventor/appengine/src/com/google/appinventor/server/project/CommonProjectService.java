@@ -12,6 +12,7 @@ import com.google.appinventor.shared.rpc.RpcResult;
 import com.google.appinventor.shared.rpc.project.ChecksumedLoadFile;
 import com.google.appinventor.shared.rpc.project.ChecksumedFileException;
 import com.google.appinventor.shared.rpc.project.NewProjectParameters;
+import com.google.appinventor.shared.rpc.project.OpenedProject;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.TextFile;
 import com.google.appinventor.shared.rpc.project.UserProject;
@@ -24,7 +25,12 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * The base class for classes that provide project services for a specific
@@ -213,6 +219,62 @@ public abstract class CommonProjectService {
     return retval;
   }
 
+  /**
+   * Loads several source files of a project. The files are read from storage
+   * together, rather than with a round trip per file.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param fileIds  project nodes whose sources should be loaded
+   *
+   * @return  map from file ID to file content, in the order of fileIds
+   */
+  public Map<String, String> load(String userId, long projectId, List<String> fileIds) {
+    Charset charset = Charset.forName(StorageUtil.DEFAULT_CHARSET);
+    Map<String, String> result = new LinkedHashMap<String, String>();
+    for (Map.Entry<String, byte[]> entry :
+        storageIo.downloadRawFiles(userId, projectId, fileIds).entrySet()) {
+      result.put(entry.getKey(), new String(entry.getValue(), charset));
+    }
+    return result;
+  }
+
+  /**
+   * Returns what the client needs to open a project: the project tree, the
+   * project settings and the contents of the files returned by
+   * {@link #getInitialFiles}. This saves the client the round trips of
+   * fetching each of them on its own before the first screen is shown.
+   *
+   * @param userId the user id
+   * @param projectId  project ID
+   *
+   * @return  the opened project
+   */
+  public OpenedProject openProject(String userId, long projectId)
+      throws ChecksumedFileException {
+    ProjectRootNode rootNode = getRootNode(userId, projectId);
+    String settings = storageIo.loadProjectSettings(userId, projectId);
+    HashMap<String, ChecksumedLoadFile> files = new HashMap<String, ChecksumedLoadFile>();
+    for (Map.Entry<String, String> entry :
+        load(userId, projectId, getInitialFiles(rootNode)).entrySet()) {
+      ChecksumedLoadFile file = new ChecksumedLoadFile();
+      file.setContent(entry.getValue());
+      files.put(entry.getKey(), file);
+    }
+    return new OpenedProject(rootNode, settings, files);
+  }
+
+  /**
+   * Returns the IDs of the source files that the client will load as soon as
+   * the project is opened, so that {@link #openProject} can send them along.
+   * By default no files are sent along.
+   *
+   * @param rootNode  root node of the project
+   */
+  protected List<String> getInitialFiles(ProjectRootNode rootNode) {
+    return Collections.emptyList();
+  }
+
   /**
    * Attempt to record the project Id and error message when we detect a corruption
    * while loading a project.
@@ -302,6 +364,22 @@ public abstract class CommonProjectService {
     }
   }
 
+  /**
+   * Saves the contents of several files of the same project at once. Like
+   * {@link #save(String, long, String, String)} this always sets force to
+   * true. The files are written with a single storage operation so the
+   * project modification date is only updated once.
+   *
+   * @param userId the user id
+   * @param projectId  project root node ID
+   * @param filesAndContent  map from file ID to content to be saved
+   * @return modification date for project
+   */
+  public long save(String userId, long projectId, Map<String, String> filesAndContent) {
+    return storageIo.uploadFilesForce(projectId, userId, filesAndContent,
+        StorageUtil.DEFAULT_CHARSET);
+  }
+
   /**
    * Saves a screenshot of a current blocks editor. This is called from the client side
    * whenever the user leaves a blocks editor. The data is shipped to us in base64 encoding
@@ -350,6 +428,19 @@ public abstract class CommonProjectService {
    */
   public abstract RpcResult getBuildResult(User user, long projectId, String target);
 
+  /**
+   * Waits for the progress of a build to change, then returns the same
+   * results as {@link #getBuildResult(User, long, String)}.
+   *
+   * @param user the User that owns the {@code projectId}.
+   * @param projectId  project id to be built
+   * @param target  build target (optional, implementation dependent.
+   * @param lastProgress  the progress already known to the caller
+   * @return  build results, as for getBuildResult
+   */
+  public abstract RpcResult getBuildProgress(User user, long projectId, String target,
+      int lastProgress);
+
   public TextFile importMedia(String userId, long projectId, String urlString, boolean save) throws IOException {
     InputStream is = null;
     try {
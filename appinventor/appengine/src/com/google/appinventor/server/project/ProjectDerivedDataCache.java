@@ -0,0 +1,155 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.project;
+
+import com.google.appengine.api.memcache.ErrorHandlers;
+import com.google.appengine.api.memcache.Expiration;
+import com.google.appengine.api.memcache.MemcacheService;
+import com.google.appengine.api.memcache.MemcacheServiceFactory;
+import com.google.appinventor.server.flags.Flag;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.annotation.Nullable;
+
+/**
+ * Caches data that is computed from a project's files, such as the project
+ * tree, so that it isn't recomputed every time the project is opened.
+ *
+ * Entries are tagged with the version of the project they were computed
+ * from, normally its modification date, which the storage layer moves
+ * forward whenever files are added to or removed from the project. An entry
+ * is only returned for the same version, so stale entries are never used
+ * and need not be invalidated. Entries are kept in memcache, shared by all
+ * instances, and in a small local cache in front of it.
+ *
+ * Both keep the data serialized, and every get returns a new copy of it, so
+ * callers can modify what they get without affecting other requests.
+ *
+ * @param <T> type of the cached data
+ */
+public final class ProjectDerivedDataCache<T extends Serializable> {
+
+  private static final Logger LOG = Logger.getLogger(ProjectDerivedDataCache.class.getName());
+
+  private static final Flag<Integer> LOCAL_CACHE_SIZE =
+      Flag.createFlag("project.derivedcache.size", 500);
+
+  // How long memcache keeps entries of projects that aren't opened
+  private static final int EXPIRATION_SECONDS = 24 * 60 * 60;
+
+  private static final class Entry implements Serializable {
+    private static final long serialVersionUID = 2L;
+
+    final long version;
+    final byte[] value;  // serialized
+
+    Entry(long version, byte[] value) {
+      this.version = version;
+      this.value = value;
+    }
+  }
+
+  private final String kind;
+  private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
+  private final Cache<Long, Entry> localCache;
+
+  /**
+   * Creates a cache.
+   *
+   * @param kind  name of the cached data, distinct for each cache
+   */
+  public ProjectDerivedDataCache(String kind) {
+    this.kind = kind;
+    memcache.setErrorHandler(ErrorHandlers.getConsistentLogAndContinue(Level.INFO));
+    localCache = CacheBuilder.newBuilder()
+        .maximumSize(LOCAL_CACHE_SIZE.get())
+        .build();
+  }
+
+  /**
+   * Returns a copy of the data cached for the given version of a project, or
+   * null if there is none.
+   *
+   * @param projectId  project ID
+   * @param version  current version of the project
+   */
+  @Nullable
+  public T get(long projectId, long version) {
+    Entry entry = localCache.getIfPresent(projectId);
+    if (entry == null || entry.version != version) {
+      Object cached = memcache.get(memcacheKey(projectId));
+      if (!(cached instanceof Entry) || ((Entry) cached).version != version) {
+        return null;
+      }
+      entry = (Entry) cached;
+      localCache.put(projectId, entry);
+    }
+    return deserialize(entry.value);
+  }
+
+  /**
+   * Caches data computed from the given version of a project. The version
+   * must be read before the data is computed, so that a concurrent change
+   * can't be cached under its new version.
+   *
+   * @param projectId  project ID
+   * @param version  version of the project the data was computed from
+   * @param value  the data
+   */
+  public void put(long projectId, long version, T value) {
+    Entry entry;
+    try {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      ObjectOutputStream out = new ObjectOutputStream(bytes);
+      out.writeObject(value);
+      out.close();
+      entry = new Entry(version, bytes.toByteArray());
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to cache " + kind + " of project " + projectId, e);
+      return;
+    }
+    localCache.put(projectId, entry);
+    memcache.put(memcacheKey(projectId), entry, Expiration.byDeltaSeconds(EXPIRATION_SECONDS));
+  }
+
+  /*
+   * Returns a new copy of serialized data, or null if it can't be read, for
+   * example because it was cached by a version of the server whose classes
+   * differ.
+   */
+  @Nullable
+  @SuppressWarnings("unchecked")
+  private T deserialize(byte[] value) {
+    try {
+      ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(value));
+      try {
+        return (T) in.readObject();
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      LOG.log(Level.INFO, "Unable to read cached " + kind, e);
+      return null;
+    } catch (ClassNotFoundException e) {
+      LOG.log(Level.INFO, "Unable to read cached " + kind, e);
+      return null;
+    }
+  }
+
+  private String memcacheKey(long projectId) {
+    return kind + ":" + projectId;
+  }
+}
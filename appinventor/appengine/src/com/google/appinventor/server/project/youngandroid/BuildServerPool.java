@@ -0,0 +1,379 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.project.youngandroid;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.apphosting.api.ApiProxy;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CharStreams;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A set of interchangeable build servers, and which of them to send a build
+ * to.
+ *
+ * The pool polls each server's /buildserver/health and /buildserver/vars
+ * pages, at most once every pollMillis and only when a build is about to be
+ * routed (App Engine instances can't poll in the background). The request
+ * that finds a server's status stale polls it, and other requests meanwhile
+ * use the stale status rather than wait; stale servers are polled
+ * concurrently. Builds go to
+ * the healthy server with the lowest load, that is the fewest active build
+ * tasks relative to its maximum. Servers that are draining, shutting down or
+ * unreachable come after all healthy ones. Between polls the pool counts the
+ * builds it sends to a server, and a server that turns a build away is
+ * treated as full until it is polled again. Each poll logs the server's
+ * status, including the running average of how long it takes to accept a
+ * build, which also breaks ties between equally loaded servers.
+ *
+ * Each App Engine instance has its own pool, so its view of the load only
+ * includes the builds it sent itself since the last poll.
+ */
+final class BuildServerPool {
+
+  private static final Logger LOG = Logger.getLogger(BuildServerPool.class.getName());
+
+  private static final int POLL_TIMEOUT_MILLIS = 2000;
+
+  // Weight of a new latency sample in the running average
+  private static final double LATENCY_WEIGHT = 0.2;
+
+  private static final Pattern ACTIVE_TASKS =
+      Pattern.compile("<b>active-build-tasks</b> (\\d+)<br>");
+  private static final Pattern MAX_TASKS =
+      Pattern.compile("<b>maximum-simultaneous-build-tasks-allowed</b> (\\d+)<br>");
+
+  /**
+   * A build server in the pool.
+   */
+  static final class Node {
+    private final String host;
+
+    // All guarded by this
+    private boolean healthy = true;
+    private int activeTasks;
+    private int maxTasks;       // 0 for unlimited
+    private long lastPolled;    // 0 if never polled
+    private double latencyMillis;
+
+    Node(String host) {
+      this.host = host;
+    }
+
+    /**
+     * Returns the host[:port] of the build server.
+     */
+    String getHost() {
+      return host;
+    }
+
+    /**
+     * Records that a build was handed to this server.
+     *
+     * @param elapsedMillis  how long the server took to accept it
+     */
+    synchronized void recordAccepted(long elapsedMillis) {
+      activeTasks++;
+      recordLatency(elapsedMillis);
+    }
+
+    /**
+     * Records that this server turned a build away because it is at capacity.
+     */
+    synchronized void recordRejected(long elapsedMillis) {
+      activeTasks = Math.max(activeTasks, maxTasks);
+      healthy = false;
+      recordLatency(elapsedMillis);
+    }
+
+    /**
+     * Records that this server could not be reached.
+     */
+    synchronized void recordUnreachable() {
+      healthy = false;
+    }
+
+    @VisibleForTesting
+    synchronized void setStatus(boolean healthy, int activeTasks, int maxTasks, long now) {
+      this.healthy = healthy;
+      this.activeTasks = activeTasks;
+      this.maxTasks = maxTasks;
+      this.lastPolled = now;
+    }
+
+    private void recordLatency(long elapsedMillis) {
+      latencyMillis = latencyMillis == 0 ? elapsedMillis
+          : latencyMillis + LATENCY_WEIGHT * (elapsedMillis - latencyMillis);
+    }
+
+    /**
+     * Returns the running average of how long the server took to accept a
+     * build, in milliseconds, or 0 if it hasn't been sent one yet.
+     */
+    synchronized double getLatencyMillis() {
+      return latencyMillis;
+    }
+
+    /**
+     * Describes the status of the server as last polled, with the builds
+     * counted since: whether it is healthy, its load and its latency.
+     */
+    @Override
+    public synchronized String toString() {
+      return host + (healthy ? " healthy" : " unavailable")
+          + ", " + activeTasks + "/" + (maxTasks == 0 ? "unlimited" : maxTasks) + " tasks"
+          + ", accepts builds in " + Math.round(latencyMillis) + " ms";
+    }
+
+    /*
+     * The fraction of the server's capacity in use, or the number of active
+     * tasks if its capacity is unlimited.
+     */
+    private synchronized double getLoad() {
+      return maxTasks == 0 ? activeTasks : (double) activeTasks / maxTasks;
+    }
+
+    /*
+     * Returns true if the caller should poll the server, in which case no
+     * one else will until pollMillis have passed.
+     */
+    private synchronized boolean claimPoll(long now, long pollMillis) {
+      if (now - lastPolled < pollMillis) {
+        return false;
+      }
+      lastPolled = now;
+      return true;
+    }
+
+    private void poll() {
+      boolean healthy;
+      int[] tasks = null;
+      try {
+        // /health answers 200 only when the server is up and not draining
+        HttpURLConnection health = get("/buildserver/health");
+        try {
+          healthy = health.getResponseCode() == HttpURLConnection.HTTP_OK;
+          drain(health);
+        } finally {
+          health.disconnect();
+        }
+        HttpURLConnection vars = get("/buildserver/vars");
+        try {
+          if (vars.getResponseCode() == HttpURLConnection.HTTP_OK) {
+            Reader reader = new InputStreamReader(vars.getInputStream(), Charsets.UTF_8);
+            try {
+              tasks = parseVars(CharStreams.toString(reader));
+            } finally {
+              reader.close();
+            }
+          } else {
+            drain(vars);
+          }
+        } finally {
+          vars.disconnect();
+        }
+      } catch (IOException e) {
+        LOG.log(Level.INFO, "Build server " + host + " is unreachable", e);
+        healthy = false;
+      }
+      synchronized (this) {
+        this.healthy = healthy;
+        if (tasks != null) {
+          activeTasks = tasks[0];
+          maxTasks = tasks[1];
+        }
+      }
+      LOG.log(Level.INFO, "Polled build server " + this);
+    }
+
+    private HttpURLConnection get(String path) throws IOException {
+      HttpURLConnection connection =
+          (HttpURLConnection) new URL("http://" + host + path).openConnection();
+      connection.setConnectTimeout(POLL_TIMEOUT_MILLIS);
+      connection.setReadTimeout(POLL_TIMEOUT_MILLIS);
+      return connection;
+    }
+
+    private static void drain(HttpURLConnection connection) throws IOException {
+      InputStream body = connection.getResponseCode() < HttpURLConnection.HTTP_BAD_REQUEST
+          ? connection.getInputStream() : connection.getErrorStream();
+      if (body != null) {
+        try {
+          ByteStreams.exhaust(body);
+        } finally {
+          body.close();
+        }
+      }
+    }
+  }
+
+  private final List<Node> nodes = new ArrayList<Node>();
+  private final long pollMillis;
+
+  /**
+   * Creates a pool.
+   *
+   * @param hosts  comma separated host[:port] of the build servers
+   * @param pollMillis  how long the status of a server is trusted
+   */
+  BuildServerPool(String hosts, long pollMillis) {
+    for (String host : hosts.split(",")) {
+      host = host.trim();
+      if (!host.isEmpty()) {
+        nodes.add(new Node(host));
+      }
+    }
+    this.pollMillis = pollMillis;
+  }
+
+  /**
+   * Returns true if the pool has no build servers.
+   */
+  boolean isEmpty() {
+    return nodes.isEmpty();
+  }
+
+  /**
+   * Returns all build servers of the pool, in the order in which a build
+   * should be offered to them. Servers whose status is stale are polled
+   * first, unless there is only one server or another request is already
+   * polling them.
+   */
+  List<Node> candidates() {
+    if (nodes.size() == 1) {
+      return nodes;             // Nothing to choose from
+    }
+    long now = System.currentTimeMillis();
+    List<Node> stale = new ArrayList<Node>();
+    for (Node node : nodes) {
+      if (node.claimPoll(now, pollMillis)) {
+        stale.add(node);
+      }
+    }
+    pollAll(stale);
+    return order(nodes);
+  }
+
+  /*
+   * Polls the given nodes concurrently. App Engine only lets requests create
+   * threads that are tied to the request, see ParallelBlobIo.
+   */
+  private static void pollAll(List<Node> stale) {
+    if (stale.size() <= 1) {
+      for (Node node : stale) {
+        node.poll();
+      }
+      return;
+    }
+    ThreadFactory threadFactory = ApiProxy.getCurrentEnvironment() == null
+        ? Executors.defaultThreadFactory() : ThreadManager.currentRequestThreadFactory();
+    ExecutorService executor = Executors.newFixedThreadPool(stale.size(), threadFactory);
+    try {
+      List<Callable<Void>> polls = new ArrayList<Callable<Void>>(stale.size());
+      for (final Node node : stale) {
+        polls.add(new Callable<Void>() {
+          @Override
+          public Void call() {
+            node.poll();
+            return null;
+          }
+        });
+      }
+      executor.invokeAll(polls);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /*
+   * The status of a node when the pool is ordered. The nodes can change while
+   * they are sorted, so they are sorted by a copy of their status.
+   */
+  private static final class Snapshot {
+    final Node node;
+    final boolean healthy;
+    final double load;
+    final double latencyMillis;
+
+    Snapshot(Node node) {
+      synchronized (node) {
+        this.node = node;
+        this.healthy = node.healthy;
+        this.load = node.getLoad();
+        this.latencyMillis = node.latencyMillis;
+      }
+    }
+  }
+
+  @VisibleForTesting
+  static List<Node> order(List<Node> nodes) {
+    List<Snapshot> snapshots = new ArrayList<Snapshot>(nodes.size());
+    for (Node node : nodes) {
+      snapshots.add(new Snapshot(node));
+    }
+    // Stable, so equally loaded servers keep their configured order
+    Collections.sort(snapshots, new Comparator<Snapshot>() {
+      @Override
+      public int compare(Snapshot a, Snapshot b) {
+        if (a.healthy != b.healthy) {
+          return a.healthy ? -1 : 1;
+        }
+        int result = Double.compare(a.load, b.load);
+        if (result == 0) {
+          result = Double.compare(a.latencyMillis, b.latencyMillis);
+        }
+        return result;
+      }
+    });
+    List<Node> ordered = new ArrayList<Node>(snapshots.size());
+    for (Snapshot snapshot : snapshots) {
+      ordered.add(snapshot.node);
+    }
+    return ordered;
+  }
+
+  /**
+   * Extracts the number of active build tasks and the maximum number of
+   * simultaneous build tasks (0 for unlimited) from a build server's
+   * /buildserver/vars page.
+   *
+   * @return the two numbers, or null if the page doesn't have them
+   */
+  @VisibleForTesting
+  static int[] parseVars(String html) {
+    Matcher active = ACTIVE_TASKS.matcher(html);
+    if (!active.find()) {
+      return null;
+    }
+    Matcher max = MAX_TASKS.matcher(html);
+    return new int[] {
+        Integer.parseInt(active.group(1)),
+        max.find() ? Integer.parseInt(max.group(1)) : 0  // "unlimited" doesn't match
+    };
+  }
+}
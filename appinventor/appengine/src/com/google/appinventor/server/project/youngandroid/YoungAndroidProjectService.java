@@ -22,6 +22,7 @@ import com.google.appinventor.server.Server;
 import com.google.appinventor.server.encryption.EncryptionException;
 import com.google.appinventor.server.flags.Flag;
 import com.google.appinventor.server.project.CommonProjectService;
+import com.google.appinventor.server.project.ProjectDerivedDataCache;
 import com.google.appinventor.server.project.utils.Security;
 import com.google.appinventor.server.properties.json.ServerJsonParser;
 import com.google.appinventor.server.storage.StorageIo;
@@ -35,7 +36,6 @@ import com.google.appinventor.shared.rpc.project.Project;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.ProjectSourceZip;
-import com.google.appinventor.shared.rpc.project.RawFile;
 import com.google.appinventor.shared.rpc.project.TextFile;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.project.youngandroid.NewYoungAndroidProjectParameters;
@@ -77,10 +77,13 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TreeSet;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -103,6 +106,13 @@ public final class YoungAndroidProjectService extends CommonProjectService {
   private static final String ERROR_LARGE_PROJECT =
       "Sorry, can't package projects larger than %1$d MB. Yours is %2$3.2f MB.";
 
+  // How long, in milliseconds, getBuildProgress waits for the progress of a build to change
+  // before answering, and how often it checks the progress while waiting
+  @VisibleForTesting
+  static final Flag<Integer> buildProgressWait =
+      Flag.createFlag("build.progress.wait", 20000);
+  private static final int BUILD_PROGRESS_POLL_MILLIS = 500;
+
   // Project folder prefixes
   public static final String SRC_FOLDER = YoungAndroidSourceAnalyzer.SRC_FOLDER;
   protected static final String ASSETS_FOLDER = "assets";
@@ -129,12 +139,21 @@ public final class YoungAndroidProjectService extends CommonProjectService {
 
   public static final String PROJECT_KEYSTORE_LOCATION = "android.keystore";
 
-  // host[:port] to use for connecting to the build server
+  // host[:port] to use for connecting to the build server, or a comma
+  // separated list of them to spread builds over several build servers
   private static final Flag<String> buildServerHost =
       Flag.createFlag("build.server.host", "localhost:9990");
-  // host[:port] to use for connecting to the second build server
+  // host[:port] to use for connecting to the second build server, or a list
   private static final Flag<String> buildServerHost2 =
       Flag.createFlag("build2.server.host", "");
+  // How long the load reported by a build server is trusted before it is
+  // polled again, in seconds
+  private static final Flag<Integer> buildServerPollSecs =
+      Flag.createFlag("build.server.pollsecs", 15);
+  private static final BuildServerPool buildServers =
+      new BuildServerPool(buildServerHost.get(), buildServerPollSecs.get() * 1000L);
+  private static final BuildServerPool buildServers2 =
+      new BuildServerPool(buildServerHost2.get(), buildServerPollSecs.get() * 1000L);
   // host[:port] to tell build server app host url
   private static final Flag<String> appengineHost =
       Flag.createFlag("appengine.host", "");
@@ -143,6 +162,10 @@ public final class YoungAndroidProjectService extends CommonProjectService {
   private static final String galleryLocation = Flag.createFlag("gallery.location", "http://localhost:9001").get();
   private static final String galleryId = Flag.createFlag("gallery.id", "").get();
 
+  // Project trees, which are rebuilt from the list of project files otherwise
+  private final ProjectDerivedDataCache<ProjectRootNode> rootNodeCache =
+      new ProjectDerivedDataCache<ProjectRootNode>("roottree");
+
   public YoungAndroidProjectService(StorageIo storageIo) {
     super(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, storageIo);
   }
@@ -300,6 +323,9 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     newProject.setProjectHistory(oldProjectHistory);
 
     // Get the old project's source files and add them to new project, modifying where necessary.
+    // Files that are copied unchanged are left to storage, which can share assets between the
+    // projects without reading them.
+    Map<String, String> unchangedFiles = new LinkedHashMap<String, String>();
     for (String oldSourceFileName : storageIo.getProjectSourceFiles(userId, oldProjectId)) {
       String newSourceFileName;
 
@@ -328,19 +354,32 @@ public final class YoungAndroidProjectService extends CommonProjectService {
         newProject.addTextFile(new TextFile(newSourceFileName, newContents));
       } else {
         // If we get here, we know that the contents of the file can just be copied from the old
-        // project. Since it might be a binary file, we copy it as a raw file (that works for both
-        // text and binary files).
-        byte[] contents = storageIo.downloadRawFile(userId, oldProjectId, oldSourceFileName);
-        newProject.addRawFile(new RawFile(newSourceFileName, contents));
+        // project. Since it might be a binary file, storage copies it as a raw file (that works
+        // for both text and binary files).
+        unchangedFiles.put(oldSourceFileName, newSourceFileName);
       }
     }
 
     // Create the new project and return the new project's id.
-    return storageIo.createProject(userId, newProject, builder.build());
+    return storageIo.createProject(userId, newProject, builder.build(), oldProjectId,
+        unchangedFiles);
   }
 
   @Override
   public ProjectRootNode getRootNode(String userId, long projectId) {
+    // Read the version before the files, see ProjectDerivedDataCache.put
+    long version = storageIo.getProjectDateModified(userId, projectId);
+    ProjectRootNode rootNode = rootNodeCache.get(projectId, version);
+    if (rootNode == null) {
+      rootNode = buildRootNode(userId, projectId);
+      if (version != 0) {
+        rootNodeCache.put(projectId, version, rootNode);
+      }
+    }
+    return rootNode;
+  }
+
+  private ProjectRootNode buildRootNode(String userId, long projectId) {
     // Create root, assets, and source nodes (they are mocked nodes as they don't really
     // have to exist like this on the file system)
     ProjectRootNode rootNode =
@@ -407,6 +446,22 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     return rootNode;
   }
 
+  /**
+   * The client opens a project on Screen1 and loads its form and blocks
+   * before anything else, so those are sent along with the project.
+   */
+  @Override
+  protected List<String> getInitialFiles(ProjectRootNode rootNode) {
+    List<String> fileIds = new ArrayList<String>();
+    for (ProjectNode node : rootNode.getAllSourceNodes()) {
+      if ((node instanceof YoungAndroidFormNode || node instanceof YoungAndroidBlocksNode)
+          && YoungAndroidSourceNode.isScreen1(node.getFileId())) {
+        fileIds.add(node.getFileId());
+      }
+    }
+    return fileIds;
+  }
+
   /*
    * Convert the contents of the codeblocks file named codeblocksFileId
    * to blockly format and return the blockly contents.
@@ -515,6 +570,7 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     // Store the userId and projectId based on the nonce
 
     storageIo.storeNonce(nonce, userId, projectId);
+    storageIo.storeBuildStatus(userId, projectId, 0); // Forget the end of any previous build
     List<String> buildOutputFiles = storageIo.getProjectOutputFiles(userId, projectId);
 
     // Delete the existing build output files, if any, so that future attempts to get it won't get
@@ -525,18 +581,6 @@ public final class YoungAndroidProjectService extends CommonProjectService {
     URL buildServerUrl = null;
     ProjectSourceZip zipFile = null;
     try {
-      buildServerUrl = new URL(getBuildServerUrlStr(
-          user.getUserEmail(),
-          userId,
-          projectId,
-          secondBuildserver,
-          outputFileDir,
-          isAab));
-      HttpURLConnection connection = (HttpURLConnection) buildServerUrl.openConnection();
-      connection.setDoOutput(true);
-      connection.setRequestMethod("POST");
-
-      BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
       FileExporter fileExporter = new FileExporterImpl();
       zipFile = fileExporter.exportProjectSourceZip(userId, projectId, false,
           /* includeAndroidKeystore */ true,
@@ -552,45 +596,48 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       if (zipFile.getContent().length > MAX_PROJECT_SIZE.get() * MB) {
         return fileTooBigResult(zipFile.getContent().length);
       }
-      bufferedOutputStream.write(zipFile.getContent());
-      bufferedOutputStream.flush();
-      bufferedOutputStream.close();
-
-      int responseCode = 0;
-      responseCode = connection.getResponseCode();
-      if (responseCode != HttpURLConnection.HTTP_OK) {
-        // Put the HTTP response code into the RpcResult so the client code in BuildCommand.java
-        // can provide an appropriate error message to the user.
-        // NOTE(lizlooney) - There is some weird bug/problem with HttpURLConnection. When the
-        // responseCode is 503, connection.getResponseMessage() returns "OK", but it should return
-        // "Service Unavailable". If I make the request with curl and look at the headers, they
-        // have the expected error message.
-        // For now, the moral of the story is: don't use connection.getResponseMessage().
-        String error = "Build server responded with response code " + responseCode + ".";
-        try {
-          String content = readContent(connection.getInputStream());
-          if (content != null && !content.isEmpty()) {
-            error += "\n" + content;
-          }
-        } catch (IOException e) {
-          // No content. That's ok.
-        }
+      String buildServerPath = getBuildServerPathStr(
+          user.getUserEmail(),
+          userId,
+          projectId,
+          outputFileDir,
+          isAab);
+
+      // Offer the build to the least loaded build server first, and to the
+      // next one if a server is full or can't be reached.
+      RpcResult rejected = null;
+      IOException unreachable = null;
+      for (BuildServerPool.Node node
+          : (secondBuildserver ? buildServers2 : buildServers).candidates()) {
+        buildServerUrl = new URL("http://" + node.getHost() + buildServerPath);
+        long start = System.currentTimeMillis();
+        HttpURLConnection connection = (HttpURLConnection) buildServerUrl.openConnection();
+        connection.setDoOutput(true);
+        connection.setRequestMethod("POST");
+
+        int responseCode;
         try {
-          String errorContent = readContent(connection.getErrorStream());
-          if (errorContent != null && !errorContent.isEmpty()) {
-            error += "\n" + errorContent;
-          }
+          BufferedOutputStream bufferedOutputStream =
+              new BufferedOutputStream(connection.getOutputStream());
+          bufferedOutputStream.write(zipFile.getContent());
+          bufferedOutputStream.flush();
+          bufferedOutputStream.close();
+          responseCode = connection.getResponseCode();
         } catch (IOException e) {
-          // No error content. That's ok.
+          LOG.log(Level.WARNING, "Build server " + node.getHost() + " is unreachable", e);
+          node.recordUnreachable();
+          unreachable = e;
+          continue;
         }
-        if (responseCode == HttpURLConnection.HTTP_CONFLICT) {
-          // The build server is not compatible with this App Inventor instance. Log this as severe
-          // so the owner of the app engine instance will know about it.
-          LOG.severe(error);
+        long elapsed = System.currentTimeMillis() - start;
+        if (responseCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+          // The build server is at capacity
+          node.recordRejected(elapsed);
+          rejected = buildServerErrorResult(connection, responseCode);
+          continue;
+        } else if (responseCode != HttpURLConnection.HTTP_OK) {
+          return buildServerErrorResult(connection, responseCode);
         }
-
-        return new RpcResult(responseCode, "", StringUtils.escape(error));
-      } else {
         // We get here if all went well and we sent the job to the
         // buildserver. Below we read the response, but throw it away.
         // We don't really care what was said. But we need to empty out
@@ -600,6 +647,16 @@ public final class YoungAndroidProjectService extends CommonProjectService {
         // have a negative effect on some buildserver infrastructures,
         // particularly those based on docker swarm (as of 2018).
         readContent(connection.getInputStream());
+        node.recordAccepted(elapsed);
+        return new RpcResult(true, "Building " + projectName, "");
+      }
+      // No build server took the build
+      if (rejected != null) {
+        return rejected;
+      } else if (unreachable != null) {
+        throw unreachable;
+      } else {
+        throw new MalformedURLException("No build server is configured");
       }
     } catch (MalformedURLException e) {
       CrashReport.createAndLogError(LOG, null,
@@ -636,7 +693,42 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       }
       return new RpcResult(false, "", wrappedException.getMessage());
     }
-    return new RpcResult(true, "Building " + projectName, "");
+  }
+
+  /*
+   * Makes the result of a build request that a build server did not accept.
+   */
+  private RpcResult buildServerErrorResult(HttpURLConnection connection, int responseCode) {
+    // Put the HTTP response code into the RpcResult so the client code in BuildCommand.java
+    // can provide an appropriate error message to the user.
+    // NOTE(lizlooney) - There is some weird bug/problem with HttpURLConnection. When the
+    // responseCode is 503, connection.getResponseMessage() returns "OK", but it should return
+    // "Service Unavailable". If I make the request with curl and look at the headers, they
+    // have the expected error message.
+    // For now, the moral of the story is: don't use connection.getResponseMessage().
+    String error = "Build server responded with response code " + responseCode + ".";
+    try {
+      String content = readContent(connection.getInputStream());
+      if (content != null && !content.isEmpty()) {
+        error += "\n" + content;
+      }
+    } catch (IOException e) {
+      // No content. That's ok.
+    }
+    try {
+      String errorContent = readContent(connection.getErrorStream());
+      if (errorContent != null && !errorContent.isEmpty()) {
+        error += "\n" + errorContent;
+      }
+    } catch (IOException e) {
+      // No error content. That's ok.
+    }
+    if (responseCode == HttpURLConnection.HTTP_CONFLICT) {
+      // The build server is not compatible with this App Inventor instance. Log this as severe
+      // so the owner of the app engine instance will know about it.
+      LOG.severe(error);
+    }
+    return new RpcResult(responseCode, "", StringUtils.escape(error));
   }
 
   public RpcResult loginToGallery(String userId) {
@@ -777,16 +869,12 @@ public final class YoungAndroidProjectService extends CommonProjectService {
       + (buildURL != null ? buildURL.toString().length() : "n/a") + "]";
   }
 
-  // Note that this is a function rather than just a constant because we assume it will get
-  // a little more complicated when we want to get the URL from an App Engine config file or
-  // command line argument.
-  private String getBuildServerUrlStr(String userName, String userId,
-    long projectId, boolean secondBuildserver, String fileName, boolean isAab)
+  // Returns the path and query of a build request. The host is picked from the build server
+  // pool for each attempt.
+  private String getBuildServerPathStr(String userName, String userId,
+    long projectId, String fileName, boolean isAab)
       throws EncryptionException {
-    UriBuilder uriBuilder = new UriBuilder(
-        "http://"
-            + (secondBuildserver ? buildServerHost2.get() : buildServerHost.get())
-            + "/buildserver/build-all-from-zip-async")
+    UriBuilder uriBuilder = new UriBuilder("/buildserver/build-all-from-zip-async")
         .add("uname", userName)
         .add("callback", "http://" + getCurrentHost() + ServerLayout.ODE_BASEURL_NOAUTH +
             ServerLayout.RECEIVE_BUILD_SERVLET + "/" +
@@ -879,7 +967,45 @@ public final class YoungAndroidProjectService extends CommonProjectService {
    * @param target  build target (optional, implementation dependent)
    */
   public int getCurrentProgress(User user, long projectId, String target) {
-    return storageIo.getBuildStatus(user.getUserId(), projectId);
+    int progress = storageIo.getBuildStatus(user.getUserId(), projectId);
+    return progress == StorageIo.BUILD_FINISHED ? 100 : progress;
+  }
+
+  /**
+   * Waits for the progress of a build to differ from {@code lastProgress}
+   * or for the build to finish, then returns as {@link #getBuildResult}
+   * does.
+   *
+   * <p>While waiting only the build status kept in memcache is read. The
+   * project's output files are only looked up once the build server has
+   * delivered them, or if nothing has changed by the end of the wait, which
+   * covers memcache losing the status.
+   *
+   * @param user the User that owns the {@code projectId}.
+   * @param projectId  project id to be built
+   * @param target  build target (optional, implementation dependent)
+   * @param lastProgress  the progress the caller already knows about
+   */
+  @Override
+  public RpcResult getBuildProgress(User user, long projectId, String target,
+      int lastProgress) {
+    long deadline = System.currentTimeMillis() + buildProgressWait.get();
+    while (true) {
+      int progress = storageIo.getBuildStatus(user.getUserId(), projectId);
+      if (progress == StorageIo.BUILD_FINISHED) {
+        return getBuildResult(user, projectId, target);
+      } else if (progress != lastProgress) {
+        return new RpcResult(-1, Integer.toString(progress), "");
+      } else if (System.currentTimeMillis() >= deadline) {
+        return getBuildResult(user, projectId, target);
+      }
+      try {
+        Thread.sleep(BUILD_PROGRESS_POLL_MILLIS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return getBuildResult(user, projectId, target);
+      }
+    }
   }
 
   /**
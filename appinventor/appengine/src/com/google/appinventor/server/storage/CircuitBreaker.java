@@ -0,0 +1,75 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+/**
+ * A minimal circuit breaker used to stop hammering the datastore when it is
+ * degraded.
+ *
+ * After {@code threshold} consecutive failed jobs the breaker "opens" and
+ * {@link #allowRequest()} returns false for {@code cooldownMillis}. Once the
+ * cool down has passed a single trial job is let through (the breaker is
+ * "half open"). If it succeeds the breaker closes again, otherwise it opens
+ * for another cool down period.
+ *
+ * A threshold of zero or less disables the breaker.
+ */
+class CircuitBreaker {
+
+  private final int threshold;
+  private final long cooldownMillis;
+
+  private int consecutiveFailures = 0;
+  private long openedAt = 0;
+  private boolean trialInProgress = false;
+
+  CircuitBreaker(int threshold, long cooldownMillis) {
+    this.threshold = threshold;
+    this.cooldownMillis = cooldownMillis;
+  }
+
+  synchronized boolean allowRequest() {
+    if (threshold <= 0 || consecutiveFailures < threshold) {
+      return true;
+    }
+    if (!trialInProgress && now() - openedAt >= cooldownMillis) {
+      trialInProgress = true;
+      return true;
+    }
+    return false;
+  }
+
+  synchronized void recordSuccess() {
+    consecutiveFailures = 0;
+    trialInProgress = false;
+  }
+
+  synchronized void recordFailure() {
+    consecutiveFailures++;
+    if (trialInProgress || consecutiveFailures == threshold) {
+      openedAt = now();
+    }
+    trialInProgress = false;
+  }
+
+  /*
+   * Records a job that neither completed nor failed in the datastore, for
+   * example one that threw an IOException from Cloud Storage. It says
+   * nothing about the datastore, so only a trial in progress is given up
+   * and the next request after the cool down may try again.
+   */
+  synchronized void recordNeutral() {
+    trialInProgress = false;
+  }
+
+  synchronized boolean isOpen() {
+    return threshold > 0 && consecutiveFailures >= threshold;
+  }
+
+  long now() {
+    return System.currentTimeMillis();
+  }
+}
@@ -0,0 +1,140 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters for the jobs run by {@link ObjectifyStorageIo#runJobWithRetries}.
+ *
+ * Jobs are grouped by the StorageIo method that created them. Almost all
+ * jobs are anonymous subclasses of JobRetryHelper declared inside the
+ * method they belong to, so we can learn the method name from the class
+ * without touching every call site.
+ *
+ * The counters are per instance (App Engine instance, that is) and are
+ * never reset. runJobWithRetries logs them periodically, see
+ * {@link #isLogDue}. They are meant for tuning contention, not to be exact.
+ */
+final class JobStats {
+
+  private static final ConcurrentMap<Class<?>, String> JOB_NAMES =
+      new ConcurrentHashMap<Class<?>, String>();
+  private static final ConcurrentMap<String, JobStats> STATS =
+      new ConcurrentHashMap<String, JobStats>();
+  private static final AtomicLong LAST_LOGGED = new AtomicLong(System.currentTimeMillis());
+
+  private final String name;
+  private final AtomicLong jobs = new AtomicLong();
+  private final AtomicLong attempts = new AtomicLong();
+  private final AtomicLong conflicts = new AtomicLong();
+  private final AtomicLong failures = new AtomicLong();
+  private final AtomicLong totalMillis = new AtomicLong();
+  private final AtomicLong maxMillis = new AtomicLong();
+
+  private JobStats(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Returns the counters for the method that declared the given job class.
+   */
+  static JobStats forJob(Class<?> jobClass) {
+    String name = JOB_NAMES.get(jobClass);
+    if (name == null) {
+      Method method = jobClass.getEnclosingMethod();
+      name = method != null ? method.getName() : jobClass.getName();
+      JOB_NAMES.putIfAbsent(jobClass, name);
+    }
+    JobStats stats = STATS.get(name);
+    if (stats == null) {
+      STATS.putIfAbsent(name, new JobStats(name));
+      stats = STATS.get(name);
+    }
+    return stats;
+  }
+
+  /**
+   * Returns a snapshot of all of the counters, keyed by method name.
+   */
+  static Map<String, JobStats> snapshot() {
+    return new TreeMap<String, JobStats>(STATS);
+  }
+
+  /**
+   * Returns true if the counters haven't been logged for intervalMillis.
+   * Only one of the threads that ask at the same time gets true.
+   *
+   * @param intervalMillis  how often to log, zero or less to never log
+   */
+  static boolean isLogDue(long now, long intervalMillis) {
+    long last = LAST_LOGGED.get();
+    return intervalMillis > 0 && now - last >= intervalMillis
+        && LAST_LOGGED.compareAndSet(last, now);
+  }
+
+  void recordAttempt() {
+    attempts.incrementAndGet();
+  }
+
+  void recordConflict() {
+    conflicts.incrementAndGet();
+  }
+
+  void recordJob(long elapsedMillis, boolean failed) {
+    jobs.incrementAndGet();
+    if (failed) {
+      failures.incrementAndGet();
+    }
+    totalMillis.addAndGet(elapsedMillis);
+    long max = maxMillis.get();
+    while (elapsedMillis > max && !maxMillis.compareAndSet(max, elapsedMillis)) {
+      max = maxMillis.get();
+    }
+  }
+
+  String getName() {
+    return name;
+  }
+
+  long getJobs() {
+    return jobs.get();
+  }
+
+  long getAttempts() {
+    return attempts.get();
+  }
+
+  long getConflicts() {
+    return conflicts.get();
+  }
+
+  long getFailures() {
+    return failures.get();
+  }
+
+  long getTotalMillis() {
+    return totalMillis.get();
+  }
+
+  long getMaxMillis() {
+    return maxMillis.get();
+  }
+
+  @Override
+  public String toString() {
+    long n = jobs.get();
+    return name + ": jobs=" + n + " attempts=" + attempts.get()
+        + " conflicts=" + conflicts.get() + " failures=" + failures.get()
+        + " avgMillis=" + (n == 0 ? 0 : totalMillis.get() / n)
+        + " maxMillis=" + maxMillis.get();
+  }
+}
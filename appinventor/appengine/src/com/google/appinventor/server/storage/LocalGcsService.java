@@ -0,0 +1,443 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.tools.cloudstorage.GcsFileMetadata;
+import com.google.appengine.tools.cloudstorage.GcsFileOptions;
+import com.google.appengine.tools.cloudstorage.GcsFilename;
+import com.google.appengine.tools.cloudstorage.GcsInputChannel;
+import com.google.appengine.tools.cloudstorage.GcsOutputChannel;
+import com.google.appengine.tools.cloudstorage.GcsService;
+import com.google.appengine.tools.cloudstorage.ListItem;
+import com.google.appengine.tools.cloudstorage.ListOptions;
+import com.google.appengine.tools.cloudstorage.ListResult;
+import com.google.common.hash.Hashing;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+/**
+ * A {@link GcsService} that keeps objects in a directory on the local disk,
+ * for self hosted servers that run on the App Engine dev server. The dev
+ * server simulates GCS with datastore entities, which makes every read and
+ * write of a project asset a round of datastore operations; this just reads
+ * and writes files.
+ *
+ * Objects are stored under root/bucket/xx/yy/hash, where hash is the SHA-256
+ * of the object name and xx and yy are its first two bytes, so that no
+ * directory gets too large. Each file starts with the object's name (see
+ * writeHeader), which is what list reports. As in GCS, an object written
+ * through a channel only replaces the previous content when the channel is
+ * closed: writes go to a temporary file that is then moved into place. Reads
+ * go through a FileChannel that is closed with the read channel. Files are
+ * not memory mapped, since Windows doesn't let a mapped file be deleted or
+ * replaced until the mapping is garbage collected.
+ *
+ * Only object contents are kept here; the datastore still holds all other
+ * project data. Objects written to Cloud Storage before the service was
+ * installed can't be read through it.
+ *
+ * Object options are not kept: the metadata of every object has the default
+ * options.
+ */
+class LocalGcsService implements GcsService {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  // Suffix of the temporary files that become objects when they are complete
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  private final Path root;
+
+  LocalGcsService(Path root) {
+    this.root = root;
+  }
+
+  @Override
+  public GcsOutputChannel createOrReplace(GcsFilename filename, GcsFileOptions options)
+      throws IOException {
+    return new LocalOutputChannel(filename);
+  }
+
+  @Override
+  public void createOrReplace(GcsFilename filename, GcsFileOptions options, ByteBuffer content)
+      throws IOException {
+    LocalOutputChannel channel = new LocalOutputChannel(filename);
+    try {
+      while (content.hasRemaining()) {
+        channel.write(content);
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  @Override
+  public GcsInputChannel openReadChannel(GcsFilename filename, long startPosition)
+      throws IOException {
+    Path path = pathOf(filename);
+    FileChannel file;
+    try {
+      file = FileChannel.open(path, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      // GCS only reports a missing object on the first read
+      return new LocalInputChannel(null, 0);
+    }
+    try {
+      long start = Math.min(readHeader(file, null) + startPosition, file.size());
+      return new LocalInputChannel(file, start);
+    } catch (IOException e) {
+      file.close();
+      throw e;
+    }
+  }
+
+  @Override
+  public GcsInputChannel openPrefetchingReadChannel(GcsFilename filename, long startPosition,
+      int blockSizeBytes) {
+    // Local reads are served by the page cache, so there is nothing to prefetch
+    try {
+      return openReadChannel(filename, startPosition);
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Returns the metadata of an object, or null if there is no such object.
+   */
+  @Override
+  public GcsFileMetadata getMetadata(GcsFilename filename) throws IOException {
+    Path path = pathOf(filename);
+    FileChannel file;
+    try {
+      file = FileChannel.open(path, StandardOpenOption.READ);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    try {
+      long length = file.size() - readHeader(file, null);
+      long lastModified = Files.getLastModifiedTime(path).toMillis();
+      return new GcsFileMetadata(filename, GcsFileOptions.getDefaultInstance(),
+          Long.toHexString(lastModified), length, new Date(lastModified));
+    } finally {
+      file.close();
+    }
+  }
+
+  @Override
+  public boolean delete(GcsFilename filename) throws IOException {
+    return Files.deleteIfExists(pathOf(filename));
+  }
+
+  @Override
+  public void copy(GcsFilename source, GcsFilename dest) throws IOException {
+    compose(source.getBucketName(), new String[] { source.getObjectName() }, dest);
+  }
+
+  /**
+   * Concatenates objects of the destination's bucket into the destination.
+   */
+  @Override
+  public void compose(Iterable<String> source, GcsFilename dest) throws IOException {
+    List<String> names = new ArrayList<String>();
+    for (String name : source) {
+      names.add(name);
+    }
+    compose(dest.getBucketName(), names.toArray(new String[names.size()]), dest);
+  }
+
+  /**
+   * Checks that the object exists. Options are not kept, see the class
+   * comment.
+   */
+  @Override
+  public void update(GcsFilename source, GcsFileOptions options) throws IOException {
+    if (!Files.exists(pathOf(source))) {
+      throw new NoSuchFileException(source.toString());
+    }
+  }
+
+  /**
+   * Lists the objects whose names start with the prefix. Unless the listing
+   * is recursive, objects further down are reported as a directory for each
+   * name up to the next '/'. Objects are found by reading the names of all
+   * the bucket's files, which is only reasonable for the occasional listing.
+   */
+  @Override
+  public ListResult list(String bucket, ListOptions options) throws IOException {
+    String prefix = options.getPrefix() == null ? "" : options.getPrefix();
+    // Sorted by name, as GCS does
+    final TreeMap<String, ListItem> items = new TreeMap<String, ListItem>();
+    Path bucketDir = root.resolve(bucket);
+    if (Files.isDirectory(bucketDir)) {
+      listObjects(bucketDir, prefix, options.isRecursive(), items);
+    }
+    return new ListResult(new Callable<Iterator<ListItem>>() {
+      private boolean listed = false;
+
+      @Override
+      public Iterator<ListItem> call() {
+        if (listed) {
+          return null;  // the end of the listing
+        }
+        listed = true;
+        return items.values().iterator();
+      }
+    });
+  }
+
+  private void listObjects(Path dir, String prefix, boolean recursive,
+      TreeMap<String, ListItem> items) throws IOException {
+    DirectoryStream<Path> entries = Files.newDirectoryStream(dir);
+    try {
+      for (Path entry : entries) {
+        if (Files.isDirectory(entry)) {
+          listObjects(entry, prefix, recursive, items);
+          continue;
+        }
+        if (entry.getFileName().toString().endsWith(TEMP_SUFFIX)) {
+          continue;
+        }
+        FileChannel file;
+        try {
+          file = FileChannel.open(entry, StandardOpenOption.READ);
+        } catch (NoSuchFileException e) {
+          continue;  // deleted while listing
+        }
+        try {
+          StringBuilder name = new StringBuilder();
+          long length = file.size() - readHeader(file, name);
+          if (!name.toString().startsWith(prefix)) {
+            continue;
+          }
+          int slash = name.indexOf("/", prefix.length());
+          if (!recursive && slash >= 0) {
+            String directory = name.substring(0, slash + 1);
+            items.put(directory, new ListItem.Builder().setName(directory)
+                .setDirectory(true).build());
+          } else {
+            long lastModified = Files.getLastModifiedTime(entry).toMillis();
+            items.put(name.toString(), new ListItem.Builder().setName(name.toString())
+                .setLength(length).setEtag(Long.toHexString(lastModified))
+                .setLastModified(new Date(lastModified)).build());
+          }
+        } finally {
+          file.close();
+        }
+      }
+    } finally {
+      entries.close();
+    }
+  }
+
+  /*
+   * Writes the content of the sources, in order, to dest. Nothing is written
+   * if one of the sources is missing.
+   */
+  private void compose(String bucket, String[] sources, GcsFilename dest) throws IOException {
+    LocalOutputChannel channel = new LocalOutputChannel(dest);
+    try {
+      for (String source : sources) {
+        FileChannel file = FileChannel.open(pathOf(new GcsFilename(bucket, source)),
+            StandardOpenOption.READ);
+        try {
+          long position = readHeader(file, null);
+          while (position < file.size()) {
+            position += file.transferTo(position, file.size() - position, channel.file);
+          }
+        } finally {
+          file.close();
+        }
+      }
+      channel.close();
+    } finally {
+      channel.discard();
+    }
+  }
+
+  /*
+   * Writes the header that starts each file: the length of the object's
+   * name, followed by the name in UTF-8.
+   */
+  private static void writeHeader(FileChannel file, String name) throws IOException {
+    byte[] bytes = name.getBytes(UTF_8);
+    ByteBuffer header = ByteBuffer.allocate(4 + bytes.length);
+    header.putInt(bytes.length).put(bytes).flip();
+    while (header.hasRemaining()) {
+      file.write(header);
+    }
+  }
+
+  /*
+   * Reads the header of a file, appending the object's name to name if it
+   * isn't null, and returns the position of the object's content.
+   */
+  private static long readHeader(FileChannel file, StringBuilder name) throws IOException {
+    ByteBuffer length = ByteBuffer.allocate(4);
+    readFully(file, length, 0);
+    if (name != null) {
+      ByteBuffer bytes = ByteBuffer.allocate(length.getInt(0));
+      readFully(file, bytes, 4);
+      name.append(new String(bytes.array(), UTF_8));
+    }
+    return 4 + length.getInt(0);
+  }
+
+  private static void readFully(FileChannel file, ByteBuffer dst, long position)
+      throws IOException {
+    while (dst.hasRemaining()) {
+      int count = file.read(dst, position);
+      if (count < 0) {
+        throw new EOFException("Truncated object file");
+      }
+      position += count;
+    }
+  }
+
+  private Path pathOf(GcsFilename filename) {
+    String hash = Hashing.sha256().hashString(filename.getObjectName(), UTF_8).toString();
+    return root.resolve(filename.getBucketName()).resolve(hash.substring(0, 2))
+        .resolve(hash.substring(2, 4)).resolve(hash);
+  }
+
+  /*
+   * Writes to a temporary file next to the object, which replaces the
+   * object when the channel is closed.
+   */
+  private class LocalOutputChannel implements GcsOutputChannel {
+    private final GcsFilename filename;
+    private final Path target;
+    private final Path temp;
+    private final FileChannel file;
+
+    LocalOutputChannel(GcsFilename filename) throws IOException {
+      this.filename = filename;
+      this.target = pathOf(filename);
+      Files.createDirectories(target.getParent());
+      this.temp = Files.createTempFile(target.getParent(), "write", TEMP_SUFFIX);
+      this.file = FileChannel.open(temp, StandardOpenOption.WRITE);
+      try {
+        writeHeader(file, filename.getObjectName());
+      } catch (IOException e) {
+        discard();
+        throw e;
+      }
+    }
+
+    @Override
+    public GcsFilename getFilename() {
+      return filename;
+    }
+
+    @Override
+    public int getBufferSizeBytes() {
+      return 0;
+    }
+
+    @Override
+    public int write(ByteBuffer src) throws IOException {
+      return file.write(src);
+    }
+
+    @Override
+    public void waitForOutstandingWrites() {
+      // Writes are synchronous
+    }
+
+    @Override
+    public boolean isOpen() {
+      return file.isOpen();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (!file.isOpen()) {
+        return;
+      }
+      try {
+        file.close();
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+
+    /*
+     * Drops whatever was written, unless the channel has been closed.
+     */
+    void discard() throws IOException {
+      if (file.isOpen()) {
+        file.close();
+        Files.deleteIfExists(temp);
+      }
+    }
+  }
+
+  /*
+   * Reads an object's file from the given position. A null file stands for
+   * a missing object.
+   */
+  private static class LocalInputChannel implements GcsInputChannel {
+    private final FileChannel file;
+    private long position;
+    private boolean open = true;
+
+    LocalInputChannel(FileChannel file, long position) {
+      this.file = file;
+      this.position = position;
+    }
+
+    @Override
+    public int read(ByteBuffer dst) throws IOException {
+      if (!open) {
+        throw new ClosedChannelException();
+      }
+      if (file == null) {
+        throw new NoSuchFileException("No such object");
+      }
+      int count = file.read(dst, position);
+      if (count > 0) {
+        position += count;
+      }
+      return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() {
+      open = false;
+      if (file != null) {
+        try {
+          file.close();
+        } catch (IOException e) {
+          // Nothing was written, so there is nothing to lose
+        }
+      }
+    }
+  }
+}
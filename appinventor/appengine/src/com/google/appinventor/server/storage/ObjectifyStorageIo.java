@@ -12,6 +12,10 @@ import com.google.appengine.api.appidentity.AppIdentityServiceFailureException;
 import com.google.appengine.api.blobstore.BlobKey;
 import com.google.appengine.api.blobstore.BlobstoreInputStream;
 import com.google.appengine.api.blobstore.BlobstoreServiceFactory;
+import com.google.appengine.api.datastore.Cursor;
+import com.google.appengine.api.datastore.DatastoreFailureException;
+import com.google.appengine.api.datastore.DatastoreTimeoutException;
+import com.google.appengine.api.datastore.QueryResultIterator;
 import com.google.appengine.api.memcache.ErrorHandlers;
 import com.google.appengine.api.memcache.MemcacheService;
 import com.google.appengine.api.memcache.MemcacheServiceFactory;
@@ -20,7 +24,6 @@ import com.google.appengine.api.memcache.MemcacheService.SetPolicy;
 import com.google.appengine.api.taskqueue.Queue;
 import com.google.appengine.api.taskqueue.QueueFactory;
 import com.google.appengine.api.taskqueue.TaskOptions;
-import com.google.apphosting.api.ApiProxy;
 import com.google.appinventor.server.CrashReport;
 import com.google.appinventor.server.FileExporter;
 import com.google.appinventor.server.GalleryExtensionException;
@@ -29,6 +32,7 @@ import com.google.appinventor.server.flags.Flag;
 import com.google.appinventor.server.storage.StoredData.AllowedIosExtensions;
 import com.google.appinventor.server.storage.StoredData.AllowedTutorialUrls;
 import com.google.appinventor.server.storage.StoredData.Backpack;
+import com.google.appinventor.server.storage.StoredData.BlobData;
 import com.google.appinventor.server.storage.StoredData.CorruptionRecord;
 import com.google.appinventor.server.storage.StoredData.FeedbackData;
 import com.google.appinventor.server.storage.StoredData.FileData;
@@ -63,7 +67,12 @@ import com.google.appinventor.shared.storage.StorageUtil;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Preconditions;
 import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Lists;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
 import com.google.common.io.ByteSource;
 import com.google.common.io.ByteStreams;
 
@@ -76,33 +85,47 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 
 // GCS imports
+import com.google.appengine.tools.cloudstorage.GcsFileMetadata;
 import com.google.appengine.tools.cloudstorage.GcsFileOptions;
 import com.google.appengine.tools.cloudstorage.GcsFilename;
 import com.google.appengine.tools.cloudstorage.GcsInputChannel;
 import com.google.appengine.tools.cloudstorage.GcsOutputChannel;
 import com.google.appengine.tools.cloudstorage.GcsService;
 import com.google.appengine.tools.cloudstorage.GcsServiceFactory;
+import com.google.appengine.tools.cloudstorage.ListItem;
+import com.google.appengine.tools.cloudstorage.ListOptions;
+import com.google.appengine.tools.cloudstorage.ListResult;
 import com.google.appengine.tools.cloudstorage.RetryParams;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.util.Arrays;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.ConcurrentModificationException;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.NoSuchElementException;
+import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.annotation.Nullable;
 
@@ -127,8 +150,32 @@ public class ObjectifyStorageIo implements StorageIo {
   private static final long SPLASHDATA_ID = 1;
   private static final long ALLOWED_IOS_EXTENSIONS_ID = 1;
 
-  // TODO(user): need a way to modify this. Also, what is really a good value?
-  private static final int MAX_JOB_RETRIES = 10;
+  // Retry policy for runJobWithRetries. Retries back off exponentially
+  // (with full jitter) from the initial delay up to the maximum delay so
+  // that contending requests on a hot entity group (e.g. UserData during
+  // rapid saves) spread out instead of colliding again immediately.
+  private static final int MAX_JOB_RETRIES = Flag.createFlag("storage.retry.max", 10).get();
+  private static final int RETRY_INITIAL_DELAY_MS =
+      Flag.createFlag("storage.retry.initialdelay.ms", 20).get();
+  private static final int RETRY_MAX_DELAY_MS =
+      Flag.createFlag("storage.retry.maxdelay.ms", 1000).get();
+
+  // If this many jobs in a row fail because the datastore is unavailable
+  // we stop sending it work for the cool down period. Zero disables this.
+  // Jobs that run out of retries because of contention don't count, that is
+  // a problem with one entity group rather than with the datastore.
+  private static final CircuitBreaker DATASTORE_BREAKER = new CircuitBreaker(
+      Flag.createFlag("storage.breaker.threshold", 20).get(),
+      Flag.createFlag("storage.breaker.cooldown.ms", 5000).get());
+
+  // How often runJobWithRetries logs the job counters (see JobStats). Zero
+  // turns the log off.
+  private static final long JOB_STATS_LOG_INTERVAL =
+      Flag.createFlag("storage.jobstats.logminutes", 60).get() * 60 * 1000L;
+
+  // Size of the ranged reads made by streams returned from openRawFile.
+  private static final int STREAM_BLOCK_SIZE =
+      Flag.createFlag("storage.stream.blocksize", 64 * 1024).get();
 
   private final MemcacheService memcache = MemcacheServiceFactory.getMemcacheService();
 
@@ -138,6 +185,61 @@ public class ObjectifyStorageIo implements StorageIo {
   private static final String APK_BUCKET_NAME;
 
   private static final long TWENTYFOURHOURS = 24*3600*1000; // 24 hours in milliseconds
+  // Size of the buffer used to copy streamed files into GCS
+  private static final int STREAM_BUFFER_SIZE = 256 * 1024;
+
+  // Shared blobs (see BlobData) are stored under this prefix in the project bucket
+  private static final String BLOB_PREFIX = "blobs/";
+
+  // How long a blob that is no longer used is kept before cleanupBlobs deletes it
+  private static final long BLOB_GRACE_PERIOD =
+      Flag.createFlag("storage.blob.gracehours", 24).get() * 3600 * 1000L;
+
+  // How often a blob's lastReferenced is brought up to date. In between, blobs
+  // are handed out without writing to them, see referenceBlob.
+  private static final long BLOB_TOUCH_INTERVAL =
+      Flag.createFlag("storage.blob.touchminutes", 60).get() * 60 * 1000L;
+
+  // How long a temporary file is kept before cleanupTempFiles deletes it, and
+  // how often, in seconds, cleanupTempFiles looks for such files
+  private static final long TEMP_FILE_MAX_AGE =
+      Flag.createFlag("storage.tempfile.maxagehours", 24).get() * 3600 * 1000L;
+  private static final int TEMP_FILE_CLEANUP_INTERVAL = 600;
+
+  // How many expired nonces, password reset records or temporary files one
+  // call of cleanupNonces, cleanuppwdata or cleanupTempFiles deletes at most
+  private static final int CLEANUP_BATCH_SIZE =
+      Flag.createFlag("storage.cleanup.batchsize", 100).get();
+
+  /*
+   * Progress of a pass of cleanupExpired over the expired entities of a kind,
+   * kept in memcache between calls.
+   */
+  private static final class CleanupPass implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    final long cutoff;          // Entities older than this are deleted
+    String cursor;              // Where the next batch starts, null at first
+    int deleted;
+    int batches;
+
+    CleanupPass(long cutoff) {
+      this.cutoff = cutoff;
+    }
+  }
+
+  // Recently used blob content, keyed by hash. The content of a blob never
+  // changes, so entries never go stale. This lets popular extensions and
+  // media be exported and copied without reading them from GCS each time.
+  private final Cache<String, byte[]> blobCache = CacheBuilder.newBuilder()
+      .maximumWeight(Flag.createFlag("storage.blobcache.mb", 32).get() * 1024L * 1024L)
+      .weigher(new Weigher<String, byte[]>() {
+        @Override
+        public int weigh(String hash, byte[] content) {
+          return content.length;
+        }
+      })
+      .build();
 
   private static final boolean DEBUG = Flag.createFlag("appinventor.debugging", false).get();
 
@@ -181,6 +283,14 @@ public class ObjectifyStorageIo implements StorageIo {
     public IOException getIOException() {
       return exception;
     }
+    /*
+     * The number of times this job may be retried. Jobs that are cheap to
+     * lose (the work will simply be redone on the next request) can use a
+     * smaller budget to reduce contention.
+     */
+    public int getMaxRetries() {
+      return MAX_JOB_RETRIES;
+    }
   }
 
   // Create a final object of this class to hold a modifiable result value that
@@ -195,6 +305,7 @@ public class ObjectifyStorageIo implements StorageIo {
     ObjectifyService.register(ProjectData.class);
     ObjectifyService.register(UserProjectData.class);
     ObjectifyService.register(FileData.class);
+    ObjectifyService.register(BlobData.class);
     ObjectifyService.register(UserFileData.class);
     ObjectifyService.register(MotdData.class);
     ObjectifyService.register(RendezvousData.class);
@@ -238,6 +349,21 @@ public class ObjectifyStorageIo implements StorageIo {
   }
 
   ObjectifyStorageIo() {
+    this(createGcsService());
+  }
+
+  /*
+   * Creates a StorageIo that keeps file contents in the given service
+   * rather than in Google Cloud Storage, see LocalGcsService.
+   */
+  ObjectifyStorageIo(GcsService gcsService) {
+    this.gcsService = gcsService;
+    memcache.setErrorHandler(ErrorHandlers.getConsistentLogAndContinue(Level.INFO));
+    initMotd();
+    initAllowedTutorialUrls();
+  }
+
+  private static GcsService createGcsService() {
     RetryParams retryParams = new RetryParams.Builder().initialRetryDelayMillis(100)
       .retryMaxAttempts(10)
       .totalRetryPeriodMillis(10000).build();
@@ -249,10 +375,7 @@ public class ObjectifyStorageIo implements StorageIo {
       LOG.log(Level.INFO, "RetryParams: getRetryMinAttempts() = " + retryParams.getRetryMinAttempts());
       LOG.log(Level.INFO, "RetryParams: getTotalRetryPeriodMillis() = " + retryParams.getTotalRetryPeriodMillis());
     }
-    gcsService = GcsServiceFactory.createGcsService(retryParams);
-    memcache.setErrorHandler(ErrorHandlers.getConsistentLogAndContinue(Level.INFO));
-    initMotd();
-    initAllowedTutorialUrls();
+    return GcsServiceFactory.createGcsService(retryParams);
   }
 
   @Override
@@ -489,6 +612,13 @@ public class ObjectifyStorageIo implements StorageIo {
             datastore.put(userData);
           }
         }
+
+        // Settings are stored again on the next change in the client, so
+        // don't keep fighting over the UserData entity group.
+        @Override
+        public int getMaxRetries() {
+          return 3;
+        }
       }, false);
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
@@ -498,9 +628,76 @@ public class ObjectifyStorageIo implements StorageIo {
   @Override
   public long createProject(final String userId, final Project project,
       final String projectSettings) {
+    return createProject(userId, project, projectSettings,
+        Collections.<String, BlobData>emptyMap());
+  }
+
+  @Override
+  public long createProject(String userId, Project project, String projectSettings,
+      long sourceProjectId, Map<String, String> copiedFiles) {
+    validateGCS();
+    Map<String, FileData> fileData = getOwnedFileData(userId, sourceProjectId,
+        new ArrayList<String>(copiedFiles.keySet()));
+    // Copies of files in shared blobs refer to the same blobs, so their
+    // content isn't read. Only the other files are.
+    Set<String> hashes = new HashSet<String>();
+    for (Map.Entry<String, FileData> entry : fileData.entrySet()) {
+      if (entry.getValue().blobHash != null && useBlobForFile(copiedFiles.get(entry.getKey()))) {
+        hashes.add(entry.getValue().blobHash);
+      }
+    }
+    Map<String, BlobData> blobs;
+    try {
+      blobs = referenceBlobs(hashes);
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, sourceProjectId), e);
+    }
+    Map<String, BlobData> sharedBlobs = new LinkedHashMap<String, BlobData>();
+    List<FileData> unshared = new ArrayList<FileData>();
+    for (Map.Entry<String, FileData> entry : fileData.entrySet()) {
+      FileData fd = entry.getValue();
+      BlobData blob = fd.blobHash == null ? null : blobs.get(fd.blobHash);
+      if (blob != null && useBlobForFile(copiedFiles.get(entry.getKey()))) {
+        sharedBlobs.put(copiedFiles.get(entry.getKey()), blob);
+      } else {
+        unshared.add(fd);
+      }
+    }
+    List<byte[]> contents = readFileContents(userId, sourceProjectId, unshared,
+        "createproject");
+    for (int i = 0; i < unshared.size(); i++) {
+      project.addRawFile(new RawFile(copiedFiles.get(unshared.get(i).fileName), contents.get(i)));
+    }
+    return createProject(userId, project, projectSettings, sharedBlobs);
+  }
+
+  /*
+   * Creates a project from the given files, plus a file referring to each of
+   * the given shared blobs, keyed by file name.
+   */
+  private long createProject(final String userId, final Project project,
+      final String projectSettings, final Map<String, BlobData> sharedBlobs) {
     final Result<Long> projectId = new Result<Long>();
     final List<FileData> addedFiles = new ArrayList<FileData>();
 
+    // Assets go in shared blobs. These are acquired before the jobs, so that
+    // retrying a job doesn't hash and store them again. Assets that are
+    // already stored, for example by another project that imported the same
+    // extension, aren't written to GCS again.
+    Map<String, byte[]> blobContents = new LinkedHashMap<String, byte[]>();
+    for (RawFile file : project.getRawSourceFiles()) {
+      if (useBlobForFile(file.getFileName())) {
+        blobContents.put(file.getFileName(), file.getContent());
+      }
+    }
+    final Map<String, BlobData> blobs = new HashMap<String, BlobData>(sharedBlobs);
+    try {
+      blobs.putAll(acquireBlobs(blobContents));
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null, collectUserErrorInfo(userId), e);
+    }
+
     try {
       // first job is on the project entity, creating the ProjectData object
       // and the associated files.
@@ -528,23 +725,32 @@ public class ObjectifyStorageIo implements StorageIo {
           // written in this job, reading the assigned id from pd should work.
 
           Key<ProjectData> projectKey = projectKey(projectId.t);
+          // GCS content is collected here and written concurrently below
+          List<GcsFilename> gcsTargets = new ArrayList<GcsFilename>();
+          List<byte[]> gcsContents = new ArrayList<byte[]>();
           for (TextFile file : project.getSourceFiles()) {
             try {
               addedFiles.add(createRawFile(projectKey, FileData.RoleEnum.SOURCE, userId,
-                  file.getFileName(), file.getContent().getBytes(DEFAULT_ENCODING)));
-            } catch (IOException e) { // GCS throws this
+                  file.getFileName(), file.getContent().getBytes(DEFAULT_ENCODING),
+                  blobs, gcsTargets, gcsContents));
+            } catch (UnsupportedEncodingException e) {
               throw CrashReport.createAndLogError(LOG, null,
                 collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
             }
           }
           for (RawFile file : project.getRawSourceFiles()) {
-            try {
-              addedFiles.add(createRawFile(projectKey, FileData.RoleEnum.SOURCE, userId, file.getFileName(),
-                  file.getContent()));
-            } catch (IOException e) {
-              throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId.t, file.getFileName()), e);
-            }
+            addedFiles.add(createRawFile(projectKey, FileData.RoleEnum.SOURCE, userId, file.getFileName(),
+                file.getContent(), blobs, gcsTargets, gcsContents));
+          }
+          for (String fileName : sharedBlobs.keySet()) {
+            addedFiles.add(createRawFile(projectKey, FileData.RoleEnum.SOURCE, userId, fileName,
+                null, blobs, gcsTargets, gcsContents));
+          }
+          try {
+            writeGcsFiles(gcsTargets, gcsContents);
+          } catch (IOException e) { // GCS throws this
+            throw CrashReport.createAndLogError(LOG, null,
+              collectUserProjectErrorInfo(userId, projectId.t), e);
           }
           datastore.put(addedFiles);  // batch put
         }
@@ -577,13 +783,15 @@ public class ObjectifyStorageIo implements StorageIo {
       }, true);
     } catch (ObjectifyException e) {
       for (FileData addedFile : addedFiles) {
-        if (isTrue(addedFile.isGCS)) {  // Do something
+        // Shared blobs are left to cleanupBlobs
+        if (isTrue(addedFile.isGCS) && addedFile.blobHash == null) {
           if (addedFile.gcsName != null) {
             try {
               gcsService.delete(new GcsFilename(getGcsBucketToUse(addedFile.role), addedFile.gcsName));
             } catch (IOException ee) {
               LOG.log(Level.WARNING, "Unable to delete " + addedFile.gcsName +
                 " from GCS while aborting project creation.", ee);
+            }
           }
         }
       }
@@ -591,7 +799,6 @@ public class ObjectifyStorageIo implements StorageIo {
       addedFiles.clear();
       throw CrashReport.createAndLogError(LOG, null,
           collectUserProjectErrorInfo(userId, projectId.t), e);
-      }
     }
     return projectId.t;
   }
@@ -599,23 +806,31 @@ public class ObjectifyStorageIo implements StorageIo {
   /*
    *  Creates and returns a new FileData object with the specified fields.
    *  Does not check for the existence of the object and does not update
-   *  the database.
+   *  the database. If blobs has an entry for the file, the file refers to
+   *  that blob and content may be null. Otherwise if the content belongs in
+   *  GCS, the GCS file name and
+   *  content are appended to gcsTargets and gcsContents for the caller to
+   *  write (see writeGcsFiles).
    */
   private FileData createRawFile(Key<ProjectData> projectKey, FileData.RoleEnum role,
-    String userId, String fileName, byte[] content) throws ObjectifyException, IOException {
+    String userId, String fileName, byte[] content, Map<String, BlobData> blobs,
+    List<GcsFilename> gcsTargets, List<byte[]> gcsContents) {
     validateGCS();
     FileData file = new FileData();
     file.fileName = fileName;
     file.projectKey = projectKey;
     file.role = role;
     file.userId = userId;
-    if (useGCSforFile(fileName, content.length)) {
+    BlobData blob = blobs.get(fileName);
+    if (blob != null) {
+      file.isGCS = true;
+      file.gcsName = blob.gcsName;
+      file.blobHash = blob.id;
+    } else if (useGCSforFile(fileName, content.length)) {
       file.isGCS = true;
       file.gcsName = makeGCSfileName(fileName, projectKey.getId());
-      GcsOutputChannel outputChannel =
-        gcsService.createOrReplace(new GcsFilename(getGcsBucketToUse(file.role), file.gcsName), GcsFileOptions.getDefaultInstance());
-      outputChannel.write(ByteBuffer.wrap(content));
-      outputChannel.close();
+      gcsTargets.add(new GcsFilename(getGcsBucketToUse(file.role), file.gcsName));
+      gcsContents.add(content);
     } else {
       file.content = content;
     }
@@ -648,7 +863,9 @@ public class ObjectifyStorageIo implements StorageIo {
           Query<FileData> fdq = datastore.query(FileData.class).ancestor(projectKey);
           for (FileData fd: fdq) {
             if (isTrue(fd.isGCS)) {
-              gcsPaths.add(fd.gcsName);
+              if (fd.blobHash == null) {  // Shared blobs are left to cleanupBlobs
+                gcsPaths.add(fd.gcsName);
+              }
             } else if (fd.isBlob) {
               blobKeys.add(fd.blobKey);
             }
@@ -1234,8 +1451,9 @@ public class ObjectifyStorageIo implements StorageIo {
       }
     }
     datastore.put(addedFiles); // batch put
-    if (changeModDate) {
-      updateProjectModDate(datastore, projectId);
+    boolean filesChanged = role == FileData.RoleEnum.SOURCE && !addedFiles.isEmpty();
+    if (changeModDate || filesChanged) {
+      updateProjectModDate(datastore, projectId, filesChanged);
     }
   }
 
@@ -1307,8 +1525,9 @@ public class ObjectifyStorageIo implements StorageIo {
       }
     }
     datastore.delete(filesToRemove);  // batch delete
-    if (changeModDate) {
-      updateProjectModDate(datastore, projectId);
+    boolean filesChanged = role == FileData.RoleEnum.SOURCE && !filesToRemove.isEmpty();
+    if (changeModDate || filesChanged) {
+      updateProjectModDate(datastore, projectId, filesChanged);
     }
   }
 
@@ -1380,13 +1599,22 @@ public class ObjectifyStorageIo implements StorageIo {
     }
   }
 
-  private long updateProjectModDate(Objectify datastore, long projectId) {
+  /*
+   * Updates the ProjectData dateModified. If filesChanged is true, source
+   * files were added to or removed from the project, and the date is always
+   * moved forward: data derived from the file list, such as the project tree,
+   * is cached against the modification date.
+   */
+  private long updateProjectModDate(Objectify datastore, long projectId, boolean filesChanged) {
     long modDate = System.currentTimeMillis();
     ProjectData pd = datastore.find(projectKey(projectId));
     if (pd != null) {
-      // Only update the ProjectData dateModified if it is more then a minute
-      // in the future. Do this to avoid unnecessary datastore puts.
-      if (modDate > (pd.dateModified + 1000*60)) {
+      if (filesChanged) {
+        modDate = Math.max(modDate, pd.dateModified + 1);
+      }
+      // Otherwise only update the ProjectData dateModified if it is more then
+      // a minute in the future. Do this to avoid unnecessary datastore puts.
+      if (filesChanged || modDate > (pd.dateModified + 1000*60)) {
         pd.dateModified = modDate;
         datastore.put(pd);
       } else {
@@ -1411,6 +1639,119 @@ public class ObjectifyStorageIo implements StorageIo {
     }
   }
 
+  /*
+   * Files that always live in GCS (build output and assets) are copied from
+   * the stream into a GCS output channel through a fixed size buffer. Other
+   * files are small and are read into memory and saved as usual.
+   *
+   * The copy can't be repeated if a datastore job is retried, so it happens
+   * between two jobs: one that checks the user may write the file, and one
+   * that records where the content is once the copy has finished.
+   * createOrReplace only replaces the old object when the channel is closed,
+   * so a failed copy leaves the previous content in place.
+   *
+   * Assets are hashed as they are copied into a new blob, which is dropped in
+   * favor of the existing one if the content turns out to be stored already.
+   */
+  @Override
+  public long uploadRawFileForce(final long projectId, final String fileName,
+      final String userId, InputStream content) throws IOException {
+    if (!useGCSforFile(fileName, 0)) {
+      return uploadRawFileForce(projectId, fileName, userId, ByteStreams.toByteArray(content));
+    }
+    validateGCS();
+    final Result<FileData.RoleEnum> role = new Result<FileData.RoleEnum>();
+    final Result<Long> modTime = new Result<Long>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          FileData fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
+          if (fd == null) {
+            // As in uploadRawFile, only missing .png files may be created on the fly
+            Preconditions.checkState(fileName.endsWith(".png"));
+            role.t = FileData.RoleEnum.SOURCE;
+          } else {
+            checkFileOwner(fd, userId, projectId);
+            role.t = fd.role;
+          }
+        }
+      }, false);
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+
+    final boolean useBlob = useBlobForFile(fileName);
+    final String gcsName = useBlob ? BLOB_PREFIX + UUID.randomUUID()
+        : makeGCSfileName(fileName, projectId);
+    HashingInputStream hashingContent = null;
+    if (useBlob) {
+      hashingContent = new HashingInputStream(Hashing.sha256(), content);
+      content = hashingContent;
+    }
+    long size = 0;
+    GcsOutputChannel outputChannel = gcsService.createOrReplace(
+        new GcsFilename(getGcsBucketToUse(role.t), gcsName), GcsFileOptions.getDefaultInstance());
+    try {
+      byte[] buffer = new byte[STREAM_BUFFER_SIZE];
+      int count;
+      while ((count = content.read(buffer)) != -1) {
+        outputChannel.write(ByteBuffer.wrap(buffer, 0, count));
+        size += count;
+      }
+    } finally {
+      outputChannel.close();
+    }
+    final BlobData blob = useBlob
+        ? registerBlob(hashingContent.hash().toString(), gcsName, size) : null;
+
+    final Result<String> oldGcsName = new Result<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          Key<FileData> key = projectFileKey(projectKey(projectId), fileName);
+          FileData fd = datastore.find(key);
+          boolean created = fd == null;
+          if (created) {
+            fd = createProjectFile(datastore, projectKey(projectId), FileData.RoleEnum.SOURCE,
+                fileName);
+          }
+          checkFileOwner(fd, userId, projectId);
+          oldGcsName.t = blob != null && fd.blobHash == null && isTrue(fd.isGCS)
+              ? fd.gcsName : null;
+          fd.isGCS = true;
+          fd.gcsName = blob != null ? blob.gcsName : gcsName;
+          fd.blobHash = blob != null ? blob.id : null;
+          // If the content was previously stored elsewhere, clear it out.
+          fd.content = null;
+          fd.isBlob = false;
+          fd.blobstorePath = null;
+          if (fd.userId == null || fd.userId.equals("")) {
+            fd.userId = userId;
+          }
+          datastore.put(fd);
+          memcache.put(key.getString(), fd); // Store the updated data in memcache
+          modTime.t = updateProjectModDate(datastore, projectId, created);
+        }
+      }, false);
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    deleteReplacedGcsFile(oldGcsName.t);
+    return modTime.t;
+  }
+
+  private void checkFileOwner(FileData fd, String userId, long projectId) {
+    if (fd.userId != null && !fd.userId.equals("") && !fd.userId.equals(userId)) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
+    }
+  }
+
   @Override
   public long uploadRawFile(final long projectId, final String fileName, final String userId,
       final boolean force, final byte[] content) throws BlocksTruncatedException {
@@ -1418,15 +1759,31 @@ public class ObjectifyStorageIo implements StorageIo {
     final Result<Long> modTime = new Result<Long>();
     final boolean useGCS = useGCSforFile(fileName, content.length);
 
-    final boolean considerBackup = (fileName.contains("src/") &&
-      (fileName.endsWith(".bky") || fileName.endsWith(".scm")));
+    final boolean considerBackup = isBackupCandidate(fileName);
+
+    // Shared blobs are acquired outside of the job, see createProject
+    final BlobData blob;
+    if (useBlobForFile(fileName)) {
+      try {
+        blob = acquireBlob(content);
+      } catch (IOException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fileName), e);
+      }
+    } else {
+      blob = null;
+    }
+    final Result<String> oldGcsName = new Result<String>();
 
     try {
       runJobWithRetries(new JobRetryHelper() {
         FileData fd;
+        boolean created;
 
         @Override
         public void run(Objectify datastore) throws ObjectifyException {
+          oldGcsName.t = null;
+          created = false;
           Key<FileData> key = projectFileKey(projectKey(projectId), fileName);
           fd = (FileData) memcache.get(key.getString());
           if (fd == null) {
@@ -1442,6 +1799,7 @@ public class ObjectifyStorageIo implements StorageIo {
           if (fd == null && (fileName.endsWith(".yail") || (fileName.endsWith(".png")))){
             fd = createProjectFile(datastore, projectKey(projectId), FileData.RoleEnum.SOURCE, fileName);
             fd.userId = userId;
+            created = true;
           }
 
           Preconditions.checkState(fd != null);
@@ -1460,9 +1818,20 @@ public class ObjectifyStorageIo implements StorageIo {
             }
           }
 
-          if (useGCS) {
+          if (blob != null) {
+            if (isTrue(fd.isGCS) && fd.blobHash == null) {
+              oldGcsName.t = fd.gcsName;  // deleted once the file refers to the blob
+            }
+            fd.isGCS = true;
+            fd.gcsName = blob.gcsName;
+            fd.blobHash = blob.id;
+            fd.content = null;
+            fd.isBlob = false;
+            fd.blobstorePath = null;
+          } else if (useGCS) {
             fd.isGCS = true;
             fd.gcsName = makeGCSfileName(fileName, projectId);
+            fd.blobHash = null;
             try {
               GcsOutputChannel outputChannel =
                   gcsService.createOrReplace(new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName), GcsFileOptions.getDefaultInstance());
@@ -1477,16 +1846,17 @@ public class ObjectifyStorageIo implements StorageIo {
             fd.isBlob = false;  // in case we are converting from a blob
             fd.blobstorePath = null;
           } else {
-            if (isTrue(fd.isGCS)) {     // Was a GCS file, must have gotten smaller
-              try {             // and is now stored in the data store
+            if (isTrue(fd.isGCS) && fd.blobHash == null) { // Was a GCS file, must have gotten
+              try {             // smaller and is now stored in the data store
                 gcsService.delete(new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName));
               } catch (IOException e) {
                 throw CrashReport.createAndLogError(LOG, null,
                   collectProjectErrorInfo(userId, projectId, fileName), e);
               }
-              fd.isGCS = false;
-              fd.gcsName = null;
             }
+            fd.isGCS = false;
+            fd.gcsName = null;
+            fd.blobHash = null;
             // Note, Don't have to do anything if the file was in the
             // Blobstore and shrank because the code above (3 lines
             // into the function) already handles removing the old
@@ -1516,7 +1886,7 @@ public class ObjectifyStorageIo implements StorageIo {
           }
           datastore.put(fd);
           memcache.put(key.getString(), fd); // Store the updated data in memcache
-          modTime.t = updateProjectModDate(datastore, projectId);
+          modTime.t = updateProjectModDate(datastore, projectId, created);
         }
       }, false); // Use transaction for blobstore, otherwise we don't need one
                  // and without one the caching code comes into play.
@@ -1528,99 +1898,532 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
+    deleteReplacedGcsFile(oldGcsName.t);
     return modTime.t;
   }
 
-  protected void deleteBlobstoreFile(String blobKeyString) {
-    // It would be nice if there were an AppEngineFile.delete() method but alas there isn't, so we
-    // have to get the BlobKey and delete via the BlobstoreService.
-    BlobKey blobKey = null;
-    try {
-      blobKey = new BlobKey(blobKeyString);
-      BlobstoreServiceFactory.getBlobstoreService().delete(blobKey);
-    } catch (RuntimeException e) {
-      // Log blob delete errors but don't make them fatal
-      CrashReport.createAndLogError(LOG, null, "Error deleting blob with blobKey " +
-        blobKey, e);
+  @Override
+  public long uploadFilesForce(final long projectId, final String userId,
+      final Map<String, String> contents, final String encoding) {
+    Map<String, byte[]> rawContents = new LinkedHashMap<String, byte[]>();
+    for (Map.Entry<String, String> entry : contents.entrySet()) {
+      try {
+        rawContents.put(entry.getKey(), entry.getValue().getBytes(encoding));
+      } catch (UnsupportedEncodingException e) {
+        throw CrashReport.createAndLogError(LOG, null, "Unsupported file content encoding,"
+            + collectProjectErrorInfo(null, projectId, entry.getKey()), e);
+      }
     }
+    return uploadRawFilesForce(projectId, userId, rawContents);
   }
 
-  @VisibleForTesting
-  boolean useGCSforFile(String fileName, int length) {
-    boolean shouldUse =  fileName.contains("assets/")
-      || fileName.endsWith(".apk") || fileName.endsWith(".aab");
-    if (shouldUse)
-      return true;              // Use GCS for package output and assets
-    boolean mayUse = (fileName.contains("src/") && fileName.endsWith(".blk")) // AI1 Blocks Files
-      || (fileName.contains("src/") && fileName.endsWith(".bky")); // Blockly files
-    if (mayUse && length > 50000) // Only use GCS for larger blocks files
-      return true;
-    return false;
-  }
-
-  // Make a GCS file name
-  String makeGCSfileName(String fileName, long projectId) {
-    return (projectId + "/" + fileName);
-  }
-
+  /*
+   * Batch version of uploadRawFileForce. Rather than running one job per
+   * file (each with its own datastore get, put and modification date update)
+   * we fetch all of the FileData entities with one batch get, write any GCS
+   * content in parallel, store all of the entities with one batch put and
+   * update the project modification date once.
+   *
+   * All of the FileData entities live in the project's entity group, so the
+   * whole batch can be done in a single transaction. As in createProject we
+   * only use the transaction on the production server because the dev server
+   * simulates GCS with its own datastore entities.
+   *
+   * GCS writes can't be rolled back and shouldn't be repeated when the job
+   * is retried, so, as in the streaming uploadRawFileForce, the content is
+   * written once before the job and GCS files made obsolete by the job are
+   * only deleted after it has committed. The content goes to fresh GCS
+   * objects that the job swaps in, so the objects the stored FileData refer
+   * to are left alone until then. If the job fails the fresh objects are
+   * deleted instead.
+   */
   @Override
-  public long deleteFile(final String userId, final long projectId, final String fileName) {
+  public long uploadRawFilesForce(final long projectId, final String userId,
+      final Map<String, byte[]> contents) {
     validateGCS();
+    if (contents.isEmpty()) {
+      return getProjectDateModified(userId, projectId);
+    }
     final Result<Long> modTime = new Result<Long>();
-    final Result<String> oldBlobKeyString = new Result<String>();
-    final Result<String> oldgcsName = new Result<String>();
+    final Result<Map<String, FileData>> updated = new Result<Map<String, FileData>>();
+    final Result<List<String>> oldGcsNames = new Result<List<String>>();
+
+    // Shared blobs are acquired outside of the job, see createProject
+    Map<String, byte[]> blobContents = new LinkedHashMap<String, byte[]>();
+    for (Map.Entry<String, byte[]> entry : contents.entrySet()) {
+      if (useBlobForFile(entry.getKey())) {
+        blobContents.put(entry.getKey(), entry.getValue());
+      }
+    }
+    final Map<String, BlobData> blobs;
+    try {
+      blobs = acquireBlobs(blobContents);
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+
+    final Key<ProjectData> projectKey = projectKey(projectId);
+    final List<Key<FileData>> keys = new ArrayList<Key<FileData>>(contents.size());
+    for (String fileName : contents.keySet()) {
+      keys.add(projectFileKey(projectKey, fileName));
+    }
+    final Result<List<GcsFilename>> gcsObsolete = new Result<List<GcsFilename>>();
+    final Set<String> backedUp = new HashSet<String>();
+    final Map<String, GcsFilename> written = new HashMap<String, GcsFilename>();
+    try {
+      writeGcsFiles(projectId, userId, keys, contents, blobs, backedUp, written);
+    } catch (IOException e) {
+      deleteGcsFiles(written.values());
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    boolean committed = false;
     try {
       runJobWithRetries(new JobRetryHelper() {
         @Override
-        public void run(Objectify datastore) {
-          Key<FileData> fileKey = projectFileKey(projectKey(projectId), fileName);
-          memcache.delete(fileKey.getString());
-          FileData fileData = datastore.find(fileKey);
-          if (fileData != null) {
-            if (fileData.userId != null && !fileData.userId.equals("")) {
-              if (!fileData.userId.equals(userId)) {
+        public void run(Objectify datastore) throws ObjectifyException {
+          Map<Key<FileData>, FileData> existing = datastore.get(keys); // batch get
+          Map<String, FileData> files = new LinkedHashMap<String, FileData>();
+          List<GcsFilename> obsolete = new ArrayList<GcsFilename>();
+          List<String> replacedGcsNames = new ArrayList<String>();
+          long now = System.currentTimeMillis();
+          boolean created = false;
+          for (Key<FileData> key : keys) {
+            String fileName = key.getName();
+            byte[] content = contents.get(fileName);
+            FileData fd = existing.get(key);
+
+            // See uploadRawFile, missing .yail files are created on the fly
+            if (fd == null && (fileName.endsWith(".yail") || (fileName.endsWith(".png")))) {
+              fd = createProjectFile(datastore, projectKey, FileData.RoleEnum.SOURCE, fileName);
+              fd.userId = userId;
+              created = true;
+            }
+
+            Preconditions.checkState(fd != null);
+
+            if (fd.userId != null && !fd.userId.equals("")) {
+              if (!fd.userId.equals(userId)) {
                 throw CrashReport.createAndLogError(LOG, null,
                   collectUserProjectErrorInfo(userId, projectId),
                   new UnauthorizedAccessException(userId, projectId, null));
               }
             }
-            oldBlobKeyString.t = fileData.blobKey;
-            if (isTrue(fileData.isGCS)) {
-              oldgcsName.t = fileData.gcsName;
+
+            BlobData blob = blobs.get(fileName);
+            if (blob != null) {
+              if (isTrue(fd.isGCS) && fd.blobHash == null) {
+                replacedGcsNames.add(fd.gcsName);  // deleted once the file refers to the blob
+              }
+              fd.isGCS = true;
+              fd.gcsName = blob.gcsName;
+              fd.blobHash = blob.id;
+              fd.content = null;
+              fd.isBlob = false;
+              fd.blobstorePath = null;
+            } else if (useGCSforFile(fileName, content.length)) {
+              String gcsName = written.get(fileName).getObjectName();
+              if (isTrue(fd.isGCS) && fd.blobHash == null && fd.gcsName != null
+                  && !fd.gcsName.equals(gcsName)) {
+                obsolete.add(new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName));
+              }
+              fd.isGCS = true;
+              fd.gcsName = gcsName;
+              fd.blobHash = null;
+              fd.content = null;
+              fd.isBlob = false;
+              fd.blobstorePath = null;
+            } else {
+              if (isTrue(fd.isGCS) && fd.blobHash == null) { // Was a GCS file, must have gotten smaller
+                obsolete.add(new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName));
+              }
+              fd.isGCS = false;
+              fd.gcsName = null;
+              fd.blobHash = null;
+              fd.isBlob = false;
+              fd.blobstorePath = null;
+              fd.content = content;
+            }
+            if (backedUp.contains(fileName)) {
+              fd.lastBackup = now;
+            }
+            // Old file not marked with ownership, mark it now
+            if (fd.userId == null || fd.userId.equals("")) {
+              fd.userId = userId;
             }
+            files.put(key.getString(), fd);
           }
-          datastore.delete(fileKey);
-          modTime.t = updateProjectModDate(datastore, projectId);
+          datastore.put(files.values()); // batch put
+          modTime.t = updateProjectModDate(datastore, projectId, created);
+          updated.t = files;
+          gcsObsolete.t = obsolete;
+          oldGcsNames.t = replacedGcsNames;
         }
-      }, true);
+      }, Server.isProductionServer());
+      committed = true;
     } catch (ObjectifyException e) {
       throw CrashReport.createAndLogError(LOG, null,
-          collectProjectErrorInfo(userId, projectId, fileName), e);
+          collectUserProjectErrorInfo(userId, projectId), e);
+    } finally {
+      if (!committed) {
+        deleteGcsFiles(written.values());
+      }
     }
-    if (oldBlobKeyString.t != null) {
-      deleteBlobstoreFile(oldBlobKeyString.t);
+    // Only refresh memcache and delete old content once the job has committed
+    memcache.putAll(updated.t);
+    deleteGcsFiles(gcsObsolete.t);
+    for (String gcsName : oldGcsNames.t) {
+      deleteReplacedGcsFile(gcsName);
     }
-    if (oldgcsName.t != null) {
-      try {
-        gcsService.delete(new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.SOURCE), oldgcsName.t));
-      } catch (IOException e) {
-        // This may get logged if we attempt to delete an APK file. But we can ignore
-        // this case because APK files will be deleted on their own
-        LOG.log(Level.WARNING, "Unable to delete " + oldgcsName + " from GCS.", e);
+    return modTime.t;
+  }
+
+  /*
+   * Writes the GCS content for a batch of files about to be stored by
+   * uploadRawFilesForce: the content of files that belong in GCS, and the
+   * daily backups of source files. The FileData entities are read without a
+   * transaction to find each file's bucket and last backup. The names of the
+   * files that were backed up are added to backedUp, and the fresh GCS object
+   * holding each file's content is added to written.
+   */
+  private void writeGcsFiles(final long projectId, String userId,
+      final List<Key<FileData>> keys, Map<String, byte[]> contents,
+      Map<String, BlobData> blobs, Set<String> backedUp, Map<String, GcsFilename> written)
+      throws IOException {
+    final Result<Map<Key<FileData>, FileData>> existing =
+        new Result<Map<Key<FileData>, FileData>>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          existing.t = datastore.get(keys); // batch get
+        }
+      }, false);
+    } catch (ObjectifyException e) {
+      throw new IOException(e);
+    }
+    List<GcsFilename> gcsTargets = new ArrayList<GcsFilename>();
+    List<byte[]> gcsContents = new ArrayList<byte[]>();
+    long now = System.currentTimeMillis();
+    for (Key<FileData> key : keys) {
+      String fileName = key.getName();
+      byte[] content = contents.get(fileName);
+      FileData fd = existing.t.get(key);
+      if (fd == null) {
+        // See uploadRawFilesForce, only these are created on the fly
+        Preconditions.checkState(fileName.endsWith(".yail") || fileName.endsWith(".png"));
+      } else {
+        checkFileOwner(fd, userId, projectId);
+      }
+      FileData.RoleEnum role = fd == null ? FileData.RoleEnum.SOURCE : fd.role;
+      if (!blobs.containsKey(fileName) && useGCSforFile(fileName, content.length)) {
+        GcsFilename gcsFileName = new GcsFilename(getGcsBucketToUse(role),
+            makeVersionedGCSfileName(fileName, projectId));
+        gcsTargets.add(gcsFileName);
+        gcsContents.add(content);
+        written.put(fileName, gcsFileName);
+      }
+      if (isBackupCandidate(fileName) && (fd == null || fd.lastBackup + TWENTYFOURHOURS < now)) {
+        String gcsName = makeGCSfileName(fileName + "." + formattedTime() + ".backup",
+            projectId);
+        gcsTargets.add(new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.SOURCE), gcsName));
+        gcsContents.add(content);
+        backedUp.add(fileName);
       }
     }
-    return (modTime.t == null) ? 0 : modTime.t;
+    writeGcsFiles(gcsTargets, gcsContents);
   }
 
-  // TODO(user) - just use "UTF-8" (instead of having an encoding argument),
-  // which will never cause UnsupportedEncodingException. (Here and in other
-  // methods with the encoding arg.
-  @Override
-  public String downloadFile(final String userId, final long projectId, final String fileName,
-      final String encoding) {
-    try {
-      return new String(downloadRawFile(userId, projectId, fileName), encoding);
-    } catch (UnsupportedEncodingException e) {
+  /*
+   * Writes each of the given contents to the corresponding GCS object. The
+   * writes are independent of each other so we issue them concurrently.
+   */
+  private void writeGcsFiles(List<GcsFilename> gcsFileNames, List<byte[]> contents)
+      throws IOException {
+    List<Callable<Void>> writes = new ArrayList<Callable<Void>>(gcsFileNames.size());
+    for (int i = 0; i < gcsFileNames.size(); i++) {
+      final GcsFilename gcsFileName = gcsFileNames.get(i);
+      final byte[] content = contents.get(i);
+      writes.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          gcsService.createOrReplace(gcsFileName, GcsFileOptions.getDefaultInstance(),
+              ByteBuffer.wrap(content));
+          return null;
+        }
+      });
+    }
+    ParallelBlobIo.invokeAll(writes);
+  }
+
+  // Source files (blocks and designer) get a daily backup copy in GCS
+  private static boolean isBackupCandidate(String fileName) {
+    return fileName.contains("src/") &&
+      (fileName.endsWith(".bky") || fileName.endsWith(".scm"));
+  }
+
+  // Assets (including extensions) are stored in shared blobs, see BlobData
+  @VisibleForTesting
+  static boolean useBlobForFile(String fileName) {
+    return fileName.startsWith("assets/");
+  }
+
+  /*
+   * Takes a reference to the blob holding content, first storing the content
+   * in a new blob if it isn't stored yet.
+   */
+  private BlobData acquireBlob(byte[] content) throws IOException {
+    String hash = Hashing.sha256().hashBytes(content).toString();
+    BlobData blob = referenceBlob(hash, null, 0);
+    if (blob == null) {
+      String gcsName = BLOB_PREFIX + UUID.randomUUID();
+      gcsService.createOrReplace(new GcsFilename(GCS_BUCKET_NAME, gcsName),
+          GcsFileOptions.getDefaultInstance(), ByteBuffer.wrap(content));
+      blob = registerBlob(hash, gcsName, content.length);
+    }
+    blobCache.put(hash, content);
+    return blob;
+  }
+
+  /*
+   * Acquires the blobs for the given contents concurrently, and returns them
+   * keyed by file name.
+   */
+  private Map<String, BlobData> acquireBlobs(Map<String, byte[]> contents) throws IOException {
+    final Map<String, BlobData> blobs = new ConcurrentHashMap<String, BlobData>();
+    List<Callable<Void>> acquires = new ArrayList<Callable<Void>>(contents.size());
+    for (final Map.Entry<String, byte[]> entry : contents.entrySet()) {
+      acquires.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          blobs.put(entry.getKey(), acquireBlob(entry.getValue()));
+          return null;
+        }
+      });
+    }
+    ParallelBlobIo.invokeAll(acquires);
+    return blobs;
+  }
+
+  /*
+   * Returns the blob for content that has been written to gcsName. If the
+   * same content was stored by someone else in the meantime, their blob is
+   * used and our copy is deleted.
+   */
+  private BlobData registerBlob(String hash, String gcsName, long size) throws IOException {
+    BlobData blob = referenceBlob(hash, gcsName, size);
+    if (!gcsName.equals(blob.gcsName)) {
+      gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, gcsName));
+    }
+    return blob;
+  }
+
+  /*
+   * Returns the blob with the given hash, for a file that is about to refer
+   * to it. If there is no blob that can be used, one is created for the
+   * content in gcsName, or null is returned if gcsName is null.
+   *
+   * The caller must store the FileData that refers to the blob well within
+   * BLOB_GRACE_PERIOD / 2. Until then, the blob's lastReferenced keeps
+   * cleanupBlobs away from it; afterwards, the FileData does.
+   *
+   * Imports of a popular extension all use the same blob, whose entity group
+   * only takes about one write a second. So a blob is only written when its
+   * lastReferenced is more than BLOB_TOUCH_INTERVAL old, and a blob that
+   * can't be written because others are updating it is still used if it is
+   * well clear of the grace period.
+   */
+  private BlobData referenceBlob(final String hash, final String gcsName, final long size)
+      throws IOException {
+    final long now = System.currentTimeMillis();
+    final BlobData current = ObjectifyService.begin().find(BlobData.class, hash);
+    if (current != null && !current.deleting
+        && current.lastReferenced > now - BLOB_TOUCH_INTERVAL) {
+      return current;
+    }
+    final Result<BlobData> result = new Result<BlobData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          result.t = null;
+          BlobData blob = datastore.find(BlobData.class, hash);
+          if (blob == null || blob.deleting) {
+            if (gcsName == null) {
+              return;
+            }
+            // This replaces a blob that cleanupBlobs is deleting, which
+            // then leaves the new entity alone because its gcsName differs.
+            blob = new BlobData();
+            blob.id = hash;
+            blob.gcsName = gcsName;
+            blob.size = size;
+          } else if (blob.lastReferenced > now - BLOB_TOUCH_INTERVAL) {
+            result.t = blob;  // Someone else just brought it up to date
+            return;
+          }
+          blob.lastReferenced = now;
+          datastore.put(blob);
+          result.t = blob;
+        }
+      }, true);
+    } catch (ObjectifyException e) {
+      if (current != null && !current.deleting
+          && current.lastReferenced > now - BLOB_GRACE_PERIOD / 2) {
+        LOG.log(Level.INFO, "Using blob " + hash + " without updating it", e);
+        return current;
+      }
+      throw new IOException(e);
+    }
+    return result.t;
+  }
+
+  /*
+   * Returns the blobs with the given hashes that can be used, keyed by hash,
+   * for files that are about to refer to them (see referenceBlob). Blobs that
+   * are up to date are fetched with one batch get.
+   */
+  private Map<String, BlobData> referenceBlobs(Collection<String> hashes) throws IOException {
+    Map<String, BlobData> result = new HashMap<String, BlobData>();
+    if (hashes.isEmpty()) {
+      return result;
+    }
+    long now = System.currentTimeMillis();
+    Map<String, BlobData> current = ObjectifyService.begin().get(BlobData.class, hashes);
+    for (String hash : hashes) {
+      BlobData blob = current.get(hash);
+      if (blob == null || blob.deleting || blob.lastReferenced <= now - BLOB_TOUCH_INTERVAL) {
+        blob = referenceBlob(hash, null, 0);
+      }
+      if (blob != null) {
+        result.put(hash, blob);
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Deletes the GCS file that held the old content of a file that now refers
+   * to a shared blob. Shared blobs themselves are left to cleanupBlobs.
+   */
+  private void deleteReplacedGcsFile(@Nullable String oldGcsName) {
+    if (oldGcsName != null) {
+      try {
+        gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, oldGcsName));
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to delete " + oldGcsName + " from GCS.", e);
+      }
+    }
+  }
+
+  protected void deleteBlobstoreFile(String blobKeyString) {
+    // It would be nice if there were an AppEngineFile.delete() method but alas there isn't, so we
+    // have to get the BlobKey and delete via the BlobstoreService.
+    BlobKey blobKey = null;
+    try {
+      blobKey = new BlobKey(blobKeyString);
+      BlobstoreServiceFactory.getBlobstoreService().delete(blobKey);
+    } catch (RuntimeException e) {
+      // Log blob delete errors but don't make them fatal
+      CrashReport.createAndLogError(LOG, null, "Error deleting blob with blobKey " +
+        blobKey, e);
+    }
+  }
+
+  @VisibleForTesting
+  boolean useGCSforFile(String fileName, int length) {
+    boolean shouldUse =  fileName.contains("assets/")
+      || fileName.endsWith(".apk") || fileName.endsWith(".aab");
+    if (shouldUse)
+      return true;              // Use GCS for package output and assets
+    boolean mayUse = (fileName.contains("src/") && fileName.endsWith(".blk")) // AI1 Blocks Files
+      || (fileName.contains("src/") && fileName.endsWith(".bky")); // Blockly files
+    if (mayUse && length > 50000) // Only use GCS for larger blocks files
+      return true;
+    return false;
+  }
+
+  // Make a GCS file name
+  String makeGCSfileName(String fileName, long projectId) {
+    return (projectId + "/" + fileName);
+  }
+
+  // Make a GCS file name that no other content has been written to
+  private String makeVersionedGCSfileName(String fileName, long projectId) {
+    return makeGCSfileName(fileName, projectId) + "." + UUID.randomUUID();
+  }
+
+  private void deleteGcsFiles(Collection<GcsFilename> gcsFileNames) {
+    for (GcsFilename gcsFileName : gcsFileNames) {
+      try {
+        gcsService.delete(gcsFileName);
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Unable to delete " + gcsFileName + " from GCS.", e);
+      }
+    }
+  }
+
+  @Override
+  public long deleteFile(final String userId, final long projectId, final String fileName) {
+    validateGCS();
+    final Result<Long> modTime = new Result<Long>();
+    final Result<String> oldBlobKeyString = new Result<String>();
+    final Result<String> oldgcsName = new Result<String>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          Key<FileData> fileKey = projectFileKey(projectKey(projectId), fileName);
+          memcache.delete(fileKey.getString());
+          FileData fileData = datastore.find(fileKey);
+          if (fileData != null) {
+            if (fileData.userId != null && !fileData.userId.equals("")) {
+              if (!fileData.userId.equals(userId)) {
+                throw CrashReport.createAndLogError(LOG, null,
+                  collectUserProjectErrorInfo(userId, projectId),
+                  new UnauthorizedAccessException(userId, projectId, null));
+              }
+            }
+            oldBlobKeyString.t = fileData.blobKey;
+            // Shared blobs are left to cleanupBlobs
+            if (isTrue(fileData.isGCS) && fileData.blobHash == null) {
+              oldgcsName.t = fileData.gcsName;
+            }
+          }
+          datastore.delete(fileKey);
+          modTime.t = updateProjectModDate(datastore, projectId,
+              fileData != null && fileData.role == FileData.RoleEnum.SOURCE);
+        }
+      }, true);
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+    if (oldBlobKeyString.t != null) {
+      deleteBlobstoreFile(oldBlobKeyString.t);
+    }
+    if (oldgcsName.t != null) {
+      try {
+        gcsService.delete(new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.SOURCE), oldgcsName.t));
+      } catch (IOException e) {
+        // This may get logged if we attempt to delete an APK file. But we can ignore
+        // this case because APK files will be deleted on their own
+        LOG.log(Level.WARNING, "Unable to delete " + oldgcsName + " from GCS.", e);
+      }
+    }
+    return (modTime.t == null) ? 0 : modTime.t;
+  }
+
+  // TODO(user) - just use "UTF-8" (instead of having an encoding argument),
+  // which will never cause UnsupportedEncodingException. (Here and in other
+  // methods with the encoding arg.
+  @Override
+  public String downloadFile(final String userId, final long projectId, final String fileName,
+      final String encoding) {
+    try {
+      return new String(downloadRawFile(userId, projectId, fileName), encoding);
+    } catch (UnsupportedEncodingException e) {
       throw CrashReport.createAndLogError(LOG, null, "Unsupported file content encoding, "
           + collectProjectErrorInfo(userId, projectId, fileName), e);
     }
@@ -1651,7 +2454,53 @@ public class ObjectifyStorageIo implements StorageIo {
   @Override
   public byte[] downloadRawFile(final String userId, final long projectId, final String fileName) {
     validateGCS();
-    final Result<byte[]> result = new Result<byte[]>();
+    // read the blob/GCS File outside of the job
+    FileData fileData = getOwnedFileData(userId, projectId, fileName);
+    return readFileContent(userId, projectId, fileData, "downloadrawfile", false);
+  }
+
+  @Override
+  public InputStream openRawFile(final String userId, final long projectId,
+      final String fileName) {
+    validateGCS();
+    FileData fd = getOwnedFileData(userId, projectId, fileName);
+    try {
+      if (isTrue(fd.isGCS)) {
+        byte[] cached = fd.blobHash == null ? null : blobCache.getIfPresent(fd.blobHash);
+        if (cached != null) {
+          return new ByteArrayInputStream(cached);
+        }
+        GcsFilename gcsFileName = new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName);
+        if (gcsService.getMetadata(gcsFileName) == null) {
+          // Older zero length files were never written to GCS, see readGcsFile
+          LOG.log(Level.WARNING, "openrawfile: no GCS object for " + fd.gcsName);
+          return new ByteArrayInputStream(new byte[0]);
+        }
+        // The prefetching channel issues ranged reads of STREAM_BLOCK_SIZE
+        // bytes as the stream is consumed, rather than fetching the object
+        // in one go.
+        return Channels.newInputStream(
+            gcsService.openPrefetchingReadChannel(gcsFileName, 0, STREAM_BLOCK_SIZE));
+      } else if (fd.isBlob) {
+        if (fd.blobKey == null) {
+          throw new BlobReadException("blobKey is null");
+        }
+        return new BlobstoreInputStream(new BlobKey(fd.blobKey));
+      } else {
+        return new ByteArrayInputStream(fd.content == null ? new byte[0] : fd.content);
+      }
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName), e);
+    }
+  }
+
+  /*
+   * Looks up the FileData for a file, preferring memcache, and checks that it
+   * belongs to userId. Throws if the file doesn't exist.
+   */
+  private FileData getOwnedFileData(final String userId, final long projectId,
+      final String fileName) {
     final Result<FileData> fd = new Result<FileData>();
     try {
       runJobWithRetries(new JobRetryHelper() {
@@ -1668,97 +2517,219 @@ public class ObjectifyStorageIo implements StorageIo {
       throw CrashReport.createAndLogError(LOG, null,
           collectProjectErrorInfo(userId, projectId, fileName), e);
     }
-    // read the blob/GCS File outside of the job
     FileData fileData = fd.t;
-    if (fileData != null) {
-      if (fileData.userId != null && !fileData.userId.equals("")) {
-        if (!fileData.userId.equals(userId)) {
-          throw CrashReport.createAndLogError(LOG, null,
-            collectUserProjectErrorInfo(userId, projectId),
-            new UnauthorizedAccessException(userId, projectId, null));
-        }
+    if (fileData == null) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectProjectErrorInfo(userId, projectId, fileName),
+          new FileNotFoundException("No data for " + fileName));
+    }
+    if (fileData.userId != null && !fileData.userId.equals("")) {
+      if (!fileData.userId.equals(userId)) {
+        throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId),
+          new UnauthorizedAccessException(userId, projectId, null));
       }
-      if (isTrue(fileData.isGCS)) {     // It's in the Cloud Store
-        try {
-          int count;
-          boolean npfHappened = false;
-          boolean recovered = false;
-          for (count = 0; count < 5; count++) {
-            GcsFilename gcsFileName = new GcsFilename(getGcsBucketToUse(fileData.role), fileData.gcsName);
-            int bytesRead = 0;
-            int fileSize = 0;
-            ByteBuffer resultBuffer;
-            try {
-              fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
-              resultBuffer = ByteBuffer.allocate(fileSize);
-              GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
-              try {
-                while (bytesRead < fileSize) {
-                  bytesRead += readChannel.read(resultBuffer);
-                  if (bytesRead < fileSize) {
-                    if (DEBUG) {
-                      LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
-                    }
-                  }
-                }
-                recovered = true;
-                result.t = resultBuffer.array();
-                break;          // We got the data, break out of the loop!
-              } finally {
-                readChannel.close();
-              }
-            } catch (NullPointerException e) {
-              // This happens if the object in GCS is non-existent, which would happen
-              // when people uploaded a zero length object. As of this change, we now
-              // store zero length objects into GCS, but there are plenty of older objects
-              // that are missing in GCS.
-              LOG.log(Level.WARNING, "downloadrawfile: NPF recorded for " + fileData.gcsName);
-              npfHappened = true;
-              resultBuffer = ByteBuffer.allocate(0);
-              result.t = resultBuffer.array();
+    }
+    return fileData;
+  }
+
+  @Override
+  public Map<String, byte[]> downloadRawFiles(final String userId, final long projectId,
+      final List<String> fileNames) {
+    validateGCS();
+    Map<String, FileData> fileData = getOwnedFileData(userId, projectId, fileNames);
+    // read the blob/GCS Files outside of the job
+    List<byte[]> contents = readFileContents(userId, projectId, fileData.values(),
+        "downloadrawfiles");
+    Map<String, byte[]> result = new LinkedHashMap<String, byte[]>();
+    int i = 0;
+    for (String fileName : fileData.keySet()) {
+      result.put(fileName, contents.get(i++));
+    }
+    return result;
+  }
+
+  /*
+   * Looks up the FileData for several files of a project, preferring
+   * memcache, and checks that they belong to userId. Throws if any of the
+   * files doesn't exist. The result is in the order of fileNames.
+   */
+  private Map<String, FileData> getOwnedFileData(final String userId, final long projectId,
+      final List<String> fileNames) {
+    final Map<String, FileData> fileData = new LinkedHashMap<String, FileData>();
+    try {
+      runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) {
+          fileData.clear();
+          Key<ProjectData> projectKey = projectKey(projectId);
+          List<String> cacheKeys = new ArrayList<String>(fileNames.size());
+          for (String fileName : fileNames) {
+            cacheKeys.add(projectFileKey(projectKey, fileName).getString());
+          }
+          // uploadRawFile keeps memcache up to date, so prefer it and only
+          // go to the datastore (with one batch get) for the misses.
+          Map<String, Object> cached = memcache.getAll(cacheKeys);
+          List<Key<FileData>> missing = new ArrayList<Key<FileData>>();
+          for (int i = 0; i < fileNames.size(); i++) {
+            FileData fd = (FileData) cached.get(cacheKeys.get(i));
+            fileData.put(fileNames.get(i), fd);
+            if (fd == null) {
+              missing.add(projectFileKey(projectKey, fileNames.get(i)));
             }
           }
-
-          // report out on how things went above
-          if (npfHappened) {    // We lost at least once
-            if (recovered) {
-              LOG.log(Level.WARNING, "recovered from NPF in downloadrawfile filename = " + fileData.gcsName +
-                " count = " + count);
-            } else {
-              LOG.log(Level.WARNING, "FATAL NPF in downloadrawfile filename = " + fileData.gcsName);
+          if (!missing.isEmpty()) {
+            for (Map.Entry<Key<FileData>, FileData> entry : datastore.get(missing).entrySet()) {
+              fileData.put(entry.getKey().getName(), entry.getValue());
             }
           }
+        }
+      }, false); // Transaction not needed
+    } catch (ObjectifyException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+    for (Map.Entry<String, FileData> entry : fileData.entrySet()) {
+      FileData fd = entry.getValue();
+      if (fd == null) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, entry.getKey()),
+            new FileNotFoundException("No data for " + entry.getKey()));
+      }
+      if (fd.userId != null && !fd.userId.equals("") && !fd.userId.equals(userId)) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectUserProjectErrorInfo(userId, projectId),
+            new UnauthorizedAccessException(userId, projectId, null));
+      }
+    }
+    return fileData;
+  }
+
+  /*
+   * Reads the contents of several files concurrently (see readFileContent),
+   * and returns them in the same order.
+   */
+  private List<byte[]> readFileContents(final String userId, final long projectId,
+      Collection<FileData> files, final String caller) {
+    List<Callable<byte[]>> reads = new ArrayList<Callable<byte[]>>(files.size());
+    for (final FileData fd : files) {
+      reads.add(new Callable<byte[]>() {
+        @Override
+        public byte[] call() {
+          return readFileContent(userId, projectId, fd, caller, false);
+        }
+      });
+    }
+    try {
+      return ParallelBlobIo.invokeAll(reads);
+    } catch (IOException e) {
+      throw CrashReport.createAndLogError(LOG, null,
+          collectUserProjectErrorInfo(userId, projectId), e);
+    }
+  }
 
+  /*
+   * Returns the content of the given file, wherever it is stored (GCS, the
+   * Blobstore or the datastore entity itself). Never returns null, a file
+   * whose creation was interrupted has no content and is returned as an
+   * empty array. Shared blobs are served from blobCache when possible.
+   *
+   * Note: this must be called outside of any transaction, see
+   * getBlobstoreBytes.
+   */
+  private byte[] readFileContent(String userId, long projectId, FileData fd, String caller,
+      boolean fatalError) {
+    byte[] data;
+    if (isTrue(fd.isGCS)) {     // It's in the Cloud Store
+      data = fd.blobHash == null ? null : blobCache.getIfPresent(fd.blobHash);
+      if (data == null) {
+        try {
+          data = readGcsFile(fd, caller, fatalError);
         } catch (IOException e) {
           throw CrashReport.createAndLogError(LOG, null,
-              collectProjectErrorInfo(userId, projectId, fileName), e);
+              collectProjectErrorInfo(userId, projectId, fd.fileName), e);
+        }
+        if (fd.blobHash != null && data != null && data.length > 0) {
+          blobCache.put(fd.blobHash, data);
+        }
+      }
+    } else if (fd.isBlob) {
+      try {
+        if (fd.blobKey == null) {
+          throw new BlobReadException("blobKey is null");
         }
-      } else if (fileData.isBlob) {
+        data = getBlobstoreBytes(fd.blobKey);
+      } catch (BlobReadException e) {
+        throw CrashReport.createAndLogError(LOG, null,
+            collectProjectErrorInfo(userId, projectId, fd.fileName), e);
+      }
+    } else {
+      data = fd.content;
+    }
+    if (data == null) {     // This happens if file creation is interrupted
+      data = new byte[0];
+    }
+    return data;
+  }
+
+  /*
+   * Reads a file from GCS. If fatalError is true a file that is missing from
+   * GCS is reported as an IOException, otherwise it is returned as empty.
+   */
+  private byte[] readGcsFile(FileData fd, String caller, boolean fatalError) throws IOException {
+    byte[] data = null;
+    int count;
+    boolean npfHappened = false;
+    boolean recovered = false;
+    for (count = 0; count < 5; count++) {
+      GcsFilename gcsFileName = new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName);
+      int bytesRead = 0;
+      int fileSize = 0;
+      ByteBuffer resultBuffer;
+      try {
+        fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
+        resultBuffer = ByteBuffer.allocate(fileSize);
+        GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
         try {
-          if (fileData.blobKey == null) {
-            throw new BlobReadException("blobKey is null");
-          }
-          result.t = getBlobstoreBytes(fileData.blobKey);
-          // Time to consider upgrading this file if we are moving to GCS
-          // Note: We only run if we have at least 5 seconds of runtime left in the request
-          long timeRemaining = ApiProxy.getCurrentEnvironment().getRemainingMillis();
-        } catch (BlobReadException e) {
-          throw CrashReport.createAndLogError(LOG, null,
-              collectProjectErrorInfo(userId, projectId, fileName), e);
+          while (bytesRead < fileSize) {
+            bytesRead += readChannel.read(resultBuffer);
+            if (bytesRead < fileSize) {
+              if (DEBUG) {
+                LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
+              }
+            }
+          }
+          recovered = true;
+          data = resultBuffer.array();
+          break;        // We got the data, break out of the loop!
+        } finally {
+          readChannel.close();
         }
+      } catch (NullPointerException e) {
+        // This happens if the object in GCS is non-existent, which would happen
+        // when people uploaded a zero length object. As of this change, we now
+        // store zero length objects into GCS, but there are plenty of older objects
+        // that are missing in GCS.
+        LOG.log(Level.WARNING, caller + ": NPF recorded for " + fd.gcsName);
+        npfHappened = true;
+        resultBuffer = ByteBuffer.allocate(0);
+        data = resultBuffer.array();
+      }
+    }
+
+    // report out on how things went above
+    if (npfHappened) {    // We lost at least once
+      if (recovered) {
+        LOG.log(Level.WARNING, "recovered from NPF in " + caller + " filename = " + fd.gcsName +
+          " count = " + count);
       } else {
-        if (fileData.content == null) {
-          result.t = new byte[0];
-        } else {
-          result.t = fileData.content;
+        LOG.log(Level.WARNING, "FATAL NPF in " + caller + " filename = " + fd.gcsName);
+        if (fatalError) {
+          throw new IOException("FATAL Error reading file from GCS filename = " + fd.gcsName);
         }
       }
-    } else {
-      throw CrashReport.createAndLogError(LOG, null,
-          collectProjectErrorInfo(userId, projectId, fileName),
-          new FileNotFoundException("No data for " + fileName));
     }
-    return result.t;
+    return data;
   }
 
   // Note: this must be called outside of any transaction, since getBlobKey()
@@ -1882,83 +2853,21 @@ public class ObjectifyStorageIo implements StorageIo {
         throw error;
       }
       // Process the file contents outside of the job since we can't read
-      // blobs in the job.
-      for (FileData fd : fileData) {
-        fileName = fd.fileName;
-        byte[] data = null;
-        if (fd.isBlob) {
-          try {
-            if (fd.blobKey == null) {
-              throw new BlobReadException("blobKey is null");
-            }
-            data = getBlobstoreBytes(fd.blobKey);
-          } catch (BlobReadException e) {
-            throw CrashReport.createAndLogError(LOG, null,
-                collectProjectErrorInfo(userId, projectId, fileName), e);
-          }
-        } else if (isTrue(fd.isGCS)) {
-          try {
-            int count;
-            boolean npfHappened = false;
-            boolean recovered = false;
-            for (count = 0; count < 5; count++) {
-              GcsFilename gcsFileName = new GcsFilename(getGcsBucketToUse(fd.role), fd.gcsName);
-              int bytesRead = 0;
-              int fileSize = 0;
-              ByteBuffer resultBuffer;
-              try {
-                fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
-                resultBuffer = ByteBuffer.allocate(fileSize);
-                GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
-                try {
-                  while (bytesRead < fileSize) {
-                    bytesRead += readChannel.read(resultBuffer);
-                    if (bytesRead < fileSize) {
-                      if (DEBUG) {
-                        LOG.log(Level.INFO, "readChannel: bytesRead = " + bytesRead + " fileSize = " + fileSize);
-                      }
-                    }
-                  }
-                  recovered = true;
-                  data = resultBuffer.array();
-                  break;        // We got the data, break out of the loop!
-                } finally {
-                  readChannel.close();
-                }
-              } catch (NullPointerException e) {
-                // This happens if the object in GCS is non-existent, which would happen
-                // when people uploaded a zero length object. As of this change, we now
-                // store zero length objects into GCS, but there are plenty of older objects
-                // that are missing in GCS.
-                LOG.log(Level.WARNING, "exportProjectFile: NPF recorded for " + fd.gcsName);
-                npfHappened = true;
-                resultBuffer = ByteBuffer.allocate(0);
-                data = resultBuffer.array();
-              }
-            }
-
-            // report out on how things went above
-            if (npfHappened) {    // We lost at least once
-              if (recovered) {
-                LOG.log(Level.WARNING, "recovered from NPF in exportProjectFile filename = " + fd.gcsName +
-                  " count = " + count);
-              } else {
-                LOG.log(Level.WARNING, "FATAL NPF in exportProjectFile filename = " + fd.gcsName);
-                if (fatalError) {
-                  throw new IOException("FATAL Error reading file from GCS filename = " + fd.gcsName);
-                }
-              }
-            }
-          } catch (IOException e) {
-            throw CrashReport.createAndLogError(LOG, null,
-              collectProjectErrorInfo(userId, projectId, fileName), e);
+      // blobs in the job. The reads are independent of each other, so we
+      // issue them concurrently and then write the zip in the original order.
+      List<Callable<byte[]>> reads = new ArrayList<Callable<byte[]>>(fileData.size());
+      for (final FileData fd : fileData) {
+        reads.add(new Callable<byte[]>() {
+          @Override
+          public byte[] call() {
+            return readFileContent(userId, projectId, fd, "exportProjectFile", fatalError);
           }
-        } else {
-          data = fd.content;
-        }
-        if (data == null) {     // This happens if file creation is interrupted
-          data = new byte[0];
-        }
+        });
+      }
+      List<byte[]> contents = ParallelBlobIo.invokeAll(reads);
+      for (int i = 0; i < fileData.size(); i++) {
+        fileName = fileData.get(i).fileName;
+        byte[] data = contents.get(i);
         out.putNextEntry(new ZipEntry(fileName));
         out.write(data, 0, data.length);
         out.closeEntry();
@@ -2229,24 +3138,98 @@ public class ObjectifyStorageIo implements StorageIo {
   // is 2 hours. So for one hour they persist and return "link expired" instead of
   // "link not found" (after the object itself is removed).
   //
-  // Note: We only process up to 10 here to limit the amount of processing time
-  // we spend here. If we remove up to 10 for each call, we should keep ahead
-  // of the growing garbage.
+  // Note: We only process a batch (storage.cleanup.batchsize) here to limit
+  // the amount of processing time we spend here. Each call continues where
+  // the previous one stopped, see cleanupExpired.
   //
   // Also note that we are not running in a transaction, there is no need
   public void cleanupNonces() {
-    Objectify datastore = ObjectifyService.begin();
     // We do not use runJobWithRetries because if we fail here, we will be
     // called again the next time someone attempts to download a built APK
     // via a QR Code.
+    cleanupExpired(NonceData.class, 3600*3*1000L);
+  }
+
+  /*
+   * Deletes a few of the blobs that have been unused for longer than the
+   * grace period. As in cleanupNonces, failures are left for the next call.
+   */
+  @Override
+  public void cleanupBlobs() {
+    cleanupBlobs(System.currentTimeMillis());
+  }
+
+  /*
+   * Looks at a few of the blobs that nobody has referenced (see referenceBlob)
+   * since before the grace period. A blob that a FileData still uses is
+   * brought up to date and left alone for another grace period. Any other
+   * blob is first marked as deleting, so that nobody starts using it again
+   * while its GCS file is deleted.
+   */
+  @VisibleForTesting
+  void cleanupBlobs(final long now) {
+    Objectify datastore = ObjectifyService.begin();
+    List<Key<BlobData>> keys = new ArrayList<Key<BlobData>>();
     try {
-      datastore.delete(datastore.query(NonceData.class)
-        .filter("timestamp <", new Date((new Date()).getTime() - 3600*3*1000L))
-        .limit(10).fetchKeys());
+      for (Key<BlobData> key : datastore.query(BlobData.class)
+          .filter("lastReferenced <", now - BLOB_GRACE_PERIOD)
+          .limit(10).fetchKeys()) {
+        keys.add(key);
+      }
     } catch (Exception ex) {
-        LOG.log(Level.WARNING, "Exception during cleanupNonces", ex);
+      LOG.log(Level.WARNING, "Exception during cleanupBlobs", ex);
+      return;
+    }
+    for (final Key<BlobData> key : keys) {
+      final Result<String> gcsName = new Result<String>();
+      try {
+        // The grace period is much longer than it takes for a FileData
+        // written by a request that referenced the blob to show up here.
+        final boolean inUse = datastore.query(FileData.class)
+            .filter("blobHash", key.getName()).limit(1).fetchKeys().iterator().hasNext();
+        runJobWithRetries(new JobRetryHelper() {
+          @Override
+          public void run(Objectify datastore) {
+            gcsName.t = null;
+            BlobData blob = datastore.find(key);
+            if (blob == null) {
+              return;
+            }
+            if (!blob.deleting) {
+              if (blob.lastReferenced >= now - BLOB_GRACE_PERIOD) {
+                return;  // referenced since the query
+              }
+              if (inUse) {
+                blob.lastReferenced = now;
+              } else {
+                blob.deleting = true;
+              }
+              datastore.put(blob);
+            }
+            if (blob.deleting) {
+              gcsName.t = blob.gcsName;
+            }
+          }
+        }, true);
+        if (gcsName.t == null) {
+          continue;  // in use
+        }
+        gcsService.delete(new GcsFilename(GCS_BUCKET_NAME, gcsName.t));
+        runJobWithRetries(new JobRetryHelper() {
+          @Override
+          public void run(Objectify datastore) {
+            BlobData blob = datastore.find(key);
+            if (blob != null && blob.deleting && gcsName.t.equals(blob.gcsName)) {
+              datastore.delete(key);
+            }
+          }
+        }, true);
+      } catch (ObjectifyException e) {
+        LOG.log(Level.WARNING, "Exception during cleanupBlobs", e);
+      } catch (IOException e) {
+        LOG.log(Level.WARNING, "Exception during cleanupBlobs", e);
+      }
     }
-
   }
 
   @Override
@@ -2288,19 +3271,64 @@ public class ObjectifyStorageIo implements StorageIo {
     return result.t;
   }
 
-  // Remove up to 10 expired PWData elements from the datastore
+  // Remove a batch of expired PWData elements from the datastore
   @Override
   public void cleanuppwdata() {
-    Objectify datastore = ObjectifyService.begin();
     // We do not use runJobWithRetries because if we fail here, we will be
     // called again the next time someone attempts to set a password
     // Note: we remove data after 24 hours.
+    cleanupExpired(PWData.class, 3600*24*1000L);
+  }
+
+  /*
+   * Deletes a batch of the entities of the given kind whose timestamp is
+   * older than maxAge. Cleanup proceeds in passes: a pass fixes its cutoff
+   * time when it starts, and each call continues with the cursor where the
+   * previous call stopped, so that the query doesn't scan again past the
+   * index entries of entities that were just deleted. A pass ends with a
+   * batch that isn't full. If memcache loses the pass, a new one starts.
+   */
+  private <T> void cleanupExpired(Class<T> kind, long maxAge) {
+    String passKey = "cleanup:" + kind.getSimpleName();
     try {
-      datastore.delete(datastore.query(PWData.class)
-        .filter("timestamp <", new Date((new Date()).getTime() - 3600*24*1000L))
-        .limit(10).fetchKeys());
+      CleanupPass pass = (CleanupPass) memcache.get(passKey);
+      if (pass == null) {
+        pass = new CleanupPass(System.currentTimeMillis() - maxAge);
+      }
+      Objectify datastore = ObjectifyService.begin();
+      Query<T> query = datastore.query(kind)
+          .filter("timestamp <", new Date(pass.cutoff))
+          .limit(CLEANUP_BATCH_SIZE);
+      if (pass.cursor != null) {
+        query.startCursor(Cursor.fromWebSafeString(pass.cursor));
+      }
+      QueryResultIterator<Key<T>> iterator = query.fetchKeys().iterator();
+      List<Key<T>> keys = new ArrayList<Key<T>>();
+      while (iterator.hasNext()) {
+        keys.add(iterator.next());
+      }
+      datastore.delete(keys);  // batch delete
+      pass.deleted += keys.size();
+      pass.batches++;
+      if (keys.size() < CLEANUP_BATCH_SIZE) {
+        if (pass.batches > 1) {
+          LOG.info("Cleanup of " + kind.getSimpleName() + " deleted " + pass.deleted
+              + " entities in " + pass.batches + " calls");
+        }
+        memcache.delete(passKey);
+      } else {
+        // More are left, the backlog is at least this large
+        pass.cursor = iterator.getCursor().toWebSafeString();
+        if (pass.batches % 10 == 0) {
+          LOG.info("Cleanup of " + kind.getSimpleName() + " is behind, " + pass.deleted
+              + " entities that expired before " + new Date(pass.cutoff) + " deleted in "
+              + pass.batches + " calls so far");
+        }
+        memcache.put(passKey, pass);
+      }
     } catch (Exception ex) {
-        LOG.log(Level.WARNING, "Exception during cleanupNonces", ex);
+      LOG.log(Level.WARNING, "Exception during cleanup of " + kind.getSimpleName(), ex);
+      memcache.delete(passKey);  // Start over next time
     }
   }
 
@@ -2342,11 +3370,16 @@ public class ObjectifyStorageIo implements StorageIo {
   /**
    * Call job.run() if we get a {@link java.util.ConcurrentModificationException}
    * or {@link com.google.appinventor.server.storage.ObjectifyException}
-   * we will retry the job (at most {@code MAX_JOB_RETRIES times}).
+   * we will retry the job (at most {@code job.getMaxRetries()} times),
+   * backing off exponentially with jitter between attempts.
    * Any other exception will cause the job to fail immediately.
    * If useTransaction is true, create a transaction and run the job in
    * that transaction. If the job terminates normally, commit the transaction.
    *
+   * If the datastore has been failing consistently the job is not run at
+   * all and we throw an ObjectifyException straight away (see
+   * {@link CircuitBreaker}).
+   *
    * Note: Originally we ran all jobs in a transaction. However in
    *       many places there is no need for a transaction because
    *       there is nothing to rollback on failure. Using transactions
@@ -2359,51 +3392,136 @@ public class ObjectifyStorageIo implements StorageIo {
    */
   @VisibleForTesting
   void runJobWithRetries(JobRetryHelper job, boolean useTransaction) throws ObjectifyException {
+    JobStats stats = JobStats.forJob(job.getClass());
+    if (!DATASTORE_BREAKER.allowRequest()) {
+      stats.recordJob(0, true);
+      throw new ObjectifyException("Datastore unavailable, not running job " + stats.getName());
+    }
+    long start = System.currentTimeMillis();
+    int maxRetries = job.getMaxRetries();
     int tries = 0;
-    while (tries <= MAX_JOB_RETRIES) {
-      Objectify datastore;
-      if (useTransaction) {
-        datastore = ObjectifyService.beginTransaction();
-      } else {
-        datastore = ObjectifyService.begin();
-      }
-      try {
-        job.run(datastore);
+    boolean failed = false;
+    boolean completed = false;
+    boolean datastoreFailed = false;
+    try {
+      while (tries <= maxRetries) {
+        if (tries > 0) {
+          backoff(tries);
+        }
+        stats.recordAttempt();
+        Objectify datastore;
         if (useTransaction) {
-          datastore.getTxn().commit();
-        }
-        break;
-      } catch (ConcurrentModificationException ex) {
-        job.onNonFatalError();
-        LOG.log(Level.WARNING, "Optimistic concurrency failure", ex);
-      } catch (ObjectifyException oe) {
-        String message = oe.getMessage();
-        if (message != null &&
-          (message.startsWith("Blocks") || message.startsWith("User Al"))) { // This one is fatal!
-          throw oe;
-        }
-        // maybe this should be a fatal error? I think only thing
-        // that creates this exception is this method.
-        job.onNonFatalError();
-      } catch (IOException e) {
-        job.onIOException(e);
-        break;
-      } finally {
-        if (useTransaction && datastore.getTxn().isActive()) {
-          try {
-            datastore.getTxn().rollback();
-          } catch (RuntimeException e) {
-            LOG.log(Level.WARNING, "Transaction rollback failed", e);
+          datastore = ObjectifyService.beginTransaction();
+        } else {
+          datastore = ObjectifyService.begin();
+        }
+        try {
+          job.run(datastore);
+          if (useTransaction) {
+            datastore.getTxn().commit();
+          }
+          completed = true;
+          break;
+        } catch (ConcurrentModificationException ex) {
+          stats.recordConflict();
+          job.onNonFatalError();
+          LOG.log(Level.WARNING, "Optimistic concurrency failure in " + stats.getName(), ex);
+        } catch (ObjectifyException oe) {
+          String message = oe.getMessage();
+          if (message != null &&
+            (message.startsWith("Blocks") || message.startsWith("User Al"))) { // This one is fatal!
+            throw oe;
+          }
+          // maybe this should be a fatal error? I think only thing
+          // that creates this exception is this method.
+          job.onNonFatalError();
+        } catch (DatastoreTimeoutException | DatastoreFailureException e) {
+          failed = true;
+          datastoreFailed = true;
+          throw e;
+        } catch (IOException e) {
+          job.onIOException(e);
+          break;
+        } finally {
+          if (useTransaction && datastore.getTxn().isActive()) {
+            try {
+              datastore.getTxn().rollback();
+            } catch (RuntimeException e) {
+              LOG.log(Level.WARNING, "Transaction rollback failed", e);
+            }
           }
         }
+        tries++;
+      }
+      if (tries > maxRetries) {
+        failed = true;
+        throw new ObjectifyException("Couldn't commit job after max retries.");
+      }
+    } finally {
+      // Only the datastore's own failures count against it, and only jobs
+      // that ran to the end show that it is healthy. Anything else (running
+      // out of retries on contention, an IOException from Cloud Storage or
+      // an exception thrown by the job itself) is neutral.
+      if (datastoreFailed) {
+        DATASTORE_BREAKER.recordFailure();
+      } else if (completed) {
+        DATASTORE_BREAKER.recordSuccess();
+      } else {
+        DATASTORE_BREAKER.recordNeutral();
+      }
+      long now = System.currentTimeMillis();
+      stats.recordJob(now - start, failed);
+      if (DEBUG && tries > 0) {
+        LOG.log(Level.INFO, "Job retried " + tries + " time(s): " + stats);
+      }
+      if (JobStats.isLogDue(now, JOB_STATS_LOG_INTERVAL)) {
+        LOG.log(Level.INFO, "Storage job counters: " + JobStats.snapshot().values());
       }
-      tries++;
     }
-    if (tries > MAX_JOB_RETRIES) {
-      throw new ObjectifyException("Couldn't commit job after max retries.");
+  }
+
+  /*
+   * Sleep before the given retry. The delay grows exponentially with the
+   * number of tries, capped at RETRY_MAX_DELAY_MS, and we pick a random
+   * point in [0, delay) so that requests which collided don't collide
+   * again in lock step.
+   */
+  private static void backoff(int tries) throws ObjectifyException {
+    long delay = maxBackoffMillis(tries);
+    if (delay <= 0) {
+      return;
+    }
+    try {
+      Thread.sleep(ThreadLocalRandom.current().nextLong(delay));
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ObjectifyException(e);
     }
   }
 
+  /*
+   * The longest we sleep before the given retry.
+   */
+  @VisibleForTesting
+  static long maxBackoffMillis(int tries) {
+    return Math.min((long) RETRY_MAX_DELAY_MS,
+        ((long) RETRY_INITIAL_DELAY_MS) << Math.min(tries - 1, 20));
+  }
+
+  @VisibleForTesting
+  static boolean isDatastoreBreakerOpen() {
+    return DATASTORE_BREAKER.isOpen();
+  }
+
+  /**
+   * Returns the job counters collected by runJobWithRetries, keyed by the
+   * StorageIo method that ran the job. They are also logged every
+   * storage.jobstats.logminutes.
+   */
+  static Map<String, JobStats> getJobStats() {
+    return JobStats.snapshot();
+  }
+
   private static String collectUserErrorInfo(final String userId) {
     return collectUserErrorInfo(userId, CrashReport.NOT_AVAILABLE);
   }
@@ -2436,7 +3554,11 @@ public class ObjectifyStorageIo implements StorageIo {
     }
     // Use FileData.RoleEnum.TARGET because these temp files never live very long
     GcsFilename gcsFileName = new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.TARGET), fileName);
-    int fileSize = (int) gcsService.getMetadata(gcsFileName).getLength();
+    GcsFileMetadata metadata = gcsService.getMetadata(gcsFileName);
+    if (metadata == null) {
+      throw new FileNotFoundException("openTempFile (" + fileName + ") No such file");
+    }
+    int fileSize = (int) metadata.getLength();
     ByteBuffer resultBuffer = ByteBuffer.allocate(fileSize);
     GcsInputChannel readChannel = gcsService.openReadChannel(gcsFileName, 0);
     int bytesRead = 0;
@@ -2458,6 +3580,49 @@ public class ObjectifyStorageIo implements StorageIo {
     gcsService.delete(new GcsFilename(getGcsBucketToUse(FileData.RoleEnum.TARGET), fileName));
   }
 
+  @Override
+  public void cleanupTempFiles() {
+    // Listing the temporary files costs a GCS request however few have
+    // expired, so only one call in every interval looks at them
+    if (memcache.put("cleanup:tempfiles", Boolean.TRUE,
+        Expiration.byDeltaSeconds(TEMP_FILE_CLEANUP_INTERVAL), SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+      if (cleanupTempFiles(System.currentTimeMillis()) == CLEANUP_BATCH_SIZE) {
+        memcache.delete("cleanup:tempfiles");  // More are left, continue with the next call
+      }
+    }
+  }
+
+  /*
+   * Deletes a batch of the temporary files that are older than
+   * storage.tempfile.maxagehours and returns how many were deleted. Whoever
+   * uses a temporary file deletes it, but the pieces of a project archive
+   * whose upload is never finished, and extensions that are uploaded but not
+   * imported, are left behind. GCS lists them by name, not by age, so there
+   * is no cursor to keep between calls as in cleanupExpired.
+   */
+  @VisibleForTesting
+  int cleanupTempFiles(long now) {
+    String bucket = getGcsBucketToUse(FileData.RoleEnum.TARGET);
+    int deleted = 0;
+    try {
+      ListResult files = gcsService.list(bucket,
+          new ListOptions.Builder().setPrefix("__TEMP__/").setRecursive(true).build());
+      while (deleted < CLEANUP_BATCH_SIZE && files.hasNext()) {
+        ListItem file = files.next();
+        if (file.getLastModified().getTime() < now - TEMP_FILE_MAX_AGE) {
+          gcsService.delete(new GcsFilename(bucket, file.getName()));
+          deleted++;
+        }
+      }
+    } catch (Exception ex) {
+      LOG.log(Level.WARNING, "Exception during cleanup of temporary files", ex);
+    }
+    if (deleted > 0) {
+      LOG.info("Cleanup of temporary files deleted " + deleted + " files");
+    }
+    return deleted;
+  }
+
   // ********* METHODS BELOW ARE ONLY FOR TESTING *********
 
   @VisibleForTesting
@@ -2486,6 +3651,21 @@ public class ObjectifyStorageIo implements StorageIo {
     }
   }
 
+  @VisibleForTesting
+  BlobData getBlob(String hash) {
+    return ObjectifyService.begin().find(BlobData.class, hash);
+  }
+
+  @VisibleForTesting
+  BlobData getFileBlob(long projectId, String fileName) {
+    Objectify datastore = ObjectifyService.begin();
+    FileData fd = datastore.find(projectFileKey(projectKey(projectId), fileName));
+    if (fd == null || fd.blobHash == null) {
+      return null;
+    }
+    return datastore.find(BlobData.class, fd.blobHash);
+  }
+
   @VisibleForTesting
   ProjectData getProject(long projectId) {
     return ObjectifyService.begin().find(projectKey(projectId));
@@ -2613,6 +3793,8 @@ public class ObjectifyStorageIo implements StorageIo {
               userData = datastore.find(userKey(user.getId()));
             }
             if (userData != null) {
+              String cachekey = User.usercachekey + "|" + userData.id;
+              memcache.delete(cachekey);  // Flush cached copy prior to update
               userData.email = user.getEmail();
               userData.emaillower = userData.email.toLowerCase();
               String password = user.getPassword();
@@ -2702,15 +3884,37 @@ public class ObjectifyStorageIo implements StorageIo {
 
   @Override
   public void storeBuildStatus(String userId, long projectId, int progress) {
+    memcache.put(buildStatusKey(userId, projectId), progress);
+  }
+
+  @Override
+  public void storeBuildProgress(String userId, long projectId, int progress) {
+    String cacheKey = buildStatusKey(userId, projectId);
+    // The output of the build may be received while we look, so only replace
+    // the status we have seen. If we keep losing the race the report is
+    // dropped, which only delays the progress shown to the user.
+    for (int tries = 0; tries < 3; tries++) {
+      MemcacheService.IdentifiableValue current = memcache.getIdentifiable(cacheKey);
+      if (current == null) {
+        if (memcache.put(cacheKey, progress, null, SetPolicy.ADD_ONLY_IF_NOT_PRESENT)) {
+          return;
+        }
+      } else if (Integer.valueOf(BUILD_FINISHED).equals(current.getValue())) {
+        return;
+      } else if (memcache.putIfUntouched(cacheKey, current, progress)) {
+        return;
+      }
+    }
+  }
+
+  private static String buildStatusKey(String userId, long projectId) {
     String prelim = "40bae275-070f-478b-9a5f-d50361809b99";
-    String cacheKey = prelim + userId + projectId;
-    memcache.put(cacheKey, progress);
+    return prelim + userId + projectId;
   }
 
   @Override
   public int getBuildStatus(String userId, long projectId) {
-    String prelim = "40bae275-070f-478b-9a5f-d50361809b99";
-    String cacheKey = prelim + userId + projectId;
+    String cacheKey = buildStatusKey(userId, projectId);
     Integer ival = (Integer) memcache.get(cacheKey);
     if (ival == null) {         // not in memcache (or memcache service down)
       return 50;
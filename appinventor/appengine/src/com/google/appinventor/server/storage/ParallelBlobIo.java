@@ -0,0 +1,92 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.api.ThreadManager;
+import com.google.appinventor.server.flags.Flag;
+import com.google.apphosting.api.ApiProxy;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a group of independent blob transfers (GCS or Blobstore reads and
+ * writes) concurrently.
+ *
+ * App Engine only lets us create threads that are tied to the current
+ * request, so we build a small pool from the request thread factory for
+ * each batch and tear it down when the batch is done. The number of
+ * threads is capped by the "storage.blob.threads" flag so that a project
+ * with hundreds of assets doesn't exhaust the per-request thread limit.
+ *
+ * Results are returned in the same order as the tasks. If any task fails,
+ * the first failure (in task order) is rethrown to the caller.
+ */
+final class ParallelBlobIo {
+
+  static final Flag<Integer> maxThreads = Flag.createFlag("storage.blob.threads", 8);
+
+  private ParallelBlobIo() {
+  }
+
+  static <T> List<T> invokeAll(List<? extends Callable<T>> tasks) throws IOException {
+    int threads = Math.min(tasks.size(), maxThreads.get());
+    if (threads <= 1 || ApiProxy.getCurrentEnvironment() == null) {
+      // Nothing to gain from a pool (or we are not inside a request and
+      // cannot create request threads), so just run the tasks in order.
+      List<T> results = new ArrayList<T>(tasks.size());
+      for (Callable<T> task : tasks) {
+        results.add(call(task));
+      }
+      return results;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(threads,
+        ThreadManager.currentRequestThreadFactory());
+    try {
+      List<Future<T>> futures = executor.invokeAll(tasks);
+      List<T> results = new ArrayList<T>(futures.size());
+      for (Future<T> future : futures) {
+        try {
+          results.add(future.get());
+        } catch (ExecutionException e) {
+          throw rethrow(e.getCause());
+        }
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while transferring blobs");
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> T call(Callable<T> task) throws IOException {
+    try {
+      return task.call();
+    } catch (Exception e) {
+      throw rethrow(e);
+    }
+  }
+
+  private static IOException rethrow(Throwable cause) throws IOException {
+    if (cause instanceof IOException) {
+      throw (IOException) cause;
+    } else if (cause instanceof RuntimeException) {
+      throw (RuntimeException) cause;
+    } else if (cause instanceof Error) {
+      throw (Error) cause;
+    }
+    return new IOException(cause);
+  }
+}
@@ -21,6 +21,7 @@ import java.io.InputStream;
 import java.io.IOException;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 
 import javax.annotation.Nullable;
@@ -134,6 +135,23 @@ public interface StorageIo {
    */
   long createProject(String userId, Project project, String projectSettings);
 
+  /**
+   * Creates a new project from the given files plus files copied unchanged
+   * from another project of the same user. Copied files whose content is
+   * shared between projects are not read, the new files share it too.
+   *
+   * @param userId user id
+   * @param project project information, the copied files that have to be
+   *        read are added to it
+   * @param projectSettings project settings
+   * @param sourceProjectId id of the project to copy files from
+   * @param copiedFiles map from file ID in the source project to file ID in
+   *        the new project
+   * @return project id
+   */
+  long createProject(String userId, Project project, String projectSettings,
+      long sourceProjectId, Map<String, String> copiedFiles);
+
   /**
    * Deletes a project and all its files.
    *
@@ -442,6 +460,45 @@ public interface StorageIo {
    */
   long uploadRawFileForce(long projectId, String fileId, String userId, byte[] content);
 
+  /**
+   * Uploads a file from a stream. -- forces the save even with trivial workspace
+   * Large files, such as build output, are copied to storage as they are read
+   * rather than being held in memory. The stream is read to its end but not
+   * closed, so it may be a ZipInputStream positioned at an entry.
+   * @param projectId  project ID
+   * @param fileId  file ID
+   * @param userId the user who owns the file
+   * @param content  stream of the file content
+   * @return modification date for project
+   * @throws IOException if reading {@code content} or writing the file fails
+   */
+  long uploadRawFileForce(long projectId, String fileId, String userId, InputStream content)
+      throws IOException;
+
+  /**
+   * Uploads several files of a project at once. -- forces the save even with
+   * trivial workspaces. All files are written in a single job and the
+   * modification date of the project is only updated once.
+   * @param projectId  project ID
+   * @param userId the user who owns the files
+   * @param contents  map from file ID to file content
+   * @param encoding encoding of content
+   * @return modification date for project
+   */
+  long uploadFilesForce(long projectId, String userId, Map<String, String> contents,
+      String encoding);
+
+  /**
+   * Uploads several files of a project at once. -- forces the save even with
+   * trivial workspaces. All files are written in a single job and the
+   * modification date of the project is only updated once.
+   * @param projectId  project ID
+   * @param userId the user who owns the files
+   * @param contents  map from file ID to file content
+   * @return modification date for project
+   */
+  long uploadRawFilesForce(long projectId, String userId, Map<String, byte[]> contents);
+
   /**
    * Deletes a file.
    * @param userId a user Id (the request is made on behalf of this user)
@@ -483,6 +540,29 @@ public interface StorageIo {
    */
   byte[] downloadRawFile(String userId, long projectId, String fileId);
 
+  /**
+   * Downloads the raw data of several files of a project at once.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileIds  file IDs
+   *
+   * @return  map from file ID to file content, in the order of fileIds
+   */
+  Map<String, byte[]> downloadRawFiles(String userId, long projectId, List<String> fileIds);
+
+  /**
+   * Opens a stream over raw file data. Unlike {@link #downloadRawFile}, the
+   * content is fetched from storage as the stream is read, so callers that
+   * only need the beginning of a file don't pay for the rest of it. The
+   * caller must close the stream.
+   * @param userId a user Id (the request is made on behalf of this user)
+   * @param projectId  project ID
+   * @param fileId  file ID
+   *
+   * @return  stream over the file content
+   */
+  InputStream openRawFile(String userId, long projectId, String fileId);
+
   /**
    * Creates a temporary file with the given content and returns
    * its file name, which will always begin with __TEMP__
@@ -500,6 +580,7 @@ public interface StorageIo {
    * @param fileName
    *
    * @return inputstream
+   * @throws java.io.FileNotFoundException if there is no such file
    */
 
   InputStream openTempFile(String fileName) throws IOException;
@@ -514,6 +595,14 @@ public interface StorageIo {
 
   void deleteTempFile(String fileName) throws IOException;
 
+  /**
+   * Deletes some of the temporary files that have been kept for longer than
+   * anyone should need them, such as the pieces of a project archive whose
+   * upload was never finished. Calls that come soon after another one may do
+   * nothing.
+   */
+  void cleanupTempFiles();
+
   // MOTD management
 
   /**
@@ -590,6 +679,9 @@ public interface StorageIo {
   // Cleanup expired nonces
   void cleanupNonces();
 
+  // Delete some of the shared blobs that are no longer used by any project file
+  void cleanupBlobs();
+
   // Retrieve the current Splash Screen Version
   SplashConfig getSplashConfig();
 
@@ -646,10 +738,27 @@ public interface StorageIo {
    * available (yes, it can be down!) then we cheat and just return
    * 50 (for 50%).
    *
+   * Once the output of a build has been received, the status is set to
+   * {@link #BUILD_FINISHED} so that anyone waiting on the build knows to
+   * look for the output.
+   *
    */
 
   public void storeBuildStatus(String userId, long projectId, int progress);
 
+  /**
+   * Stores the progress reported by a build server, as
+   * {@link #storeBuildStatus} does, unless the status is already
+   * {@link #BUILD_FINISHED}. A progress report that arrives after the output
+   * of the build would otherwise hide the output from anyone waiting on it.
+   */
+  public void storeBuildProgress(String userId, long projectId, int progress);
+
+  /**
+   * Build status stored when the output of a build has been received.
+   */
+  public static final int BUILD_FINISHED = -1;
+
   public int getBuildStatus(String userId, long projectId);
 
   /**
@@ -6,8 +6,11 @@
 
 package com.google.appinventor.server.storage;
 
+import com.google.appinventor.server.flags.Flag;
 import com.google.common.annotations.VisibleForTesting;
 
+import java.nio.file.Paths;
+
 /**
  * Holds the singleton StorageIo subclass object. We introduce this class
  * so that we can switch out the underlying StorageIo subclass without changing
@@ -17,13 +20,26 @@ import com.google.common.annotations.VisibleForTesting;
  *
  */
 public class StorageIoInstanceHolder {
+  // If set, file contents are kept in this directory instead of Google Cloud
+  // Storage. This is meant for self hosted servers running on the dev server,
+  // whose simulated Cloud Storage is slow (see LocalGcsService). Only file
+  // contents move: project metadata is still kept in the datastore. Content
+  // already in Cloud Storage is not read from the directory, so this must be
+  // set before the server has any projects.
+  private static final Flag<String> localStorageDir = Flag.createFlag("storage.local.dir", "");
+
   private static StorageIo INSTANCE;
   
   private StorageIoInstanceHolder() {} // not to be instantiated
 
   public static StorageIo getInstance() {
     if (INSTANCE == null) {
-      INSTANCE = new ObjectifyStorageIo();
+      String localDir = localStorageDir.get();
+      if (localDir.isEmpty()) {
+        INSTANCE = new ObjectifyStorageIo();
+      } else {
+        INSTANCE = new ObjectifyStorageIo(new LocalGcsService(Paths.get(localDir)));
+      }
     }
     return INSTANCE;
   }
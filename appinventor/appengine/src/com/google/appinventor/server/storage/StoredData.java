@@ -191,6 +191,11 @@ public class StoredData {
     // The GCS filename, sans bucket name
     String gcsName;
 
+    // If the content is shared through a BlobData entity, its id (the content hash). The
+    // gcsName is then the blob's GCS file name and must not be deleted along with this file.
+    // Indexed so that cleanupBlobs can tell whether a blob is still used.
+    @Indexed String blobHash;
+
     // File settings
     String settings;
 
@@ -202,6 +207,32 @@ public class StoredData {
                                 // it yet
   }
 
+  // Content shared by all of the project files with identical content, so that
+  // assets and extensions imported into many projects are only stored once.
+  // A blob is used by the FileData entities whose blobHash is its id. There is
+  // no reference count, which would make every import of a popular extension
+  // write the same entity. Instead, cleanupBlobs only looks at blobs that
+  // nobody has referenced for a grace period, and deletes those that no
+  // FileData uses.
+  @Unindexed
+  static final class BlobData {
+    // SHA-256 of the content, in hex
+    @Id String id;
+
+    // The GCS filename, sans bucket name
+    String gcsName;
+
+    // Size of the content in bytes
+    long size;
+
+    // When the blob was last handed out for use by a file, give or take
+    // storage.blob.touchminutes (see ObjectifyStorageIo.referenceBlob)
+    @Indexed long lastReferenced;
+
+    // Set once cleanupBlobs starts collecting the blob, after which it is never reused
+    boolean deleting;
+  }
+
   // MOTD data.
   @Unindexed
   static final class MotdData {
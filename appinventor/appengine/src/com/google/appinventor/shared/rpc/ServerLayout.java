@@ -134,6 +134,18 @@ public class ServerLayout {
    */
   public static final String UPLOAD_PROJECT = "project";
 
+  /**
+   * Relative path within {@link com.google.appinventor.server.UploadServlet}
+   * for uploading one piece of a project archive that is uploaded in pieces
+   */
+  public static final String UPLOAD_PROJECT_CHUNK = "projectchunk";
+
+  /**
+   * Relative path within {@link com.google.appinventor.server.UploadServlet}
+   * for creating a project from the pieces of its archive
+   */
+  public static final String UPLOAD_PROJECT_FROM_CHUNKS = "projectchunks";
+
   /**
    * Relative path within {@link com.google.appinventor.server.UploadServlet}
    * for uploading a component
@@ -0,0 +1,62 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.shared.rpc.project;
+
+import java.io.Serializable;
+import java.util.HashMap;
+
+/**
+ * Everything the client needs to start editing a project, returned in one
+ * response: the project tree, the project settings and the contents of the
+ * source files of the screen that is shown first.
+ *
+ */
+public class OpenedProject implements Serializable {
+
+  // For serialization
+  private static final long serialVersionUID = 4197345626138817502L;
+
+  private ProjectRootNode rootNode;
+  private String settings;
+  private HashMap<String, ChecksumedLoadFile> files;
+
+  /**
+   * Default constructor (for serialization only).
+   */
+  @SuppressWarnings("unused")
+  private OpenedProject() {
+  }
+
+  /**
+   * Creates a new opened project.
+   *
+   * @param rootNode  root node of the project
+   * @param settings  project settings
+   * @param files  contents of the files sent along, by file ID
+   */
+  public OpenedProject(ProjectRootNode rootNode, String settings,
+      HashMap<String, ChecksumedLoadFile> files) {
+    this.rootNode = rootNode;
+    this.settings = settings;
+    this.files = files;
+  }
+
+  public ProjectRootNode getRootNode() {
+    return rootNode;
+  }
+
+  public String getSettings() {
+    return settings;
+  }
+
+  /**
+   * Returns the contents of the files sent along with the project, by file
+   * ID. Files that are not in this map are loaded as usual.
+   */
+  public HashMap<String, ChecksumedLoadFile> getFiles() {
+    return files;
+  }
+}
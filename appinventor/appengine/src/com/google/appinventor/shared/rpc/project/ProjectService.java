@@ -138,6 +138,17 @@ public interface ProjectService extends RemoteService {
    */
   ProjectRootNode getProject(long projectId);
 
+  /**
+   * Returns what is needed to open the given project: its root node, its
+   * settings and the contents of the source files shown first, so that the
+   * client does not have to request each of them separately.
+   * @param projectId  project ID as received by
+   *                   {@link #getProjects()}
+   *
+   * @return  the opened project
+   */
+  OpenedProject openProject(long projectId) throws ChecksumedFileException;
+
   /**
    * Returns a string with the project settings.
    * @param projectId  project ID
@@ -345,6 +356,21 @@ public interface ProjectService extends RemoteService {
    */
   RpcResult getBuildResult(long projectId, String target);
 
+  /**
+   * Waits until the progress of a build differs from {@code lastProgress},
+   * the build finishes or a timeout passes, then returns the result of the
+   * build as {@link #getBuildResult(long, String)} does. Used instead of
+   * polling getBuildResult at a fixed interval.
+   *
+   * @param projectId  project ID
+   * @param target  build target (optional, implementation dependent)
+   * @param lastProgress  the progress the client last received
+   *
+   * @return  results of build, as for getBuildResult. While the build is not
+   *          yet done, the output is the current progress.
+   */
+  RpcResult getBuildProgress(long projectId, String target, int lastProgress);
+
   /**
    * Adds a new file to the given project.
    *
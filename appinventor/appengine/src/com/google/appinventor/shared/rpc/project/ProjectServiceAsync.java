@@ -90,6 +90,11 @@ public interface ProjectServiceAsync {
    */
   void getProject(long projectId, AsyncCallback<ProjectRootNode> callback);
 
+  /**
+   * @see ProjectService#openProject(long)
+   */
+  void openProject(long projectId, AsyncCallback<OpenedProject> callback);
+
   /**
    * @see ProjectService#loadProjectSettings(long)
    */
@@ -184,6 +189,12 @@ public interface ProjectServiceAsync {
    */
   void getBuildResult(long projectId, String target, AsyncCallback<RpcResult> callback);
 
+  /**
+   * @see ProjectService#getBuildProgress(long, String, int)
+   */
+  void getBuildProgress(long projectId, String target, int lastProgress,
+      AsyncCallback<RpcResult> callback);
+
   /**
    * @see ProjectService#addFile(long, String)
    */
@@ -13,10 +13,16 @@ import com.google.appinventor.shared.rpc.UploadResponse;
 import com.google.appinventor.shared.rpc.project.UserProject;
 import com.google.appinventor.shared.rpc.project.youngandroid.YoungAndroidProjectNode;
 
+import com.google.common.io.Files;
+
 import junitx.framework.ListAssert;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -198,4 +204,49 @@ public class FileImporterImplTest extends LocalDatastoreTestCase {
     }
   }
 
+  private List<String> uploadInPieces(String zipFileName, int pieceSize) throws Exception {
+    byte[] content = Files.toByteArray(new File(TESTING_SOURCE_PATH + zipFileName));
+    List<String> pieces = new ArrayList<String>();
+    for (int start = 0; start < content.length; start += pieceSize) {
+      int end = Math.min(start + pieceSize, content.length);
+      pieces.add(fileImporter.importTempFile(
+          new ByteArrayInputStream(Arrays.copyOfRange(content, start, end))));
+    }
+    return pieces;
+  }
+
+  public void testImportProjectFromTempFiles() throws Exception {
+    List<String> pieces = uploadInPieces("Project1.zip", 100);
+    assertTrue(pieces.size() > 1);
+    UserProject userProject =
+        fileImporter.importProjectFromTempFiles(USER_ID, PROJECT_NAME_1, pieces);
+    assertEquals(PROJECT_NAME_1, userProject.getProjectName());
+    List<String> projectSourceFiles =
+        storageIo.getProjectSourceFiles(USER_ID, userProject.getProjectId());
+    ListAssert.assertContains(projectSourceFiles,
+        "src/appinventor/ai_joeuser/project1/Screen1.scm");
+    ListAssert.assertContains(projectSourceFiles,
+        "src/appinventor/ai_joeuser/project1/Screen1.blk");
+
+    // The pieces are gone once the project is created
+    try {
+      storageIo.openTempFile(pieces.get(0));
+      fail();
+    } catch (FileNotFoundException e) {
+      // expected
+    }
+  }
+
+  public void testImportProjectFromTempFiles_missingPiece() throws Exception {
+    List<String> pieces = uploadInPieces("Project1.zip", 100);
+    storageIo.deleteTempFile(pieces.get(pieces.size() / 2));
+    try {
+      fileImporter.importProjectFromTempFiles(USER_ID, PROJECT_NAME_1, pieces);
+      fail();
+    } catch (FileImporterException e) {
+      assertEquals(UploadResponse.Status.IO_EXCEPTION, e.uploadResponse.getStatus());
+    }
+    assertTrue(storageIo.getProjects(USER_ID).isEmpty());
+  }
+
 }
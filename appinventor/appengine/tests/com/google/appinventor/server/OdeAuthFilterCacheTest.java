@@ -0,0 +1,150 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import com.google.appinventor.common.testutils.TestUtils;
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.shared.rpc.user.User;
+
+import junit.framework.TestCase;
+
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * Tests the caches of verified cookies and recently fetched users kept by
+ * {@link OdeAuthFilter}.
+ *
+ */
+public class OdeAuthFilterCacheTest extends TestCase {
+  private static final String KEYSTORE_PATH = TestUtils.APP_INVENTOR_ROOT_DIR +
+      "/appengine/build/war/WEB-INF/keystore";
+
+  private static final String[] USER_IDS = { "cache1", "cache2", "cache3", "cache4" };
+
+  private final LocalUser localUser = LocalUser.getInstance();
+  private StorageIo storageIoMock;
+  private OdeAuthFilter filter;
+
+  @Override
+  protected void setUp() throws Exception {
+    OdeAuthFilter.sessionKeyFile.setForTest(KEYSTORE_PATH);
+    storageIoMock = createMock(StorageIo.class);
+    filter = new OdeAuthFilter(storageIoMock);
+    // The caches are static
+    for (String userId : USER_IDS) {
+      OdeAuthFilter.invalidateUser(userId);
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    localUser.set(null);
+    OdeAuthFilter.idleTimeout.setForTest(120);
+  }
+
+  public void testUserReusedFromCache() {
+    expect(storageIoMock.getUser("cache1"))
+        .andReturn(new User("cache1", "cache1@test.com", true, false, "session1")).once();
+    replay(storageIoMock);
+
+    filter.setUserFromUserId("cache1", false, false);
+    assertEquals("cache1@test.com", localUser.getUserEmail());
+    assertEquals("session1", localUser.getSessionId());
+
+    filter.setUserFromUserId("cache1", false, true);
+    assertEquals("cache1", localUser.getUserId());
+    assertEquals("cache1@test.com", localUser.getUserEmail());
+    assertTrue(localUser.isReadOnly());
+    // Session ids can change on any instance, so they are never served from the cache
+    assertNull(localUser.getSessionId());
+    verify(storageIoMock);
+  }
+
+  public void testCachedUserIsCopied() {
+    expect(storageIoMock.getUser("cache2"))
+        .andReturn(new User("cache2", "cache2@test.com", true, false, "session2")).once();
+    replay(storageIoMock);
+
+    filter.setUserFromUserId("cache2", true, false);
+    assertTrue(localUser.getIsAdmin());
+    localUser.setSessionId("changed");
+
+    filter.setUserFromUserId("cache2", false, false);
+    assertFalse(localUser.getIsAdmin());
+    assertNull(localUser.getSessionId());
+    verify(storageIoMock);
+  }
+
+  public void testUserWithoutTosNotCached() {
+    expect(storageIoMock.getUser("cache3"))
+        .andReturn(new User("cache3", "cache3@test.com", false, false, null)).times(2);
+    replay(storageIoMock);
+
+    filter.setUserFromUserId("cache3", false, false);
+    filter.setUserFromUserId("cache3", false, false);
+    assertFalse(localUser.getUserTosAccepted());
+    verify(storageIoMock);
+  }
+
+  public void testInvalidateUser() {
+    expect(storageIoMock.getUser("cache4"))
+        .andReturn(new User("cache4", "cache4@test.com", true, false, null)).times(2);
+    replay(storageIoMock);
+
+    filter.setUserFromUserId("cache4", false, false);
+    OdeAuthFilter.invalidateUser("cache4");
+    filter.setUserFromUserId("cache4", false, false);
+    verify(storageIoMock);
+  }
+
+  public void testVerifiedCookieReused() {
+    OdeAuthFilter.UserInfo info = new OdeAuthFilter.UserInfo("cookie1", false);
+    HttpServletRequest request = requestWithCookie(info.buildCookie(false));
+
+    OdeAuthFilter.UserInfo first = OdeAuthFilter.getUserInfo(request);
+    assertEquals("cookie1", first.getUserId());
+    assertEquals(info.ts, first.ts);
+    // Changing one request's copy doesn't change the next one
+    first.setIsAdmin(true);
+
+    OdeAuthFilter.UserInfo second = OdeAuthFilter.getUserInfo(request);
+    assertNotSame(first, second);
+    assertEquals("cookie1", second.getUserId());
+    assertEquals(info.ts, second.ts);
+    assertFalse(second.getIsAdmin());
+  }
+
+  public void testVerifiedCookieExpires() {
+    OdeAuthFilter.UserInfo info = new OdeAuthFilter.UserInfo("cookie2", false);
+    info.ts = System.currentTimeMillis() - 5 * 60 * 1000;
+    HttpServletRequest request = requestWithCookie(info.buildCookie(false));
+    assertNotNull(OdeAuthFilter.getUserInfo(request));
+
+    // A cookie's lifetime is still checked when it comes from the cache
+    OdeAuthFilter.idleTimeout.setForTest(4);
+    assertNull(OdeAuthFilter.getUserInfo(request));
+  }
+
+  public void testInvalidCookieNotCached() {
+    HttpServletRequest request = requestWithCookie("NotACookie");
+    assertNull(OdeAuthFilter.getUserInfo(request));
+    assertNull(OdeAuthFilter.getUserInfo(request));
+  }
+
+  private static HttpServletRequest requestWithCookie(String value) {
+    HttpServletRequest request = createMock(HttpServletRequest.class);
+    expect(request.getCookies())
+        .andReturn(new Cookie[] { new Cookie("AppInventor", value) }).anyTimes();
+    replay(request);
+    return request;
+  }
+}
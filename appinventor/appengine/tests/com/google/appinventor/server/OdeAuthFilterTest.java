@@ -8,12 +8,15 @@ package com.google.appinventor.server;
 import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.expectLastCall;
 
+import com.google.appinventor.server.storage.StorageIo;
 import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.common.testutils.TestUtils;
 
 import static junit.framework.Assert.*;
 import junitx.framework.Assert;
 
+import org.easymock.Capture;
+import org.easymock.CaptureType;
 import org.easymock.EasyMock;
 import org.junit.After;
 import org.junit.Before;
@@ -143,4 +146,47 @@ public class OdeAuthFilterTest {
     // getUserTosAccepted should not have been called.
     PowerMock.verifyAll();
   }
+
+  @Test
+  public void testSetUserFromUserIdKeepsOnlyWhatOtherInstancesCannotChange() throws Exception {
+    User stored = new User("41", "user41@test.com", true, false, "session");
+    stored.setPassword("hash");
+    StorageIo storageIo = PowerMock.createMock(StorageIo.class);
+    // Fetched once, served from the cache once, and fetched again after invalidateUser
+    expect(storageIo.getUser("41")).andReturn(stored).times(2);
+    Capture<User> users = EasyMock.newCapture(CaptureType.ALL);
+    localUserMock.set(EasyMock.capture(users));
+    expectLastCall().times(3);
+    PowerMock.replayAll();
+
+    OdeAuthFilter myAuthFilter = new OdeAuthFilter(storageIo);
+    myAuthFilter.setUserFromUserId("41", false, false);
+    myAuthFilter.setUserFromUserId("41", false, true);
+    OdeAuthFilter.invalidateUser("41");
+    myAuthFilter.setUserFromUserId("41", false, false);
+
+    PowerMock.verify(storageIo);
+    User cached = users.getValues().get(1);
+    assertEquals("user41@test.com", cached.getUserEmail());
+    assertTrue(cached.isReadOnly());
+    assertNull(cached.getSessionId());
+    assertNull(cached.getPassword());
+  }
+
+  @Test
+  public void testSetUserFromUserIdDoesNotKeepAdmins() throws Exception {
+    User admin = new User("42", "admin42@test.com", true, true, null);
+    StorageIo storageIo = PowerMock.createMock(StorageIo.class);
+    // An admin whose access is revoked on another instance must not keep it here
+    expect(storageIo.getUser("42")).andReturn(admin).times(2);
+    localUserMock.set(admin);
+    expectLastCall().times(2);
+    PowerMock.replayAll();
+
+    OdeAuthFilter myAuthFilter = new OdeAuthFilter(storageIo);
+    myAuthFilter.setUserFromUserId("42", false, false);
+    myAuthFilter.setUserFromUserId("42", false, false);
+
+    PowerMock.verify(storageIo);
+  }
 }
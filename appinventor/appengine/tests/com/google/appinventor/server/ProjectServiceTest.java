@@ -19,6 +19,7 @@ import com.google.appinventor.server.storage.StorageIoInstanceHolder;
 import com.google.appinventor.shared.rpc.BlocksTruncatedException;
 import com.google.appinventor.shared.rpc.project.FileDescriptor;
 import com.google.appinventor.shared.rpc.project.FileDescriptorWithContent;
+import com.google.appinventor.shared.rpc.project.OpenedProject;
 import com.google.appinventor.shared.rpc.project.ProjectNode;
 import com.google.appinventor.shared.rpc.project.ProjectRootNode;
 import com.google.appinventor.shared.rpc.project.UserProject;
@@ -47,6 +48,7 @@ import org.powermock.modules.junit4.PowerMockRunner;
 
 import java.io.IOException;
 import java.io.StringReader;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -491,6 +493,121 @@ public class ProjectServiceTest {
     PowerMock.verifyAll();
   }
 
+  @Test
+  public void testOpenProject() throws Exception {
+    expect(localUserMock.getUserId()).andReturn(USER_ID_ONE).anyTimes();
+    expect(localUserMock.getUser()).andReturn(storageIo.getUser(USER_ID_ONE, USER_EMAIL_ONE)).anyTimes();
+    PowerMock.replayAll();
+    do_init();
+
+    NewYoungAndroidProjectParameters params = new NewYoungAndroidProjectParameters(
+        PACKAGE_BASE + PROJECT1_NAME);
+    long projectId = projectServiceImpl.newProject(
+        YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, PROJECT1_NAME, params).getProjectId();
+    String formFileId = "src/com/domain/noname/Project1/Screen1.scm";
+    String blocksFileId = "src/com/domain/noname/Project1/Screen1.bky";
+    projectServiceImpl.save("test-session", projectId, blocksFileId, YOUNG_ANDROID_COMMENT);
+
+    OpenedProject opened = projectServiceImpl.openProject(projectId);
+    assertEquals(projectServiceImpl.getProject(projectId).getAllSourceNodes().size(),
+        opened.getRootNode().getAllSourceNodes().size());
+    assertEquals(projectServiceImpl.loadProjectSettings(projectId), opened.getSettings());
+    // Only Screen1's form and blocks are sent along, not its yail
+    assertEquals(2, opened.getFiles().size());
+    assertEquals(projectServiceImpl.load(projectId, formFileId),
+        opened.getFiles().get(formFileId).getContent());
+    assertEquals(YOUNG_ANDROID_COMMENT, opened.getFiles().get(blocksFileId).getContent());
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testProjectTreeFollowsFileChanges() throws Exception {
+    expect(localUserMock.getUserId()).andReturn(USER_ID_ONE).anyTimes();
+    PowerMock.replayAll();
+    do_init();
+
+    NewYoungAndroidProjectParameters params = new NewYoungAndroidProjectParameters(
+        PACKAGE_BASE + PROJECT1_NAME);
+    long projectId = projectServiceImpl.newProject(
+        YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, PROJECT1_NAME, params).getProjectId();
+    String screen2FileId = "src/com/domain/noname/Project1/Screen2.scm";
+    int sourceCount = projectServiceImpl.getProject(projectId).getAllSourceNodes().size();
+
+    // The tree is cached now, but files added or removed right away must show
+    // up in it all the same
+    projectServiceImpl.addFile(projectId, screen2FileId);
+    ProjectRootNode root = projectServiceImpl.getProject(projectId);
+    assertEquals(sourceCount + 1, root.getAllSourceNodes().size());
+    assertNotNull(root.getSourceNode(screen2FileId));
+
+    projectServiceImpl.deleteFile("test-session", projectId, screen2FileId);
+    root = projectServiceImpl.getProject(projectId);
+    assertEquals(sourceCount, root.getAllSourceNodes().size());
+    assertNull(root.getSourceNode(screen2FileId));
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testCachedProjectTreeNotShared() throws Exception {
+    expect(localUserMock.getUserId()).andReturn(USER_ID_ONE).anyTimes();
+    PowerMock.replayAll();
+    do_init();
+
+    NewYoungAndroidProjectParameters params = new NewYoungAndroidProjectParameters(
+        PACKAGE_BASE + PROJECT1_NAME);
+    long projectId = projectServiceImpl.newProject(
+        YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, PROJECT1_NAME, params).getProjectId();
+    ProjectRootNode first = projectServiceImpl.getProject(projectId);
+    int sourceCount = first.getAllSourceNodes().size();
+
+    // Each request gets its own copy of the cached tree
+    ProjectRootNode second = projectServiceImpl.getProject(projectId);
+    assertNotSame(first, second);
+    second.setName("Changed");
+    ProjectNode source = second.getAllSourceNodes().get(0);
+    source.getParent().removeChild(source);
+    ProjectRootNode third = projectServiceImpl.getProject(projectId);
+    assertEquals(PROJECT1_NAME, third.getName());
+    assertEquals(sourceCount, third.getAllSourceNodes().size());
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testLoadDataFile() throws Exception {
+    expect(localUserMock.getUserId()).andReturn(USER_ID_ONE).anyTimes();
+    PowerMock.replayAll();
+    do_init();
+
+    NewYoungAndroidProjectParameters params = new NewYoungAndroidProjectParameters(
+        PACKAGE_BASE + PROJECT1_NAME);
+    long projectId = projectServiceImpl.newProject(
+        YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, PROJECT1_NAME, params).getProjectId();
+    String jsonFileId = "assets/data.json";
+    storageIo.addSourceFilesToProject(USER_ID_ONE, projectId, false, jsonFileId);
+    storageIo.uploadFile(projectId, jsonFileId, USER_ID_ONE,
+        "{\"x\": [1, 1.0, 1.50, 1e3, -0, 123456789012345678901, 7, 8, 9, 10, 11, 12],"
+        + " \"name\": \"a\\\"b\", \"nested\": [{\"k\": 2.50}, [true, \"s\"]]}",
+        StorageUtil.DEFAULT_CHARSET);
+
+    // Numbers are shown as they were when the file was parsed with json.org,
+    // and only the first 10 rows are returned
+    List<List<String>> columns = projectServiceImpl.loadDataFile(projectId, jsonFileId);
+    assertEquals(Arrays.asList(
+        Arrays.asList("x", "1", "1.0", "1.5", "1000.0", "-0", "123456789012345678901",
+            "7", "8", "9", "10"),
+        Arrays.asList("name", "a\"b"),
+        Arrays.asList("nested", "{\"k\":2.5}", "[true,\"s\"]")), columns);
+
+    // A file that only looks like JSON is parsed as CSV
+    String csvFileId = "assets/data.csv";
+    storageIo.addSourceFilesToProject(USER_ID_ONE, projectId, false, csvFileId);
+    storageIo.uploadFile(projectId, csvFileId, USER_ID_ONE, "{a,b\n1,2\n",
+        StorageUtil.DEFAULT_CHARSET);
+    columns = projectServiceImpl.loadDataFile(projectId, csvFileId);
+    assertEquals(Arrays.asList(Arrays.asList("{a", "1"), Arrays.asList("b", "2")), columns);
+    PowerMock.verifyAll();
+  }
+
   private String getProjectProperties(String userId, long projectId) {
     return storageIo.downloadFile(userId, projectId,
         "youngandroidproject/project.properties", StorageUtil.DEFAULT_CHARSET);
@@ -0,0 +1,173 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2026 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server;
+
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.server.storage.StorageIoInstanceHolder;
+import com.google.appinventor.shared.rpc.UploadResponse;
+import com.google.appinventor.shared.rpc.project.UserProject;
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.riq.MockHttpServletRequest;
+import com.riq.MockHttpServletResponse;
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.powermock.api.easymock.PowerMock;
+import org.powermock.core.classloader.annotations.PrepareForTest;
+import org.powermock.modules.junit4.PowerMockRunner;
+
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
+import static org.easymock.EasyMock.expect;
+
+/**
+ * Tests for {@link UploadServlet}. Mocks out FileImporter. Tests the handling
+ * of the requests that upload a project archive in pieces.
+ *
+ */
+
+@RunWith(PowerMockRunner.class)
+@PrepareForTest({ FileImporterImpl.class, LocalUser.class, UploadServlet.class })
+public class UploadServletTest {
+  private static final String USER_ID = "1";
+  private static final String UPLOAD_URL = "http://localhost/ode/upload/";
+  private static final String PIECE1 = "__TEMP__/piece1";
+  private static final String PIECE2 = "__TEMP__/piece2";
+
+  private FileImporterImpl importerMock;
+  private LocalUser localUserMock;
+  private StorageIo storageIoMock;
+
+  @Before
+  public void setUp() throws Exception {
+    PowerMock.mockStatic(LocalUser.class);
+    localUserMock = PowerMock.createNiceMock(LocalUser.class);
+    expect(LocalUser.getInstance()).andReturn(localUserMock).anyTimes();
+    expect(localUserMock.getUserId()).andReturn(USER_ID).anyTimes();
+    importerMock = PowerMock.createMock(FileImporterImpl.class);
+    PowerMock.expectNew(FileImporterImpl.class).andReturn(importerMock).anyTimes();
+
+    storageIoMock = PowerMock.createMock(StorageIo.class);
+    StorageIoInstanceHolder.setInstance(storageIoMock);
+  }
+
+  @After
+  public void tearDown() {
+    UploadServlet.MAX_CHUNK_BYTES.setForTest(4 * 1024 * 1024);
+  }
+
+  private static UploadResponse upload(MockHttpServletRequest request) throws Exception {
+    MockHttpServletResponse response = new MockHttpServletResponse();
+    new UploadServlet().doPost(request, response);
+    return UploadResponse.extractUploadResponse(response.getContentAsString());
+  }
+
+  @Test
+  public void testUploadProjectChunk() throws Exception {
+    byte[] content = "PK piece of an archive".getBytes(Charsets.UTF_8);
+    Capture<InputStream> stream = EasyMock.newCapture();
+    expect(importerMock.importTempFile(EasyMock.capture(stream))).andReturn(PIECE1);
+    storageIoMock.cleanupTempFiles();
+    PowerMock.expectLastCall().once();
+    PowerMock.replayAll();
+
+    MockHttpServletRequest request = new MockHttpServletRequest(UPLOAD_URL + "projectchunk");
+    request.setPostData(content);
+    UploadResponse response = upload(request);
+    assertEquals(UploadResponse.Status.SUCCESS, response.getStatus());
+    assertEquals(PIECE1, response.getInfo());
+    assertTrue(Arrays.equals(content, ByteStreams.toByteArray(stream.getValue())));
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testUploadProjectChunkTooLarge() throws Exception {
+    UploadServlet.MAX_CHUNK_BYTES.setForTest(4);
+    // The piece must not be stored
+    storageIoMock.cleanupTempFiles();
+    PowerMock.expectLastCall().once();
+    PowerMock.replayAll();
+
+    MockHttpServletRequest request = new MockHttpServletRequest(UPLOAD_URL + "projectchunk");
+    request.setPostData(new byte[] { 1, 2, 3, 4, 5 });
+    UploadResponse response = upload(request);
+    assertEquals(UploadResponse.Status.FILE_TOO_LARGE, response.getStatus());
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testUploadProjectFromChunks() throws Exception {
+    UserProject project = new UserProject(1234L, "MyProject", "YoungAndroid", 1L, false);
+    expect(importerMock.importProjectFromTempFiles(USER_ID, "MyProject",
+        Arrays.asList(PIECE1, PIECE2))).andReturn(project);
+    PowerMock.replayAll();
+
+    MockHttpServletRequest request =
+        new MockHttpServletRequest(UPLOAD_URL + "projectchunks/MyProject");
+    // Blank lines and surrounding spaces are ignored
+    request.setPostData(PIECE1 + "\n\n " + PIECE2 + " \n", "UTF-8");
+    UploadResponse response = upload(request);
+    assertEquals(UploadResponse.Status.SUCCESS, response.getStatus());
+    assertEquals(project.toString(), response.getInfo());
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testUploadProjectFromChunksWithMissingPiece() throws Exception {
+    expect(importerMock.importProjectFromTempFiles(USER_ID, "MyProject",
+        Arrays.asList(PIECE1, PIECE2)))
+        .andThrow(new FileImporterException(UploadResponse.Status.IO_EXCEPTION));
+    PowerMock.replayAll();
+
+    MockHttpServletRequest request =
+        new MockHttpServletRequest(UPLOAD_URL + "projectchunks/MyProject");
+    request.setPostData(PIECE1 + "\n" + PIECE2, "UTF-8");
+    UploadResponse response = upload(request);
+    assertEquals(UploadResponse.Status.IO_EXCEPTION, response.getStatus());
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testUploadProjectFromChunksRejectsOtherFiles() throws Exception {
+    // Only temporary files may be imported
+    PowerMock.replayAll();
+
+    MockHttpServletRequest request =
+        new MockHttpServletRequest(UPLOAD_URL + "projectchunks/MyProject");
+    request.setPostData(PIECE1 + "\nsrc/Screen1.scm", "UTF-8");
+    try {
+      upload(request);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // Not a project archive piece
+    }
+    PowerMock.verifyAll();
+  }
+
+  @Test
+  public void testUploadProjectFromNoChunks() throws Exception {
+    PowerMock.replayAll();
+
+    MockHttpServletRequest request =
+        new MockHttpServletRequest(UPLOAD_URL + "projectchunks/MyProject");
+    request.setPostData("\n", "UTF-8");
+    try {
+      upload(request);
+      fail();
+    } catch (IllegalArgumentException expected) {
+      // Missing project archive pieces
+    }
+    PowerMock.verifyAll();
+  }
+}
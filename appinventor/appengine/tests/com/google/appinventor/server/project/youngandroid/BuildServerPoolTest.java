@@ -0,0 +1,228 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.project.youngandroid;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link BuildServerPool}.
+ */
+public class BuildServerPoolTest extends TestCase {
+
+  private static final String VARS = "<b>maximum-simultaneous-build-tasks-allowed</b> 16<br>"
+      + "<b>active-build-tasks</b> 3<br>";
+
+  private final List<HttpServer> servers = new ArrayList<HttpServer>();
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (HttpServer server : servers) {
+      server.stop(0);
+    }
+    super.tearDown();
+  }
+
+  /*
+   * Starts a fake build server whose /buildserver/health page is answered
+   * by health, and returns its host:port.
+   */
+  private String startServer(final HttpHandler health) throws IOException {
+    HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.createContext("/buildserver/health", health);
+    server.createContext("/buildserver/vars", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, VARS);
+      }
+    });
+    server.start();
+    servers.add(server);
+    return "localhost:" + server.getAddress().getPort();
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body)
+      throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  public void testParseVars() {
+    String vars = "<html><body><tt><b>state</b> UP<br>"
+        + "<b>maximum-simultaneous-build-tasks-allowed</b> 16<br>"
+        + "<b>completed-build-tasks</b> 1200<br>"
+        + "<b>maximum-simultaneous-build-tasks-occurred</b> 15<br>"
+        + "<b>active-build-tasks</b> 3<br></tt></body></html>";
+    assertTrue(Arrays.equals(new int[] { 3, 16 }, BuildServerPool.parseVars(vars)));
+
+    String unlimited = "<b>maximum-simultaneous-build-tasks-allowed</b> unlimited<br>"
+        + "<b>active-build-tasks</b> 7<br>";
+    assertTrue(Arrays.equals(new int[] { 7, 0 }, BuildServerPool.parseVars(unlimited)));
+
+    assertNull(BuildServerPool.parseVars("<html><body>Not a build server</body></html>"));
+  }
+
+  public void testHosts() {
+    BuildServerPool pool = new BuildServerPool(" a:9990, b:9990 ,", 1000);
+    assertFalse(pool.isEmpty());
+    assertTrue(new BuildServerPool("", 1000).isEmpty());
+    // A single server is used without polling it
+    List<BuildServerPool.Node> single = new BuildServerPool("localhost:9990", 1000).candidates();
+    assertEquals(1, single.size());
+    assertEquals("localhost:9990", single.get(0).getHost());
+  }
+
+  public void testOrder() {
+    long now = System.currentTimeMillis();
+    BuildServerPool.Node busy = new BuildServerPool.Node("busy");
+    busy.setStatus(true, 12, 16, now);
+    BuildServerPool.Node idle = new BuildServerPool.Node("idle");
+    idle.setStatus(true, 2, 16, now);
+    BuildServerPool.Node small = new BuildServerPool.Node("small");
+    small.setStatus(true, 2, 4, now);
+    BuildServerPool.Node draining = new BuildServerPool.Node("draining");
+    draining.setStatus(false, 0, 16, now);
+
+    assertEquals(Arrays.asList(idle, small, busy, draining),
+        BuildServerPool.order(Arrays.asList(draining, busy, small, idle)));
+
+    // Builds sent to a server count against it until it is polled again
+    for (int i = 0; i < 6; i++) {
+      idle.recordAccepted(100);
+    }
+    assertEquals(Arrays.asList(small, idle, busy, draining),
+        BuildServerPool.order(Arrays.asList(draining, busy, small, idle)));
+
+    // A server that turns a build away goes after all healthy ones
+    small.recordRejected(100);
+    assertEquals(Arrays.asList(idle, busy, draining, small),
+        BuildServerPool.order(Arrays.asList(draining, busy, small, idle)));
+  }
+
+  public void testLatencyBreaksTies() {
+    long now = System.currentTimeMillis();
+    BuildServerPool.Node slow = new BuildServerPool.Node("slow");
+    slow.setStatus(true, 0, 0, now);
+    slow.recordAccepted(900);
+    BuildServerPool.Node fast = new BuildServerPool.Node("fast");
+    fast.setStatus(true, 0, 0, now);
+    fast.recordAccepted(100);
+    assertEquals(Arrays.asList(fast, slow), BuildServerPool.order(Arrays.asList(slow, fast)));
+  }
+
+  public void testStatus() {
+    BuildServerPool.Node node = new BuildServerPool.Node("a:9990");
+    node.setStatus(true, 3, 16, System.currentTimeMillis());
+    node.recordAccepted(100);
+    node.recordAccepted(200);
+    assertEquals(120.0, node.getLatencyMillis(), 0.001);
+    assertEquals("a:9990 healthy, 5/16 tasks, accepts builds in 120 ms", node.toString());
+    node.setStatus(false, 0, 0, System.currentTimeMillis());
+    assertEquals("a:9990 unavailable, 0/unlimited tasks, accepts builds in 120 ms",
+        node.toString());
+  }
+
+  public void testStaleServersPolledConcurrently() throws Exception {
+    // Each server only reports itself healthy if the other is polled at the same time
+    final CyclicBarrier bothPolled = new CyclicBarrier(2);
+    HttpHandler health = new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        try {
+          bothPolled.await(1, TimeUnit.SECONDS);
+          respond(exchange, 200, "ok");
+        } catch (Exception e) {
+          respond(exchange, 503, "polled alone");
+        }
+      }
+    };
+    BuildServerPool pool = new BuildServerPool(startServer(health) + "," + startServer(health),
+        60000);
+    List<BuildServerPool.Node> candidates = pool.candidates();
+    assertEquals(2, candidates.size());
+    BuildServerPool.Node unhealthy = new BuildServerPool.Node("unhealthy");
+    unhealthy.setStatus(false, 0, 16, System.currentTimeMillis());
+    // Both polled servers rank before an unhealthy one
+    List<BuildServerPool.Node> ordered = BuildServerPool.order(
+        Arrays.asList(unhealthy, candidates.get(0), candidates.get(1)));
+    assertSame(unhealthy, ordered.get(2));
+  }
+
+  public void testServerPolledByOneRequest() throws Exception {
+    final AtomicInteger polls = new AtomicInteger();
+    final CountDownLatch polling = new CountDownLatch(1);
+    final CountDownLatch release = new CountDownLatch(1);
+    HttpHandler slowHealth = new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        polls.incrementAndGet();
+        polling.countDown();
+        try {
+          release.await(30, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        respond(exchange, 200, "ok");
+      }
+    };
+    HttpHandler health = new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, "ok");
+      }
+    };
+    final BuildServerPool pool =
+        new BuildServerPool(startServer(slowHealth) + "," + startServer(health), 60000);
+    Thread first = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        pool.candidates();
+      }
+    });
+    first.start();
+    assertTrue(polling.await(1, TimeUnit.SECONDS));
+
+    // A second request doesn't wait for the poll or poll the server again: it
+    // finishes while the poll is still held up
+    final AtomicInteger secondCandidates = new AtomicInteger();
+    final CountDownLatch secondDone = new CountDownLatch(1);
+    Thread second = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        secondCandidates.set(pool.candidates().size());
+        secondDone.countDown();
+      }
+    });
+    second.start();
+    assertTrue(secondDone.await(10, TimeUnit.SECONDS));
+    assertTrue(first.isAlive());
+    assertEquals(2, secondCandidates.get());
+    release.countDown();
+    first.join();
+    pool.candidates();
+    assertEquals(1, polls.get());
+  }
+}
@@ -5,15 +5,100 @@
 
 package com.google.appinventor.server.project.youngandroid;
 
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+
+import com.google.appinventor.server.storage.StorageIo;
+import com.google.appinventor.shared.rpc.RpcResult;
+import com.google.appinventor.shared.rpc.user.User;
+
+import java.util.Arrays;
+import java.util.Collections;
+
 import junit.framework.TestCase;
 import org.junit.Test;
 
 public class YoungAndroidProjectServiceTest extends TestCase {
-	
+  private static final String USER_ID = "1";
+  private static final long PROJECT_ID = 1234;
+  private static final String TARGET = "Android";
+  private static final String BUILD_OUTPUT = "build/Android/build.out";
+
+  private StorageIo storageIo;
+  private YoungAndroidProjectService projectService;
+  private User user;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    storageIo = createMock(StorageIo.class);
+    projectService = new YoungAndroidProjectService(storageIo);
+    user = new User(USER_ID, "NonSuch", false, false, null);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    YoungAndroidProjectService.buildProgressWait.setForTest(20000);
+    super.tearDown();
+  }
+
   /* Testing the case of a null build URL */
   @Test
   public void testBuildErrorMsgDoesntThrowNPE() {
     YoungAndroidProjectService obj = new YoungAndroidProjectService(null);
     obj.buildErrorMsg("TestException", null, "userID", 0); 
   }
+
+  /* The long poll answers with the build result as soon as the build finishes */
+  @Test
+  public void testGetBuildProgressReturnsOnFinish() {
+    expect(storageIo.getBuildStatus(USER_ID, PROJECT_ID))
+        .andReturn(40).times(2)
+        .andStubReturn(StorageIo.BUILD_FINISHED);
+    expect(storageIo.getProjectOutputFiles(USER_ID, PROJECT_ID))
+        .andReturn(Arrays.asList(BUILD_OUTPUT));
+    expect(storageIo.downloadFile(USER_ID, PROJECT_ID, BUILD_OUTPUT, "UTF-8"))
+        .andReturn("{\"result\":0,\"output\":\"Done\",\"error\":\"\"}");
+    expect(storageIo.updateProjectBuiltDate(eq(USER_ID), eq(PROJECT_ID), anyLong()))
+        .andReturn(0L);
+    replay(storageIo);
+
+    RpcResult result = projectService.getBuildProgress(user, PROJECT_ID, TARGET, 40);
+    assertEquals(0, result.getResult());
+    assertEquals("Done", result.getOutput());
+    verify(storageIo);
+  }
+
+  /* The long poll answers without waiting when the progress has moved on */
+  @Test
+  public void testGetBuildProgressReturnsOnChange() {
+    expect(storageIo.getBuildStatus(USER_ID, PROJECT_ID)).andStubReturn(60);
+    replay(storageIo);
+
+    RpcResult result = projectService.getBuildProgress(user, PROJECT_ID, TARGET, 40);
+    assertEquals(-1, result.getResult());
+    assertEquals("60", result.getOutput());
+    verify(storageIo);
+  }
+
+  /* The long poll gives up at the end of the wait and reports the build as not done */
+  @Test
+  public void testGetBuildProgressTimesOut() {
+    YoungAndroidProjectService.buildProgressWait.setForTest(1000);
+    expect(storageIo.getBuildStatus(USER_ID, PROJECT_ID)).andStubReturn(40);
+    expect(storageIo.getProjectOutputFiles(USER_ID, PROJECT_ID))
+        .andReturn(Collections.<String>emptyList());
+    replay(storageIo);
+
+    long start = System.currentTimeMillis();
+    RpcResult result = projectService.getBuildProgress(user, PROJECT_ID, TARGET, 40);
+    assertTrue(System.currentTimeMillis() - start >= 1000);
+    assertEquals(-1, result.getResult());
+    assertEquals("40", result.getOutput());
+    verify(storageIo);
+  }
 }
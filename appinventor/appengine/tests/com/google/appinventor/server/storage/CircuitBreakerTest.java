@@ -0,0 +1,90 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link CircuitBreaker}.
+ */
+public class CircuitBreakerTest extends TestCase {
+
+  private static class FakeClockBreaker extends CircuitBreaker {
+    long time = 1000;
+
+    FakeClockBreaker(int threshold, long cooldownMillis) {
+      super(threshold, cooldownMillis);
+    }
+
+    @Override
+    long now() {
+      return time;
+    }
+  }
+
+  public void testOpensAfterThreshold() {
+    FakeClockBreaker breaker = new FakeClockBreaker(3, 100);
+    breaker.recordFailure();
+    breaker.recordFailure();
+    assertTrue(breaker.allowRequest());
+    breaker.recordFailure();
+    assertTrue(breaker.isOpen());
+    assertFalse(breaker.allowRequest());
+  }
+
+  public void testSuccessResetsFailures() {
+    FakeClockBreaker breaker = new FakeClockBreaker(2, 100);
+    breaker.recordFailure();
+    breaker.recordSuccess();
+    breaker.recordFailure();
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+
+  public void testHalfOpenAfterCooldown() {
+    FakeClockBreaker breaker = new FakeClockBreaker(1, 100);
+    breaker.recordFailure();
+    assertFalse(breaker.allowRequest());
+    breaker.time += 100;
+    // Only a single trial request is let through
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+    // A failed trial opens the breaker for another cool down
+    breaker.recordFailure();
+    assertFalse(breaker.allowRequest());
+    breaker.time += 100;
+    assertTrue(breaker.allowRequest());
+    breaker.recordSuccess();
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+    assertTrue(breaker.allowRequest());
+  }
+
+  public void testNeutralKeepsState() {
+    FakeClockBreaker breaker = new FakeClockBreaker(2, 100);
+    breaker.recordFailure();
+    breaker.recordNeutral();
+    breaker.recordFailure();
+    // A neutral job doesn't reset the consecutive failures
+    assertTrue(breaker.isOpen());
+    breaker.time += 100;
+    assertTrue(breaker.allowRequest());
+    // Nor does a neutral trial close the breaker, but it lets another trial through
+    breaker.recordNeutral();
+    assertTrue(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+    assertFalse(breaker.allowRequest());
+  }
+
+  public void testDisabled() {
+    FakeClockBreaker breaker = new FakeClockBreaker(0, 100);
+    for (int i = 0; i < 10; i++) {
+      breaker.recordFailure();
+    }
+    assertFalse(breaker.isOpen());
+    assertTrue(breaker.allowRequest());
+  }
+}
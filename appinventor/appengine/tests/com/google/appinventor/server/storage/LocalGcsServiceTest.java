@@ -0,0 +1,208 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.server.storage;
+
+import com.google.appengine.tools.cloudstorage.GcsFileOptions;
+import com.google.appengine.tools.cloudstorage.GcsFilename;
+import com.google.appengine.tools.cloudstorage.GcsInputChannel;
+import com.google.appengine.tools.cloudstorage.GcsOutputChannel;
+import com.google.appengine.tools.cloudstorage.ListItem;
+import com.google.appengine.tools.cloudstorage.ListOptions;
+import com.google.appengine.tools.cloudstorage.ListResult;
+import com.google.common.io.ByteStreams;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests for {@link LocalGcsService}.
+ */
+public class LocalGcsServiceTest extends TestCase {
+
+  private static final GcsFilename FILE = new GcsFilename("bucket", "1234/assets/kitty.png");
+  private static final byte[] CONTENT = { (byte) 0, (byte) 1, (byte) 32, (byte) 255 };
+
+  private Path root;
+  private LocalGcsService service;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    root = Files.createTempDirectory("localgcs");
+    service = new LocalGcsService(root);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    deleteRecursively(root.toFile());
+    super.tearDown();
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
+  private byte[] read(GcsFilename filename, long start) throws IOException {
+    GcsInputChannel channel = service.openReadChannel(filename, start);
+    try {
+      return ByteStreams.toByteArray(Channels.newInputStream(channel));
+    } finally {
+      channel.close();
+    }
+  }
+
+  public void testWriteAndRead() throws IOException {
+    assertNull(service.getMetadata(FILE));
+    service.createOrReplace(FILE, GcsFileOptions.getDefaultInstance(), ByteBuffer.wrap(CONTENT));
+    assertEquals(CONTENT.length, service.getMetadata(FILE).getLength());
+    assertTrue(Arrays.equals(CONTENT, read(FILE, 0)));
+    assertTrue(Arrays.equals(Arrays.copyOfRange(CONTENT, 2, 4), read(FILE, 2)));
+    assertTrue(Arrays.equals(CONTENT,
+        ByteStreams.toByteArray(Channels.newInputStream(
+            service.openPrefetchingReadChannel(FILE, 0, 1)))));
+  }
+
+  public void testReplaceOnlyOnClose() throws IOException {
+    service.createOrReplace(FILE, GcsFileOptions.getDefaultInstance(), ByteBuffer.wrap(CONTENT));
+    byte[] large = new byte[100 * 1024 + 3];
+    for (int i = 0; i < large.length; i++) {
+      large[i] = (byte) (i * 7);
+    }
+    GcsOutputChannel channel = service.createOrReplace(FILE, GcsFileOptions.getDefaultInstance());
+    channel.write(ByteBuffer.wrap(large, 0, 1000));
+    assertTrue(Arrays.equals(CONTENT, read(FILE, 0)));
+    channel.write(ByteBuffer.wrap(large, 1000, large.length - 1000));
+    channel.close();
+    assertTrue(Arrays.equals(large, read(FILE, 0)));
+  }
+
+  public void testCopyAndDelete() throws IOException {
+    GcsFilename copy = new GcsFilename("bucket", "5678/assets/kitty.png");
+    service.createOrReplace(FILE, GcsFileOptions.getDefaultInstance(), ByteBuffer.wrap(CONTENT));
+    service.copy(FILE, copy);
+    assertTrue(service.delete(FILE));
+    assertFalse(service.delete(FILE));
+    assertNull(service.getMetadata(FILE));
+    assertTrue(Arrays.equals(CONTENT, read(copy, 0)));
+  }
+
+  public void testReplaceAndDeleteWhileReading() throws IOException {
+    service.createOrReplace(FILE, GcsFileOptions.getDefaultInstance(), ByteBuffer.wrap(CONTENT));
+    GcsInputChannel channel = service.openReadChannel(FILE, 0);
+    try {
+      ByteBuffer first = ByteBuffer.allocate(2);
+      assertEquals(2, channel.read(first));
+      // An open read doesn't keep the object from being replaced or deleted
+      byte[] replacement = { (byte) 7 };
+      service.createOrReplace(FILE, GcsFileOptions.getDefaultInstance(),
+          ByteBuffer.wrap(replacement));
+      assertTrue(Arrays.equals(replacement, read(FILE, 0)));
+      assertTrue(service.delete(FILE));
+      assertNull(service.getMetadata(FILE));
+    } finally {
+      channel.close();
+    }
+    assertFalse(channel.isOpen());
+  }
+
+  public void testMissingObject() throws IOException {
+    GcsInputChannel channel = service.openReadChannel(FILE, 0);
+    try {
+      channel.read(ByteBuffer.allocate(10));
+      fail();
+    } catch (IOException expected) {
+      // As with GCS, the error is reported when the object is read
+    }
+  }
+
+  public void testCompose() throws IOException {
+    GcsFilename other = new GcsFilename("bucket", "1234/assets/other.png");
+    GcsFilename composed = new GcsFilename("bucket", "1234/assets/composed.png");
+    service.createOrReplace(FILE, GcsFileOptions.getDefaultInstance(), ByteBuffer.wrap(CONTENT));
+    service.createOrReplace(other, GcsFileOptions.getDefaultInstance(),
+        ByteBuffer.wrap(new byte[] { (byte) 9 }));
+    service.compose(Arrays.asList(FILE.getObjectName(), other.getObjectName()), composed);
+    assertTrue(Arrays.equals(new byte[] { (byte) 0, (byte) 1, (byte) 32, (byte) 255, (byte) 9 },
+        read(composed, 0)));
+    assertEquals(5, service.getMetadata(composed).getLength());
+
+    // A missing source leaves the destination alone
+    try {
+      service.compose(Arrays.asList(FILE.getObjectName(), "1234/assets/missing.png"), composed);
+      fail();
+    } catch (IOException expected) {
+      // missing source
+    }
+    assertEquals(5, service.getMetadata(composed).getLength());
+  }
+
+  public void testUpdate() throws IOException {
+    try {
+      service.update(FILE, GcsFileOptions.getDefaultInstance());
+      fail();
+    } catch (NoSuchFileException expected) {
+      // no such object
+    }
+    service.createOrReplace(FILE, GcsFileOptions.getDefaultInstance(), ByteBuffer.wrap(CONTENT));
+    service.update(FILE, new GcsFileOptions.Builder().mimeType("image/png").build());
+    assertTrue(Arrays.equals(CONTENT, read(FILE, 0)));
+  }
+
+  public void testList() throws IOException {
+    String[] names = { "1234/assets/kitty.png", "1234/src/Screen1.scm", "1234/project.properties",
+        "5678/assets/kitty.png" };
+    for (String name : names) {
+      service.createOrReplace(new GcsFilename("bucket", name),
+          GcsFileOptions.getDefaultInstance(), ByteBuffer.wrap(CONTENT));
+    }
+    // Unfinished writes aren't listed
+    service.createOrReplace(new GcsFilename("bucket", "1234/unfinished"),
+        GcsFileOptions.getDefaultInstance());
+
+    List<ListItem> items =
+        list(new ListOptions.Builder().setPrefix("1234/").setRecursive(false).build());
+    assertEquals(3, items.size());
+    assertEquals("1234/assets/", items.get(0).getName());
+    assertTrue(items.get(0).isDirectory());
+    assertEquals("1234/project.properties", items.get(1).getName());
+    assertFalse(items.get(1).isDirectory());
+    assertEquals(CONTENT.length, items.get(1).getLength());
+    assertEquals("1234/src/", items.get(2).getName());
+
+    items = list(new ListOptions.Builder().setPrefix("1234/").setRecursive(true).build());
+    assertEquals(3, items.size());
+    assertEquals("1234/assets/kitty.png", items.get(0).getName());
+    assertEquals("1234/src/Screen1.scm", items.get(2).getName());
+
+    assertEquals(4, list(new ListOptions.Builder().setRecursive(true).build()).size());
+    assertFalse(service.list("empty", ListOptions.DEFAULT).hasNext());
+  }
+
+  private List<ListItem> list(ListOptions options) throws IOException {
+    List<ListItem> items = new ArrayList<ListItem>();
+    ListResult result = service.list("bucket", options);
+    while (result.hasNext()) {
+      items.add(result.next());
+    }
+    return items;
+  }
+}
@@ -7,7 +7,12 @@
 package com.google.appinventor.server.storage;
 
 import com.google.appengine.api.blobstore.BlobKey;
+import com.google.appengine.tools.cloudstorage.GcsFileOptions;
+import com.google.appengine.tools.cloudstorage.GcsFilename;
+import com.google.appengine.tools.cloudstorage.GcsService;
 import com.google.appinventor.server.LocalDatastoreTestCase;
+import com.google.appinventor.server.storage.StoredData.BlobData;
+import com.google.appinventor.server.storage.StoredData.NonceData;
 import com.google.appinventor.server.storage.StoredData.ProjectData;
 import com.google.appinventor.shared.rpc.BlocksTruncatedException;
 import com.google.appinventor.shared.rpc.component.Component;
@@ -21,17 +26,29 @@ import com.google.appinventor.shared.rpc.user.User;
 import com.google.appinventor.shared.storage.StorageUtil;
 
 import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.googlecode.objectify.Objectify;
+import com.googlecode.objectify.ObjectifyService;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.ConcurrentModificationException;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.json.JSONObject;
 
@@ -157,6 +174,23 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     assertEquals(SETTINGS, storage.loadSettings(USER_ID));
   }
 
+  public void testStoreBuildProgressAfterFinish() {
+    final String USER_ID = "2000";
+    final long PROJECT_ID = 2000;
+    storage.storeBuildProgress(USER_ID, PROJECT_ID, 10);
+    assertEquals(10, storage.getBuildStatus(USER_ID, PROJECT_ID));
+    storage.storeBuildProgress(USER_ID, PROJECT_ID, 50);
+    assertEquals(50, storage.getBuildStatus(USER_ID, PROJECT_ID));
+    storage.storeBuildStatus(USER_ID, PROJECT_ID, StorageIo.BUILD_FINISHED);
+    // A progress post that arrives after the output must not hide the finished build
+    storage.storeBuildProgress(USER_ID, PROJECT_ID, 90);
+    assertEquals(StorageIo.BUILD_FINISHED, storage.getBuildStatus(USER_ID, PROJECT_ID));
+    // The next build resets the status and reports progress again
+    storage.storeBuildStatus(USER_ID, PROJECT_ID, 0);
+    storage.storeBuildProgress(USER_ID, PROJECT_ID, 20);
+    assertEquals(20, storage.getBuildStatus(USER_ID, PROJECT_ID));
+  }
+
   public void testCreateProjectSuccessful() {
     final String USER_ID = "400";
     final String USER_EMAIL = "newuser400@test.com";
@@ -168,8 +202,9 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
   public void testCreateProjectFailFirst() {
     final String USER_ID = "600";
     final String USER_EMAIL = "newuser600@test.com";
-    // fail on first job in createProject (2nd job overall)
-    StorageIo throwingStorage = new FailingJobObjectifyStorageIo(2);
+    // fail on first job in createProject (4th job overall, after the
+    // jobs that acquire the blobs for the project's two assets)
+    StorageIo throwingStorage = new FailingJobObjectifyStorageIo(4);
 
     try {
       throwingStorage.getUser(USER_ID, USER_EMAIL);
@@ -185,8 +220,8 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
   public void testCreateProjectFailSecond() {
     final String USER_ID = "700";
     final String USER_EMAIL = "newuser700@test.com";
-    // fail on second job in createProject (3rd job overall)
-    StorageIo throwingStorage = new FailingJobObjectifyStorageIo(3);
+    // fail on second job in createProject (5th job overall)
+    StorageIo throwingStorage = new FailingJobObjectifyStorageIo(5);
 
     try {
       throwingStorage.getUser(USER_ID, USER_EMAIL);
@@ -446,6 +481,397 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     // TODO(sharon): should test large blob files (e.g., >2MB (chunk size), >4MB (row size));
   }
 
+  public void testUploadRawFilesForce() {
+    final String USER_ID = "1320";
+    final String USER_EMAIL = "newuser1320@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId, false, SCM_FILE_NAME1, BKY_FILE_NAME1,
+        ASSET_FILE_NAME1);
+    Map<String, byte[]> contents = new LinkedHashMap<String, byte[]>();
+    contents.put(SCM_FILE_NAME1, FILE_CONTENT1.getBytes(Charsets.UTF_8));
+    contents.put(BKY_FILE_NAME1, FILE_CONTENT2.getBytes(Charsets.UTF_8));
+    contents.put(ASSET_FILE_NAME1, ASSET_FILE_CONTENT1);
+    long modificationDate = storage.uploadRawFilesForce(projectId, USER_ID, contents);
+    assertEquals(modificationDate, storage.getProjectDateModified(USER_ID, projectId));
+
+    assertEquals(FILE_CONTENT1, storage.downloadFile(USER_ID, projectId, SCM_FILE_NAME1,
+        StorageUtil.DEFAULT_CHARSET));
+    assertEquals(FILE_CONTENT2, storage.downloadFile(USER_ID, projectId, BKY_FILE_NAME1,
+        StorageUtil.DEFAULT_CHARSET));
+    assertTrue(Arrays.equals(ASSET_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, projectId, ASSET_FILE_NAME1)));
+    assertFalse(storage.isGcsFile(projectId, SCM_FILE_NAME1));
+    assertTrue(storage.isGcsFile(projectId, ASSET_FILE_NAME1));
+
+    // Files must be added to the project before they are uploaded
+    try {
+      storage.uploadRawFilesForce(projectId, USER_ID,
+          Collections.singletonMap(FILE_NAME1, RAW_FILE_CONTENT1));
+      fail("Allowed upload before add");
+    } catch (IllegalStateException ignored) {
+      // File upload should be preceded by add
+    }
+  }
+
+  public void testCleanupTempFiles() throws IOException {
+    Path root = java.nio.file.Files.createTempDirectory("localgcs");
+    try {
+      ObjectifyStorageIo localStorage = new ObjectifyStorageIo(new LocalGcsService(root));
+      String piece = localStorage.uploadTempFile(FILE_CONTENT1.getBytes(Charsets.UTF_8));
+      localStorage.setGcsFileContent("notatempfile", FILE_CONTENT2.getBytes(Charsets.UTF_8));
+
+      // A piece of an upload that may still be finished is kept
+      assertEquals(0, localStorage.cleanupTempFiles(System.currentTimeMillis()));
+      localStorage.openTempFile(piece).close();
+
+      // A day later the upload has been abandoned
+      long later = System.currentTimeMillis() + 25 * 3600 * 1000L;
+      assertEquals(1, localStorage.cleanupTempFiles(later));
+      try {
+        localStorage.openTempFile(piece);
+        fail("Abandoned piece was not deleted");
+      } catch (FileNotFoundException expected) {
+        // The piece is gone
+      }
+      // Files outside of __TEMP__/ are left alone
+      assertEquals(1, countFiles(root.toFile()));
+      assertEquals(0, localStorage.cleanupTempFiles(later));
+    } finally {
+      deleteRecursively(root.toFile());
+    }
+  }
+
+  public void testUploadRawFilesForceRollback() throws IOException {
+    final String USER_ID = "1321";
+    final String USER_EMAIL = "newuser1321@test.com";
+    Path root = java.nio.file.Files.createTempDirectory("localgcs");
+    try {
+      // Transactions can only be tried with GCS content outside of the datastore
+      ObjectifyStorageIo localStorage = new ObjectifyStorageIo(new LocalGcsService(root));
+      localStorage.getUser(USER_ID, USER_EMAIL);
+      long projectId = createProject(USER_ID, PROJECT_NAME,
+          YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, FORM_QUALIFIED_NAME, localStorage);
+      localStorage.addSourceFilesToProject(USER_ID, projectId, false, BKY_FILE_NAME1);
+      byte[] large = new byte[60000];  // large enough to be kept in GCS
+      Arrays.fill(large, (byte) 'x');
+      localStorage.uploadRawFilesForce(projectId, USER_ID,
+          Collections.singletonMap(BKY_FILE_NAME1, large));
+      assertTrue(localStorage.isGcsFile(projectId, BKY_FILE_NAME1));
+
+      // The second job stores the files, and never commits
+      ObjectifyStorageIo rollbackStorage =
+          new RollbackJobObjectifyStorageIo(new LocalGcsService(root), 2);
+      try {
+        rollbackStorage.uploadRawFilesForce(projectId, USER_ID,
+            Collections.singletonMap(BKY_FILE_NAME1, FILE_CONTENT1.getBytes(Charsets.UTF_8)));
+        fail("Upload succeeded without committing");
+      } catch (RuntimeException expected) {
+        // The job ran out of retries
+      }
+      // The GCS content the file still refers to must not have been deleted
+      assertTrue(localStorage.isGcsFile(projectId, BKY_FILE_NAME1));
+      assertTrue(Arrays.equals(large,
+          localStorage.downloadRawFile(USER_ID, projectId, BKY_FILE_NAME1)));
+
+      // Nor overwritten by new content that is also kept in GCS
+      int gcsFiles = countFiles(root.toFile());
+      byte[] larger = new byte[70000];
+      Arrays.fill(larger, (byte) 'y');
+      rollbackStorage = new RollbackJobObjectifyStorageIo(new LocalGcsService(root), 2);
+      try {
+        rollbackStorage.uploadRawFilesForce(projectId, USER_ID,
+            Collections.singletonMap(BKY_FILE_NAME1, larger));
+        fail("Upload succeeded without committing");
+      } catch (RuntimeException expected) {
+        // The job ran out of retries
+      }
+      assertTrue(Arrays.equals(large,
+          localStorage.downloadRawFile(USER_ID, projectId, BKY_FILE_NAME1)));
+      // and the content written for the failed upload has been deleted
+      assertEquals(gcsFiles, countFiles(root.toFile()));
+
+      // Once the upload commits the old content is deleted
+      localStorage.uploadRawFilesForce(projectId, USER_ID,
+          Collections.singletonMap(BKY_FILE_NAME1, larger));
+      assertTrue(Arrays.equals(larger,
+          localStorage.downloadRawFile(USER_ID, projectId, BKY_FILE_NAME1)));
+      assertEquals(gcsFiles, countFiles(root.toFile()));
+    } finally {
+      deleteRecursively(root.toFile());
+    }
+  }
+
+  public void testDownloadRawFiles() throws BlocksTruncatedException {
+    final String USER_ID = "1330";
+    final String USER_EMAIL = "newuser1330@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId, false, ASSET_FILE_NAME1, BLOCK_FILE_NAME);
+    storage.uploadRawFile(projectId, ASSET_FILE_NAME1, USER_ID, true, ASSET_FILE_CONTENT1);
+    storage.uploadRawFile(projectId, BLOCK_FILE_NAME, USER_ID, true, BLOCK_FILE_CONTENT);
+
+    Map<String, byte[]> contents = storage.downloadRawFiles(USER_ID, projectId,
+        Arrays.asList(BLOCK_FILE_NAME, ASSET_FILE_NAME1));
+    assertEquals(Arrays.asList(BLOCK_FILE_NAME, ASSET_FILE_NAME1),
+        new ArrayList<String>(contents.keySet()));
+    assertTrue(Arrays.equals(BLOCK_FILE_CONTENT, contents.get(BLOCK_FILE_NAME)));
+    assertTrue(Arrays.equals(ASSET_FILE_CONTENT1, contents.get(ASSET_FILE_NAME1)));
+
+    try {
+      storage.downloadRawFiles("1331", projectId, Arrays.asList(ASSET_FILE_NAME1));
+      fail();
+    } catch (Exception e) {
+      assertTrue(e instanceof UnauthorizedAccessException
+                 || e.getCause() instanceof UnauthorizedAccessException);
+    }
+  }
+
+  public void testOpenRawFile() throws BlocksTruncatedException, IOException {
+    final String USER_ID = "1340";
+    final String USER_EMAIL = "newuser1340@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId, false, ASSET_FILE_NAME1);
+    storage.uploadRawFile(projectId, ASSET_FILE_NAME1, USER_ID, true, ASSET_FILE_CONTENT1);
+
+    InputStream stream = storage.openRawFile(USER_ID, projectId, ASSET_FILE_NAME1);
+    try {
+      assertTrue(Arrays.equals(ASSET_FILE_CONTENT1, ByteStreams.toByteArray(stream)));
+    } finally {
+      stream.close();
+    }
+
+    try {
+      storage.openRawFile("1341", projectId, ASSET_FILE_NAME1);
+      fail();
+    } catch (Exception e) {
+      assertTrue(e instanceof UnauthorizedAccessException
+                 || e.getCause() instanceof UnauthorizedAccessException);
+    }
+  }
+
+  public void testUploadRawFileForceFromStream() throws IOException {
+    final String USER_ID = "1350";
+    final String USER_EMAIL = "newuser1350@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    // Larger than the copy buffer, so that it is written in several pieces
+    byte[] apkContent = new byte[600 * 1024 + 7];
+    for (int i = 0; i < apkContent.length; i++) {
+      apkContent[i] = (byte) (i * 31);
+    }
+    storage.addOutputFilesToProject(USER_ID, projectId, APK_FILE_NAME1);
+    long modificationDate = storage.uploadRawFileForce(projectId, APK_FILE_NAME1, USER_ID,
+        new ByteArrayInputStream(apkContent));
+    assertEquals(modificationDate, storage.getProjectDateModified(USER_ID, projectId));
+    assertTrue(storage.isGcsFile(projectId, APK_FILE_NAME1));
+    assertTrue(Arrays.equals(apkContent,
+        storage.downloadRawFile(USER_ID, projectId, APK_FILE_NAME1)));
+
+    // Small files that aren't kept in GCS go through the usual path
+    storage.addSourceFilesToProject(USER_ID, projectId, false, SCM_FILE_NAME1);
+    storage.uploadRawFileForce(projectId, SCM_FILE_NAME1, USER_ID,
+        new ByteArrayInputStream(FILE_CONTENT1.getBytes(Charsets.UTF_8)));
+    assertFalse(storage.isGcsFile(projectId, SCM_FILE_NAME1));
+    assertEquals(FILE_CONTENT1, storage.downloadFile(USER_ID, projectId, SCM_FILE_NAME1,
+        StorageUtil.DEFAULT_CHARSET));
+
+    try {
+      storage.uploadRawFileForce(projectId, APK_FILE_NAME1, "1351",
+          new ByteArrayInputStream(APK_FILE_CONTENT));
+      fail();
+    } catch (Exception e) {
+      assertTrue(e instanceof UnauthorizedAccessException
+                 || e.getCause() instanceof UnauthorizedAccessException);
+    }
+    assertTrue(Arrays.equals(apkContent,
+        storage.downloadRawFile(USER_ID, projectId, APK_FILE_NAME1)));
+  }
+
+  public void testSharedAssetBlobs() throws BlocksTruncatedException, IOException {
+    final String USER_ID = "1360";
+    final String USER_EMAIL = "newuser1360@test.com";
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId1 = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId1, false, ASSET_FILE_NAME1);
+    storage.uploadRawFile(projectId1, ASSET_FILE_NAME1, USER_ID, true, ASSET_FILE_CONTENT1);
+    BlobData blob = storage.getFileBlob(projectId1, ASSET_FILE_NAME1);
+    assertNotNull(blob);
+
+    // A project with the same asset refers to the same blob
+    Project copy = new Project(PROJECT_NAME + "Copy");
+    copy.setProjectType(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE);
+    copy.addRawFile(new RawFile(ASSET_FILE_NAME1, ASSET_FILE_CONTENT1));
+    long projectId2 = storage.createProject(USER_ID, copy, SETTINGS);
+    BlobData shared = storage.getFileBlob(projectId2, ASSET_FILE_NAME1);
+    assertEquals(blob.id, shared.id);
+    assertEquals(blob.gcsName, shared.gcsName);
+
+    // Streamed uploads of the same content also share it
+    storage.uploadRawFileForce(projectId2, ASSET_FILE_NAME1, USER_ID,
+        new ByteArrayInputStream(ASSET_FILE_CONTENT1));
+    assertEquals(blob.gcsName, storage.getFileBlob(projectId2, ASSET_FILE_NAME1).gcsName);
+
+    // Deleting one project leaves the content for the other
+    storage.deleteProject(USER_ID, projectId1);
+    assertTrue(Arrays.equals(ASSET_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, projectId2, ASSET_FILE_NAME1)));
+
+    // Replacing the content moves the file to another blob
+    byte[] newContent = { (byte) 7, (byte) 8 };
+    storage.uploadRawFile(projectId2, ASSET_FILE_NAME1, USER_ID, true, newContent);
+    assertFalse(blob.id.equals(storage.getFileBlob(projectId2, ASSET_FILE_NAME1).id));
+    assertTrue(Arrays.equals(newContent,
+        storage.downloadRawFile(USER_ID, projectId2, ASSET_FILE_NAME1)));
+
+    // Until it is deleted, the unused blob can be picked up again
+    final String otherAsset = "assets/kitty2.jpg";
+    storage.addSourceFilesToProject(USER_ID, projectId2, false, otherAsset);
+    storage.uploadRawFile(projectId2, otherAsset, USER_ID, true, ASSET_FILE_CONTENT1);
+    BlobData reused = storage.getFileBlob(projectId2, otherAsset);
+    assertEquals(blob.gcsName, reused.gcsName);
+    assertFalse(reused.deleting);
+  }
+
+  public void testCleanupBlobs() throws BlocksTruncatedException, IOException {
+    final String USER_ID = "1361";
+    final String USER_EMAIL = "newuser1361@test.com";
+    final long GRACE_PERIOD = 24 * 3600 * 1000L;
+    storage.getUser(USER_ID, USER_EMAIL);
+    long projectId = createProject(
+        USER_ID, PROJECT_NAME, YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE,
+        FORM_QUALIFIED_NAME);
+    storage.addSourceFilesToProject(USER_ID, projectId, false, ASSET_FILE_NAME1);
+    storage.uploadRawFile(projectId, ASSET_FILE_NAME1, USER_ID, true, ASSET_FILE_CONTENT1);
+    String hash = storage.getFileBlob(projectId, ASSET_FILE_NAME1).id;
+    long now = System.currentTimeMillis();
+
+    // A blob that a file refers to is kept, however long ago it was referenced
+    storage.cleanupBlobs(now + 2 * GRACE_PERIOD);
+    BlobData blob = storage.getBlob(hash);
+    assertNotNull(blob);
+    assertFalse(blob.deleting);
+    assertEquals(now + 2 * GRACE_PERIOD, blob.lastReferenced);
+    assertTrue(Arrays.equals(ASSET_FILE_CONTENT1,
+        storage.downloadRawFile(USER_ID, projectId, ASSET_FILE_NAME1)));
+
+    // Once no file refers to it, it is deleted after the grace period
+    storage.deleteFile(USER_ID, projectId, ASSET_FILE_NAME1);
+    storage.cleanupBlobs(now + 3 * GRACE_PERIOD);
+    assertNotNull(storage.getBlob(hash));
+    storage.cleanupBlobs(now + 4 * GRACE_PERIOD);
+    assertNull(storage.getBlob(hash));
+  }
+
+  public void testCleanupBlobsReferencedWhileDeleting() throws IOException {
+    final String USER_ID = "1362";
+    final String USER_EMAIL = "newuser1362@test.com";
+    final long GRACE_PERIOD = 24 * 3600 * 1000L;
+    Path root = java.nio.file.Files.createTempDirectory("localgcs");
+    try {
+      final ObjectifyStorageIo otherStorage =
+          new ObjectifyStorageIo(new LocalGcsService(root));
+      otherStorage.getUser(USER_ID, USER_EMAIL);
+      final long projectId = createProject(USER_ID, PROJECT_NAME,
+          YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, FORM_QUALIFIED_NAME, otherStorage);
+      otherStorage.addSourceFilesToProject(USER_ID, projectId, false, ASSET_FILE_NAME1);
+      otherStorage.uploadRawFile(projectId, ASSET_FILE_NAME1, USER_ID, true,
+          ASSET_FILE_CONTENT1);
+      String hash = otherStorage.getFileBlob(projectId, ASSET_FILE_NAME1).id;
+      String oldGcsName = otherStorage.getBlob(hash).gcsName;
+      otherStorage.deleteFile(USER_ID, projectId, ASSET_FILE_NAME1);
+
+      // Another request uploads the same content while the blob's GCS file
+      // is being deleted
+      ObjectifyStorageIo localStorage = new ObjectifyStorageIo(new LocalGcsService(root) {
+        private boolean uploaded = false;
+
+        @Override
+        public boolean delete(GcsFilename filename) throws IOException {
+          if (!uploaded && filename.getObjectName().startsWith("blobs/")) {
+            uploaded = true;
+            otherStorage.addSourceFilesToProject(USER_ID, projectId, false, ASSET_FILE_NAME1);
+            otherStorage.uploadRawFile(projectId, ASSET_FILE_NAME1, USER_ID, true,
+                ASSET_FILE_CONTENT1);
+          }
+          return super.delete(filename);
+        }
+      });
+      localStorage.cleanupBlobs(System.currentTimeMillis() + 2 * GRACE_PERIOD);
+
+      BlobData blob = localStorage.getBlob(hash);
+      assertNotNull(blob);
+      assertFalse(blob.deleting);
+      assertFalse(oldGcsName.equals(blob.gcsName));
+      assertTrue(Arrays.equals(ASSET_FILE_CONTENT1,
+          localStorage.downloadRawFile(USER_ID, projectId, ASSET_FILE_NAME1)));
+    } finally {
+      deleteRecursively(root.toFile());
+    }
+  }
+
+  public void testCopyProjectSharesBlobs() throws BlocksTruncatedException, IOException {
+    final String USER_ID = "1363";
+    final String USER_EMAIL = "newuser1363@test.com";
+    Path root = java.nio.file.Files.createTempDirectory("localgcs");
+    try {
+      final List<String> written = new ArrayList<String>();
+      ObjectifyStorageIo localStorage = new ObjectifyStorageIo(new LocalGcsService(root) {
+        @Override
+        public void createOrReplace(GcsFilename filename, GcsFileOptions options,
+            ByteBuffer content) throws IOException {
+          written.add(filename.getObjectName());
+          super.createOrReplace(filename, options, content);
+        }
+      });
+      localStorage.getUser(USER_ID, USER_EMAIL);
+      long projectId1 = createProject(USER_ID, PROJECT_NAME,
+          YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE, FORM_QUALIFIED_NAME, localStorage);
+      localStorage.addSourceFilesToProject(USER_ID, projectId1, false, ASSET_FILE_NAME1,
+          SCM_FILE_NAME1);
+      localStorage.uploadRawFile(projectId1, ASSET_FILE_NAME1, USER_ID, true,
+          ASSET_FILE_CONTENT1);
+      localStorage.uploadFile(projectId1, SCM_FILE_NAME1, USER_ID, FILE_CONTENT1,
+          StorageUtil.DEFAULT_CHARSET);
+      BlobData blob = localStorage.getFileBlob(projectId1, ASSET_FILE_NAME1);
+
+      Project copy = new Project(PROJECT_NAME + "Copy");
+      copy.setProjectType(YoungAndroidProjectNode.YOUNG_ANDROID_PROJECT_TYPE);
+      Map<String, String> copiedFiles = new LinkedHashMap<String, String>();
+      copiedFiles.put(ASSET_FILE_NAME1, ASSET_FILE_NAME1);
+      copiedFiles.put(SCM_FILE_NAME1, SCM_FILE_NAME2);
+      written.clear();
+      long projectId2 = localStorage.createProject(USER_ID, copy, SETTINGS, projectId1,
+          copiedFiles);
+
+      // The asset refers to the same blob, without being written again
+      assertEquals(blob.gcsName, localStorage.getFileBlob(projectId2, ASSET_FILE_NAME1).gcsName);
+      for (String name : written) {
+        assertFalse(name.startsWith("blobs/"));
+      }
+      // Other files are copied under their new names
+      assertEquals(FILE_CONTENT1, localStorage.downloadFile(USER_ID, projectId2, SCM_FILE_NAME2,
+          StorageUtil.DEFAULT_CHARSET));
+
+      localStorage.deleteProject(USER_ID, projectId1);
+      assertTrue(Arrays.equals(ASSET_FILE_CONTENT1,
+          localStorage.downloadRawFile(USER_ID, projectId2, ASSET_FILE_NAME1)));
+    } finally {
+      deleteRecursively(root.toFile());
+    }
+  }
+
   public void testOldBlockFilesInDatastoreStillWork() throws BlocksTruncatedException {
     // Create new storage object that forces storage in the datastore
     ObjectifyStorageIo oldStyleStorage = new ObjectifyStorageIo() {
@@ -513,6 +939,97 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     }
   }
 
+  public void testCleanupNoncesInBatches() {
+    // More expired nonces than one call deletes
+    Objectify datastore = ObjectifyService.begin();
+    Date expired = new Date(System.currentTimeMillis() - 4 * 3600 * 1000L);
+    List<NonceData> nonces = new ArrayList<NonceData>();
+    for (int i = 0; i < 250; i++) {
+      NonceData nonce = new NonceData();
+      nonce.nonce = "expired" + i;
+      nonce.timestamp = expired;
+      nonces.add(nonce);
+    }
+    datastore.put(nonces);
+    storage.storeNonce("fresh", "1370", 1234L);
+
+    storage.cleanupNonces();
+    assertEquals(151, datastore.query(NonceData.class).count());
+    storage.cleanupNonces();
+    storage.cleanupNonces();
+    assertEquals(1, datastore.query(NonceData.class).count());
+    assertNotNull(storage.getNoncebyValue("fresh"));
+    storage.cleanupNonces();  // Nothing left to do
+    assertNotNull(storage.getNoncebyValue("fresh"));
+  }
+
+  /*
+   * A job that always runs into contention.
+   */
+  private ObjectifyStorageIo.JobRetryHelper contendedJob(final int maxRetries,
+      final int[] runs) {
+    return storage.new JobRetryHelper() {
+      @Override
+      public void run(Objectify datastore) {
+        runs[0]++;
+        throw new ConcurrentModificationException("contention (on purpose)");
+      }
+
+      @Override
+      public int getMaxRetries() {
+        return maxRetries;
+      }
+    };
+  }
+
+  public void testRetryBudget() {
+    int[] runs = { 0 };
+    ObjectifyStorageIo.JobRetryHelper job = contendedJob(2, runs);
+    // The counters are static, other tests may have run this job already
+    JobStats stats = JobStats.forJob(job.getClass());
+    long jobs = stats.getJobs();
+    long attempts = stats.getAttempts();
+    long conflicts = stats.getConflicts();
+    long failures = stats.getFailures();
+    try {
+      storage.runJobWithRetries(job, false);
+      fail("Job succeeded");
+    } catch (ObjectifyException expected) {
+      // Out of retries
+    }
+    assertEquals(3, runs[0]);
+    assertEquals(jobs + 1, stats.getJobs());
+    assertEquals(attempts + 3, stats.getAttempts());
+    assertEquals(conflicts + 3, stats.getConflicts());
+    assertEquals(failures + 1, stats.getFailures());
+    assertSame(stats, ObjectifyStorageIo.getJobStats().get("contendedJob"));
+  }
+
+  public void testBackoff() {
+    // Doubles from storage.retry.initialdelay.ms up to storage.retry.maxdelay.ms
+    assertEquals(20, ObjectifyStorageIo.maxBackoffMillis(1));
+    assertEquals(40, ObjectifyStorageIo.maxBackoffMillis(2));
+    assertEquals(640, ObjectifyStorageIo.maxBackoffMillis(6));
+    assertEquals(1000, ObjectifyStorageIo.maxBackoffMillis(7));
+    assertEquals(1000, ObjectifyStorageIo.maxBackoffMillis(100));
+  }
+
+  public void testContentionDoesNotOpenBreaker() throws ObjectifyException {
+    int[] runs = { 0 };
+    // More than storage.breaker.threshold jobs in a row
+    for (int i = 0; i < 25; i++) {
+      try {
+        storage.runJobWithRetries(contendedJob(0, runs), false);
+        fail("Job succeeded");
+      } catch (ObjectifyException expected) {
+        // Out of retries
+      }
+    }
+    assertEquals(25, runs[0]);
+    assertFalse(ObjectifyStorageIo.isDatastoreBreakerOpen());
+    assertNotNull(storage.getUser("1600", "newuser1600@test.com"));
+  }
+
   public void testTempFiles() throws Exception {
     String fileName = storage.uploadTempFile("test\n".getBytes(Charsets.UTF_8));
     BufferedReader reader = new BufferedReader(new InputStreamReader(storage.openTempFile(fileName),
@@ -613,6 +1130,64 @@ public class ObjectifyStorageIoTest extends LocalDatastoreTestCase {
     }
   }
 
+  /*
+   * Runs the Nth job given to runJobWithRetries in a transaction that is
+   * rolled back every time, as if it kept running into contention. The
+   * other jobs run as usual.
+   */
+  private static class RollbackJobObjectifyStorageIo extends ObjectifyStorageIo {
+    private final int failingRun;
+    private int run;
+
+    RollbackJobObjectifyStorageIo(GcsService gcsService, int failingRun) {
+      super(gcsService);
+      this.failingRun = failingRun;
+    }
+
+    @Override
+    void runJobWithRetries(final JobRetryHelper job, boolean useTransaction)
+        throws ObjectifyException {
+      if (++run != failingRun) {
+        super.runJobWithRetries(job, useTransaction);
+        return;
+      }
+      super.runJobWithRetries(new JobRetryHelper() {
+        @Override
+        public void run(Objectify datastore) throws ObjectifyException, IOException {
+          job.run(datastore);
+          throw new ConcurrentModificationException("rolled back (on purpose)");
+        }
+
+        @Override
+        public int getMaxRetries() {
+          return 1;
+        }
+      }, true);
+    }
+  }
+
+  private static int countFiles(File file) {
+    File[] children = file.listFiles();
+    if (children == null) {
+      return 1;
+    }
+    int count = 0;
+    for (File child : children) {
+      count += countFiles(child);
+    }
+    return count;
+  }
+
+  private static void deleteRecursively(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        deleteRecursively(child);
+      }
+    }
+    file.delete();
+  }
+
   private long createProject(String userId, String name, String type, String fileName) {
     return createProject(userId, name, type, fileName, storage);
   }
@@ -1688,7 +1688,12 @@ Blockly.Versioning.AllUpgradeMaps =
 
     // The BluetoothClient.NoLocationNeeded property was added.
     // No blocks need to be modified to upgrade to version 8.
-    8: "noUpgrade"
+    8: "noUpgrade",
+
+    // The BluetoothClient.ReadInBackground property, DataReceived event and ReceiveAvailableText
+    // method were added.
+    // No blocks need to be modified to upgrade to version 9.
+    9: "noUpgrade"
 
   }, // End BluetoothClient upgraders
 
@@ -1912,7 +1917,11 @@ Blockly.Versioning.AllUpgradeMaps =
     // This is initial version. Placeholder for future upgrades
     1: "noUpgrade",
     // UpdateDone event was added.
-    2: "noUpgrade"
+    2: "noUpgrade",
+
+    // The StoreValues and GetValues methods and GotValues event were added.
+    // No blocks need to be modified to upgrade to version 3.
+    3: "noUpgrade"
 
   },
 
@@ -2001,7 +2010,11 @@ Blockly.Versioning.AllUpgradeMaps =
       Blockly.Versioning.changeEventName('FeatureCollection', 'GeoGeoJSON', 'GotFeatures'),
       Blockly.Versioning.changeEventName('FeatureCollection', 'ErrorLoadingFeatureCollection', 'LoadError'),
       Blockly.Versioning.changeEventName('FeatureCollection', 'LoadedFeatureCollection', 'GotFeatures')
-    ]
+    ],
+
+    // AI2:
+    // - The FeaturesInBoundingBox, FeaturesWithinDistance and NearestFeature methods were added
+    3: "noUpgrade"
   },
 
   "File": {
@@ -2500,7 +2513,11 @@ Blockly.Versioning.AllUpgradeMaps =
     6: [Blockly.Versioning.makeSetterUseDropdown(
           'Map', 'ScaleUnits', 'ScaleUnits'),
         Blockly.Versioning.makeSetterUseDropdown(
-          'Map', 'MapType', 'MapType')]
+          'Map', 'MapType', 'MapType')],
+
+    // AI2:
+    // - The FeaturesInBoundingBox, FeaturesWithinDistance and NearestFeature methods were added
+    7: "noUpgrade"
 
   }, // End Map upgraders
 
@@ -3066,6 +3083,17 @@ Blockly.Versioning.AllUpgradeMaps =
 
   }, // End Screen
 
+  "Serial": {
+
+    //This is initial version. Placeholder for future upgrades
+    1: "noUpgrade",
+
+    // The Serial.ReadInBackground property and DataReceived event were added.
+    // No blocks need to be modified to upgrade to version 2.
+    2: "noUpgrade"
+
+  }, // End Serial upgraders
+
   "Sharing": {
 
     //This is initial version. Placeholder for future upgrades
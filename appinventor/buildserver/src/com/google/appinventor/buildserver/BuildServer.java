@@ -29,15 +29,12 @@ import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.BufferedOutputStream;
-import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.io.PrintWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
 import java.lang.management.OperatingSystemMXBean;
@@ -81,43 +78,35 @@ public class BuildServer {
   public static class ProgressReporter {
     // We create a ProgressReporter instance which is handed off to the
     // project builder and compiler. It is called to report the progress
-    // of the build. The reporting is done by calling the callback URL
-    // and putting the status inside a "build.status" file. This isn't
-    // particularly efficient, but this is the version 0.9 implementation
+    // of the build. The reporting is done by posting the progress, as a
+    // plain text number, to the callback URL. App Inventor keeps it in
+    // memcache and hands it to clients waiting on the build.
     String callbackUrlStr;
+    private int lastProgress = -1;
+
     ProgressReporter(String callbackUrlStr) {
       this.callbackUrlStr = callbackUrlStr;
     }
 
-    public void report(int progress) {
+    public synchronized void report(int progress) {
+      if (progress == lastProgress) {
+        return;  // Nothing new to tell
+      }
+      lastProgress = progress;
       try {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        ZipOutputStream zipoutput = new ZipOutputStream(output);
-        zipoutput.putNextEntry(new ZipEntry("build.status"));
-        PrintWriter pout = new PrintWriter(zipoutput);
-        pout.println(progress);
-        pout.flush();
-        zipoutput.flush();
-        zipoutput.close();
-        ByteArrayInputStream zipinput = new ByteArrayInputStream(output.toByteArray());
+        byte[] body = (progress + "\n").getBytes("UTF-8");
         URL callbackUrl = new URL(callbackUrlStr);
         HttpURLConnection connection = (HttpURLConnection) callbackUrl.openConnection();
         connection.setDoOutput(true);
         connection.setRequestMethod("POST");
-        // Make sure we aren't misinterpreted as
-        // form-url-encoded
-        connection.addRequestProperty("Content-Type","application/zip; charset=utf-8");
+        connection.addRequestProperty("Content-Type", "text/plain; charset=utf-8");
+        connection.setFixedLengthStreamingMode(body.length);
         connection.setConnectTimeout(5000);
         connection.setReadTimeout(5000);
         BufferedOutputStream bufferedOutputStream = new BufferedOutputStream(connection.getOutputStream());
         try {
-          BufferedInputStream bufferedInputStream = new BufferedInputStream(zipinput);
-          try {
-            ByteStreams.copy(bufferedInputStream,bufferedOutputStream);
-            bufferedOutputStream.flush();
-          } finally {
-            bufferedInputStream.close();
-          }
+          bufferedOutputStream.write(body);
+          bufferedOutputStream.flush();
         } finally {
           bufferedOutputStream.close();
         }
@@ -435,7 +435,7 @@
            ;; component name that registered the event.  This is
            ;; necessary, in part, due to the late binding that we want
            ;; for event handlers and component names.
-           (let ((registeredObject (string->symbol registeredComponentName)))
+           (let ((registeredObject (component-symbol registeredComponentName)))
                  (if (is-bound-in-form-environment registeredObject)
                      (if (eq? (lookup-in-form-environment registeredObject) componentObject)
                         (let ((handler (lookup-handler registeredComponentName eventName)))
@@ -532,10 +532,41 @@
                    #f))))))
 
        (define (lookup-handler componentName eventName)
-         (lookup-in-form-environment
-          (string->symbol
-           (com.google.appinventor.components.runtime.EventDispatcher:makeFullEventName
-            componentName eventName))))
+         (lookup-in-form-environment (handler-symbol componentName eventName)))
+
+       ;; Caches of the symbols used to look up components and event handlers
+       ;; in the form environment, so that dispatching an event doesn't have to
+       ;; build and intern new strings every time. The names come from the
+       ;; EventDispatcher's registrations, so there is a bounded number of them.
+       ;; Events may be dispatched from any thread, hence the concurrent maps.
+       (define component-symbols :: java.util.concurrent.ConcurrentHashMap
+         (java.util.concurrent.ConcurrentHashMap))
+
+       (define handler-symbols :: java.util.concurrent.ConcurrentHashMap
+         (java.util.concurrent.ConcurrentHashMap))
+
+       (define (component-symbol componentName :: java.lang.String) :: gnu.mapping.Symbol
+         (let ((symbol (java.util.concurrent.ConcurrentHashMap:get component-symbols componentName)))
+           (if (eq? symbol #!null)
+               (let ((new-symbol (string->symbol componentName)))
+                 (java.util.concurrent.ConcurrentHashMap:put component-symbols componentName new-symbol)
+                 new-symbol)
+               symbol)))
+
+       (define (handler-symbol componentName :: java.lang.String eventName :: java.lang.String) :: gnu.mapping.Symbol
+         (let ((symbols (java.util.concurrent.ConcurrentHashMap:get handler-symbols componentName)))
+           (when (eq? symbols #!null)
+             (set! symbols (java.util.concurrent.ConcurrentHashMap))
+             (java.util.concurrent.ConcurrentHashMap:put handler-symbols componentName symbols))
+           (let ((symbol (java.util.concurrent.ConcurrentHashMap:get symbols eventName)))
+             (if (eq? symbol #!null)
+                 (let ((new-symbol
+                        (string->symbol
+                         (com.google.appinventor.components.runtime.EventDispatcher:makeFullEventName
+                          componentName eventName))))
+                   (java.util.concurrent.ConcurrentHashMap:put symbols eventName new-symbol)
+                   new-symbol)
+                 symbol))))
 
        ;; This defines the Simple Form's abstract $define method. The Simple Form
        ;; implementation will call this to cause initialization.
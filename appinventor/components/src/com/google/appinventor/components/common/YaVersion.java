@@ -598,7 +598,15 @@ public class YaVersion {
   // - Renamed LineOfBestFit to Trendline
   // For YOUNG_ANDROID_VERSION 229:
   // - IMAGESPRITE_COMPONENT_VERSION was incremented to 10.
-  public static final int YOUNG_ANDROID_VERSION = 229;
+  // For YOUNG_ANDROID_VERSION 230:
+  // - BLUETOOTHCLIENT_COMPONENT_VERSION was incremented to 9.
+  // - SERIAL_COMPONENT_VERSION was incremented to 2.
+  // For YOUNG_ANDROID_VERSION 231:
+  // - CLOUDDB_COMPONENT_VERSION was incremented to 3.
+  // For YOUNG_ANDROID_VERSION 232:
+  // - FEATURE_COLLECTION_COMPONENT_VERSION was incremented to 3.
+  // - MAP_COMPONENT_VERSION was incremented to 7.
+  public static final int YOUNG_ANDROID_VERSION = 232;
 
   // ............................... Blocks Language Version Number ...............................
 
@@ -801,7 +809,11 @@ public class YaVersion {
   // - The BluetoothClient.PollingRate property was added.
   // For BLUETOOTHCLIENT_COMPONENT_VERSION 8:
   // - The BluetoothClient.NoLocationNeeded property was added.
-  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 8;
+  // For BLUETOOTHCLIENT_COMPONENT_VERSION 9:
+  // - The BluetoothClient.ReadInBackground property was added.
+  // - The BluetoothClient.DataReceived event was added.
+  // - The BluetoothClient.ReceiveAvailableText method was added.
+  public static final int BLUETOOTHCLIENT_COMPONENT_VERSION = 9;
 
   // For BLUETOOTHSERVER_COMPONENT_VERSION 2:
   // - The BluetoothServer.Enabled property was added.
@@ -954,7 +966,9 @@ public class YaVersion {
   // - GotGeoJSON event was renamed to GotFeatures
   // - ErrorLoadingFeatureCollection event was removed
   // - LoadedFeatureCollection event was removed
-  public static final int FEATURE_COLLECTION_COMPONENT_VERSION = 2;
+  // For FEATURE_COLLECTION_COMPONENT_VERSION 3:
+  // - FeaturesInBoundingBox, FeaturesWithinDistance and NearestFeature methods were added
+  public static final int FEATURE_COLLECTION_COMPONENT_VERSION = 3;
 
   // For FILE_COMPONENT_VERSION 2:
   // - The AfterFileSaved event was added.
@@ -1201,7 +1215,9 @@ public class YaVersion {
   // - Added ScaleUnits property
   // For MAP_COMPONENT_VERSION 6:
   // - Adds ScaleUnits and MapType dropdowns.
-  public static final int MAP_COMPONENT_VERSION = 6;
+  // For MAP_COMPONENT_VERSION 7:
+  // - FeaturesInBoundingBox, FeaturesWithinDistance and NearestFeature methods were added
+  public static final int MAP_COMPONENT_VERSION = 7;
 
   // For MARKER_COMPONENT_VERSION 1:
   // - Initial Marker implementation using OpenStreetMap
@@ -1492,7 +1508,10 @@ public class YaVersion {
   // For CLOUDDB_COMPONENT_VERSION 2:
   // - Added the UpdateDone event
   //   to control its use
-  public static final int CLOUDDB_COMPONENT_VERSION = 2;
+  // For CLOUDDB_COMPONENT_VERSION 3:
+  // - The CloudDB.StoreValues and CloudDB.GetValues methods were added.
+  // - The CloudDB.GotValues event was added.
+  public static final int CLOUDDB_COMPONENT_VERSION = 3;
 
   // For TRENDLINE_COMPONENT_VERSION 1:
   // - Initial implementation
@@ -1619,7 +1638,10 @@ public class YaVersion {
   public static final int PROXIMITYSENSOR_COMPONENT_VERSION = 1;
 
   //For SERIAL_COMPONENT_VERSION: Initial Version
-  public static final int SERIAL_COMPONENT_VERSION = 1;
+  // For SERIAL_COMPONENT_VERSION 2:
+  // - The Serial.ReadInBackground property was added.
+  // - The Serial.DataReceived event was added.
+  public static final int SERIAL_COMPONENT_VERSION = 2;
 
   //For MAGNETICFIELDSENSOR_COMPONENT_VERSION: Initial Version
   public static final int MAGNETICFIELDSENSOR_COMPONENT_VERSION = 1;
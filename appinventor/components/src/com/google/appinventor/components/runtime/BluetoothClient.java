@@ -22,6 +22,7 @@ import com.google.appinventor.components.annotations.DesignerComponent;
 import com.google.appinventor.components.annotations.DesignerProperty;
 import com.google.appinventor.components.annotations.PermissionConstraint;
 import com.google.appinventor.components.annotations.PropertyCategory;
+import com.google.appinventor.components.annotations.SimpleEvent;
 import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
@@ -48,6 +49,7 @@ import java.util.UUID;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Use `BluetoothClient` to connect your device to other devices using Bluetooth. This component
@@ -86,6 +88,27 @@ public final class BluetoothClient extends BluetoothConnectionBase
   private int pollingRate = 10;
   private boolean noLocationNeeded = false;
 
+  // Whether a call to dispatchReceivedFrames has been posted to the UI thread and not run yet
+  private final AtomicBoolean framesPending = new AtomicBoolean(false);
+
+  private final Runnable dispatchReceivedFrames = new Runnable() {
+    @Override
+    public void run() {
+      framesPending.set(false);
+      byte[] frame;
+      // Without a DataReceived handler, leave the frames for the Receive functions.
+      while (EventDispatcher.hasEventHandlers(BluetoothClient.this, "DataReceived")
+          && (frame = readFrame()) != null) {
+        String text = bytesToText(frame, frame.length - 1);
+        if (!EventDispatcher.dispatchEvent(BluetoothClient.this, "DataReceived", text)) {
+          // The handler failed (and reported its error) or belongs to another component. Putting
+          // the frame back would dispatch it again ahead of every later frame, so drop it.
+          Log.w(logTag, "DataReceived was not handled, dropped " + frame.length + " bytes.");
+        }
+      }
+    }
+  };
+
   /**
    * Creates a new BluetoothClient.
    */
@@ -268,6 +291,60 @@ public final class BluetoothClient extends BluetoothConnectionBase
     return this.pollingRate;
   }
 
+  /**
+   * Specifies whether bytes sent by the connected device are received by a background thread as
+   * soon as they arrive. The received bytes are kept in a buffer until they are received with the
+   * Receive functions or, for text ending with the `DelimiterByte`, by the
+   * [`DataReceived`](#BluetoothClient.DataReceived) event. This avoids blocking the app while
+   * waiting for data and losing data sent by devices that stream readings continuously. Turning
+   * this off while connected takes effect the next time the BluetoothClient connects.
+   *
+   * @param readInBackground true to receive bytes in the background
+   */
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  @DesignerProperty(defaultValue = "False",
+      editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN)
+  public void ReadInBackground(boolean readInBackground) {
+    setReadInBackground(readInBackground);
+  }
+
+  @SimpleProperty
+  public boolean ReadInBackground() {
+    return isReadInBackground();
+  }
+
+  /**
+   * Indicates that text ending with the `DelimiterByte` was received while `ReadInBackground` is
+   * true. The text does not include the delimiter. If this event is not handled, the text is left
+   * for the Receive functions.
+   *
+   * @param text the received text
+   */
+  @SimpleEvent(description = "Text ending with the DelimiterByte was received while "
+      + "ReadInBackground is true.")
+  public void DataReceived(String text) {
+    EventDispatcher.dispatchEvent(this, "DataReceived", text);
+  }
+
+  /**
+   * Receives all of the text that has arrived from the connected Bluetooth device, without
+   * waiting for more.
+   */
+  @SimpleFunction(description = "Receive all of the text that has arrived from the connected "
+      + "Bluetooth device without waiting for more.")
+  public String ReceiveAvailableText() {
+    byte[] bytes = readAvailable("ReceiveAvailableText");
+    return bytesToText(bytes, bytes.length);
+  }
+
+  @Override
+  protected void onFrameReceived() {
+    // Coalesce frames that arrive before the UI thread gets to them into one dispatch.
+    if (framesPending.compareAndSet(false, true)) {
+      form.runOnUiThread(dispatchReceivedFrames);
+    }
+  }
+
   /**
    * On Android 12 and later, indicates that Bluetooth is not used to determine the user's location.
    *
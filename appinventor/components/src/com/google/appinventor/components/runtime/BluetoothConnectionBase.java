@@ -20,6 +20,7 @@ import com.google.appinventor.components.annotations.SimpleProperty;
 
 import com.google.appinventor.components.common.PropertyTypeConstants;
 
+import com.google.appinventor.components.runtime.util.ByteRingBuffer;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.SUtil;
 import com.google.appinventor.components.runtime.util.YailList;
@@ -45,13 +46,19 @@ import java.util.List;
 public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     implements Component, OnDestroyListener, Deleteable {
 
+  // Number of received bytes kept when reading in the background
+  private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+  // Number of bytes read from the socket at a time when reading in the background
+  private static final int RECEIVE_CHUNK_SIZE = 4096;
+
   protected final String logTag;
   private final List<BluetoothConnectionListener> bluetoothConnectionListeners =
       new ArrayList<>();
 
   private ByteOrder byteOrder;
   private String encoding;
-  private byte delimiter;
+  private volatile byte delimiter;
   protected boolean disconnectOnError;
   protected boolean secure;
   protected final BluetoothAdapter adapter;
@@ -60,6 +67,10 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
   private InputStream inputStream;
   private OutputStream outputStream;
 
+  private boolean readInBackground;
+  // Filled by the background reader while connected, null if not reading in the background
+  private volatile ByteRingBuffer receiveBuffer;
+
   /**
    * Creates a new BluetoothConnectionBase.
    */
@@ -166,6 +177,9 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     socket = bluetoothSocket;
     inputStream = new BufferedInputStream(socket.getInputStream());
     outputStream = new BufferedOutputStream(socket.getOutputStream());
+    if (readInBackground) {
+      startBackgroundReader();
+    }
     fireAfterConnectEvent();
   }
 
@@ -184,10 +198,107 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       }
       socket = null;
     }
+    stopBackgroundReader();
     inputStream = null;
     outputStream = null;
   }
 
+  /**
+   * Returns whether received bytes are read from the connection by a background thread.
+   */
+  protected boolean isReadInBackground() {
+    return readInBackground;
+  }
+
+  /**
+   * Specifies whether received bytes are read from the connection by a background thread, which
+   * keeps them in a buffer until they are received by the Receive functions. Turning this on while
+   * connected starts the background reader right away, while turning it off takes effect at the
+   * next connection.
+   */
+  protected void setReadInBackground(boolean readInBackground) {
+    this.readInBackground = readInBackground;
+    if (readInBackground && receiveBuffer == null && inputStream != null && IsConnected()) {
+      startBackgroundReader();
+    }
+  }
+
+  /**
+   * Called on the background reader thread after bytes including the delimiter byte have been
+   * added to the receive buffer. Subclasses can use {@link #readFrame()} to take the frames out of
+   * the buffer.
+   */
+  protected void onFrameReceived() {
+  }
+
+  /**
+   * Removes and returns the oldest received frame, which ends with the delimiter byte, without
+   * waiting. Returns null if there is no complete frame or if not reading in the background.
+   */
+  protected final byte[] readFrame() {
+    ByteRingBuffer buffer = receiveBuffer;
+    return buffer == null ? null : buffer.readFrame(delimiter);
+  }
+
+  /**
+   * Puts a frame returned by {@link #readFrame()} back so that it is received again.
+   */
+  protected final void unreadFrame(byte[] frame) {
+    ByteRingBuffer buffer = receiveBuffer;
+    if (buffer != null) {
+      buffer.unread(frame);
+    }
+  }
+
+  private void startBackgroundReader() {
+    final ByteRingBuffer buffer = new ByteRingBuffer(RECEIVE_BUFFER_SIZE);
+    final InputStream in = inputStream;
+    receiveBuffer = buffer;
+    Thread reader = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        byte[] chunk = new byte[RECEIVE_CHUNK_SIZE];
+        try {
+          while (receiveBuffer == buffer) {
+            int count = in.read(chunk);
+            if (count == -1) {
+              break;
+            }
+            int dropped = buffer.write(chunk, 0, count);
+            if (dropped > 0) {
+              Log.w(logTag, "Receive buffer is full, dropped " + dropped + " bytes.");
+            }
+            byte delimiter = BluetoothConnectionBase.this.delimiter;
+            for (int i = 0; i < count; i++) {
+              if (chunk[i] == delimiter) {
+                onFrameReceived();
+                break;
+              }
+            }
+          }
+        } catch (IOException e) {
+          if (receiveBuffer == buffer) {
+            Log.e(logTag, "IO Exception during background reading " + e.getMessage());
+          }
+        } finally {
+          buffer.close();
+        }
+      }
+    }, logTag + " reader");
+    reader.setDaemon(true);
+    reader.start();
+  }
+
+  private void stopBackgroundReader() {
+    ByteRingBuffer buffer = receiveBuffer;
+    if (buffer != null) {
+      // The reader thread stops once the socket is closed. Until then, it no longer adds to the
+      // buffer that readers see.
+      receiveBuffer = null;
+      buffer.close();
+    }
+  }
+
   /**
    * Returns `true`{:.logic.block} if a connection to a Bluetooth device has been made.
    */
@@ -564,6 +675,10 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return 0;
     }
 
+    ByteRingBuffer buffer = receiveBuffer;
+    if (buffer != null) {
+      return buffer.available();
+    }
     try {
       return inputStream.available();
     } catch (IOException e) {
@@ -589,16 +704,23 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       "If numberOfBytes is less than 0, read until a delimiter byte value is received.")
   public String ReceiveText(int numberOfBytes) {
     byte[] bytes = read("ReceiveText", numberOfBytes);
+    if (numberOfBytes < 0) {
+      // bytes contains a trailing delimiter byte that we ignore when converting to String.
+      return bytesToText(bytes, Math.max(0, bytes.length - 1));
+    } else {
+      return bytesToText(bytes, bytes.length);
+    }
+  }
+
+  /**
+   * Converts the first {@code length} of the given bytes to text, using the character encoding.
+   */
+  protected final String bytesToText(byte[] bytes, int length) {
     try {
-      if (numberOfBytes < 0) {
-        // bytes contains a trailing delimiter byte that we ignore when converting to String.
-        return new String(bytes, 0, bytes.length - 1, encoding);
-      } else {
-        return new String(bytes, encoding);
-      }
+      return new String(bytes, 0, length, encoding);
     } catch (UnsupportedEncodingException e) {
       Log.w(logTag, "UnsupportedEncodingException: " + e.getMessage());
-      return new String(bytes);
+      return new String(bytes, 0, length);
     }
   }
 
@@ -777,6 +899,11 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
       return new byte[0];
     }
 
+    ByteRingBuffer receiveBuffer = this.receiveBuffer;
+    if (receiveBuffer != null) {
+      return readBuffered(functionName, receiveBuffer, numberOfBytes);
+    }
+
     ByteArrayOutputStream buffer = new ByteArrayOutputStream();
 
     if (numberOfBytes >= 0) {
@@ -832,6 +959,63 @@ public abstract class BluetoothConnectionBase extends AndroidNonvisibleComponent
     return buffer.toByteArray();
   }
 
+  /**
+   * Reads all of the bytes that can be read without waiting.
+   *
+   * @param functionName the name of the SimpleFunction calling this method
+   */
+  protected final byte[] readAvailable(String functionName) {
+    if (!IsConnected()) {
+      bluetoothError(functionName,
+          ErrorMessages.ERROR_BLUETOOTH_NOT_CONNECTED_TO_DEVICE);
+      return new byte[0];
+    }
+
+    ByteRingBuffer buffer = receiveBuffer;
+    if (buffer != null) {
+      return buffer.read(Integer.MAX_VALUE);
+    }
+    int available;
+    try {
+      available = inputStream.available();
+    } catch (IOException e) {
+      Log.e(logTag, "IO Exception during Getting Receive Availability " + e.getMessage());
+      if (disconnectOnError) {
+        Disconnect();
+      }
+      bluetoothError(functionName,
+          ErrorMessages.ERROR_BLUETOOTH_UNABLE_TO_READ, e.getMessage());
+      return new byte[0];
+    }
+    return read(functionName, available);
+  }
+
+  /**
+   * Reads from the buffer filled by the background reader, waiting for more bytes to arrive if
+   * needed.
+   */
+  private byte[] readBuffered(String functionName, ByteRingBuffer buffer, int numberOfBytes) {
+    byte[] bytes;
+    try {
+      bytes = numberOfBytes >= 0 ? buffer.awaitBytes(numberOfBytes) : buffer.awaitFrame(delimiter);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return new byte[0];
+    }
+    boolean complete = numberOfBytes >= 0
+        ? bytes.length == numberOfBytes
+        : bytes.length > 0 && bytes[bytes.length - 1] == delimiter;
+    if (!complete) {
+      // The background reader stopped before all of the bytes arrived
+      if (disconnectOnError) {
+        Disconnect();
+      }
+      bluetoothError(functionName,
+          ErrorMessages.ERROR_BLUETOOTH_END_OF_STREAM);
+    }
+    return bytes;
+  }
+
   // OnDestroyListener implementation
 
   @Override
@@ -15,6 +15,7 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.graphics.Color;
+import android.graphics.Matrix;
 import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PorterDuff;
@@ -35,6 +36,7 @@ import android.view.MotionEvent;
 import android.view.View;
 
 import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
 
 import com.google.appinventor.components.annotations.Asset;
 import com.google.appinventor.components.annotations.DesignerComponent;
@@ -74,8 +76,10 @@ import java.io.IOException;
 import java.io.OutputStream;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -175,10 +179,17 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   private static final int FLING_INTERVAL = 1000;  // ms
   private static final int DEFAULT_TAP_THRESHOLD = 15;
 
+  // Pixels added around the area covered by a drawing operation or sprite
+  // when redrawing it, to cover anti-aliased edges.
+  private static final int DIRTY_REGION_PADDING = 3;
+
   // Keep track of enclosed sprites.  This list should always be
   // sorted by increasing sprite.Z().
   private final List<Sprite> sprites;
 
+  // Moves the enabled sprites, created when the first sprite is enabled
+  private SpriteAnimator spriteAnimator;
+
   // Handle touches and drags
   private final MotionEventParser motionEventParser;
 
@@ -417,10 +428,16 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     // to null whenever the canvas size or backgroundDrawable changes.
     private Bitmap scaledBackgroundBitmap;
 
-    // completeBitmap is created if the user calls getPixelColor().  It is set
-    // back to null whenever the view is redrawn.  If available, it is used
-    // when the Canvas is saved to a file.
-    private Bitmap completeBitmap;
+    // The area of the view in which each sprite was last drawn, so that only
+    // that area and the sprite's new area are redrawn when the sprite changes.
+    // A sprite without an entry causes the whole view to be redrawn.
+    private final Map<Sprite, Rect> spriteDrawnBounds = new HashMap<Sprite, Rect>();
+
+    // Scratch objects used while drawing
+    private final Rect clipBounds = new Rect();
+    private final Rect dirtyBounds = new Rect();
+    private final RectF spriteBounds = new RectF();
+    private final Rect textBounds = new Rect();
 
     public CanvasView(Context context) {
       super(context);
@@ -446,23 +463,113 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
 
     @Override
     public void onDraw(android.graphics.Canvas canvas0) {
-      completeBitmap = null;
-
       // This will draw the background image and color, if present.
       super.onDraw(canvas0);
 
+      // Only the invalidated area needs to be redrawn. Without hardware
+      // acceleration, the clip is limited to that area.
+      boolean fullRedraw = !canvas0.getClipBounds(clipBounds)
+          || clipBounds.contains(0, 0, getWidth(), getHeight());
+
       // Redraw anything that had been directly drawn on the old Canvas,
       // such as lines and circles but not Sprites.
-      canvas0.drawBitmap(bitmap, 0, 0, null);
+      if (fullRedraw) {
+        canvas0.drawBitmap(bitmap, 0, 0, null);
+      } else {
+        dirtyBounds.set(clipBounds);
+        if (dirtyBounds.intersect(0, 0, bitmap.getWidth(), bitmap.getHeight())) {
+          canvas0.drawBitmap(bitmap, dirtyBounds, dirtyBounds, null);
+        }
+      }
 
       // sprites is sorted by Z level, so sprites with low Z values will be
       // drawn first, potentially being hidden by Sprites with higher Z values.
       for (Sprite sprite : sprites) {
-        sprite.onDraw(canvas0);
+        getSpriteDirtyBounds(sprite, dirtyBounds);
+        if (fullRedraw || Rect.intersects(dirtyBounds, clipBounds)) {
+          // Record where the sprite is drawn now, whether or not the whole
+          // view is being redrawn, so that the next change to the sprite
+          // erases it from there.
+          Rect drawnBounds = spriteDrawnBounds.get(sprite);
+          if (drawnBounds == null) {
+            spriteDrawnBounds.put(sprite, new Rect(dirtyBounds));
+          } else {
+            drawnBounds.set(dirtyBounds);
+          }
+          sprite.onDraw(canvas0);
+        }
       }
       drawn = true;
     }
 
+    /*
+     * Invalidates the area covered by a drawing operation with the given paint.
+     */
+    private void invalidateDrawing(RectF area, Paint paint) {
+      float padding = paint.getStrokeWidth() / 2 + DIRTY_REGION_PADDING;
+      invalidate((int) Math.floor(area.left - padding), (int) Math.floor(area.top - padding),
+          (int) Math.ceil(area.right + padding), (int) Math.ceil(area.bottom + padding));
+    }
+
+    /*
+     * Invalidates the area covered by text drawn at (x, y) with the current
+     * paint, rotated counterclockwise by angle degrees around that point.
+     */
+    private void invalidateText(String text, float x, float y, float angle) {
+      paint.getTextBounds(text, 0, text.length(), textBounds);
+      RectF area = new RectF(textBounds);
+      // The bounds are measured from the origin of left aligned text.
+      switch (paint.getTextAlign()) {
+        case CENTER:
+          area.offset(-paint.measureText(text) / 2, 0);
+          break;
+        case RIGHT:
+          area.offset(-paint.measureText(text), 0);
+          break;
+        default:
+          break;
+      }
+      area.offset(x, y);
+      if (angle != 0) {
+        Matrix rotation = new Matrix();
+        rotation.setRotate(-angle, x, y);
+        rotation.mapRect(area);
+      }
+      invalidateDrawing(area, paint);
+    }
+
+    /*
+     * Invalidates the area where the sprite was last drawn and the area it
+     * covers now.
+     */
+    private void invalidateSprite(Sprite sprite) {
+      Rect drawnBounds = spriteDrawnBounds.get(sprite);
+      if (drawnBounds == null) {
+        invalidate();
+        return;
+      }
+      getSpriteDirtyBounds(sprite, dirtyBounds);
+      drawnBounds.union(dirtyBounds);
+      invalidate(drawnBounds);
+      drawnBounds.set(dirtyBounds);
+    }
+
+    /*
+     * Invalidates the area where a sprite that is being removed was last drawn.
+     */
+    private void forgetSprite(Sprite sprite) {
+      Rect drawnBounds = spriteDrawnBounds.remove(sprite);
+      if (drawnBounds != null) {
+        invalidate(drawnBounds);
+      }
+    }
+
+    private void getSpriteDirtyBounds(Sprite sprite, Rect out) {
+      sprite.getDrawingBounds(spriteBounds);
+      spriteBounds.roundOut(out);
+      out.inset(-DIRTY_REGION_PADDING, -DIRTY_REGION_PADDING);
+    }
+
     @Override
     protected void onSizeChanged(int w, int h, int oldW, int oldH) {
       int oldBitmapWidth = bitmap.getWidth();
@@ -662,7 +769,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
       canvas.rotate(-angle, x, y);
       canvas.drawText(text, x, y, paint);
       canvas.restore();
-      invalidate();
+      invalidateText(text, x, y, angle);
     }
 
     // This intentionally ignores sprites.
@@ -714,37 +821,35 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
         return Component.COLOR_NONE;
       }
 
-      // If the bitmap isn't available, try to avoid rebuilding it.
-      if (completeBitmap == null) {
-        // If there are no visible sprites, just call getBackgroundPixelColor().
-        boolean anySpritesVisible = false;
-        for (Sprite sprite : sprites) {
-          if (sprite.Visible()) {
-            anySpritesVisible = true;
-            break;
+      // Only the sprites drawn over the point can change its color.
+      List<Sprite> coveringSprites = new ArrayList<Sprite>();
+      for (Sprite sprite : sprites) {
+        if (sprite.Visible()) {
+          getSpriteDirtyBounds(sprite, dirtyBounds);
+          if (dirtyBounds.contains(x, y)) {
+            coveringSprites.add(sprite);
           }
         }
-        if (!anySpritesVisible) {
-          return getBackgroundPixelColor(x, y);
-        }
-
-        // TODO(user): If needed for efficiency, check whether there are any
-        // sprites overlapping (x, y).  If not, we can just call getBackgroundPixelColor().
-        // If so, maybe we can just draw those sprites instead of building a full
-        // cache of the view.
-
-        completeBitmap = createBitmap();
+      }
+      if (coveringSprites.isEmpty()) {
+        return getBackgroundPixelColor(x, y);
       }
 
-      // Check the complete bitmap.
-      try {
-        return completeBitmap.getPixel(x, y);
-      } catch (IllegalArgumentException e) {
-        // This should never occur, since we have checked bounds.
-        Log.e(LOG_TAG,
-            String.format("Returning COLOR_NONE (exception) from getPixelColor."));
-        return Component.COLOR_NONE;
+      // Draw the view into a single pixel bitmap, but only the sprites that
+      // cover the point.
+      Bitmap pixel = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+      android.graphics.Canvas pixelCanvas = new android.graphics.Canvas(pixel);
+      pixelCanvas.translate(-x, -y);
+      Drawable background = getBackground();
+      if (background != null) {
+        background.setBounds(0, 0, getWidth(), getHeight());
+        background.draw(pixelCanvas);
       }
+      pixelCanvas.drawBitmap(bitmap, 0, 0, null);
+      for (Sprite sprite : coveringSprites) {
+        sprite.onDraw(pixelCanvas);
+      }
+      return pixel.getPixel(0, 0);
     }
   }
 
@@ -852,6 +957,37 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    */
   void removeSprite(Sprite sprite) {
     sprites.remove(sprite);
+    view.forgetSprite(sprite);
+    if (spriteAnimator != null) {
+      spriteAnimator.remove(sprite);
+    }
+  }
+
+  /**
+   * Starts or stops moving a sprite after its Enabled, Interval or Speed
+   * property has changed.
+   *
+   * @param sprite the sprite whose property has changed
+   * @param restart whether the sprite's next step should be one interval from
+   *     now even if it was already moving
+   */
+  void updateSpriteAnimation(Sprite sprite, boolean restart) {
+    if (spriteAnimator == null) {
+      if (!SpriteAnimator.isMoving(sprite)) {
+        return;
+      }
+      spriteAnimator = new SpriteAnimator(this);
+    }
+    spriteAnimator.update(sprite, restart);
+  }
+
+  /**
+   * Returns the animator that moves this Canvas's sprites, or null if no
+   * sprite has moved yet.
+   */
+  @VisibleForTesting
+  SpriteAnimator getSpriteAnimator() {
+    return spriteAnimator;
   }
 
   /**
@@ -861,9 +997,9 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param sprite the Sprite whose Z property has changed
    */
   void changeSpriteLayer(Sprite sprite) {
-    removeSprite(sprite);
+    sprites.remove(sprite);
     addSprite(sprite);
-    view.invalidate();
+    view.invalidateSprite(sprite);
   }
 
   @Override
@@ -905,10 +1041,24 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
    * @param sprite the sprite whose location, size, or appearance has changed
    */
   void registerChange(Sprite sprite) {
-    view.invalidate();
+    view.invalidateSprite(sprite);
     findSpriteCollisions(sprite);
   }
 
+  /**
+   * Indicates that several sprites have moved during one animation frame,
+   * triggering a single redraw of the areas they moved across and one check
+   * for collisions.
+   *
+   * @param sprites the sprites that have moved, in the order in which they moved
+   */
+  void registerChanges(List<Sprite> sprites) {
+    for (Sprite sprite : sprites) {
+      view.invalidateSprite(sprite);
+    }
+    findSpriteCollisions(sprites);
+  }
+
 
   // Methods for detecting collisions
 
@@ -930,30 +1080,53 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
   protected void findSpriteCollisions(Sprite movedSprite) {
     for (Sprite sprite : sprites) {
       if (sprite != movedSprite) {
-        // Check whether we already raised an event for their collision.
-        if (movedSprite.CollidingWith(sprite)) {
-          // If they no longer conflict, note that.
-          if (!movedSprite.Visible() || !movedSprite.Enabled() ||
-              !sprite.Visible() || !sprite.Enabled() ||
-              !Sprite.colliding(sprite, movedSprite)) {
-            movedSprite.NoLongerCollidingWith(sprite);
-            sprite.NoLongerCollidingWith(movedSprite);
-          } else {
-            // If they still conflict, do nothing.
-          }
-        } else {
-          // Check if they now conflict.
-          if (movedSprite.Visible() && movedSprite.Enabled() &&
-              sprite.Visible() && sprite.Enabled() &&
-              Sprite.colliding(sprite, movedSprite)) {
-            // If so, raise two CollidedWith events.
-            movedSprite.CollidedWith(sprite);
-            sprite.CollidedWith(movedSprite);
-          } else {
-            // If they still don't conflict, do nothing.
-          }
+        checkCollision(movedSprite, sprite);
+      }
+    }
+  }
+
+  /**
+   * Checks for collisions after several sprites have moved, as
+   * {@link #findSpriteCollisions(Sprite)} does for each of them, but checking
+   * each pair of sprites only once.
+   *
+   * @param movedSprites the sprites that have just changed position
+   */
+  protected void findSpriteCollisions(List<Sprite> movedSprites) {
+    Set<Sprite> checked = Sets.newHashSet();
+    for (Sprite movedSprite : movedSprites) {
+      for (Sprite sprite : sprites) {
+        if (sprite != movedSprite && !checked.contains(sprite)) {
+          checkCollision(movedSprite, sprite);
         }
       }
+      checked.add(movedSprite);
+    }
+  }
+
+  private void checkCollision(Sprite movedSprite, Sprite sprite) {
+    // Check whether we already raised an event for their collision.
+    if (movedSprite.CollidingWith(sprite)) {
+      // If they no longer conflict, note that.
+      if (!movedSprite.Visible() || !movedSprite.Enabled() ||
+          !sprite.Visible() || !sprite.Enabled() ||
+          !Sprite.colliding(sprite, movedSprite)) {
+        movedSprite.NoLongerCollidingWith(sprite);
+        sprite.NoLongerCollidingWith(movedSprite);
+      } else {
+        // If they still conflict, do nothing.
+      }
+    } else {
+      // Check if they now conflict.
+      if (movedSprite.Visible() && movedSprite.Enabled() &&
+          sprite.Visible() && sprite.Enabled() &&
+          Sprite.colliding(sprite, movedSprite)) {
+        // If so, raise two CollidedWith events.
+        movedSprite.CollidedWith(sprite);
+        sprite.CollidedWith(movedSprite);
+      } else {
+        // If they still don't conflict, do nothing.
+      }
     }
   }
 
@@ -1386,7 +1559,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     float correctedX = x * $form().deviceDensity();
     float correctedY = y * $form().deviceDensity();
     view.canvas.drawPoint(correctedX, correctedY, paint);
-    view.invalidate();
+    view.invalidateDrawing(new RectF(correctedX, correctedY, correctedX, correctedY), paint);
   }
 
  /**
@@ -1406,7 +1579,8 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     Paint p = new Paint(paint);
     p.setStyle(fill ? Paint.Style.FILL : Paint.Style.STROKE);
     view.canvas.drawCircle(correctedX, correctedY, correctedR, p);
-    view.invalidate();
+    view.invalidateDrawing(new RectF(correctedX - correctedR, correctedY - correctedR,
+        correctedX + correctedR, correctedY + correctedR), p);
   }
 
   /**
@@ -1424,7 +1598,9 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     float correctedX2 = x2 * $form().deviceDensity();
     float correctedY2 = y2 * $form().deviceDensity();
     view.canvas.drawLine(correctedX1, correctedY1, correctedX2, correctedY2, paint);
-    view.invalidate();
+    view.invalidateDrawing(new RectF(Math.min(correctedX1, correctedX2),
+        Math.min(correctedY1, correctedY2), Math.max(correctedX1, correctedX2),
+        Math.max(correctedY1, correctedY2)), paint);
   }
 
   /**
@@ -1454,7 +1630,9 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     Paint p = new Paint(paint);
     p.setStyle(fill ? Paint.Style.FILL : Paint.Style.STROKE);
     view.canvas.drawPath(path, p);
-    view.invalidate();
+    RectF bounds = new RectF();
+    path.computeBounds(bounds, true);
+    view.invalidateDrawing(bounds, p);
   }
 
   private Path parsePath(float[][] points) throws IllegalArgumentException {
@@ -1527,11 +1705,11 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     float scalingFactor = $form().deviceDensity();
     Paint p = new Paint(paint);
     p.setStyle(fill ? Paint.Style.FILL : Paint.Style.STROKE);
-    view.canvas.drawArc(
-      new RectF(scalingFactor * left, scalingFactor * top,
-                scalingFactor * right, scalingFactor * bottom),
-      startAngle, sweepAngle, useCenter, p);
-    view.invalidate();
+    RectF oval = new RectF(scalingFactor * left, scalingFactor * top,
+                           scalingFactor * right, scalingFactor * bottom);
+    view.canvas.drawArc(oval, startAngle, sweepAngle, useCenter, p);
+    oval.sort();
+    view.invalidateDrawing(oval, p);
   }
 
   /**
@@ -1550,7 +1728,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     float correctedX = x * fontScalingFactor;
     float correctedY = y * fontScalingFactor;
     view.canvas.drawText(text, correctedX, correctedY, paint);
-    view.invalidate();
+    view.invalidateText(text, correctedX, correctedY, 0);
   }
 
   /**
@@ -1605,7 +1783,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     int correctedX = (int) (x * $form().deviceDensity());
     int correctedY = (int) (y * $form().deviceDensity());
     view.canvas.drawPoint(correctedX, correctedY, pixelPaint);
-    view.invalidate();
+    view.invalidateDrawing(new RectF(correctedX, correctedY, correctedX, correctedY), pixelPaint);
   }
 
   /**
@@ -1688,7 +1866,7 @@ public final class Canvas extends AndroidViewComponent implements ComponentConta
     new FileWriteOperation(form, this, method, scopedFile, false, false) {
       @Override
       protected boolean process(OutputStream stream) {
-        Bitmap bitmap = view.completeBitmap == null ? view.createBitmap() : view.completeBitmap;
+        Bitmap bitmap = view.createBitmap();
         result.wakeup(bitmap.compress(format, 100, stream));
         return true;
       }
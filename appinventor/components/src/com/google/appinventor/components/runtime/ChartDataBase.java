@@ -45,6 +45,16 @@ public abstract class ChartDataBase extends DataCollection<Chart, ChartDataModel
   private int color;
   private YailList colors;
 
+  // Notifies the observers of this Data Series of a change in its values
+  private final Runnable notifyDataSourceListeners = new Runnable() {
+    @Override
+    public void run() {
+      for (DataSourceChangeListener listener : listeners) {
+        listener.onDataSourceValueChange(ChartDataBase.this, null, null);
+      }
+    }
+  };
+
   /**
    * Creates a new Chart Data component.
    */
@@ -238,9 +248,19 @@ public abstract class ChartDataBase extends DataCollection<Chart, ChartDataModel
     // Update the Chart with the Chart Data Model's current
     // data and refresh the Chart itself.
     container.getChartView().refresh((ChartDataModel) dataModel);
-    for (DataSourceChangeListener listener : listeners) {
-      listener.onDataSourceValueChange(this, null, null);
-    }
+    notifyDataSourceListeners.run();
+  }
+
+  /**
+   * Schedules a refresh of the Chart View rather than refreshing it right
+   * away, so that all of the real time values received within one frame
+   * are drawn (and passed on to listeners) together.
+   */
+  @Override
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  protected void onRealTimeDataChange() {
+    container.getChartView().scheduleRefresh((ChartDataModel) dataModel,
+        notifyDataSourceListeners);
   }
 
   @Override
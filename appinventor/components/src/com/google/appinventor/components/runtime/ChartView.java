@@ -9,6 +9,7 @@ import android.annotation.SuppressLint;
 import android.os.AsyncTask;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import android.view.View;
 
@@ -20,7 +21,9 @@ import com.github.mikephil.charting.data.Entry;
 
 import com.github.mikephil.charting.interfaces.datasets.IDataSet;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Base class to represent Chart Views. The class (and subclasses)
@@ -52,6 +55,34 @@ public abstract class ChartView<
 
   protected Handler uiHandler = new Handler(Looper.myLooper());
 
+  // Minimum time between two refreshes caused by real time data, which
+  // caps real time redraws at roughly 30 frames per second.
+  private static final long REAL_TIME_REFRESH_INTERVAL = 33;
+
+  // Models awaiting a real time refresh, with the callback to run after each
+  private final Map<ChartDataModel<E, T, D, C, V>, Runnable> pendingRefreshes =
+      new LinkedHashMap<>();
+  private long lastRealTimeRefresh = 0;
+  private boolean realTimeRefreshScheduled = false;
+
+  private final Runnable realTimeRefresh = new Runnable() {
+    @Override
+    public void run() {
+      realTimeRefreshScheduled = false;
+      lastRealTimeRefresh = SystemClock.uptimeMillis();
+      List<Map.Entry<ChartDataModel<E, T, D, C, V>, Runnable>> refreshes =
+          new ArrayList<>(pendingRefreshes.entrySet());
+      pendingRefreshes.clear();
+      for (Map.Entry<ChartDataModel<E, T, D, C, V>, Runnable> entry : refreshes) {
+        ChartDataModel<E, T, D, C, V> model = entry.getKey();
+        refresh(model, new ArrayList<>(model.getEntries()));
+        if (entry.getValue() != null) {
+          entry.getValue().run();
+        }
+      }
+    }
+  };
+
   /**
    * Creates a new Chart View with the specified Chart component
    * instance as the parent of the View.
@@ -142,6 +173,32 @@ public abstract class ChartView<
     refreshTask.execute(model);
   }
 
+  /**
+   * Schedules a refresh of the specified Chart Data Model, coalescing it
+   * with any other refresh requested before the next frame.
+   *
+   * <p>Real time Data Sources can add hundreds of entries per second, and
+   * refreshing the Chart for each of them would both copy the entries and
+   * redraw the Chart far more often than the screen is updated. Instead,
+   * at most one refresh is done per {@link #REAL_TIME_REFRESH_INTERVAL}
+   * milliseconds, using the entries present at that time.
+   *
+   * <p>Must be called on the UI thread, which is also where the entries
+   * of real time data are added.
+   *
+   * @param model Chart Data Model to update & refresh
+   * @param afterRefresh optional callback to run after the model is refreshed
+   */
+  public void scheduleRefresh(ChartDataModel<E, T, D, C, V> model, Runnable afterRefresh) {
+    pendingRefreshes.put(model, afterRefresh);
+    if (!realTimeRefreshScheduled) {
+      realTimeRefreshScheduled = true;
+      long delay = lastRealTimeRefresh + REAL_TIME_REFRESH_INTERVAL
+          - SystemClock.uptimeMillis();
+      uiHandler.postDelayed(realTimeRefresh, Math.max(0, delay));
+    }
+  }
+
   /**
    * AsyncTask used to refresh the Chart View with new data on the UI thread.
    * Used as a measure to prevent crashes and exceptions by taking in a constant
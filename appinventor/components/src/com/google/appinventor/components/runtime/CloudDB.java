@@ -11,13 +11,11 @@ import static android.Manifest.permission.INTERNET;
 import android.Manifest;
 import android.app.Activity;
 
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 
 import android.os.Handler;
+import android.os.SystemClock;
 
 import android.util.Base64;
 import android.util.Log;
@@ -62,6 +60,7 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.net.ssl.SSLContext;
@@ -74,6 +73,8 @@ import org.json.JSONException;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisShardInfo;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
 import redis.clients.jedis.exceptions.JedisConnectionException;
 import redis.clients.jedis.exceptions.JedisDataException;
 import redis.clients.jedis.exceptions.JedisException;
@@ -246,22 +247,50 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
   // canvas). Or in a handler for the Accelerometer (gasp!). To make storing as
   // effecient as possible, we have a queue of pending store requests and we
   // have a background task that drains this queue as fast as possible and
-  // iterates over the queue until it is drained.
+  // iterates over the queue until it is drained. Each time around, everything
+  // that is in the queue is sent to the server in a single pipeline, so that
+  // many updates cost one network round trip. AppendValueToList and
+  // RemoveFirstFromList go through the same queue, so that they are applied
+  // in order with the stores.
   private final List<storedValue> storeQueue = Collections.synchronizedList(new ArrayList());
 
+  // GetValue requests that have not been sent yet. They are sent together
+  // with a single MGET.
+  private final List<pendingGet> getQueue = Collections.synchronizedList(new ArrayList<pendingGet>());
+
+  // SHA1s of the Lua scripts known to be loaded on the server, so that they
+  // can be run with EVALSHA, including in pipelines.
+  private final Set<String> loadedScripts = Collections.synchronizedSet(new HashSet<String>());
+
+  // Instrumentation of the traffic with the Redis server
+  private final AtomicLong roundTrips = new AtomicLong();
+  private final AtomicLong commandsSent = new AtomicLong();
+  private final AtomicLong roundTripMillis = new AtomicLong();
+  private volatile int maxQueueDepth = 0;
+
   private ConnectivityManager cm;
 
   // Set of observers
   private HashSet<DataSourceChangeListener> dataSourceObservers = new HashSet<>();
 
   private static class storedValue {
+    private String operation;   // STORE_VALUE, APPEND_VALUE_TO_LIST or REMOVE_FIRST_FROM_LIST
     private String tag;
     private JSONArray  valueList;
     storedValue(String tag, JSONArray valueList) {
+      this(STORE_VALUE, tag, valueList);
+    }
+
+    storedValue(String operation, String tag, JSONArray valueList) {
+      this.operation = operation;
       this.tag = tag;
       this.valueList = valueList;
     }
 
+    public String getOperation() {
+      return operation;
+    }
+
     public String getTag() {
       return tag;
     }
@@ -271,6 +300,20 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
     }
   }
 
+  private static class pendingGet {
+    private final String tag;
+    private final Object valueIfTagNotThere;
+    pendingGet(String tag, Object valueIfTagNotThere) {
+      this.tag = tag;
+      this.valueIfTagNotThere = valueIfTagNotThere;
+    }
+  }
+
+  // Operations that go through storeQueue, named as in the UpdateDone event
+  private static final String STORE_VALUE = "StoreValue";
+  private static final String APPEND_VALUE_TO_LIST = "AppendValueToList";
+  private static final String REMOVE_FIRST_FROM_LIST = "RemoveFirstFromList";
+
   /**
    * Creates a new CloudDB component.
    * @param container the Form that this component is contained in.
@@ -585,10 +628,41 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
   @SimpleFunction(description = "Store a value at a tag.")
   public void StoreValue(final String tag, final Object valueToStore) {
     checkProjectIDNotBlank();
-    final String value;
-    NetworkInfo networkInfo = cm.getActiveNetworkInfo();
-    boolean isConnected = networkInfo != null && networkInfo.isConnected();
+    List<storedValue> work = new ArrayList<storedValue>();
+    work.add(new storedValue(tag, toValueList(valueToStore)));
+    enqueueUpdates(work, "Cannot store values off-line.");
+  }
+
+  /**
+   * Asks `CloudDB` to store each of the given `values`{:.variable.block} under the
+   * tag at the same position in `tags`{:.list.block}. The values are sent to the
+   * server together, which is much faster than storing them one at a time.
+   *
+   * @param tags The tags to use
+   * @param values The values to store, one for each tag.
+   */
+  @SimpleFunction(description = "Store each value in a list at the tag in the same " +
+      "position of another list. The values are sent together, which is faster than " +
+      "storing them one at a time.")
+  public void StoreValues(final YailList tags, final YailList values) {
+    checkProjectIDNotBlank();
+    String[] tagArray = tags.toStringArray();
+    Object[] valueArray = values.toArray();
+    if (tagArray.length != valueArray.length) {
+      throw new YailRuntimeError("StoreValues needs the same number of tags and values.",
+          "Argument Error");
+    }
+    List<storedValue> work = new ArrayList<storedValue>();
+    for (int i = 0; i < tagArray.length; i++) {
+      work.add(new storedValue(tagArray[i], toValueList(valueArray[i])));
+    }
+    enqueueUpdates(work, "Cannot store values off-line.");
+  }
 
+  // Converts a value to the JSON stored in CloudDB, wrapped in a list as
+  // expected by storedValue.
+  private JSONArray toValueList(Object valueToStore) {
+    final String value;
     try {
       if (valueToStore != null) {
         String strval = valueToStore.toString();
@@ -603,129 +677,181 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
     } catch(JSONException e) {
       throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
     }
+    JSONArray valueList = new JSONArray();
+    try {
+      valueList.put(0, value);
+    } catch (JSONException e) {
+      throw new YailRuntimeError("JSON Error putting value.", "value is not convertable");
+    }
+    return valueList;
+  }
 
-    if (isConnected) {
+  /*
+   * Adds updates to storeQueue, starting the background task that sends them
+   * if it isn't already running. If there is no network, offlineError is
+   * reported instead.
+   */
+  private void enqueueUpdates(List<storedValue> work, String offlineError) {
+    NetworkInfo networkInfo = cm.getActiveNetworkInfo();
+    boolean isConnected = networkInfo != null && networkInfo.isConnected();
+    if (!isConnected) {
+      CloudDBError(offlineError);
+      return;
+    }
+    synchronized(storeQueue) {
+      boolean kickit = storeQueue.isEmpty(); // Need to kick off the background task
+      storeQueue.addAll(work);
+      maxQueueDepth = Math.max(maxQueueDepth, storeQueue.size());
       if (DEBUG) {
-        Log.d(LOG_TAG,"Device is online...");
+        Log.d(LOG_TAG, "storeQueue has " + storeQueue.size() + " entries");
       }
+      if (kickit) {
+        background.submit(new Runnable() {
+            public void run() {
+              try {
+                drainStoreQueue();
+              } catch (Exception e) {
+                Log.e(LOG_TAG, "Exception in store worker!", e);
+              }
+            }
+          });
+      }
+    }
+  }
+
+  /*
+   * Sends the updates in storeQueue to the server until the queue is empty.
+   * Each time around, the whole queue is sent in one pipeline.
+   */
+  private void drainStoreQueue() throws JSONException {
+    while (true) {
+      List<storedValue> batch;
       synchronized(storeQueue) {
-        boolean kickit = false;
-        if (storeQueue.size() == 0) { // Need to kick off the background task
-          if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue is zero length, kicking background");
-          }
-          kickit = true;
-        } else {
+        if (storeQueue.isEmpty()) {
           if (DEBUG) {
-            Log.d(LOG_TAG, "storeQueue has " + storeQueue.size() + " entries");
+            Log.d(LOG_TAG, "store background task exiting.");
           }
+          return;
         }
-        JSONArray valueList = new JSONArray();
-        try {
-          valueList.put(0, value);
-        } catch (JSONException e) {
-          throw new YailRuntimeError("JSON Error putting value.", "value is not convertable");
-        }
-        storedValue work  = new storedValue(tag, valueList);
-        storeQueue.add(work);
-        if (kickit) {
-          background.submit(new Runnable() {
-              public void run() {
-                JSONArray pendingValueList = null;
-                String pendingTag = null;
-                String pendingValue = null;
-                try {
-                  storedValue work;
-                  if (DEBUG) {
-                    Log.d(LOG_TAG, "store background task running.");
-                  }
-                  while (true) {
-                    synchronized(storeQueue) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "store: In background synchronized block");
-                      }
-                      int size = storeQueue.size();
-                      if (size == 0) {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store background task exiting.");
-                        }
-                        work = null;
-                      } else {
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: storeQueue.size() == " + size);
-                        }
-                        work = storeQueue.remove(0);
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "store: got work.");
-                        }
-                      }
-                    }
-                    if (DEBUG) {
-                      Log.d(LOG_TAG, "store: left synchronized block");
-                    }
-                    if (work == null) {
-                      try {
-                        if (pendingTag != null) {
-                          String jsonValueList = pendingValueList.toString();
-                          if (DEBUG) {
-                            Log.d(LOG_TAG, "Workqueue empty, sending pendingTag, valueListLength = " + pendingValueList.length());
-                          }
-                          jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                          UpdateDone(pendingTag, "StoreValue");
-                        }
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                      }
-                      return;
-                    }
+        batch = new ArrayList<storedValue>(storeQueue);
+        storeQueue.clear();
+      }
+      try {
+        sendUpdates(coalesceStores(batch));
+      } catch (JedisException e) {
+        CloudDBError(e.getMessage());
+        flushJedis(true);
+        storeQueue.clear(); // Flush pending changes, we are in
+        return;             // an error state
+      }
+    }
+  }
 
-                    String tag = work.getTag();
-                    JSONArray valueList = work.getValueList();
-                    if (tag == null || valueList == null) {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Either tag or value is null!");
-                      }
-                    } else {
-                      if (DEBUG) {
-                        Log.d(LOG_TAG, "Got Work: tag = " + tag + " value = " + valueList.get(0));
-                      }
-                    }
-                    if (pendingTag == null) { // First time through this invocation
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    } else if (pendingTag.equals(tag)) { // work is for the same tag
-                      pendingValue = valueList.getString(0);
-                      pendingValueList.put(pendingValue);
-                    } else {    // Work is for a different tag, send what we have
-                      try {     // and add the new tag,incoming valuelist for the next round
-                        String jsonValueList = pendingValueList.toString();
-                        if (DEBUG) {
-                          Log.d(LOG_TAG, "pendingTag changed sending pendingTag, valueListLength = " + pendingValueList.length());
-                        }
-                        jEval(SET_SUB_SCRIPT, SET_SUB_SCRIPT_SHA1, 1, pendingTag, pendingValue, jsonValueList, projectID);
-                      } catch (JedisException e) {
-                        CloudDBError(e.getMessage());
-                        flushJedis(true);
-                        storeQueue.clear(); // Flush pending changes, we are in
-                        return;             // an error state
-                      }
-                      pendingTag = tag;
-                      pendingValueList = valueList;
-                      pendingValue = valueList.getString(0);
-                    }
-                  }
-                } catch (Exception e) {
-                Log.e(LOG_TAG, "Exception in store worker!", e);
-                }
-              }
-            });
+  /*
+   * Merges consecutive stores to the same tag into one, which sets the last
+   * value and publishes all of them, as the store worker always has.
+   */
+  private static List<storedValue> coalesceStores(List<storedValue> batch) throws JSONException {
+    List<storedValue> result = new ArrayList<storedValue>();
+    storedValue pending = null;
+    for (storedValue work : batch) {
+      if (work.getTag() == null || work.getValueList() == null) {
+        if (DEBUG) {
+          Log.d(LOG_TAG, "Either tag or value is null!");
         }
+        continue;
       }
-    } else {
-      CloudDBError("Cannot store values off-line.");
+      if (pending != null && STORE_VALUE.equals(pending.getOperation())
+          && STORE_VALUE.equals(work.getOperation()) && pending.getTag().equals(work.getTag())) {
+        pending.getValueList().put(work.getValueList().getString(0));
+      } else {
+        pending = work;
+        result.add(work);
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Runs the scripts for a list of updates in one pipeline and reports the
+   * result of each.
+   */
+  private void sendUpdates(List<storedValue> updates) throws JSONException {
+    if (updates.isEmpty()) {
+      return;
+    }
+    Jedis jedis = getJedis();
+    if (jedis == null) {
+      storeQueue.clear();       // getJedis() has reported the error
+      return;
     }
+    List<String[]> argsList = new ArrayList<String[]>();
+    for (storedValue update : updates) {
+      ensureScriptLoaded(jedis, scriptFor(update), scriptSha1For(update));
+      argsList.add(scriptArgs(update));
+    }
+    Pipeline pipeline = jedis.pipelined();
+    List<Response<Object>> responses = new ArrayList<Response<Object>>();
+    for (int i = 0; i < updates.size(); i++) {
+      responses.add(pipeline.evalsha(scriptSha1For(updates.get(i)), 1, argsList.get(i)));
+    }
+    long start = SystemClock.uptimeMillis();
+    pipeline.sync();
+    recordRoundTrip(updates.size(), SystemClock.uptimeMillis() - start);
+
+    for (int i = 0; i < updates.size(); i++) {
+      storedValue update = updates.get(i);
+      Object result;
+      try {
+        result = responses.get(i).get();
+      } catch (JedisNoScriptException e) {
+        // The server lost its scripts since we checked; run this one the slow way.
+        loadedScripts.clear();
+        result = jEval(scriptFor(update), scriptSha1For(update), 1, argsList.get(i));
+      } catch (JedisDataException e) {
+        // The script failed, for example because the tag doesn't hold a list.
+        CloudDBError(e.getMessage());
+        continue;
+      }
+      if (REMOVE_FIRST_FROM_LIST.equals(update.getOperation())) {
+        FirstRemoved(result);
+      } else {
+        UpdateDone(update.getTag(), update.getOperation());
+      }
+    }
+  }
+
+  private static String scriptFor(storedValue update) {
+    if (APPEND_VALUE_TO_LIST.equals(update.getOperation())) {
+      return APPEND_SCRIPT;
+    } else if (REMOVE_FIRST_FROM_LIST.equals(update.getOperation())) {
+      return POP_FIRST_SCRIPT;
+    }
+    return SET_SUB_SCRIPT;
+  }
+
+  private static String scriptSha1For(storedValue update) {
+    if (APPEND_VALUE_TO_LIST.equals(update.getOperation())) {
+      return APPEND_SCRIPT_SHA1;
+    } else if (REMOVE_FIRST_FROM_LIST.equals(update.getOperation())) {
+      return POP_FIRST_SCRIPT_SHA1;
+    }
+    return SET_SUB_SCRIPT_SHA1;
+  }
+
+  private String[] scriptArgs(storedValue update) throws JSONException {
+    String tag = update.getTag();
+    JSONArray valueList = update.getValueList();
+    if (APPEND_VALUE_TO_LIST.equals(update.getOperation())) {
+      return new String[] { tag, valueList.getString(0), projectID };
+    } else if (REMOVE_FIRST_FROM_LIST.equals(update.getOperation())) {
+      return new String[] { tag, projectID };
+    }
+    String value = valueList.getString(valueList.length() - 1);
+    if (DEBUG) {
+      Log.d(LOG_TAG, "sending " + tag + ", valueListLength = " + valueList.length());
+    }
+    return new String[] { tag, value, valueList.toString(), projectID };
   }
 
   /**
@@ -746,34 +872,23 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
       Log.d(LOG_TAG, "getting value ... for tag: " + tag);
     }
     checkProjectIDNotBlank();
-    final AtomicReference<Object> value = new AtomicReference<Object>();
-    Cursor cursor = null;
-    SQLiteDatabase db = null;
     NetworkInfo networkInfo = cm.getActiveNetworkInfo();
     boolean isConnected = networkInfo != null && networkInfo.isConnected();
 
     if (isConnected) {
-      // Set value to either the JSON from the CloudDB
-      // or the JSON representation of valueIfTagNotThere
-      background.submit(new Runnable() {
-          public void run() {
-            final AtomicReference<Object> value = getValueByTag(tag, valueIfTagNotThere);
-
-            // Value stored is null; Return
-            if (value.get() == null) {
-              return;
-            }
-
-            androidUIHandler.post(new Runnable() {
-                public void run() {
-                  // Signal an event to indicate that the value was
-                  // received.  We post this to run in the Application's main
-                  // UI thread.
-                  GotValue(tag, value.get());
-                }
-              });
-          }
-        });
+      // Requests made before the background task gets to them are fetched
+      // together.
+      synchronized(getQueue) {
+        boolean kickit = getQueue.isEmpty();
+        getQueue.add(new pendingGet(tag, valueIfTagNotThere));
+        if (kickit) {
+          background.submit(new Runnable() {
+              public void run() {
+                drainGetQueue();
+              }
+            });
+        }
+      }
     } else {
       if (DEBUG) {
         Log.d(LOG_TAG, "GetValue(): We're offline");
@@ -782,6 +897,94 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
     }
   }
 
+  /*
+   * Fetches the values for all of the pending GetValue requests and signals a
+   * GotValue event for each.
+   */
+  private void drainGetQueue() {
+    final List<pendingGet> batch;
+    synchronized(getQueue) {
+      batch = new ArrayList<pendingGet>(getQueue);
+      getQueue.clear();
+    }
+    if (batch.isEmpty()) {
+      return;
+    }
+    List<String> tags = new ArrayList<String>();
+    List<Object> defaults = new ArrayList<Object>();
+    for (pendingGet get : batch) {
+      tags.add(get.tag);
+      defaults.add(get.valueIfTagNotThere);
+    }
+    final List<String> values = getValuesByTags(tags, defaults);
+    if (values == null) {
+      return;
+    }
+    androidUIHandler.post(new Runnable() {
+        public void run() {
+          // Signal an event to indicate that each value was received.  We
+          // post this to run in the Application's main UI thread.
+          for (int i = 0; i < batch.size(); i++) {
+            // Values that failed to convert have been reported already.
+            if (values.get(i) != null) {
+              GotValue(batch.get(i).tag, values.get(i));
+            }
+          }
+        }
+      });
+  }
+
+  /**
+   * `GetValues` asks `CloudDB` to get the values stored under all of the given
+   * tags at once. It will pass the results to the
+   * {@link #GotValues(List, List)} event. Tags that have no value get
+   * `valueIfTagNotThere`{:.variable.block}.
+   *
+   * @param tags The tags whose values are to be retrieved.
+   * @param valueIfTagNotThere The value to use for tags that do not exist.
+   */
+  @SimpleFunction(description = "Get the values for a list of tags at once. Doesn't " +
+    "return the values but will cause a GotValues event to fire when they are looked up.")
+  public void GetValues(final YailList tags, final Object valueIfTagNotThere) {
+    checkProjectIDNotBlank();
+    NetworkInfo networkInfo = cm.getActiveNetworkInfo();
+    boolean isConnected = networkInfo != null && networkInfo.isConnected();
+    if (!isConnected) {
+      CloudDBError("Cannot fetch variables while off-line.");
+      return;
+    }
+    final List<String> tagList = new ArrayList<String>();
+    Collections.addAll(tagList, tags.toStringArray());
+    background.submit(new Runnable() {
+        public void run() {
+          final List<String> values = getValuesByTags(tagList,
+              Collections.nCopies(tagList.size(), valueIfTagNotThere));
+          if (values == null) {
+            return;
+          }
+          androidUIHandler.post(new Runnable() {
+              public void run() {
+                List<Object> results = new ArrayList<Object>();
+                for (int i = 0; i < tagList.size(); i++) {
+                  Object value = valueIfTagNotThere;
+                  try {
+                    if (values.get(i) != null) {
+                      value = JsonUtil.getObjectFromJson(values.get(i), true);
+                    }
+                  } catch (JSONException e) {
+                    throw new YailRuntimeError("Value failed to convert from JSON.",
+                        "JSON Retrieval Error.");
+                  }
+                  notifyDataObservers(tagList.get(i), value);
+                  results.add(value);
+                }
+                GotValues(tagList, results);
+              }
+            });
+        }
+      });
+  }
+
   /**
    * Gets the specified value from the underlying Redis database, or
    * returns the specified value if the tag is not present.
@@ -795,46 +998,70 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
    */
   private AtomicReference<Object> getValueByTag(final String tag, final Object valueIfTagNotThere) {
     AtomicReference<Object> value = new AtomicReference<Object>();
+    List<String> values = getValuesByTags(Collections.singletonList(tag),
+        Collections.singletonList(valueIfTagNotThere));
+    if (values != null) {
+      value.set(values.get(0));
+    }
+    return value;
+  }
 
+  /**
+   * Gets the values of several tags from the underlying Redis database in one
+   * round trip, as JSON. Tags that are not present get the JSON for the
+   * corresponding entry of {@code valuesIfTagNotThere}.
+   *
+   * @param tags  tags of the values to get
+   * @param valuesIfTagNotThere  values to use for tags that are not present
+   * @return  the values, with null for values that could not be converted, or
+   *          null if the values could not be fetched
+   */
+  private List<String> getValuesByTags(List<String> tags, List<Object> valuesIfTagNotThere) {
     Jedis jedis = getJedis();
+    String[] keys = new String[tags.size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = projectID + ":" + tags.get(i);
+    }
+    List<String> returnValues;
     try {
       if (DEBUG) {
-        Log.d(LOG_TAG,"about to call jedis.get()");
-      }
-      String returnValue = jedis.get(projectID + ":" + tag);
-      if (DEBUG) {
-        Log.d(LOG_TAG, "finished call jedis.get()");
+        Log.d(LOG_TAG,"about to call jedis.mget() for " + keys.length + " tags");
       }
-      if (returnValue != null) {
-        String val = JsonUtil.getJsonRepresentationIfValueFileName(form, returnValue);
-        if (val != null) {
-          value.set(val);
-        } else {
-          value.set(returnValue);
-        }
-      } else {
-        if (DEBUG) {
-          Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
-        }
-        value.set(JsonUtil.getJsonRepresentation(valueIfTagNotThere));
-      }
-    } catch (JSONException e) {
-      CloudDBError("JSON conversion error for " + tag);
-      value.set(null);
+      long start = SystemClock.uptimeMillis();
+      returnValues = jedis.mget(keys);
+      recordRoundTrip(1, SystemClock.uptimeMillis() - start);
     } catch (NullPointerException e) {
-      CloudDBError("System Error getting tag " + tag);
+      CloudDBError("System Error getting tags " + tags);
       flushJedis(true);
-      value.set(null);
+      return null;
     } catch (JedisException e) {
       Log.e(LOG_TAG, "Exception in GetValue", e);
       CloudDBError(e.getMessage());
       flushJedis(true);
-      value.set(null);
+      return null;
     }
 
-    return value;
+    List<String> values = new ArrayList<String>();
+    for (int i = 0; i < keys.length; i++) {
+      String returnValue = returnValues.get(i);
+      try {
+        if (returnValue != null) {
+          String val = JsonUtil.getJsonRepresentationIfValueFileName(form, returnValue);
+          values.add(val != null ? val : returnValue);
+        } else {
+          if (DEBUG) {
+            Log.d(CloudDB.LOG_TAG,"Value retrieved is null");
+          }
+          values.add(JsonUtil.getJsonRepresentation(valuesIfTagNotThere.get(i)));
+        }
+      } catch (JSONException e) {
+        CloudDBError("JSON conversion error for " + tags.get(i));
+        values.add(null);
+      }
+    }
+    return values;
   }
- 
+
   /**
    * Returns `true`{:.logic.block} if we are on the network and will likely be able to connect to
    * the `CloudDB` server.
@@ -921,19 +1148,9 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
   public void RemoveFirstFromList(final String tag) {
     checkProjectIDNotBlank();
 
-    final String key = tag;
-
-    background.submit(new Runnable() {
-        public void run() {
-          Jedis jedis = getJedis();
-          try {
-            FirstRemoved(jEval(POP_FIRST_SCRIPT, POP_FIRST_SCRIPT_SHA1, 1, key, projectID));
-          } catch (JedisException e) {
-            CloudDBError(e.getMessage());
-            flushJedis(true);
-          }
-        }
-      });
+    List<storedValue> work = new ArrayList<storedValue>();
+    work.add(new storedValue(REMOVE_FIRST_FROM_LIST, tag, new JSONArray()));
+    enqueueUpdates(work, "Cannot remove values from a list while off-line.");
   }
 
   private static final String APPEND_SCRIPT =
@@ -978,21 +1195,11 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
       throw new YailRuntimeError("Value failed to convert to JSON.", "JSON Creation Error.");
     }
 
-    final String item = (String) itemObject;
-    final String key = tag;
-
-    background.submit(new Runnable() {
-        public void run() {
-          Jedis jedis = getJedis();
-          try {
-            jEval(APPEND_SCRIPT, APPEND_SCRIPT_SHA1, 1, key, item, projectID);
-            UpdateDone(key, "AppendValueToList");
-          } catch(JedisException e) {
-            CloudDBError(e.getMessage());
-            flushJedis(true);
-          }
-        }
-      });
+    JSONArray valueList = new JSONArray();
+    valueList.put((String) itemObject);
+    List<storedValue> work = new ArrayList<storedValue>();
+    work.add(new storedValue(APPEND_VALUE_TO_LIST, tag, valueList));
+    enqueueUpdates(work, "Cannot store values off-line.");
   }
 
   /**
@@ -1031,6 +1238,19 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
     EventDispatcher.dispatchEvent(this, "GotValue", tag, value);
   }
 
+  /**
+   * Indicates that a {@link #GetValues(YailList, Object)} request has succeeded.
+   *
+   * @param tags the tags that were requested.
+   * @param values the values of the tags, in the same order. Each can be any
+   *               type of value (e.g. number, text, boolean or list).
+   */
+  @SimpleEvent(description = "Indicates that a GetValues request has succeeded. " +
+      "The values are in the same order as the tags.")
+  public void GotValues(List<String> tags, List<Object> values) {
+    EventDispatcher.dispatchEvent(this, "GotValues", tags, values);
+  }
+
   /**
    * Remove the tag from CloudDB.
    *
@@ -1281,6 +1501,7 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
       // XXX
     }
     INSTANCE = null;
+    loadedScripts.clear();
     // We are now going to kill the executor, as it may
     // have hung tasks. We do this on the UI thread as a
     // way to synchronize things.
@@ -1358,12 +1579,50 @@ public class CloudDB extends AndroidNonvisibleComponent implements Component,
       if (DEBUG) {
         Log.d(LOG_TAG, "Got a JedisNoScriptException for " + scriptsha1);
       }
+      loadedScripts.remove(scriptsha1);
       // This happens if the server doesn't have the script loaded
       // So we use regular eval, which should then cache the script
       return jedis.eval(script, argcount, args);
     }
   }
 
+  /*
+   * Makes sure that the server has the given script, so that it can be run
+   * with EVALSHA in a pipeline, where we can't fall back to EVAL. The check is
+   * made once per connection and script.
+   */
+  private void ensureScriptLoaded(Jedis jedis, String script, String scriptsha1) {
+    if (loadedScripts.contains(scriptsha1)) {
+      return;
+    }
+    if (!jedis.scriptExists(scriptsha1)) {
+      jedis.scriptLoad(script);
+    }
+    loadedScripts.add(scriptsha1);
+  }
+
+  private void recordRoundTrip(int commands, long millis) {
+    roundTrips.incrementAndGet();
+    commandsSent.addAndGet(commands);
+    roundTripMillis.addAndGet(millis);
+    if (DEBUG) {
+      Log.d(LOG_TAG, getStats());
+    }
+  }
+
+  /**
+   * Returns a summary of the traffic with the Redis server: the number of
+   * round trips and commands, the mean round trip time and the deepest the
+   * queue of pending updates has been.
+   */
+  public String getStats() {
+    long trips = roundTrips.get();
+    return "CloudDB: " + trips + " round trips, " + commandsSent.get() + " commands, "
+        + (trips == 0 ? 0 : roundTripMillis.get() / trips) + " ms per round trip, "
+        + storeQueue.size() + " updates pending (at most " + maxQueueDepth + "), "
+        + getQueue.size() + " gets pending";
+  }
+
   // We are synchronized because we are called simultaneously from two
   // different threads. Rather then do the work twice, the first one
   // does the work and the second one waits!
@@ -143,6 +143,16 @@ public abstract class DataCollection<C extends ComponentContainer, M extends Dat
   @SuppressWarnings({"unchecked", "rawtypes"})
   public abstract void onDataChange();
 
+  /**
+   * Refreshes the Data Series after a real time value has been added.
+   * Real time sources may deliver hundreds of values per second, so
+   * subclasses can override this to batch the resulting refreshes.
+   * By default this is the same as {@link #onDataChange()}.
+   */
+  protected void onRealTimeDataChange() {
+    onDataChange();
+  }
+
   /*
    * SimpleProperties
    */
@@ -1000,7 +1010,7 @@ public abstract class DataCollection<C extends ComponentContainer, M extends Dat
             final YailList tuple = YailList.makeList(Arrays.asList(tick, finalValue));
 
             dataModel.addTimeEntry(tuple);
-            onDataChange();
+            onRealTimeDataChange();
 
             // Increment t value
             tick++;
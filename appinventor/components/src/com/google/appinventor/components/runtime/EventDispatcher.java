@@ -8,10 +8,13 @@ package com.google.appinventor.components.runtime;
 
 import android.util.Log;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Dispatches events to component event handlers.
@@ -59,26 +62,75 @@ public class EventDispatcher {
   /*
    * Each EventRegistry is associated with one dispatchDelegate.
    * It contains all the event closures for a single form.
+   *
+   * Events are dispatched far more often than handlers are registered, so
+   * the registry is copy-on-write: registration replaces the map (while
+   * holding the EventDispatcher lock) and dispatching reads whatever map is
+   * current without taking any lock.
    */
   private static final class EventRegistry {
     private final HandlesEventDispatching dispatchDelegate;
 
-    // Mapping of event names to a set of event closures.
-    // Note that by using a Set here, we'll only have one closure corresponding to a
-    // given componentId-eventName.  We do not support invoking multiple handlers for a
-    // single event.
-    private final HashMap<String, Set<EventClosure>> eventClosuresMap =
-        new HashMap<String, Set<EventClosure>>();
+    // Mapping of event names to the event closures registered for them.
+    // Note that we'll only have one closure corresponding to a given
+    // componentId-eventName.  We do not support invoking multiple handlers for a
+    // single event.  Neither the map nor the arrays are modified once published.
+    private volatile Map<String, EventClosure[]> eventClosuresMap =
+        Collections.emptyMap();
+
+    // For each event name, the event closure that last handled the event for
+    // a given component.  Dispatching tries that closure first, so that an
+    // event raised by one of hundreds of components doesn't need to be
+    // offered to every handler registered for the same event name.  Replaced
+    // whenever the registered closures change.
+    private volatile ConcurrentHashMap<String, ConcurrentHashMap<Component, EventClosure>>
+        resolvedClosures = new ConcurrentHashMap<String, ConcurrentHashMap<Component, EventClosure>>();
 
     EventRegistry(HandlesEventDispatching dispatchDelegate) {
       this.dispatchDelegate = dispatchDelegate;
     }
+
+    // Must be called while holding the EventDispatcher lock.
+    void setEventClosures(String eventName, EventClosure[] eventClosures) {
+      Map<String, EventClosure[]> updated = new HashMap<String, EventClosure[]>(eventClosuresMap);
+      if (eventClosures.length == 0) {
+        updated.remove(eventName);
+      } else {
+        updated.put(eventName, eventClosures);
+      }
+      eventClosuresMap = updated;
+      resolvedClosures = new ConcurrentHashMap<String, ConcurrentHashMap<Component, EventClosure>>();
+    }
+
+    // Must be called while holding the EventDispatcher lock.
+    void clear() {
+      eventClosuresMap = Collections.emptyMap();
+      resolvedClosures = new ConcurrentHashMap<String, ConcurrentHashMap<Component, EventClosure>>();
+    }
+
+    ConcurrentHashMap<Component, EventClosure> getResolvedClosures(String eventName) {
+      ConcurrentHashMap<String, ConcurrentHashMap<Component, EventClosure>> resolved =
+          resolvedClosures;
+      ConcurrentHashMap<Component, EventClosure> closures = resolved.get(eventName);
+      if (closures == null) {
+        closures = new ConcurrentHashMap<Component, EventClosure>();
+        ConcurrentHashMap<Component, EventClosure> existing =
+            resolved.putIfAbsent(eventName, closures);
+        if (existing != null) {
+          closures = existing;
+        }
+      }
+      return closures;
+    }
   }
 
+  private static final EventClosure[] NO_CLOSURES = new EventClosure[0];
+
   private static final boolean DEBUG = false;
 
-  private static final Map<HandlesEventDispatching, EventRegistry>
-      mapDispatchDelegateToEventRegistry = new HashMap<HandlesEventDispatching, EventRegistry>();
+  private static final ConcurrentHashMap<HandlesEventDispatching, EventRegistry>
+      mapDispatchDelegateToEventRegistry =
+      new ConcurrentHashMap<HandlesEventDispatching, EventRegistry>();
 
   private EventDispatcher() {
   }
@@ -87,7 +139,10 @@ public class EventDispatcher {
     EventRegistry er = mapDispatchDelegateToEventRegistry.get(dispatchDelegate);
     if (er == null) {
       er = new EventRegistry(dispatchDelegate);
-      mapDispatchDelegateToEventRegistry.put(dispatchDelegate, er);
+      EventRegistry existing = mapDispatchDelegateToEventRegistry.putIfAbsent(dispatchDelegate, er);
+      if (existing != null) {
+        er = existing;
+      }
     }
     return er;
   }
@@ -109,11 +164,19 @@ public class EventDispatcher {
   public static synchronized void registerEventForDelegation(HandlesEventDispatching dispatchDelegate,
                                                 String componentId, String eventName) {
     EventRegistry er = getEventRegistry(dispatchDelegate);
-    Set<EventClosure> eventClosures = er.eventClosuresMap.get(eventName);
-    Set<EventClosure> newEventClosures = eventClosures == null
-        ? new HashSet<EventClosure>() : new HashSet<>(eventClosures);
-    newEventClosures.add(new EventClosure(componentId, eventName));
-    er.eventClosuresMap.put(eventName, newEventClosures);
+    EventClosure eventClosure = new EventClosure(componentId, eventName);
+    EventClosure[] eventClosures = er.eventClosuresMap.get(eventName);
+    if (eventClosures == null) {
+      eventClosures = NO_CLOSURES;
+    }
+    for (EventClosure existing : eventClosures) {
+      if (existing.equals(eventClosure)) {
+        return;
+      }
+    }
+    EventClosure[] newEventClosures = Arrays.copyOf(eventClosures, eventClosures.length + 1);
+    newEventClosures[eventClosures.length] = eventClosure;
+    er.setEventClosures(eventName, newEventClosures);
 
     if (DEBUG) {
       Log.i("EventDispatcher", "Registered event closure for " +
@@ -133,11 +196,11 @@ public class EventDispatcher {
   public static synchronized void unregisterEventForDelegation(HandlesEventDispatching dispatchDelegate,
                                                   String componentId, String eventName) {
     EventRegistry er = getEventRegistry(dispatchDelegate);
-    Set<EventClosure> eventClosures = er.eventClosuresMap.get(eventName);
-    if (eventClosures == null || eventClosures.isEmpty()) {
+    EventClosure[] eventClosures = er.eventClosuresMap.get(eventName);
+    if (eventClosures == null || eventClosures.length == 0) {
       return;
     }
-    Set<EventClosure> updated = new HashSet<>();
+    List<EventClosure> updated = new ArrayList<EventClosure>(eventClosures.length);
     for (EventClosure eventClosure : eventClosures) {
       if (eventClosure.componentId.equals(componentId)) {
         if (DEBUG) {
@@ -148,7 +211,7 @@ public class EventDispatcher {
         updated.add(eventClosure);
       }
     }
-    er.eventClosuresMap.put(eventName, updated);
+    er.setEventClosures(eventName, updated.toArray(NO_CLOSURES));
   }
 
   /**
@@ -158,7 +221,7 @@ public class EventDispatcher {
   // Don't delete this method. It's called from runtime.scm.
   public static synchronized void unregisterAllEventsForDelegation() {
     for (EventRegistry er : mapDispatchDelegateToEventRegistry.values()) {
-      er.eventClosuresMap.clear();
+      er.clear();
     }
   }
 
@@ -172,10 +235,24 @@ public class EventDispatcher {
   public static synchronized void removeDispatchDelegate(HandlesEventDispatching dispatchDelegate) {
     EventRegistry er = removeEventRegistry(dispatchDelegate);
     if (er != null) {
-      er.eventClosuresMap.clear();
+      er.clear();
     }
   }
 
+  /**
+   * Returns whether any handler is registered for events with the given name on the dispatch
+   * delegate of the given component. The handlers may belong to other components of the same type,
+   * so a true result does not guarantee that {@link #dispatchEvent} will find one for this
+   * component, but a false result means that it certainly won't.
+   *
+   * @param component  the component that would raise the event
+   * @param eventName  name of the event
+   */
+  public static boolean hasEventHandlers(Component component, String eventName) {
+    EventRegistry er = mapDispatchDelegateToEventRegistry.get(component.getDispatchDelegate());
+    return er != null && er.eventClosuresMap.containsKey(eventName);
+  }
+
   /**
    * Dispatches an event based on its name to any registered handlers.
    *
@@ -183,7 +260,7 @@ public class EventDispatcher {
    * @param eventName  name of event being raised
    * @param args  arguments to the event handler
    */
-  public static synchronized boolean dispatchEvent(Component component, String eventName, Object...args) {
+  public static boolean dispatchEvent(Component component, String eventName, Object...args) {
     return Boolean.TRUE == dispatchFallibleEvent(component, eventName, args);
   }
 
@@ -196,7 +273,7 @@ public class EventDispatcher {
    * @return `Boolean.TRUE` if the event was dispatched, `Boolean.FALSE` if no event handler was
    * found, or an Exception if the event handler threw an Exception
    */
-  public static synchronized Object dispatchFallibleEvent(Component component, String eventName, Object... args) {
+  public static Object dispatchFallibleEvent(Component component, String eventName, Object... args) {
     if (DEBUG) {
       Log.i("EventDispatcher", "Trying to dispatch event " + eventName);
     }
@@ -206,9 +283,10 @@ public class EventDispatcher {
       HandlesEventDispatching dispatchDelegate = component.getDispatchDelegate();
       if (dispatchDelegate.canDispatchEvent(component, eventName)) {
         EventRegistry er = getEventRegistry(dispatchDelegate);
-        Set<EventClosure> eventClosures = er.eventClosuresMap.get(eventName);
-        if (eventClosures != null && eventClosures.size() > 0) {
-          dispatched = delegateDispatchEvent(dispatchDelegate, eventClosures, component, args);
+        EventClosure[] eventClosures = er.eventClosuresMap.get(eventName);
+        if (eventClosures != null && eventClosures.length > 0) {
+          dispatched = delegateDispatchEvent(dispatchDelegate, er, eventClosures, component,
+              eventName, args);
         }
         dispatchDelegate.dispatchGenericEvent(component, eventName, !dispatched, args);
       }
@@ -221,19 +299,34 @@ public class EventDispatcher {
   /**
    * Delegates the dispatch of an event to the dispatch delegate.
    *
-   * @param eventClosures set of event closures matching the event name
+   * @param eventClosures event closures matching the event name
    * @param component the component that generated the event
+   * @param eventName name of event being raised
    * @param args  arguments to event handler
    */
-  private static synchronized boolean delegateDispatchEvent(HandlesEventDispatching dispatchDelegate,
-                                               Set<EventClosure> eventClosures,
-                                               Component component, Object... args) {
-    // The event closures set will contain all event closures matching the event name.
+  private static boolean delegateDispatchEvent(HandlesEventDispatching dispatchDelegate,
+                                               EventRegistry er, EventClosure[] eventClosures,
+                                               Component component, String eventName,
+                                               Object... args) {
     // We depend on the delegate's dispatchEvent method to check the registered event closure and
     // only dispatch the event if the registered component matches the component that generated the
-    // event.  This should only be true for one (or zero) of the closures.
+    // event.  This should only be true for one (or zero) of the closures, so once we know which
+    // closure that is we offer the event to it alone.  The delegate still checks the match, which
+    // keeps the late binding of component names to components intact.
+    ConcurrentHashMap<Component, EventClosure> resolved = er.getResolvedClosures(eventName);
+    EventClosure known = resolved.get(component);
+    if (known != null
+        && dispatchDelegate.dispatchEvent(component, known.componentId, known.eventName, args)) {
+      return true;
+    }
+    // Either this is the first time the component raised this event, or the closure that handled
+    // it last time no longer matches (or its handler failed, in which case we must not run it a
+    // second time).  Fall back to offering the event to all of the other closures.
     boolean dispatched = false;
     for (EventClosure eventClosure : eventClosures) {
+      if (eventClosure == known) {
+        continue;
+      }
       if (dispatchDelegate.dispatchEvent(component,
                                          eventClosure.componentId,
                                          eventClosure.eventName,
@@ -242,6 +335,7 @@ public class EventDispatcher {
           Log.i("EventDispatcher", "Successfully dispatched event " +
               eventClosure.componentId + "." + eventClosure.eventName);
         }
+        resolved.put(component, eventClosure);
         dispatched = true;  // break here or keep iterating through loop?
       }
     }
@@ -6,6 +6,7 @@
 
 package com.google.appinventor.components.runtime;
 
+import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
 import android.util.Log;
 
@@ -117,6 +118,23 @@ public class ImageSprite extends Sprite {
     }
   }
 
+  @Override
+  void getDrawingBounds(RectF out) {
+    if (!rotates) {
+      super.getDrawingBounds(out);
+      return;
+    }
+    // The image rotates around its origin, which lies within the image, so no
+    // part of it is further from the origin than the length of its diagonal.
+    float density = form.deviceDensity();
+    float w = Width() * density;
+    float h = Height() * density;
+    float originX = (float) xLeft * density + w * (float) u;
+    float originY = (float) yTop * density + h * (float) v;
+    float radius = (float) Math.hypot(w, h);
+    out.set(originX - radius, originY - radius, originX + radius, originY + radius);
+  }
+
   // get the vector to the center of the image sprite
   protected Vector2D getCenterVector() {
     double xCenter = xLeft + Width() / 2.0;
@@ -845,6 +845,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapMarker marker) {
     features.add(marker);
+    featureIndex.add(marker);
     marker.setMap(this);
     mapController.addFeature(marker);
   }
@@ -852,6 +853,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapLineString lineString) {
     features.add(lineString);
+    featureIndex.add(lineString);
     lineString.setMap(this);
     mapController.addFeature(lineString);
   }
@@ -859,6 +861,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapPolygon polygon) {
     features.add(polygon);
+    featureIndex.add(polygon);
     polygon.setMap(this);
     mapController.addFeature(polygon);
   }
@@ -866,6 +869,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapRectangle rectangle) {
     features.add(rectangle);
+    featureIndex.add(rectangle);
     rectangle.setMap(this);
     mapController.addFeature(rectangle);
   }
@@ -873,6 +877,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   void addFeature(MapCircle circle) {
     features.add(circle);
+    featureIndex.add(circle);
     circle.setMap(this);
     mapController.addFeature(circle);
   }
@@ -880,6 +885,7 @@ public class Map extends MapFeatureContainerBase implements MapEventListener {
   @Override
   public void removeFeature(MapFeature feature) {
     features.remove(feature);
+    featureIndex.remove(feature);
     mapController.removeFeature(feature);
   }
 }
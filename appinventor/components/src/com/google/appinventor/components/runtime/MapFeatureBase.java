@@ -430,6 +430,12 @@ public abstract class MapFeatureBase implements MapFeature, HasStroke {
   protected final synchronized void clearGeometry() {
     centroid = null;
     geometry = null;
+    if (container instanceof MapFeatureContainerBase) {
+      ((MapFeatureContainerBase) container).featureIndex.invalidate(this);
+    }
+    if (map != null && map != container) {
+      map.featureIndex.invalidate(this);
+    }
   }
 
   protected abstract Geometry computeGeometry();
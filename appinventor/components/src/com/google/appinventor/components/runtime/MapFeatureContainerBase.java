@@ -14,6 +14,8 @@ import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.runtime.util.AsynchUtil;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.GeoJSONUtil.GeoJSONCollection;
+import com.google.appinventor.components.runtime.util.GeometryUtil;
 import com.google.appinventor.components.runtime.util.MapFactory;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
 import com.google.appinventor.components.runtime.util.YailList;
@@ -21,9 +23,10 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -34,9 +37,8 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.concurrent.CopyOnWriteArrayList;
 
-import static com.google.appinventor.components.runtime.util.GeoJSONUtil.getGeoJSONFeatures;
-import static com.google.appinventor.components.runtime.util.GeoJSONUtil.getGeoJSONType;
 import static com.google.appinventor.components.runtime.util.GeoJSONUtil.processGeoJSONFeature;
+import static com.google.appinventor.components.runtime.util.GeoJSONUtil.readGeoJSONCollection;
 
 @SimpleObject
 public abstract class MapFeatureContainerBase extends AndroidViewComponent implements MapFactory.MapFeatureContainer {
@@ -61,6 +63,12 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
    */
   protected List<MapFeature> features = new CopyOnWriteArrayList<MapFeature>();
 
+  /**
+   * Spatial index of {@link #features}, used by the bounding box, distance and nearest feature
+   * queries.
+   */
+  final MapFeatureIndex featureIndex = new MapFeatureIndex(features);
+
   private final MapFactory.MapFeatureVisitor<Void> featureAdder = new MapFactory.MapFeatureVisitor<Void>() {
     @Override
     public Void visit(MapFactory.MapMarker marker, Object... arguments) {
@@ -109,6 +117,7 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
       feature.removeFromMap();
     }
     this.features.clear();
+    featureIndex.clear();
     ListIterator<?> it = features.listIterator(1);
     while (it.hasNext()) {
       Object o = it.next();
@@ -273,6 +282,116 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     }
   }
 
+  /**
+   * Returns the features of the `%type%` that intersect the given `boundingBox`{:.variable.block},
+   * which has the same form as the Map's {@link Map#BoundingBox()} property:
+   * ``((North West) (South East))``. A `Circle` is included if any part of it is inside the box.
+   * The features are returned in no particular order.
+   *
+   * @param boundingBox the region to search, as a list of the northwest and southeast corners
+   * @return a list of the features that intersect the region
+   */
+  @SimpleFunction(description = "Returns the features of the %type% that intersect the given " +
+      "bounding box, given as [[North, West], [South, East]].")
+  public YailList FeaturesInBoundingBox(YailList boundingBox) {
+    double[] box = parseBoundingBox(boundingBox);
+    if (box == null) {
+      $form().dispatchErrorOccurredEvent(this, "FeaturesInBoundingBox",
+          ErrorMessages.ERROR_INVALID_BOUNDING_BOX, boundingBox.toString());
+      return YailList.makeEmptyList();
+    }
+    return YailList.makeList(featureIndex.featuresInBoundingBox(box[0], box[1], box[2], box[3]));
+  }
+
+  /**
+   * Returns the features of the `%type%` that are at most `distance`{:.variable.block} meters from
+   * the point given by `latitude`{:.variable.block} and `longitude`{:.variable.block}, nearest
+   * first. Distances are computed as by the features' `DistanceToPoint` methods: if
+   * `centroids`{:.variable.block} is `true`{:.logic.block}, from the centroid of each feature,
+   * and otherwise from its closest point.
+   *
+   * @param latitude the latitude of the point
+   * @param longitude the longitude of the point
+   * @param distance the largest distance, in meters, of the features to return
+   * @param centroids whether to measure from the centroids of the features
+   * @return a list of the features within the distance, nearest first
+   */
+  @SimpleFunction(description = "Returns the features of the %type% that are within the given " +
+      "distance, in meters, of a point, nearest first.")
+  public YailList FeaturesWithinDistance(double latitude, double longitude, double distance,
+      boolean centroids) {
+    if (!checkPoint("FeaturesWithinDistance", latitude, longitude)) {
+      return YailList.makeEmptyList();
+    } else if (!(distance >= 0)) {  // Written so that NaN fails the check
+      $form().dispatchErrorOccurredEvent(this, "FeaturesWithinDistance",
+          ErrorMessages.ERROR_INVALID_DISTANCE, distance);
+      return YailList.makeEmptyList();
+    }
+    return YailList.makeList(featureIndex.featuresWithinDistance(latitude, longitude, distance,
+        centroids));
+  }
+
+  /**
+   * Returns the feature of the `%type%` that is nearest to the point given by
+   * `latitude`{:.variable.block} and `longitude`{:.variable.block}, or the empty string if the
+   * `%type%` has no features. Distances are computed as in
+   * {@link #FeaturesWithinDistance(double, double, double, boolean)}.
+   *
+   * @param latitude the latitude of the point
+   * @param longitude the longitude of the point
+   * @param centroids whether to measure from the centroids of the features
+   * @return the nearest feature, or the empty string if there is none
+   */
+  @SimpleFunction(description = "Returns the feature of the %type% nearest to a point, or the " +
+      "empty string if there are no features.")
+  public Object NearestFeature(double latitude, double longitude, boolean centroids) {
+    if (!checkPoint("NearestFeature", latitude, longitude)) {
+      return "";
+    }
+    MapFeature feature = featureIndex.nearestFeature(latitude, longitude, centroids);
+    return feature == null ? "" : feature;
+  }
+
+  /**
+   * Reads a bounding box of the form ((North West) (South East)).
+   *
+   * @return {north, west, south, east}, or null if the bounding box is not valid
+   */
+  private static double[] parseBoundingBox(YailList boundingBox) {
+    if (boundingBox.size() != 2 || !(boundingBox.getObject(0) instanceof YailList)
+        || !(boundingBox.getObject(1) instanceof YailList)) {
+      return null;
+    }
+    YailList northwest = (YailList) boundingBox.getObject(0);
+    YailList southeast = (YailList) boundingBox.getObject(1);
+    if (northwest.size() != 2 || southeast.size() != 2) {
+      return null;
+    }
+    double north = GeometryUtil.coerceToDouble(northwest.getObject(0));
+    double west = GeometryUtil.coerceToDouble(northwest.getObject(1));
+    double south = GeometryUtil.coerceToDouble(southeast.getObject(0));
+    double east = GeometryUtil.coerceToDouble(southeast.getObject(1));
+    // Written so that NaN values fail the checks
+    if (!(north >= south && north <= 90 && south >= -90)
+        || !(west >= -180 && west <= 180 && east >= -180 && east <= 180)) {
+      return null;
+    }
+    return new double[] { north, west, south, east };
+  }
+
+  private boolean checkPoint(String functionName, double latitude, double longitude) {
+    if (!(latitude >= -90 && latitude <= 90)) {
+      $form().dispatchErrorOccurredEvent(this, functionName,
+          ErrorMessages.ERROR_INVALID_LATITUDE, latitude);
+      return false;
+    } else if (!(longitude >= -180 && longitude <= 180)) {
+      $form().dispatchErrorOccurredEvent(this, functionName,
+          ErrorMessages.ERROR_INVALID_LONGITUDE, longitude);
+      return false;
+    }
+    return true;
+  }
+
   /**
    * The `GotFeatures` event is run when a feature collection is successfully read from the
    * given `url`{:.variable.block}. The `features`{:.variable.block} parameter will be a list of
@@ -350,6 +469,7 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
 
   public void removeFeature(MapFactory.MapFeature feature) {
     features.remove(feature);
+    featureIndex.remove(feature);
     getMap().removeFeature(feature);
   }
 
@@ -360,26 +480,31 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
 
   void addFeature(MapFactory.MapMarker marker) {
     features.add(marker);
+    featureIndex.add(marker);
     getMap().addFeature(marker);
   }
 
   void addFeature(MapFactory.MapLineString polyline) {
     features.add(polyline);
+    featureIndex.add(polyline);
     getMap().addFeature(polyline);
   }
 
   void addFeature(MapFactory.MapPolygon polygon) {
     features.add(polygon);
+    featureIndex.add(polygon);
     getMap().addFeature(polygon);
   }
 
   void addFeature(MapFactory.MapCircle circle) {
     features.add(circle);
+    featureIndex.add(circle);
     getMap().addFeature(circle);
   }
 
   void addFeature(MapFactory.MapRectangle rectangle) {
     features.add(rectangle);
+    featureIndex.add(rectangle);
     getMap().addFeature(rectangle);
   }
 
@@ -390,11 +515,24 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
 
   private void performGet(final String url) {
     try {
-      String jsonContent = loadUrl(url);
-      if (jsonContent == null) {
+      Reader reader = openUrl(url);
+      if (reader == null) {
         return;
       }
-      processGeoJSON(url, jsonContent);
+      GeoJSONCollection collection;
+      try {
+        collection = readGeoJSONCollection(TAG, reader);
+      } finally {
+        reader.close();
+      }
+      processGeoJSON(url, collection);
+    } catch (IOException e) {
+      $form().runOnUiThread(new Runnable() {
+        public void run() {
+          MapFeatureContainerBase.this.LoadError(url, ERROR_CODE_IO_EXCEPTION,
+              ERROR_IO_EXCEPTION);
+        }
+      });
     } catch(Exception e) {
       Log.e(TAG, "Exception retreiving GeoJSON", e);
       $form().dispatchErrorOccurredEvent(this, "LoadFromURL", ERROR_CODE_UNKNOWN_TYPE,
@@ -402,7 +540,13 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
     }
   }
 
-  private String loadUrl(final String url) {
+  /**
+   * Opens a reader for the content at the given URL. The content is parsed as it arrives rather
+   * than being read into memory first.
+   *
+   * @return the reader, or null if the LoadError event was raised instead
+   */
+  private Reader openUrl(final String url) {
     try {
       URLConnection connection = new URL(url).openConnection();
       connection.connect();
@@ -420,16 +564,7 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
           return null;
         }
       }
-      BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(),
-            "UTF-8"));
-      StringBuilder content = new StringBuilder();
-      String line;
-      while ((line = reader.readLine()) != null) {
-        content.append(line);
-        content.append("\n");
-      }
-      reader.close();
-      return content.toString();
+      return new InputStreamReader(connection.getInputStream(), "UTF-8");
     } catch(MalformedURLException e) {
       $form().runOnUiThread(new Runnable() {
         public void run() {
@@ -450,8 +585,16 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
 
   @SuppressWarnings("WeakerAccess")
   protected void processGeoJSON(final String url, final String content) throws JSONException {
-    String type = getGeoJSONType(content, GEOJSON_TYPE);
-    if (!GEOJSON_FEATURECOLLECTION.equals(type) && !GEOJSON_GEOMETRYCOLLECTION.equals(type)) {
+    try {
+      processGeoJSON(url, readGeoJSONCollection(TAG, new StringReader(content)));
+    } catch (IOException e) {
+      // Not expected when reading from a string
+      throw new JSONException(e.getMessage());
+    }
+  }
+
+  private void processGeoJSON(final String url, final GeoJSONCollection collection) {
+    if (!collection.isCollection()) {
       $form().runOnUiThread(new Runnable() {
         public void run() {
           MapFeatureContainerBase.this.LoadError(url, ERROR_CODE_MALFORMED_GEOJSON,
@@ -460,7 +603,7 @@ public abstract class MapFeatureContainerBase extends AndroidViewComponent imple
       });
       return;
     }
-    final List<YailList> yailFeatures = getGeoJSONFeatures(TAG, content);
+    final List<YailList> yailFeatures = collection.features;
     $form().runOnUiThread(new Runnable() {
       public void run() {
         MapFeatureContainerBase.this.GotFeatures(url, YailList.makeList(yailFeatures));
@@ -0,0 +1,294 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.google.appinventor.components.runtime.util.GeometryUtil;
+import com.google.appinventor.components.runtime.util.MapFactory.MapCircle;
+import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
+import com.google.appinventor.components.runtime.util.RTree;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.Geometry;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A spatial index of the features of a {@link MapFeatureContainerBase}, used to answer the
+ * container's bounding box, distance and nearest feature queries without measuring every feature.
+ *
+ * <p>Features are indexed by the bounding boxes of their geometries in an {@link RTree}. The index
+ * is built on the first query, so containers that are never queried don't pay for it. After that,
+ * features whose geometry changes are marked stale and indexed again at the next query.
+ *
+ * <p>Circles are indexed by their centers, and queries are widened by the largest radius so that
+ * circles whose edges reach into the query region are found.
+ */
+final class MapFeatureIndex {
+  // Relative slack added to search regions so that rounding never excludes a feature
+  private static final double SEARCH_SLACK = 1e-6;
+
+  // Smallest radius, in meters, with which the search for the nearest feature starts
+  private static final double MIN_SEARCH_RADIUS = 1.0;
+
+  // Half the circumference of the Earth, the largest possible distance between two points
+  private static final double MAX_DISTANCE = Math.PI * GeometryUtil.EARTH_RADIUS;
+
+  private static final class Match {
+    final MapFeature feature;
+    final double distance;
+
+    Match(MapFeature feature, double distance) {
+      this.feature = feature;
+      this.distance = distance;
+    }
+  }
+
+  private static final Comparator<Match> BY_DISTANCE = new Comparator<Match>() {
+    @Override
+    public int compare(Match a, Match b) {
+      return Double.compare(a.distance, b.distance);
+    }
+  };
+
+  private final Iterable<MapFeature> features;
+  private final RTree<MapFeature> tree = new RTree<MapFeature>();
+  private final Set<MapFeature> members = new HashSet<MapFeature>();
+  private final Set<MapFeature> stale = new HashSet<MapFeature>();
+  private final Set<MapCircle> circles = new HashSet<MapCircle>();
+  private boolean built = false;
+  private boolean circlesChanged = false;
+  private double maxCircleRadius = 0;
+  private long distanceEvaluations = 0;
+
+  /**
+   * Creates an index over the given features, which are read when the first query is made.
+   */
+  MapFeatureIndex(Iterable<MapFeature> features) {
+    this.features = features;
+  }
+
+  void add(MapFeature feature) {
+    if (built) {
+      members.add(feature);
+      stale.add(feature);
+    }
+  }
+
+  void remove(MapFeature feature) {
+    if (built && members.remove(feature)) {
+      stale.remove(feature);
+      tree.remove(feature);
+      if (circles.remove(feature)) {
+        circlesChanged = true;
+      }
+    }
+  }
+
+  /**
+   * Marks a feature whose geometry changed, so that it is indexed again before the next query.
+   */
+  void invalidate(MapFeature feature) {
+    if (built && members.contains(feature)) {
+      stale.add(feature);
+    }
+  }
+
+  void clear() {
+    built = false;
+    tree.clear();
+    members.clear();
+    stale.clear();
+    circles.clear();
+    maxCircleRadius = 0;
+  }
+
+  /**
+   * Returns the features that intersect the given bounding box, in no particular order. Circles
+   * match if any part of them is inside the box. If {@code west} is greater than {@code east}, the
+   * box crosses the antimeridian.
+   */
+  List<MapFeature> featuresInBoundingBox(double north, double west, double south, double east) {
+    refresh();
+    Set<MapFeature> results = new LinkedHashSet<MapFeature>();
+    if (west <= east) {
+      searchBox(north, west, south, east, results);
+    } else {
+      searchBox(north, west, south, 180, results);
+      searchBox(north, -180, south, east, results);
+    }
+    return new ArrayList<MapFeature>(results);
+  }
+
+  /**
+   * Returns the features whose distance to the given point, as computed by
+   * {@link MapFeatureBase#DistanceToPoint(double, double, boolean)}, is at most {@code distance}
+   * meters, nearest first.
+   */
+  List<MapFeature> featuresWithinDistance(double latitude, double longitude, double distance,
+      boolean centroids) {
+    refresh();
+    List<Match> matches = new ArrayList<Match>();
+    for (MapFeature feature : searchNear(latitude, longitude, distance)) {
+      double d = distanceTo(feature, latitude, longitude, centroids);
+      if (d >= 0 && d <= distance) {
+        matches.add(new Match(feature, d));
+      }
+    }
+    Collections.sort(matches, BY_DISTANCE);
+    List<MapFeature> results = new ArrayList<MapFeature>(matches.size());
+    for (Match match : matches) {
+      results.add(match.feature);
+    }
+    return results;
+  }
+
+  /**
+   * Returns the feature nearest to the given point, or null if there are no features.
+   *
+   * <p>The search looks within a radius around the point, starting from the spacing the features
+   * would have if they were spread evenly over the area they cover, and widening the radius until
+   * a feature is found within it. Any feature nearer than the one found must be within the same
+   * radius, so it would have been found too.
+   */
+  MapFeature nearestFeature(double latitude, double longitude, boolean centroids) {
+    refresh();
+    double[] bounds = tree.getBounds();
+    if (bounds == null) {
+      return null;
+    }
+    double area = (bounds[2] - bounds[0]) * (bounds[3] - bounds[1]);
+    double radius = Math.max(MIN_SEARCH_RADIUS,
+        GeometryUtil.ONE_DEG_IN_METERS * Math.sqrt(area / tree.size()));
+    while (true) {
+      Match best = null;
+      for (MapFeature feature : searchNear(latitude, longitude, radius)) {
+        double d = distanceTo(feature, latitude, longitude, centroids);
+        if (d >= 0 && (best == null || d < best.distance)) {
+          best = new Match(feature, d);
+        }
+      }
+      if (radius >= MAX_DISTANCE || (best != null && best.distance <= radius)) {
+        return best == null ? null : best.feature;
+      }
+      radius = best == null ? radius * 4 : best.distance;
+    }
+  }
+
+  private void refresh() {
+    if (!built) {
+      for (MapFeature feature : features) {
+        members.add(feature);
+        index(feature);
+      }
+      built = true;
+    } else if (!stale.isEmpty()) {
+      for (MapFeature feature : stale) {
+        index(feature);
+      }
+      stale.clear();
+    }
+    if (circlesChanged) {
+      maxCircleRadius = 0;
+      for (MapCircle circle : circles) {
+        maxCircleRadius = Math.max(maxCircleRadius, circle.Radius());
+      }
+      circlesChanged = false;
+    }
+  }
+
+  private void index(MapFeature feature) {
+    Envelope envelope;
+    try {
+      envelope = feature.getGeometry().getEnvelopeInternal();
+    } catch (IllegalArgumentException e) {
+      envelope = null;  // for example, a LineString with only one point
+    }
+    if (envelope == null || envelope.isNull()) {
+      tree.remove(feature);
+    } else {
+      tree.insert(feature, envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(),
+          envelope.getMaxY());
+    }
+    if (feature instanceof MapCircle) {
+      circles.add((MapCircle) feature);
+      circlesChanged = true;
+    }
+  }
+
+  private void searchBox(double north, double west, double south, double east,
+      Set<MapFeature> results) {
+    Geometry box = GeometryUtil.createGeometry(north, east, south, west);
+    // Distances to circles are measured in degrees, as the distance to the edges of other features
+    double margin = Math.toDegrees(maxCircleRadius / GeometryUtil.EARTH_RADIUS);
+    for (MapFeature feature : tree.search(west - margin, south - margin, east + margin,
+        north + margin)) {
+      if (feature instanceof MapCircle) {
+        double d = GeometryUtil.ONE_DEG_IN_METERS * box.distance(feature.getGeometry());
+        if (d <= ((MapCircle) feature).Radius()) {
+          results.add(feature);
+        }
+      } else if (box.intersects(feature.getGeometry())) {
+        results.add(feature);
+      }
+    }
+  }
+
+  /**
+   * Returns the indexed features that may be within {@code distance} meters of the given point.
+   * The region searched covers both the great circle distances used for markers, circles and
+   * centroids and the distances in degrees used for the edges of other features.
+   */
+  private List<MapFeature> searchNear(double latitude, double longitude, double distance) {
+    double angle = (distance + maxCircleRadius) / GeometryUtil.EARTH_RADIUS * (1 + SEARCH_SLACK);
+    double south = Double.NEGATIVE_INFINITY;
+    double north = Double.POSITIVE_INFINITY;
+    double west = Double.NEGATIVE_INFINITY;
+    double east = Double.POSITIVE_INFINITY;
+    if (angle < Math.PI) {
+      double latDelta = Math.toDegrees(angle);
+      south = latitude - latDelta;
+      north = latitude + latDelta;
+      if (north < 90 && south > -90) {
+        // Away from the poles, the points within the angle differ in longitude by at most this
+        // much. Otherwise, any longitude may be in range.
+        double ratio = Math.sin(angle) / Math.cos(Math.toRadians(latitude));
+        if (ratio < 1) {
+          double lonDelta = Math.toDegrees(Math.asin(ratio));
+          if (longitude - lonDelta >= -180 && longitude + lonDelta <= 180) {
+            west = longitude - lonDelta;
+            east = longitude + lonDelta;
+          }
+        }
+      }
+    }
+    return tree.search(west, south, east, north);
+  }
+
+  /**
+   * Returns how many distances between a feature and a point the index has measured, which is
+   * how many candidates its queries have looked at.
+   */
+  @VisibleForTesting
+  long getDistanceEvaluations() {
+    return distanceEvaluations;
+  }
+
+  private double distanceTo(MapFeature feature, double latitude, double longitude,
+      boolean centroids) {
+    if (!(feature instanceof MapFeatureBase)) {
+      return -1;
+    }
+    distanceEvaluations++;
+    return ((MapFeatureBase) feature).DistanceToPoint(latitude, longitude, centroids);
+  }
+}
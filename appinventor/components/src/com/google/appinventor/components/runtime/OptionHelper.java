@@ -9,23 +9,130 @@ import com.google.appinventor.components.annotations.Options;
 import com.google.appinventor.components.annotations.SimpleEvent;
 import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleProperty;
+import com.google.appinventor.components.common.OptionList;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Includes helper methods for getting the abstract enum value associated with a concrete value for
  * a given SimpleMethod, SimpleProperty, or SimpleEvent. Used in combination with the @Options
  * annotation in the declaration of the component.
+ *
+ * <p>The annotations of a component class are only inspected once. The result is a table, per
+ * component class, of which event arguments and return values are option lists and the converter
+ * for each, so that converting the arguments of an event is an array walk and a lookup of the
+ * concrete value.
  */
 public class OptionHelper {
 
-  private static final Map<String, Map<String, Method>> componentMethods =
-      new HashMap<String, Map<String, Method>>();
-    
+  /**
+   * The option list conversions for a single event, method or property getter.
+   */
+  private static final class FunctionOptions {
+    // Converter for the return value, or null if it is not an option list.
+    private final OptionConverter returnConverter;
+
+    // Converters for each parameter (null for those that are not option lists), or null if no
+    // parameter is an option list.
+    private final OptionConverter[] paramConverters;
+
+    private FunctionOptions(OptionConverter returnConverter, OptionConverter[] paramConverters) {
+      this.returnConverter = returnConverter;
+      this.paramConverters = paramConverters;
+    }
+  }
+
+  /**
+   * Converts concrete values to the constants of one OptionList class.
+   */
+  private static final class OptionConverter {
+    private static final Object NO_METHOD = new Object();
+
+    private final Class<?> optionListClass;
+
+    // Concrete value -> constant, for OptionLists that are enums. Null otherwise.
+    private final Map<Object, Object> constants;
+
+    // Concrete value class -> fromUnderlyingValue method taking exactly that class, or NO_METHOD.
+    private final Map<Class<?>, Object> fromValueMethods =
+        new ConcurrentHashMap<Class<?>, Object>();
+
+    private OptionConverter(Class<?> optionListClass) {
+      this.optionListClass = optionListClass;
+      Object[] values = optionListClass.getEnumConstants();
+      if (values == null) {
+        constants = null;
+      } else {
+        constants = new HashMap<Object, Object>();
+        for (Object value : values) {
+          if (value instanceof OptionList) {
+            constants.put(((OptionList<?>) value).toUnderlyingValue(), value);
+          }
+        }
+      }
+    }
+
+    private Object convert(Object value) {
+      if (value == null) {
+        return null;
+      }
+      Method fromValue = getFromValueMethod(value.getClass());
+      if (fromValue == null) {
+        // Doesn't exist or not relevant.
+        return value;
+      }
+      if (constants != null) {
+        Object constant = constants.get(value);
+        if (constant != null) {
+          return constant;
+        }
+      }
+      // Not one of the enum's underlying values (or not an enum at all). Let the OptionList decide,
+      // since fromUnderlyingValue may accept more than the exact underlying values.
+      try {
+        // Java generally shouldn't return values that aren't defined in the OptionList, but
+        // extensions might override a function to return values that aren't included. If the value
+        // isn't included, just return the concrete value. See here for an example:
+        // https://github.com/BeksOmega/appinventor-sources/pull/24#discussion_r480355676
+        Object abstractVal = fromValue.invoke(optionListClass, value);
+        if (abstractVal != null) {
+          return abstractVal;
+        }
+      } catch (IllegalAccessException e) {
+        // If it's not accessible just continue.
+      } catch (InvocationTargetException e) {
+        // If it doesn't work just continue.
+      }
+      return value;
+    }
+
+    private Method getFromValueMethod(Class<?> valueClass) {
+      Object method = fromValueMethods.get(valueClass);
+      if (method == null) {
+        try {
+          method = optionListClass.getMethod("fromUnderlyingValue", valueClass);
+        } catch (NoSuchMethodException e) {
+          method = NO_METHOD;
+        }
+        fromValueMethods.put(valueClass, method);
+      }
+      return method == NO_METHOD ? null : (Method) method;
+    }
+  }
+
+  // Component class -> function name -> option list conversions. Events are dispatched without a
+  // global lock, so these may be read and populated from several threads at once.
+  private static final Map<Class<?>, Map<String, FunctionOptions>> componentFunctions =
+      new ConcurrentHashMap<Class<?>, Map<String, FunctionOptions>>();
+
+  private static final Map<Class<?>, OptionConverter> converters =
+      new ConcurrentHashMap<Class<?>, OptionConverter>();
+
   /**
    * Returns the OptionList version of the value if the function's return type has an @Options
    * annotation notating that the value can be coerced to an OptionList.
@@ -36,33 +143,12 @@ public class OptionHelper {
    *     concrete value.
    */
   public static <T> Object optionListFromValue(Object c, String func, T value) {
-    Method calledFunc = getMethod(c, func);
-    if (calledFunc == null) {
+    FunctionOptions options = getFunctionOptions(c, func);
+    if (options == null || options.returnConverter == null) {
       // Doesn't exist or not relevant.
       return value;
     }
-    Options annotation = calledFunc.getAnnotation(Options.class);
-    if (annotation == null) {
-      return value;
-    }
-    Class<?> optionListClass = annotation.value();
-    try {
-      Method fromValue = optionListClass.getMethod("fromUnderlyingValue", value.getClass());
-      // Java generally shouldn't return values that aren't defined in the OptionList, but
-      // extensions might override a function to return values that aren't included. If the value
-      // isn't included, just return the concrete value.
-      Object abstractVal = fromValue.invoke(optionListClass, value);
-      if (abstractVal != null) {
-        return abstractVal;
-      }
-      return value;
-    } catch (NoSuchMethodException e) {
-      return value;
-    } catch (IllegalAccessException e) {
-      return value;
-    } catch (InvocationTargetException e) {
-      return value;
-    }
+    return options.returnConverter.convert(value);
   }
 
   /**
@@ -78,67 +164,47 @@ public class OptionHelper {
     if (args.length == 0) {
       return args;
     }
-    Method calledFunc = getMethod(c, func);
-    if (calledFunc == null) {
+    FunctionOptions options = getFunctionOptions(c, func);
+    if (options == null || options.paramConverters == null) {
       return args;
     }
-    Annotation[][] paramAnnotations = calledFunc.getParameterAnnotations();
-    int i = 0;
-    for (Annotation[] annotations : paramAnnotations) {
-      for (Annotation annotation : annotations) {
-        if (annotation.annotationType() == Options.class) {
-          Options castAnnotation = (Options) annotation;
-          Class<?> optionListClass = castAnnotation.value();
-          try {
-            Method fromValue = optionListClass.getMethod("fromUnderlyingValue", args[i].getClass());
-            // Extensions might send values to events which aren't covered by the OptionList
-            // definition. In that case send the concrete value. See here for an example:
-            // https://github.com/BeksOmega/appinventor-sources/pull/24#discussion_r480355676
-            Object abstractVal = fromValue.invoke(optionListClass, args[i]);
-            if (abstractVal != null) {
-              args[i] = abstractVal;
-            }
-          } catch (NoSuchMethodException e) {
-            // If it doesn't exist just continue.
-          } catch (IllegalAccessException e) {
-            // If it's not accessible just continue.
-          } catch (InvocationTargetException e) {
-            // If it doesn't work just continue.
-          }
-          break;
-        }
+    OptionConverter[] paramConverters = options.paramConverters;
+    int count = Math.min(args.length, paramConverters.length);
+    for (int i = 0; i < count; i++) {
+      if (paramConverters[i] != null) {
+        args[i] = paramConverters[i].convert(args[i]);
       }
-      i++;
     }
     return args;
   }
 
   /**
-   * Returns the Method associated with the given component and function name. Returns null if the
-   * Method does not exist or shouldn't be operated on in this context (e.g. a void method).
-   * @param c The component to get the method of.
-   * @param func The function on the component we want to get the Method of.
-   * @return The Method representation of the method.
+   * Returns the option list conversions associated with the given component and function name.
+   * Returns null if the function does not exist or shouldn't be operated on in this context (e.g.
+   * a void method).
+   * @param c The component to get the function of.
+   * @param func The function on the component we want the conversions of.
+   * @return The option list conversions of the function.
    */
-  private static Method getMethod(Object c, String func) {
+  private static FunctionOptions getFunctionOptions(Object c, String func) {
     Class<?> componentClass = c.getClass();
-    String componentKey = componentClass.getSimpleName();
-    Map<String, Method> methodMap = componentMethods.get(componentKey);
+    Map<String, FunctionOptions> functions = componentFunctions.get(componentClass);
 
-    if (methodMap == null) {
-      methodMap = populateMap(componentClass);
-      componentMethods.put(componentKey, methodMap);
+    if (functions == null) {
+      functions = populateMap(componentClass);
+      componentFunctions.put(componentClass, functions);
     }
 
-    return methodMap.get(func);
+    return functions.get(func);
   }
 
   /**
-   * Returns a map populated with all relevant Methods of the given Class. This includes all events,
-   * property getters, and non-void methods.
+   * Returns a map populated with the option list conversions of all relevant Methods of the given
+   * Class. This includes all events, property getters, and non-void methods. Functions without any
+   * option lists are included too, so that they can be told apart from unknown functions.
    */
-  private static Map<String, Method> populateMap(Class<?> clazz) {
-    Map<String, Method> methodMap = new HashMap<String, Method>();
+  private static Map<String, FunctionOptions> populateMap(Class<?> clazz) {
+    Map<String, FunctionOptions> functions = new HashMap<String, FunctionOptions>();
     Method[] methods = clazz.getMethods();
 
     // Add all the relevant methods to the map.
@@ -151,23 +217,50 @@ public class OptionHelper {
       // Always add events.
       SimpleEvent event = m.getAnnotation(SimpleEvent.class);
       if (event != null) {
-        methodMap.put(methodKey, m);
+        functions.put(methodKey, new FunctionOptions(null, getParamConverters(m)));
         continue;
       }
 
       // Ignore void methods and property setters.
       if (m.getReturnType() != Void.TYPE) {
-        SimpleFunction func = m.getAnnotation(SimpleFunction.class);
-        if (func != null) {
-          methodMap.put(methodKey, m);
-          continue;
+        if (m.getAnnotation(SimpleFunction.class) != null
+            || m.getAnnotation(SimpleProperty.class) != null) {
+          functions.put(methodKey,
+              new FunctionOptions(getReturnConverter(m), getParamConverters(m)));
         }
-        SimpleProperty prop = m.getAnnotation(SimpleProperty.class);
-        if (prop != null) {
-          methodMap.put(methodKey, m);
+      }
+    }
+    return functions;
+  }
+
+  private static OptionConverter getReturnConverter(Method m) {
+    Options annotation = m.getAnnotation(Options.class);
+    return annotation == null ? null : getConverter(annotation.value());
+  }
+
+  private static OptionConverter[] getParamConverters(Method m) {
+    Annotation[][] paramAnnotations = m.getParameterAnnotations();
+    OptionConverter[] paramConverters = null;
+    for (int i = 0; i < paramAnnotations.length; i++) {
+      for (Annotation annotation : paramAnnotations[i]) {
+        if (annotation.annotationType() == Options.class) {
+          if (paramConverters == null) {
+            paramConverters = new OptionConverter[paramAnnotations.length];
+          }
+          paramConverters[i] = getConverter(((Options) annotation).value());
+          break;
         }
       }
     }
-    return methodMap;
+    return paramConverters;
+  }
+
+  private static OptionConverter getConverter(Class<?> optionListClass) {
+    OptionConverter converter = converters.get(optionListClass);
+    if (converter == null) {
+      converter = new OptionConverter(optionListClass);
+      converters.put(optionListClass, converter);
+    }
+    return converter;
   }
 }
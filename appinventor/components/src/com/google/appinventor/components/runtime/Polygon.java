@@ -203,6 +203,7 @@ public class Polygon extends PolygonBase implements MapPolygon {
   public void PointsFromString(String pointString) {
     if (TextUtils.isEmpty(pointString)) {
       points = new ArrayList<List<GeoPoint>>();  // create a new list in case the user has saved a reference
+      clearGeometry();
       map.getController().updateFeaturePosition(this);
       return;
     }
@@ -211,6 +212,7 @@ public class Polygon extends PolygonBase implements MapPolygon {
       if (content.length() == 0) {
         points = new ArrayList<List<GeoPoint>>();  // create a new list in case the user has saved a reference
         multipolygon = false;
+        clearGeometry();
         map.getController().updateFeaturePosition(this);
         return;
       }
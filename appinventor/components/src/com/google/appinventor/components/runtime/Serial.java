@@ -10,20 +10,24 @@ import android.content.Context;
 import android.util.Log;
 
 import com.physicaloid.lib.Physicaloid;
+import com.physicaloid.lib.usb.driver.uart.ReadListener;
 
 import com.google.appinventor.components.common.ComponentCategory;
 import com.google.appinventor.components.annotations.DesignerComponent;
 import com.google.appinventor.components.annotations.DesignerProperty;
 import com.google.appinventor.components.annotations.PropertyCategory;
+import com.google.appinventor.components.annotations.SimpleEvent;
 import com.google.appinventor.components.annotations.SimpleFunction;
 import com.google.appinventor.components.annotations.SimpleObject;
 import com.google.appinventor.components.annotations.SimpleProperty;
 import com.google.appinventor.components.annotations.UsesLibraries;
 import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.common.PropertyTypeConstants;
+import com.google.appinventor.components.runtime.util.ByteRingBuffer;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 
 import java.io.UnsupportedEncodingException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @DesignerComponent(version = YaVersion.SERIAL_COMPONENT_VERSION,
     description = "Serial component which can be used to connect to devices like Arduino",
@@ -37,6 +41,12 @@ import java.io.UnsupportedEncodingException;
 public class Serial extends AndroidNonvisibleComponent implements Component {
   private static final String LOG_TAG = "Serial Component";
 
+  // Number of received bytes kept when reading in the background
+  private static final int RECEIVE_BUFFER_SIZE = 64 * 1024;
+
+  // Received lines end with this byte, as written by PrintSerial and Arduino's Serial.println
+  private static final byte LINE_DELIMITER = '\n';
+
   private Context context;
 
   private Physicaloid mPhysicaloid;
@@ -44,6 +54,34 @@ public class Serial extends AndroidNonvisibleComponent implements Component {
   private int baudRate = 9600;
   private int bytes = 256;
 
+  private boolean readInBackground = false;
+  // Filled by the read listener while open, null if not reading in the background
+  private volatile ByteRingBuffer receiveBuffer;
+
+  // Whether a call to dispatchReceivedLines has been posted to the UI thread and not run yet
+  private final AtomicBoolean linesPending = new AtomicBoolean(false);
+
+  private final Runnable dispatchReceivedLines = new Runnable() {
+    @Override
+    public void run() {
+      linesPending.set(false);
+      ByteRingBuffer buffer = receiveBuffer;
+      if (buffer == null) {
+        return;
+      }
+      byte[] line;
+      // Without a DataReceived handler, leave the lines for ReadSerial.
+      while (EventDispatcher.hasEventHandlers(Serial.this, "DataReceived")
+          && (line = buffer.readFrame(LINE_DELIMITER)) != null) {
+        if (!EventDispatcher.dispatchEvent(Serial.this, "DataReceived", lineToText(line))) {
+          // The handler failed (and reported its error) or belongs to another component. Putting
+          // the line back would dispatch it again ahead of every later line, so drop it.
+          Log.w(LOG_TAG, "DataReceived was not handled, dropped " + line.length + " bytes.");
+        }
+      }
+    }
+  };
+
   public Serial(ComponentContainer container) {
     super(container.$form());
     context = container.$context();
@@ -64,7 +102,11 @@ public class Serial extends AndroidNonvisibleComponent implements Component {
       form.dispatchErrorOccurredEvent(Serial.this, "OpenSerial", ErrorMessages.ERROR_SERIAL_NOT_INITIALIZED);
       return false;
     }
-    return mPhysicaloid.open();
+    boolean opened = mPhysicaloid.open();
+    if (opened && readInBackground) {
+      startBackgroundReader();
+    }
+    return opened;
   }
 
   @SimpleFunction(description = "Closes serial connection. Returns true when closed.")
@@ -74,6 +116,7 @@ public class Serial extends AndroidNonvisibleComponent implements Component {
       form.dispatchErrorOccurredEvent(Serial.this, "CloseSerial", ErrorMessages.ERROR_SERIAL_NOT_INITIALIZED);
       return false;
     }
+    stopBackgroundReader();
     return mPhysicaloid.close();
   }
 
@@ -82,6 +125,13 @@ public class Serial extends AndroidNonvisibleComponent implements Component {
     String data = "";
     if (mPhysicaloid == null) {
       form.dispatchErrorOccurredEvent(Serial.this, "ReadSerial", ErrorMessages.ERROR_SERIAL_NOT_INITIALIZED);
+    } else if (receiveBuffer != null) {
+      byte[] buf = receiveBuffer.read(this.bytes);
+      try {
+        data = new String(buf, "UTF-8");
+      } catch (UnsupportedEncodingException mEr) {
+        Log.e(LOG_TAG, mEr.getMessage());
+      }
     } else {
       byte[] buf = new byte[this.bytes];
       if (mPhysicaloid.read(buf) > 0) {
@@ -95,6 +145,17 @@ public class Serial extends AndroidNonvisibleComponent implements Component {
     return data;
   }
 
+  /**
+   * Indicates that a line of text was received while `ReadInBackground` is true. The text does not
+   * include the line ending. If this event is not handled, the text is left for `ReadSerial`.
+   *
+   * @param text the received line
+   */
+  @SimpleEvent(description = "A line of text was received while ReadInBackground is true.")
+  public void DataReceived(String text) {
+    EventDispatcher.dispatchEvent(this, "DataReceived", text);
+  }
+
   @SimpleFunction(description = "Writes given data to serial.")
   public void WriteSerial(String data) {
     if (!data.isEmpty() && mPhysicaloid != null) {
@@ -143,6 +204,33 @@ public class Serial extends AndroidNonvisibleComponent implements Component {
       Log.w(LOG_TAG, "Could not set Serial Baud Rate to " + baudRate + ". Just saved, not applied to serial! Maybe you forgot to initialize it?");
   }
 
+  /**
+   * Specifies whether data sent by the connected device is received in the background as soon as
+   * it arrives. The received data is kept in a buffer until it is read with `ReadSerial` or, for
+   * complete lines, by the `DataReceived` event, so that data streamed continuously by a device
+   * such as an Arduino is not lost between reads.
+   *
+   * @param readInBackground true to receive data in the background
+   */
+  @DesignerProperty(editorType = PropertyTypeConstants.PROPERTY_TYPE_BOOLEAN, defaultValue = "False")
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR)
+  public void ReadInBackground(boolean readInBackground) {
+    this.readInBackground = readInBackground;
+    if (mPhysicaloid == null || !mPhysicaloid.isOpened()) {
+      return;
+    }
+    if (readInBackground && receiveBuffer == null) {
+      startBackgroundReader();
+    } else if (!readInBackground) {
+      stopBackgroundReader();
+    }
+  }
+
+  @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Returns true when data is received in the background.")
+  public boolean ReadInBackground() {
+    return readInBackground;
+  }
+
   @SimpleProperty(category = PropertyCategory.BEHAVIOR, description = "Returns the buffer size in bytes")
   public int BufferSize() {
     return this.bytes;
@@ -154,4 +242,58 @@ public class Serial extends AndroidNonvisibleComponent implements Component {
     this.bytes = bytes;
     Log.d(LOG_TAG, "Buffer Size: " + bytes);
   }
+
+  private void startBackgroundReader() {
+    final ByteRingBuffer buffer = new ByteRingBuffer(RECEIVE_BUFFER_SIZE);
+    final Physicaloid physicaloid = mPhysicaloid;
+    receiveBuffer = buffer;
+    // Physicaloid calls the listener on its own reader thread as soon as data arrives.
+    physicaloid.addReadListener(new ReadListener() {
+      @Override
+      public void onRead(int size) {
+        if (size <= 0) {
+          return;
+        }
+        byte[] buf = new byte[size];
+        int count = physicaloid.read(buf, size);
+        if (count <= 0) {
+          return;
+        }
+        int dropped = buffer.write(buf, 0, count);
+        if (dropped > 0) {
+          Log.w(LOG_TAG, "Receive buffer is full, dropped " + dropped + " bytes.");
+        }
+        for (int i = 0; i < count; i++) {
+          if (buf[i] == LINE_DELIMITER) {
+            if (linesPending.compareAndSet(false, true)) {
+              form.runOnUiThread(dispatchReceivedLines);
+            }
+            break;
+          }
+        }
+      }
+    });
+  }
+
+  private void stopBackgroundReader() {
+    ByteRingBuffer buffer = receiveBuffer;
+    if (buffer != null) {
+      receiveBuffer = null;
+      mPhysicaloid.clearReadListener();
+      buffer.close();
+    }
+  }
+
+  private static String lineToText(byte[] line) {
+    // Drop the line feed, and the carriage return before it if there is one.
+    int length = line.length - 1;
+    if (length > 0 && line[length - 1] == '\r') {
+      length--;
+    }
+    try {
+      return new String(line, 0, length, "UTF-8");
+    } catch (UnsupportedEncodingException e) {
+      return new String(line, 0, length);
+    }
+  }
 }
@@ -21,19 +21,16 @@ import com.google.appinventor.components.common.YaVersion;
 import com.google.appinventor.components.runtime.errors.PermissionException;
 import com.google.appinventor.components.runtime.util.ErrorMessages;
 import com.google.appinventor.components.runtime.util.MediaUtil;
-import com.google.appinventor.components.runtime.util.SdkLevel;
+import com.google.appinventor.components.runtime.util.SharedSoundPool;
 
 import android.content.Context;
 import android.media.AudioManager;
-import android.media.SoundPool;
 import android.os.Handler;
 import android.os.Vibrator;
 import android.util.Log;
 
 import com.google.appinventor.components.runtime.util.TiramisuUtil;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
  * A multimedia component that plays sound files and optionally vibrates for the number of
@@ -73,47 +70,30 @@ import java.util.Map;
 @SimpleObject
 @UsesPermissions(permissionNames = "android.permission.VIBRATE, android.permission.INTERNET")
 public class Sound extends AndroidNonvisibleComponent
-    implements Component, OnResumeListener, OnStopListener, OnDestroyListener, Deleteable {
-
-  private boolean loadComplete;    // did the sound finish loading
-
-  // The purpose of this class is to avoid getting rejected by the Android verifier when the
-  // Sound component code is loaded into a device with API level less than 8, where the verifier
-  // will reject OnLoadCompleteListener.  We do this trick by putting
-  // the use of OnLoadCompleteListener in the class OnLoadHelper and arranging (see below) for
-  // the class to be compiled only if the API level is at least 8.
-  private class OnLoadHelper {
-    public void setOnloadCompleteListener (SoundPool soundPool) {
-      soundPool.setOnLoadCompleteListener(new android.media.SoundPool.OnLoadCompleteListener() {
-        public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
-          loadComplete = true;
-        }
-      });
+    implements Component, OnResumeListener, OnStopListener, OnDestroyListener, Deleteable,
+    SharedSoundPool.LoadListener {
+
+  // max number of ms to wait for a sound to load before signaling an error
+  private static final int MAX_PLAY_DELAY = 500;
+
+  // All of the Sound components of the Form share one SoundPool, so that a sample used by several
+  // components, or used again after switching Source, is only decoded once.
+  private SharedSoundPool soundPool;
+
+  // Whether Play() was called before the sound finished loading. If so, the sound is played as
+  // soon as it is loaded.
+  private boolean playPending;
+
+  private final Runnable playTimeout = new Runnable() {
+    @Override
+    public void run() {
+      if (playPending) {
+        playPending = false;
+        form.dispatchErrorOccurredEvent(thisComponent, "Play",
+            ErrorMessages.ERROR_SOUND_NOT_READY, sourcePath);
+      }
     }
-  }
-
-  private static final int MAX_STREAMS = 10;
-
-  // max number of consecutive delays to wait for a sound to load
-  private static final int MAX_PLAY_DELAY_RETRIES = 10;
-  // number of ms in each delay before retrying
-  private static final int PLAY_DELAY_LENGTH = 50;
-
-  private static final float VOLUME_FULL = 1.0f;
-  private static final int LOOP_MODE_NO_LOOP = 0;
-  private static final float PLAYBACK_RATE_NORMAL = 1.0f;
-  private SoundPool soundPool;
-
-  // soundMap maps sounds (assets, etc) that are loaded into soundPool to their respective
-  // soundIds.
-  private final Map<String, Integer> soundMap;
-
-  // We will wait for Sound loading to complete before trying to play, but only
-  // if the API level is at least 8, because onLoadCompleteListener is not available
-  // in earlier APIs. For those early systems, attempting to play a sound before it is loaded
-  // will fail to play the sound and there will be no retry, although there might be a "cannot
-  // play" error.
-  private final boolean waitForLoadToComplete = (SdkLevel.getLevel() >= SdkLevel.LEVEL_FROYO);
+  };
 
   private String sourcePath;              // name of source
   private int soundId;                    // id of sound in the soundPool
@@ -130,11 +110,10 @@ public class Sound extends AndroidNonvisibleComponent
   public Sound(ComponentContainer container) {
     super(container.$form());
     thisComponent = this;
-    soundPool = new SoundPool(MAX_STREAMS, AudioManager.STREAM_MUSIC, 0);
-    soundMap = new HashMap<String, Integer>();
+    soundPool = SharedSoundPool.acquire(form);
+    soundPool.addLoadListener(this);
     vibe = (Vibrator) form.getSystemService(Context.VIBRATOR_SERVICE);
     sourcePath = "";
-    loadComplete = true;  //nothing to wait for until we attempt to load
     form.registerForOnResume(this);
     form.registerForOnStop(this);
     form.registerForOnDestroy(this);
@@ -144,10 +123,6 @@ public class Sound extends AndroidNonvisibleComponent
 
     // Default property values
     MinimumInterval(500);
-
-    if (waitForLoadToComplete) {
-      new OnLoadHelper().setOnloadCompleteListener(soundPool);
-    }
   }
 
 
@@ -197,33 +172,27 @@ public class Sound extends AndroidNonvisibleComponent
       soundPool.stop(streamId);
       streamId = 0;
     }
+    cancelPendingPlay();
+    if (soundId != 0) {
+      soundPool.releaseSample(soundId);
+    }
     soundId = 0;
 
     if (sourcePath.length() != 0) {
-      Integer existingSoundId = soundMap.get(sourcePath);
-      if (existingSoundId != null) {
-        soundId = existingSoundId;
-
-      } else {
-        Log.i("Sound", "No existing sound with path " + sourcePath + ".");
-        try {
-          int newSoundId = MediaUtil.loadSoundPool(soundPool, form, sourcePath);
-          if (newSoundId != 0) {
-            soundMap.put(sourcePath, newSoundId);
-            Log.i("Sound", "Successfully began loading sound: setting soundId to " + newSoundId + ".");
-            soundId = newSoundId;
-            // set flag to show that loading has begun
-            loadComplete = false;
-          } else {
-            form.dispatchErrorOccurredEvent(this, "Source",
-                ErrorMessages.ERROR_UNABLE_TO_LOAD_MEDIA, sourcePath);
-          }
-        } catch (PermissionException e) {
-          form.dispatchPermissionDeniedEvent(this, "Source", e);
-        } catch (IOException e) {
+      try {
+        int newSoundId = soundPool.loadSample(sourcePath);
+        if (newSoundId != 0) {
+          Log.i("Sound", "Setting soundId to " + newSoundId + ".");
+          soundId = newSoundId;
+        } else {
           form.dispatchErrorOccurredEvent(this, "Source",
               ErrorMessages.ERROR_UNABLE_TO_LOAD_MEDIA, sourcePath);
         }
+      } catch (PermissionException e) {
+        form.dispatchPermissionDeniedEvent(this, "Source", e);
+      } catch (IOException e) {
+        form.dispatchErrorOccurredEvent(this, "Source",
+            ErrorMessages.ERROR_UNABLE_TO_LOAD_MEDIA, sourcePath);
       }
     }
   }
@@ -258,9 +227,6 @@ public class Sound extends AndroidNonvisibleComponent
   }
 
 
-  // number of retries remaining before signaling an error
-  private int delayRetries;
-
   /**
    * Plays the sound.
    */
@@ -270,7 +236,6 @@ public class Sound extends AndroidNonvisibleComponent
       long currentTime = System.currentTimeMillis();
       if (timeLastPlayed == 0 || currentTime >= timeLastPlayed + minimumInterval) {
         timeLastPlayed = currentTime;
-        delayRetries =  MAX_PLAY_DELAY_RETRIES;
         playWhenLoadComplete();
       } else {
         // fail silently
@@ -285,35 +250,44 @@ public class Sound extends AndroidNonvisibleComponent
     }
   }
 
-  // Attempt to play the sound, possibly after a delay to allow the sound to load.
+  // Attempt to play the sound, possibly once the sound has loaded.
   private void playWhenLoadComplete() {
-    if (loadComplete || !waitForLoadToComplete) {
+    if (soundPool.isLoaded(soundId)) {
+      playAndCheckResult();
+    } else if (!playPending) {
+      Log.i("Sound", "Sound not ready: playing once it is loaded.");
+      // onSampleLoaded plays the sound as soon as it is loaded. We give up after a delay, which
+      // we implement by posting to a separate handler so as not to block the UI thread.
+      playPending = true;
+      playWaitHandler.postDelayed(playTimeout, MAX_PLAY_DELAY);
+    }
+  }
+
+  private void cancelPendingPlay() {
+    if (playPending) {
+      playPending = false;
+      playWaitHandler.removeCallbacks(playTimeout);
+    }
+  }
+
+  // SharedSoundPool.LoadListener implementation
+
+  @Override
+  public void onSampleLoaded(int sampleId, boolean success) {
+    if (!playPending || sampleId != soundId) {
+      return;
+    }
+    cancelPendingPlay();
+    if (success) {
       playAndCheckResult();
     } else {
-      Log.i("Sound", "Sound not ready:  retrying.  Remaining retries = " + delayRetries);
-      // if the sound wasn't ready we retry after a delay. We implement the delay by posting
-      // to a separate handler: using a loop with a sleep might seem simpler, but it would block
-      // the UI thread.
-      playWaitHandler.postDelayed(new Runnable() {
-        @Override
-        public void run() {
-          if (loadComplete) {
-            playAndCheckResult();
-          } else if (delayRetries > 0) {
-            delayRetries--;
-            playWhenLoadComplete();
-          } else {
-            form.dispatchErrorOccurredEvent(thisComponent, "Play",
-                ErrorMessages.ERROR_SOUND_NOT_READY, sourcePath);
-          }
-        }
-      }, PLAY_DELAY_LENGTH);
+      form.dispatchErrorOccurredEvent(this, "Play",
+          ErrorMessages.ERROR_UNABLE_TO_LOAD_MEDIA, sourcePath);
     }
   }
 
   private void playAndCheckResult() {
-    streamId = soundPool.play(soundId, VOLUME_FULL, VOLUME_FULL, 0, LOOP_MODE_NO_LOOP,
-        PLAYBACK_RATE_NORMAL);
+    streamId = soundPool.play(soundId);
   Log.i("Sound", "SoundPool.play returned stream id " + streamId);
   if (streamId == 0) {
     form.dispatchErrorOccurredEvent(this, "Play",
@@ -408,10 +382,19 @@ public class Sound extends AndroidNonvisibleComponent
   }
 
   private void prepareToDie() {
+    if (soundPool == null) {
+      return;
+    }
+    cancelPendingPlay();
     if (streamId != 0) {
       soundPool.stop(streamId);
-      soundPool.unload(streamId);
+      streamId = 0;
+    }
+    if (soundId != 0) {
+      soundPool.releaseSample(soundId);
+      soundId = 0;
     }
+    soundPool.removeLoadListener(this);
     soundPool.release();
     vibe.cancel();
     // The documentation for SoundPool suggests setting the reference to null;
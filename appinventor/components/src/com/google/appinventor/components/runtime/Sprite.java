@@ -6,6 +6,7 @@
 
 package com.google.appinventor.components.runtime;
 
+import android.graphics.RectF;
 import android.os.Handler;
 
 import com.google.appinventor.components.annotations.DesignerProperty;
@@ -19,7 +20,6 @@ import com.google.appinventor.components.common.Direction;
 import com.google.appinventor.components.common.PropertyTypeConstants;
 import com.google.appinventor.components.runtime.errors.IllegalArgumentError;
 import com.google.appinventor.components.runtime.util.BoundingBox;
-import com.google.appinventor.components.runtime.util.TimerInternal;
 import com.google.appinventor.components.runtime.util.Vector2D;
 import com.google.appinventor.components.runtime.util.YailList;
 
@@ -53,7 +53,7 @@ public abstract class Sprite extends VisibleComponent
   protected static final String DEFAULT_ORIGIN = "(0.0, 0.0)";
 
   protected final Canvas canvas;              // enclosing Canvas
-  private final TimerInternal timerInternal;  // timer to control movement
+  private boolean enabled;                    // whether the Canvas moves the sprite
   private final Handler androidUIHandler;     // for posting actions
 
   // Keeps track of which other sprites are currently colliding with this one.
@@ -133,9 +133,6 @@ public abstract class Sprite extends VisibleComponent
     // Maintain a list of collisions.
     registeredCollisions = new HashSet<Sprite>();
 
-    // Set in motion.
-    timerInternal = new TimerInternal(this, DEFAULT_ENABLED, DEFAULT_INTERVAL, handler);
-
     this.form = container.$form();
 
     // Set default property values.
@@ -185,7 +182,7 @@ public abstract class Sprite extends VisibleComponent
       description = "Controls whether the %type% moves and can be interacted with " +
           "through collisions, dragging, touching, and flinging.")
   public boolean Enabled() {
-    return timerInternal.Enabled();
+    return enabled;
   }
 
   /**
@@ -199,7 +196,8 @@ public abstract class Sprite extends VisibleComponent
       defaultValue = DEFAULT_ENABLED ? "True" : "False")
   @SimpleProperty(category = PropertyCategory.BEHAVIOR)
   public void Enabled(boolean enabled) {
-    timerInternal.Enabled(enabled);
+    this.enabled = enabled;
+    canvas.updateSpriteAnimation(this, true);
   }
 
   /**
@@ -251,7 +249,7 @@ public abstract class Sprite extends VisibleComponent
           "position is updated.  For example, if the interval is 50 and the speed is 10, " +
           "then every 50 milliseconds the sprite will move 10 pixels in the heading direction.")
   public int Interval() {
-    return timerInternal.Interval();
+    return interval;
   }
 
   /**
@@ -265,7 +263,8 @@ public abstract class Sprite extends VisibleComponent
       defaultValue = DEFAULT_INTERVAL + "")
   @SimpleProperty(category = PropertyCategory.BEHAVIOR)
   public void Interval(int interval) {
-    timerInternal.Interval(interval);
+    this.interval = interval;
+    canvas.updateSpriteAnimation(this, true);
   }
 
   /**
@@ -283,6 +282,7 @@ public abstract class Sprite extends VisibleComponent
       defaultValue = DEFAULT_SPEED + "")
   public void Speed(float speed) {
     this.speed = speed;
+    canvas.updateSpriteAnimation(this, false);
   }
 
   /**
@@ -1024,6 +1024,19 @@ public abstract class Sprite extends VisibleComponent
         xLeft + Width() - 1 + border, yTop + Height() - 1 + border);
   }
 
+  /**
+   * Computes the area of the Canvas, in physical pixels, that this sprite
+   * covers when drawn.  The Canvas redraws only this area, together with the
+   * area the sprite covered before, when the sprite changes.
+   *
+   * @param out set to the area covered by the sprite
+   */
+  void getDrawingBounds(RectF out) {
+    float density = form.deviceDensity();
+    out.set((float) xLeft * density, (float) yTop * density,
+        (float) (xLeft + Width()) * density, (float) (yTop + Height()) * density);
+  }
+
   /**
    * Determines whether two sprites are in collision.
    *
@@ -1156,14 +1169,31 @@ public abstract class Sprite extends VisibleComponent
    * Moves and redraws sprite, registering changes.
    */
   public void alarm() {
-    // This check on initialized is currently redundant, since registerChange()
-    // checks it too.
-    if (initialized && speed != 0) {
-      updateCoordinates();
-      registerChange();
+    if (advance()) {
+      canvas.registerChange(this);
     }
   }
 
+  /**
+   * Moves the sprite one step and checks whether it has reached an edge,
+   * leaving the redraw and collision checks to the caller.  The Canvas calls
+   * this for each enabled sprite whose interval has elapsed, and then checks
+   * for collisions among all of the sprites that moved at once.
+   *
+   * @return {@code true} if the sprite moved
+   */
+  boolean advance() {
+    if (!initialized || speed == 0) {
+      return false;
+    }
+    updateCoordinates();
+    Direction edge = hitEdgeAbstract();
+    if (edge != null) {
+      EdgeReachedAbstract(edge);
+    }
+    return true;
+  }
+
   // Component implementation
 
   @Override
@@ -1175,14 +1205,14 @@ public abstract class Sprite extends VisibleComponent
 
   @Override
   public void onDestroy() {
-    timerInternal.Enabled(false);
+    Enabled(false);
   }
 
   // Deleteable implementation
 
   @Override
   public void onDelete() {
-    timerInternal.Enabled(false);
+    enabled = false;
     canvas.removeSprite(this);
   }
 
@@ -0,0 +1,207 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import android.os.Handler;
+import android.os.SystemClock;
+
+import androidx.annotation.VisibleForTesting;
+
+import com.google.appinventor.components.runtime.util.JellybeanUtil;
+import com.google.appinventor.components.runtime.util.SdkLevel;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Moves the enabled sprites of a {@link Canvas}.
+ *
+ * <p>Rather than each sprite posting its own timer callback, the animator keeps one callback
+ * for all of the sprites that are enabled and have a non-zero {@link Sprite#Speed()}. The
+ * callback is posted for the earliest time at which one of those sprites is due to move, so
+ * a canvas whose sprites are all standing still posts nothing. When the callback runs, every
+ * sprite whose {@link Sprite#Interval()} has elapsed is moved by its speed (more than once if
+ * several intervals elapsed since the last run), after which collisions between the sprites
+ * that moved are checked in one pass and the canvas is redrawn once.
+ *
+ * <p>On JELLYBEAN and later, the callback runs in step with the display through
+ * {@link android.view.View#postOnAnimationDelayed(Runnable, long)}. On earlier versions, a
+ * {@link Handler} is used, no more often than about once a frame.
+ */
+final class SpriteAnimator implements Runnable {
+
+  // Shortest delay used when the display can't tell us about frames (about 60 frames per second)
+  private static final int FALLBACK_FRAME_INTERVAL = 16;  // ms
+
+  // Most steps a sprite takes in one frame. If the app falls further behind than this (for
+  // example, because an event handler ran for a long time), the missed steps are dropped rather
+  // than making the sprite jump.
+  private static final int MAX_STEPS_PER_FRAME = 8;
+
+  private static class Entry {
+    final Sprite sprite;
+    long due;  // uptime at which the sprite should take its next step
+
+    Entry(Sprite sprite, long due) {
+      this.sprite = sprite;
+      this.due = due;
+    }
+  }
+
+  private final Canvas canvas;
+  private final Handler handler;
+  private final boolean frameCallbacks = SdkLevel.getLevel() >= SdkLevel.LEVEL_JELLYBEAN;
+
+  // Sprites that are enabled and moving, in the order in which they started moving
+  private final Map<Sprite, Entry> entries = new LinkedHashMap<Sprite, Entry>();
+
+  private boolean scheduled = false;
+  private long scheduledTime;  // uptime for which the pending callback was posted
+
+  SpriteAnimator(Canvas canvas) {
+    this.canvas = canvas;
+    this.handler = new Handler();
+  }
+
+  /**
+   * Returns whether the animator needs to move the given sprite, that is, whether the sprite
+   * is enabled and has a non-zero speed.
+   */
+  static boolean isMoving(Sprite sprite) {
+    return sprite.Enabled() && sprite.Speed() != 0;
+  }
+
+  /**
+   * Starts, restarts or stops moving a sprite after its Enabled, Interval or Speed property
+   * changed. As with a timer, a sprite that starts moving takes its next step one interval
+   * from now.
+   *
+   * @param restart whether a sprite that is already moving should also take its next step one
+   *     interval from now, rather than keep its current timing
+   */
+  void update(Sprite sprite, boolean restart) {
+    if (isMoving(sprite)) {
+      long due = SystemClock.uptimeMillis() + sprite.Interval();
+      Entry entry = entries.get(sprite);
+      if (entry == null) {
+        entries.put(sprite, new Entry(sprite, due));
+      } else if (restart) {
+        entry.due = due;
+      }
+      schedule();
+    } else {
+      remove(sprite);
+    }
+  }
+
+  /**
+   * Stops moving a sprite that is being removed from the canvas.
+   */
+  void remove(Sprite sprite) {
+    if (entries.remove(sprite) != null && entries.isEmpty()) {
+      cancel();
+    }
+  }
+
+  /**
+   * Returns whether the animator is moving the given sprite.
+   */
+  @VisibleForTesting
+  boolean isAnimating(Sprite sprite) {
+    return entries.containsKey(sprite);
+  }
+
+  /**
+   * Returns the uptime for which the pending callback was posted, or -1 if there is none.
+   */
+  @VisibleForTesting
+  long getScheduledTime() {
+    return scheduled ? scheduledTime : -1;
+  }
+
+  @Override
+  public void run() {
+    scheduled = false;
+    if (entries.isEmpty()) {
+      return;
+    }
+    long now = SystemClock.uptimeMillis();
+    List<Sprite> moved = new ArrayList<Sprite>();
+    // Event handlers called while moving sprites may enable, disable or delete sprites, so work
+    // on a copy and check that each sprite is still enabled before each step.
+    for (Entry entry : new ArrayList<Entry>(entries.values())) {
+      Sprite sprite = entry.sprite;
+      int steps = 0;
+      while (entry.due <= now && steps < MAX_STEPS_PER_FRAME && entries.get(sprite) == entry) {
+        long interval = sprite.Interval();
+        if (sprite.advance() && !moved.contains(sprite)) {
+          moved.add(sprite);
+        }
+        steps++;
+        if (entries.get(sprite) == entry) {
+          // Unless the interval changed during the step, which restarts the timing.
+          if (sprite.Interval() == interval) {
+            entry.due += Math.max(interval, 1);
+          }
+        }
+      }
+      if (entry.due <= now) {
+        // We fell behind; continue from now.
+        entry.due = now + sprite.Interval();
+      }
+    }
+    if (!moved.isEmpty()) {
+      canvas.registerChanges(moved);
+    }
+    schedule();
+  }
+
+  /*
+   * Posts the callback for the earliest time at which a sprite is due, unless a callback is
+   * already pending for that time or earlier.
+   */
+  private void schedule() {
+    if (entries.isEmpty()) {
+      return;
+    }
+    long next = Long.MAX_VALUE;
+    for (Entry entry : entries.values()) {
+      next = Math.min(next, entry.due);
+    }
+    if (scheduled) {
+      if (scheduledTime <= next) {
+        return;
+      }
+      // A sprite is due before the pending callback, for example one that just started moving
+      // with a shorter interval than the others.
+      cancel();
+    }
+    long now = SystemClock.uptimeMillis();
+    long delay = Math.max(next - now, 0);
+    if (frameCallbacks) {
+      JellybeanUtil.postOnAnimationDelayed(canvas.getView(), this, delay);
+    } else {
+      delay = Math.max(delay, FALLBACK_FRAME_INTERVAL);
+      handler.postDelayed(this, delay);
+    }
+    scheduled = true;
+    scheduledTime = now + delay;
+  }
+
+  private void cancel() {
+    if (!scheduled) {
+      return;
+    }
+    if (frameCallbacks) {
+      canvas.getView().removeCallbacks(this);
+    } else {
+      handler.removeCallbacks(this);
+    }
+    scheduled = false;
+  }
+}
@@ -0,0 +1,221 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A process wide cache of decoded images, shared by every component that loads images through
+ * {@link MediaUtil}.
+ *
+ * <p>Bitmaps are kept in least recently used order and evicted once their total size exceeds a
+ * budget of one eighth of the application's memory class. Cached bitmaps may be displayed by any
+ * number of views at once, so they are never recycled or reused; the garbage collector reclaims
+ * them once they are evicted and no longer displayed.
+ *
+ * <p>Separately, this class keeps a few bitmaps that are known to be unused (for example, the full
+ * size image that was decoded before being scaled to the size a component asked for). On
+ * HONEYCOMB and later these are handed to BitmapFactory through {@code inBitmap}, so that decoding
+ * the next image doesn't need a fresh allocation.
+ */
+public final class BitmapCache {
+  private static final String LOG_TAG = "BitmapCache";
+
+  // Fraction of the memory class used for the cache
+  private static final int MEMORY_CLASS_DIVISOR = 8;
+
+  // Budget used until we are given a Context to look up the memory class (4 MB)
+  private static final long DEFAULT_MAX_BYTES = 4L * 1024 * 1024;
+
+  // Number of unused bitmaps kept for reuse
+  private static final int MAX_REUSABLE = 4;
+
+  private static final LinkedHashMap<String, Bitmap> cache =
+      new LinkedHashMap<String, Bitmap>(16, 0.75f, true);
+
+  private static final List<SoftReference<Bitmap>> reusable =
+      new LinkedList<SoftReference<Bitmap>>();
+
+  private static long maxBytes = -1;
+  private static long currentBytes = 0;
+
+  private static int hits = 0;
+  private static int misses = 0;
+  private static int evictions = 0;
+  private static int reuses = 0;
+
+  private BitmapCache() {
+  }
+
+  /**
+   * Returns the cached bitmap for the given key, or null if there is none.
+   */
+  public static synchronized Bitmap get(String key) {
+    Bitmap bitmap = cache.get(key);
+    if (bitmap == null) {
+      misses++;
+    } else {
+      hits++;
+    }
+    return bitmap;
+  }
+
+  /**
+   * Adds a bitmap to the cache, evicting the least recently used bitmaps if needed. Bitmaps that
+   * are larger than the whole budget are not cached.
+   */
+  public static synchronized void put(Context context, String key, Bitmap bitmap) {
+    ensureBudget(context);
+    long size = sizeOf(bitmap);
+    if (size > maxBytes) {
+      return;
+    }
+    Bitmap previous = cache.put(key, bitmap);
+    if (previous != null) {
+      currentBytes -= sizeOf(previous);
+    }
+    currentBytes += size;
+    trimToSize(maxBytes);
+  }
+
+  /**
+   * Removes all of the bitmaps from the cache.
+   */
+  public static synchronized void clear() {
+    cache.clear();
+    reusable.clear();
+    currentBytes = 0;
+  }
+
+  /**
+   * Offers a bitmap that will not be displayed or used again for reuse by a later decode. Only
+   * mutable bitmaps can be decoded into.
+   */
+  public static synchronized void addReusable(Bitmap bitmap) {
+    if (SdkLevel.getLevel() < SdkLevel.LEVEL_HONEYCOMB || !bitmap.isMutable()) {
+      return;
+    }
+    reusable.add(0, new SoftReference<Bitmap>(bitmap));
+    while (reusable.size() > MAX_REUSABLE) {
+      reusable.remove(reusable.size() - 1);
+    }
+  }
+
+  /**
+   * Prepares options for decoding an image that is only an intermediate step (for example, one
+   * that will be scaled) and will be passed to {@link #addReusable(Bitmap)} afterwards. Sets
+   * {@code options.inBitmap} to an unused bitmap that can hold the image, if there is one, and
+   * otherwise asks for a mutable bitmap so that the result can be reused later.
+   *
+   * @param options the options that will be used to decode the image, with inSampleSize set
+   * @param width the width of the image before sampling
+   * @param height the height of the image before sampling
+   * @return true if {@code options.inBitmap} was set
+   */
+  public static synchronized boolean prepareIntermediate(BitmapFactory.Options options,
+      int width, int height) {
+    if (SdkLevel.getLevel() < SdkLevel.LEVEL_HONEYCOMB) {
+      return false;
+    }
+    HoneycombUtil.setMutable(options);
+    if (width <= 0 || height <= 0) {
+      return false;
+    }
+    int sampleSize = Math.max(1, options.inSampleSize);
+    int sampledWidth = (width + sampleSize - 1) / sampleSize;
+    int sampledHeight = (height + sampleSize - 1) / sampleSize;
+    Iterator<SoftReference<Bitmap>> it = reusable.iterator();
+    while (it.hasNext()) {
+      Bitmap candidate = it.next().get();
+      if (candidate == null || candidate.isRecycled()) {
+        it.remove();
+      } else if (canReuse(candidate, sampleSize, sampledWidth, sampledHeight)) {
+        it.remove();
+        HoneycombUtil.setInBitmap(options, candidate);
+        reuses++;
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public static synchronized int getHitCount() {
+    return hits;
+  }
+
+  public static synchronized int getMissCount() {
+    return misses;
+  }
+
+  public static synchronized int getEvictionCount() {
+    return evictions;
+  }
+
+  public static synchronized int getReuseCount() {
+    return reuses;
+  }
+
+  public static synchronized long getSize() {
+    return currentBytes;
+  }
+
+  public static synchronized String getStats() {
+    return "BitmapCache: " + cache.size() + " bitmaps, " + currentBytes + "/" + maxBytes
+        + " bytes, hits=" + hits + " misses=" + misses + " evictions=" + evictions
+        + " reuses=" + reuses;
+  }
+
+  private static boolean canReuse(Bitmap candidate, int sampleSize, int width, int height) {
+    if (candidate.getConfig() != Bitmap.Config.ARGB_8888) {
+      return false;
+    }
+    if (SdkLevel.getLevel() >= SdkLevel.LEVEL_KITKAT) {
+      // Any bitmap that is large enough will do
+      return (long) width * height * 4 <= KitkatUtil.getAllocationByteCount(candidate);
+    }
+    // Before KITKAT the bitmap has to be exactly the same size, and sampling isn't supported
+    return sampleSize == 1 && candidate.getWidth() == width && candidate.getHeight() == height;
+  }
+
+  private static void ensureBudget(Context context) {
+    if (maxBytes > 0) {
+      return;
+    }
+    maxBytes = DEFAULT_MAX_BYTES;
+    if (context != null) {
+      ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+      if (am != null) {
+        maxBytes = (long) am.getMemoryClass() * 1024 * 1024 / MEMORY_CLASS_DIVISOR;
+      }
+    }
+    Log.d(LOG_TAG, "Bitmap cache budget is " + maxBytes + " bytes");
+  }
+
+  private static void trimToSize(long size) {
+    Iterator<Map.Entry<String, Bitmap>> it = cache.entrySet().iterator();
+    while (currentBytes > size && it.hasNext()) {
+      Map.Entry<String, Bitmap> eldest = it.next();
+      currentBytes -= sizeOf(eldest.getValue());
+      it.remove();
+      evictions++;
+    }
+  }
+
+  private static long sizeOf(Bitmap bitmap) {
+    return (long) bitmap.getRowBytes() * bitmap.getHeight();
+  }
+}
@@ -0,0 +1,199 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+/**
+ * A bounded first in, first out buffer of bytes, written by a thread that reads from a connection
+ * and read by the components that use the connection.
+ *
+ * <p>When the buffer is full, the oldest bytes are dropped to make room for new ones, so a slow
+ * reader loses the oldest data rather than blocking the connection. The number of dropped bytes is
+ * counted.
+ *
+ * <p>Once the writer is done (for example, because the connection was closed), it calls
+ * {@link #close()}, which wakes up any reader that is waiting for more data.
+ */
+public final class ByteRingBuffer {
+  private final byte[] buffer;
+  private int head = 0;   // index of the oldest byte
+  private int size = 0;
+  private boolean closed = false;
+  private long dropped = 0;
+
+  // The first scannedCount bytes from head are known not to contain scannedDelimiter, so that
+  // waiting for a frame doesn't rescan the whole buffer on every write.
+  private int scannedCount = 0;
+  private byte scannedDelimiter;
+
+  /**
+   * Creates a new buffer that holds up to {@code capacity} bytes.
+   */
+  public ByteRingBuffer(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    buffer = new byte[capacity];
+  }
+
+  /**
+   * Appends bytes to the buffer, dropping the oldest bytes if there isn't enough room.
+   *
+   * @return the number of bytes dropped
+   */
+  public synchronized int write(byte[] bytes, int offset, int length) {
+    int droppedNow = 0;
+    if (length > buffer.length) {
+      // Only the newest bytes fit
+      droppedNow += length - buffer.length;
+      offset += length - buffer.length;
+      length = buffer.length;
+    }
+    int overflow = size + length - buffer.length;
+    if (overflow > 0) {
+      skip(overflow);
+      droppedNow += overflow;
+    }
+    int tail = (head + size) % buffer.length;
+    int first = Math.min(length, buffer.length - tail);
+    System.arraycopy(bytes, offset, buffer, tail, first);
+    System.arraycopy(bytes, offset + first, buffer, 0, length - first);
+    size += length;
+    dropped += droppedNow;
+    notifyAll();
+    return droppedNow;
+  }
+
+  /**
+   * Puts bytes that were read back at the front of the buffer, so that they are read again. If
+   * there isn't enough room, the bytes that don't fit are dropped.
+   */
+  public synchronized void unread(byte[] bytes) {
+    int length = Math.min(bytes.length, buffer.length - size);
+    int droppedNow = bytes.length - length;
+    for (int i = bytes.length - 1; i >= droppedNow; i--) {
+      head = (head - 1 + buffer.length) % buffer.length;
+      buffer[head] = bytes[i];
+    }
+    size += length;
+    dropped += droppedNow;
+    scannedCount = 0;
+    notifyAll();
+  }
+
+  /**
+   * Returns the number of bytes that can be read without waiting.
+   */
+  public synchronized int available() {
+    return size;
+  }
+
+  /**
+   * Returns whether the buffer contains the given byte.
+   */
+  public synchronized boolean contains(byte value) {
+    return indexOf(value) >= 0;
+  }
+
+  /**
+   * Removes and returns up to {@code max} bytes without waiting.
+   */
+  public synchronized byte[] read(int max) {
+    return take(Math.min(Math.max(max, 0), size));
+  }
+
+  /**
+   * Removes and returns the bytes up to and including the first occurrence of {@code delimiter},
+   * or returns null if the buffer doesn't contain the delimiter.
+   */
+  public synchronized byte[] readFrame(byte delimiter) {
+    int index = indexOf(delimiter);
+    return index < 0 ? null : take(index + 1);
+  }
+
+  /**
+   * Waits until {@code count} bytes are available and removes them. If the buffer is closed
+   * before then, removes and returns the bytes that are left, which may be fewer than
+   * {@code count}.
+   */
+  public synchronized byte[] awaitBytes(int count) throws InterruptedException {
+    while (size < count && !closed) {
+      wait();
+    }
+    return take(Math.min(count, size));
+  }
+
+  /**
+   * Waits until the buffer contains {@code delimiter} and removes the bytes up to and including
+   * it. If the buffer is closed before then, removes and returns the bytes that are left, which
+   * won't end with the delimiter.
+   */
+  public synchronized byte[] awaitFrame(byte delimiter) throws InterruptedException {
+    int index;
+    while ((index = indexOf(delimiter)) < 0 && !closed) {
+      wait();
+    }
+    return take(index < 0 ? size : index + 1);
+  }
+
+  /**
+   * Marks the end of the data. Readers that are waiting for data get what is left in the buffer.
+   */
+  public synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  public synchronized boolean isClosed() {
+    return closed;
+  }
+
+  /**
+   * Returns the total number of bytes dropped because the buffer was full.
+   */
+  public synchronized long getDroppedCount() {
+    return dropped;
+  }
+
+  /**
+   * Removes all of the bytes from the buffer.
+   */
+  public synchronized void clear() {
+    head = 0;
+    size = 0;
+    scannedCount = 0;
+  }
+
+  private int indexOf(byte value) {
+    if (scannedCount > 0 && scannedDelimiter != value) {
+      scannedCount = 0;
+    }
+    for (int i = scannedCount; i < size; i++) {
+      if (buffer[(head + i) % buffer.length] == value) {
+        scannedCount = i;
+        scannedDelimiter = value;
+        return i;
+      }
+    }
+    scannedCount = size;
+    scannedDelimiter = value;
+    return -1;
+  }
+
+  private byte[] take(int count) {
+    byte[] result = new byte[count];
+    int first = Math.min(count, buffer.length - head);
+    System.arraycopy(buffer, head, result, 0, first);
+    System.arraycopy(buffer, 0, result, first, count - first);
+    skip(count);
+    return result;
+  }
+
+  private void skip(int count) {
+    head = (head + count) % buffer.length;
+    size -= count;
+    scannedCount = Math.max(0, scannedCount - count);
+  }
+}
@@ -261,6 +261,8 @@ public final class ErrorMessages {
   public static final int ERROR_INVALID_LONGITUDE_IN_POINT_AT_INDEX = 3419;
   public static final int ERROR_EXPECTED_ARRAY_AT_INDEX = 3420;
   public static final int ERROR_INVALID_UNIT_SYSTEM = 3421;
+  public static final int ERROR_INVALID_BOUNDING_BOX = 3422;
+  public static final int ERROR_INVALID_DISTANCE = 3423;
 
   // Phone Call Errors
   public static final int ERROR_NO_CALL_PERMISSION = 3501;
@@ -705,6 +707,10 @@ public final class ErrorMessages {
         "Expected an array of values at index %1$d, but got %2$s.");
     errorMessages.put(ERROR_INVALID_UNIT_SYSTEM,
         "Invalid unit system %1$d given to ScaleUnits. Expected either 1 or 2.");
+    errorMessages.put(ERROR_INVALID_BOUNDING_BOX,
+        "Invalid bounding box %1$s. Expected [[North, West], [South, East]].");
+    errorMessages.put(ERROR_INVALID_DISTANCE,
+        "Invalid distance %1$s. Expected a number of meters that is 0 or more.");
 
     // Phone Call errors
     errorMessages.put(ERROR_NO_CALL_PERMISSION,
@@ -9,6 +9,7 @@ package com.google.appinventor.components.runtime.util;
 import android.app.Activity;
 import android.content.Context;
 import android.media.AudioManager;
+import android.media.SoundPool;
 import android.view.Display;
 import android.webkit.WebViewClient;
 
@@ -127,6 +128,22 @@ public class FroyoUtil {
     return new FroyoWebViewClient(followLinks, ignoreErrors, form, component);
   }
 
+  // Methods for Sound Component
+  /**
+   * Tells the given SharedSoundPool when its samples finish loading.
+   * @param soundPool the SoundPool used by sharedSoundPool
+   * @param sharedSoundPool the SharedSoundPool to notify
+   */
+  public static void setOnLoadCompleteListener(SoundPool soundPool,
+      final SharedSoundPool sharedSoundPool) {
+    soundPool.setOnLoadCompleteListener(new SoundPool.OnLoadCompleteListener() {
+      @Override
+      public void onLoadComplete(SoundPool soundPool, int sampleId, int status) {
+        sharedSoundPool.onLoadComplete(sampleId, status == 0);
+      }
+    });
+  }
+
   /**
    * Prior to SDK 9, java.io.IOException did not take a throwable as an argument.
    * This function accepts a Throwable, calls toString and throws an IOException with
@@ -0,0 +1,158 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+import org.json.JSONException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a GeoJSON document from a stream in one pass, converting each feature to the same
+ * (key, value) list structure that {@link GeoJSONUtil#getGeoJSONFeatures(String, String)} builds,
+ * without first holding the whole document in memory as a string and a tree of JSON objects.
+ *
+ * <p>{@link JsonReader} was added in HONEYCOMB, so callers must check the SDK level before using
+ * this class. See {@link GeoJSONUtil#readGeoJSONCollection(String, Reader)}.
+ */
+final class GeoJSONReader {
+  private static final String GEOJSON_FEATURES = "features";
+  private static final String GEOJSON_TYPE = "type";
+
+  private GeoJSONReader() {
+  }
+
+  /**
+   * Reads the type and, if present, the features of the root object of a GeoJSON document.
+   * Problems with the document itself are reported as {@link JSONException}s, as they would be by
+   * org.json, while errors reading from {@code in} are passed on as {@link IOException}s.
+   */
+  static GeoJSONUtil.GeoJSONCollection read(Reader in) throws IOException, JSONException {
+    JsonReader reader = new JsonReader(in);
+    reader.setLenient(true);  // accept the same relaxed syntax as org.json
+    try {
+      String type = "";
+      List<YailList> features = null;
+      reader.beginObject();
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+        if (GEOJSON_TYPE.equals(name) && (reader.peek() == JsonToken.STRING
+            || reader.peek() == JsonToken.NUMBER)) {
+          type = reader.nextString();
+        } else if (GEOJSON_FEATURES.equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+          features = readFeatures(reader);
+        } else {
+          reader.skipValue();
+        }
+      }
+      reader.endObject();
+      return new GeoJSONUtil.GeoJSONCollection(type, features);
+    } catch (MalformedJsonException e) {
+      throw new JSONException(e.getMessage());
+    } catch (EOFException e) {
+      throw new JSONException("End of input");
+    } catch (IllegalStateException e) {
+      // Thrown by JsonReader when the document has a value of an unexpected type
+      throw new JSONException(e.getMessage());
+    } catch (NumberFormatException e) {
+      throw new JSONException(e.getMessage());
+    }
+  }
+
+  private static List<YailList> readFeatures(JsonReader reader) throws IOException, JSONException {
+    List<YailList> features = new ArrayList<YailList>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+        throw new JSONException("Value at " + features.size() + " is not a JSONObject");
+      }
+      features.add(readObject(reader));
+    }
+    reader.endArray();
+    return features;
+  }
+
+  private static YailList readObject(JsonReader reader) throws IOException {
+    // As with org.json, a later value for the same key replaces an earlier one.
+    Map<String, Object> values = new LinkedHashMap<String, Object>();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String key = reader.nextName();
+      Object value = readValue(reader);
+      if (value == null) {
+        values.remove(key);
+      } else {
+        values.put(key, value);
+      }
+    }
+    reader.endObject();
+    List<YailList> pairs = new ArrayList<YailList>(values.size());
+    for (Map.Entry<String, Object> entry : values.entrySet()) {
+      pairs.add(YailList.makeList(new Object[] { entry.getKey(), entry.getValue() }));
+    }
+    return YailList.makeList(pairs);
+  }
+
+  private static YailList readArray(JsonReader reader) throws IOException {
+    List<Object> items = new ArrayList<Object>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      Object value = readValue(reader);
+      if (value != null) {
+        items.add(value);
+      }
+    }
+    reader.endArray();
+    return YailList.makeList(items);
+  }
+
+  /**
+   * Reads the next value, returning null for JSON null.
+   */
+  private static Object readValue(JsonReader reader) throws IOException {
+    switch (reader.peek()) {
+      case BEGIN_OBJECT:
+        return readObject(reader);
+      case BEGIN_ARRAY:
+        return readArray(reader);
+      case BOOLEAN:
+        return reader.nextBoolean();
+      case NUMBER:
+        return parseNumber(reader.nextString());
+      case NULL:
+        reader.nextNull();
+        return null;
+      default:
+        return reader.nextString();
+    }
+  }
+
+  /**
+   * Converts a number to the narrowest of Integer, Long and Double that holds it, as org.json does.
+   */
+  private static Object parseNumber(String literal) {
+    if (literal.indexOf('.') < 0 && literal.indexOf('e') < 0 && literal.indexOf('E') < 0) {
+      try {
+        long value = Long.parseLong(literal);
+        if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+          return (int) value;
+        }
+        return value;
+      } catch (NumberFormatException e) {
+        // Too large for a long
+      }
+    }
+    return Double.valueOf(literal);
+  }
+}
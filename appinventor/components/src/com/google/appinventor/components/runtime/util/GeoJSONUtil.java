@@ -27,9 +27,11 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.osmdroid.util.GeoPoint;
 
+import java.io.BufferedReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -468,6 +470,69 @@ public final class GeoJSONUtil {
     return type;
   }
 
+  /**
+   * The type of a GeoJSON document and the descriptions of the features it contains.
+   */
+  public static final class GeoJSONCollection {
+    public final String type;
+    public final List<YailList> features;
+
+    GeoJSONCollection(String type, List<YailList> features) {
+      this.type = type;
+      this.features = features;
+    }
+
+    public boolean isCollection() {
+      return GEOJSON_FEATURECOLLECTION.equals(type) || GEOJSON_GEOMETRYCOLLECTION.equals(type);
+    }
+  }
+
+  /**
+   * Reads a GeoJSON document in one pass. On HONEYCOMB and later the document is parsed as it is
+   * read, so that it never has to be held in memory as a whole; on earlier versions it is read
+   * into a string and parsed with org.json.
+   *
+   * @param logTag the tag used for logging errors
+   * @param reader the source of the document, which is not closed
+   * @return the type of the document and, if it is a collection, its features
+   * @throws JSONException if the document is not valid JSON or is a collection without features
+   * @throws IOException if the document can't be read from {@code reader}
+   */
+  public static GeoJSONCollection readGeoJSONCollection(final String logTag, final Reader reader)
+      throws IOException, JSONException {
+    BufferedReader in = new BufferedReader(reader);
+    in.mark(1);
+    if (in.read() != '\uFEFF') {
+      in.reset();
+    }
+    GeoJSONCollection collection;
+    if (SdkLevel.getLevel() >= SdkLevel.LEVEL_HONEYCOMB) {
+      collection = GeoJSONReader.read(in);
+    } else {
+      StringBuilder content = new StringBuilder();
+      char[] buffer = new char[8192];
+      int count;
+      while ((count = in.read(buffer)) >= 0) {
+        content.append(buffer, 0, count);
+      }
+      JSONObject parsedData = new JSONObject(content.toString());
+      String type = parsedData.optString(GEOJSON_TYPE);
+      List<YailList> features = null;
+      JSONArray array = parsedData.optJSONArray(GEOJSON_FEATURES);
+      if (array != null) {
+        features = new ArrayList<YailList>(array.length());
+        for (int i = 0; i < array.length(); i++) {
+          features.add(jsonObjectToYail(logTag, array.getJSONObject(i)));
+        }
+      }
+      collection = new GeoJSONCollection(type, features);
+    }
+    if (collection.isCollection() && collection.features == null) {
+      throw new JSONException("No value for " + GEOJSON_FEATURES);
+    }
+    return collection;
+  }
+
   private static YailList jsonObjectToYail(final String logTag, final JSONObject object) throws JSONException {
     List<YailList> pairs = new ArrayList<YailList>();
     @SuppressWarnings("unchecked")  // json only allows String keys
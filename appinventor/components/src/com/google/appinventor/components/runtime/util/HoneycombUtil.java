@@ -6,6 +6,8 @@
 package com.google.appinventor.components.runtime.util;
 
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Spinner;
@@ -41,4 +43,20 @@ public class HoneycombUtil {
   public static Spinner makeSpinner(Context activity) {
     return new Spinner(activity, Spinner.MODE_DIALOG);
   }
+
+  /**
+   * Asks BitmapFactory to return a mutable bitmap, which can later be reused to decode another
+   * image.
+   */
+  public static void setMutable(BitmapFactory.Options options) {
+    options.inMutable = true;
+  }
+
+  /**
+   * Asks BitmapFactory to decode into the given bitmap instead of allocating a new one.
+   */
+  public static void setInBitmap(BitmapFactory.Options options, Bitmap bitmap) {
+    options.inMutable = true;
+    options.inBitmap = bitmap;
+  }
 }
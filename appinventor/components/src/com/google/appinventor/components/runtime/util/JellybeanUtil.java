@@ -9,6 +9,7 @@ import android.graphics.Point;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import android.view.Display;
+import android.view.View;
 
 /**
  * Helper methods for calling methods added in Jellybean
@@ -23,4 +24,12 @@ public class JellybeanUtil {
     display.getRealSize(outSize);
   }
 
+  /**
+   * Runs the given action on the first animation frame of the view after the given delay, in
+   * step with the display. The action can be removed with {@link View#removeCallbacks(Runnable)}.
+   */
+  public static void postOnAnimationDelayed(View view, Runnable action, long delayMillis) {
+    view.postOnAnimationDelayed(action, delayMillis);
+  }
+
 }
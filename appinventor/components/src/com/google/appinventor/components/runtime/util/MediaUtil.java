@@ -73,6 +73,9 @@ public class MediaUtil {
   // tempFileMap maps cached media (assets, etc) to their respective temp files.
   private static final Map<String, File> tempFileMap = new HashMap<String, File>();
 
+  // Whether images loaded from the internet may be served from BitmapCache.
+  private static volatile boolean urlImageCachingEnabled = false;
+
   private MediaUtil() {
   }
 
@@ -276,8 +279,34 @@ public class MediaUtil {
     }
   }
 
+  /**
+   * Asks for the permission needed to read the media, if any.
+   */
+  private static void assertReadPermission(Form form, String mediaPath, MediaSource mediaSource) {
+    switch (mediaSource) {
+      case REPL_ASSET:
+      case SDCARD:
+        if (RUtil.needsFilePermission(form, mediaPath, null)) {
+          // App specific storage does not need read permission
+          form.assertPermission(READ_EXTERNAL_STORAGE);
+        }
+        break;
+
+      case FILE_URL:
+        if (isExternalFileUrl(form, mediaPath)
+            && RUtil.needsFilePermission(form, mediaPath, null)) {
+          form.assertPermission(READ_EXTERNAL_STORAGE);
+        }
+        break;
+
+      default:
+        break;
+    }
+  }
+
   private static InputStream openMedia(Form form, String mediaPath, MediaSource mediaSource)
       throws IOException {
+    assertReadPermission(form, mediaPath, mediaSource);
     switch (mediaSource) {
       case ASSET:
         if (mediaPath.startsWith("file:")) {
@@ -290,10 +319,6 @@ public class MediaUtil {
         return new FileInputStream(mediaPath);
 
       case REPL_ASSET:
-        if (RUtil.needsFilePermission(form, mediaPath, null)) {
-          // App specific storage does not need read permission
-          form.assertPermission(READ_EXTERNAL_STORAGE);
-        }
         try {
           return new FileInputStream(new java.io.File(URI.create(form.getAssetPath(mediaPath))));
         } catch (Exception e) {
@@ -311,17 +336,9 @@ public class MediaUtil {
         }
 
       case SDCARD:
-        if (RUtil.needsFilePermission(form, mediaPath, null)) {
-          // App specific storage does not need read permission
-          form.assertPermission(READ_EXTERNAL_STORAGE);
-        }
         return new FileInputStream(mediaPath);
 
       case FILE_URL:
-        if (isExternalFileUrl(form, mediaPath)
-            && RUtil.needsFilePermission(form, mediaPath, null)) {
-          form.assertPermission(READ_EXTERNAL_STORAGE);
-        }
       case URL:
         return new URL(mediaPath).openStream();
 
@@ -408,6 +425,82 @@ public class MediaUtil {
 
   // Image related methods
 
+  /**
+   * Sets whether images loaded from http(s) URLs may be kept in and served from the image cache.
+   * This is off by default, because the image at a URL, such as an image from a web cam, may change
+   * over time and the app expects to get the latest image each time it loads it.
+   *
+   * @param enabled true to cache images loaded from URLs
+   */
+  public static void setUrlImageCachingEnabled(boolean enabled) {
+    urlImageCachingEnabled = enabled;
+  }
+
+  /**
+   * Returns the key under which the decoded image is kept in {@link BitmapCache}, or null if the
+   * image must not be cached. Images in files are keyed by their modification time and length, so
+   * that an image replaced by the app or by the companion is loaded again.
+   */
+  private static String getImageCacheKey(Form form, String mediaPath, MediaSource mediaSource,
+      int desiredWidth, int desiredHeight) {
+    String location;
+    File file = null;
+    switch (mediaSource) {
+      case ASSET:
+        location = mediaPath;
+        break;
+
+      case URL:
+        if (!urlImageCachingEnabled) {
+          return null;
+        }
+        location = mediaPath;
+        break;
+
+      case REPL_ASSET:
+        try {
+          file = new File(URI.create(form.getAssetPath(mediaPath)));
+        } catch (Exception e) {
+          // openMedia will report the problem
+          return null;
+        }
+        location = null;
+        break;
+
+      case SDCARD:
+      case PRIVATE_DATA:
+        file = new File(mediaPath);
+        location = null;
+        break;
+
+      case FILE_URL:
+        try {
+          file = new File(fileUrlToFilePath(mediaPath));
+        } catch (IOException e) {
+          return null;
+        }
+        location = null;
+        break;
+
+      default:
+        // Content and contact URIs can change without us being able to tell.
+        return null;
+    }
+    if (file != null) {
+      long lastModified = file.lastModified();
+      if (lastModified == 0) {
+        // The file doesn't exist or can't be read
+        return null;
+      }
+      location = file.getAbsolutePath() + "@" + lastModified + ":" + file.length();
+    }
+    Display display = ((WindowManager) form.getSystemService(Context.WINDOW_SERVICE))
+        .getDefaultDisplay();
+    return mediaSource + ":" + location + ":" + desiredWidth + "x" + desiredHeight
+        + ":" + form.deviceDensity() + ":" + form.getCompatibilityMode()
+        + ":" + display.getWidth() + "x" + display.getHeight();
+  }
+
   /**
    * Loads the image specified by mediaPath and returns a Drawable.
    *
@@ -499,9 +592,27 @@ public class MediaUtil {
         // Unlike other types of media, we don't cache image files from the internet to temp files.
         // The image at a particular URL, such as an image from a web cam, may change over time.
         // When the app says to fetch the image, we need to get the latest image, not one that we
-        // cached previously.
+        // cached previously. For the same reason, decoded images from the internet are only kept
+        // in the image cache if the app asked for it.
 
         Log.d(LOG_TAG, "mediaPath = " + mediaPath);
+        final String cacheKey;
+        try {
+          assertReadPermission(form, mediaPath, mediaSource);
+          cacheKey = getImageCacheKey(form, mediaPath, mediaSource, desiredWidth, desiredHeight);
+        } catch (PermissionException e) {
+          continuation.onFailure("PERMISSION_DENIED:" + e.getPermissionNeeded());
+          return;
+        }
+        if (cacheKey != null) {
+          Bitmap cached = BitmapCache.get(cacheKey);
+          if (cached != null) {
+            BitmapDrawable drawable = new BitmapDrawable(form.getResources(), cached);
+            drawable.setTargetDensity(form.getResources().getDisplayMetrics());
+            continuation.onSuccess(drawable);
+            return;
+          }
+        }
         InputStream is = null;
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
         byte[] buf = new byte[4096];
@@ -552,8 +663,27 @@ public class MediaUtil {
           bis.mark(read);
           BitmapFactory.Options options = getBitmapOptions(form, bis, mediaPath);
           bis.reset();
-          BitmapDrawable originalBitmapDrawable = new BitmapDrawable(form.getResources(),
-              decodeStream(bis, null, options));
+          boolean needsResize = desiredWidth > 0 && desiredHeight >= 0;
+          boolean isIntermediate = needsResize
+              || (options.inSampleSize == 1 && form.deviceDensity() != 1.0f);
+          Bitmap decoded = null;
+          if (isIntermediate
+              && BitmapCache.prepareIntermediate(options, options.outWidth, options.outHeight)) {
+            try {
+              decoded = decodeStream(bis, null, options);
+            } catch (IllegalArgumentException e) {
+              // The bitmap couldn't be reused for this image after all, so decode into a new one.
+              Log.d(LOG_TAG, "Unable to reuse bitmap for " + mediaPath, e);
+              bis.reset();
+              int sampleSize = options.inSampleSize;
+              options = new BitmapFactory.Options();
+              options.inSampleSize = sampleSize;
+            }
+          }
+          if (decoded == null) {
+            decoded = decodeStream(bis, null, options);
+          }
+          BitmapDrawable originalBitmapDrawable = new BitmapDrawable(form.getResources(), decoded);
           // If options.inSampleSize == 1, then the image was not unreasonably large and may represent
           // the actual size the user intended for the image. However we still have to scale it by
           // the device density.
@@ -568,8 +698,10 @@ public class MediaUtil {
           //   5. set the density in the scaled bitmap.
 
           originalBitmapDrawable.setTargetDensity(form.getResources().getDisplayMetrics());
-          boolean needsResize = desiredWidth > 0 && desiredHeight >= 0;
-          if (!needsResize && (options.inSampleSize != 1 || form.deviceDensity() == 1.0f)) {
+          if (!isIntermediate) {
+            if (cacheKey != null && decoded != null) {
+              BitmapCache.put(form, cacheKey, decoded);
+            }
             continuation.onSuccess(originalBitmapDrawable);
             return;
           }
@@ -587,7 +719,16 @@ public class MediaUtil {
           BitmapDrawable scaledBitmapDrawable =
               new BitmapDrawable(form.getResources(), scaledBitmap);
           scaledBitmapDrawable.setTargetDensity(form.getResources().getDisplayMetrics());
+          if (cacheKey != null) {
+            BitmapCache.put(form, cacheKey, scaledBitmap);
+          }
+          if (scaledBitmap != decoded) {
+            // Nothing else refers to the full size image, so its memory can be used for the next
+            // image we decode.
+            BitmapCache.addReusable(decoded);
+          }
           originalBitmapDrawable = null; // So it will get GC'd on the next line
+          decoded = null;
           System.gc();                   // We likely used a lot of memory, so gc now.
           continuation.onSuccess(scaledBitmapDrawable);
         } catch (Exception e) {
@@ -674,6 +815,10 @@ public class MediaUtil {
       sampleSize *= 2;
     }
     options = new BitmapFactory.Options();
+    // Keep the size of the image so that a bitmap of the right size can be found for reuse. The
+    // decoder overwrites these.
+    options.outWidth = imageWidth;
+    options.outHeight = imageHeight;
     Log.d(LOG_TAG, "getBitmapOptions: sampleSize = " + sampleSize + " mediaPath = " + mediaPath
       + " maxWidth = " + maxWidth + " maxHeight = " + maxHeight +
       " display width = " + display.getWidth() + " display height = " + display.getHeight());
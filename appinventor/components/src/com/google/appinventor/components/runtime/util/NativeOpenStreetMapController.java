@@ -39,6 +39,7 @@ import com.google.appinventor.components.runtime.util.MapFactory.MapController;
 import com.google.appinventor.components.runtime.util.MapFactory.MapEventListener;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
 import com.google.appinventor.components.runtime.util.MapFactory.MapFeatureCollection;
+import com.google.appinventor.components.runtime.util.MapFactory.MapFeatureVisitor;
 import com.google.appinventor.components.runtime.util.MapFactory.MapLineString;
 import com.google.appinventor.components.runtime.util.MapFactory.MapMarker;
 import com.google.appinventor.components.runtime.util.MapFactory.MapPolygon;
@@ -56,6 +57,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import org.locationtech.jts.geom.Envelope;
 import org.osmdroid.api.IGeoPoint;
 import org.osmdroid.config.Configuration;
 import org.osmdroid.events.MapListener;
@@ -136,6 +138,57 @@ class NativeOpenStreetMapController implements MapController, MapListener {
    */
   private Set<MapFeature> hiddenFeatures = new HashSet<>();
 
+  /**
+   * The bounding boxes of the features on the map, in degrees (x is longitude and y is latitude).
+   * Used to find the features that come into view when the map is panned or zoomed.
+   */
+  private final RTree<MapFeature> featureIndex = new RTree<MapFeature>();
+
+  /**
+   * Features that were added while they were outside of the viewport, and so don't have overlays
+   * yet. Creating overlays only for the features near the viewport keeps loading large feature
+   * collections fast, and the map only draws overlays that can be seen.
+   */
+  private final Set<MapFeature> deferredFeatures = new HashSet<MapFeature>();
+
+  // Fraction of the width and height of the viewport around it in which overlays are created
+  private static final double VIEWPORT_MARGIN = 0.5;
+
+  // Meters per degree of latitude, used to approximate the bounds of circles
+  private static final double METERS_PER_DEGREE = 111320.0;
+
+  private final MapFeatureVisitor<Void> overlayCreator = new MapFeatureVisitor<Void>() {
+    @Override
+    public Void visit(MapMarker marker, Object... arguments) {
+      createOverlay(marker);
+      return null;
+    }
+
+    @Override
+    public Void visit(MapLineString lineString, Object... arguments) {
+      createOverlay(lineString);
+      return null;
+    }
+
+    @Override
+    public Void visit(MapPolygon polygon, Object... arguments) {
+      createOverlay(polygon);
+      return null;
+    }
+
+    @Override
+    public Void visit(MapCircle circle, Object... arguments) {
+      createOverlay(circle);
+      return null;
+    }
+
+    @Override
+    public Void visit(MapRectangle rectangle, Object... arguments) {
+      createOverlay(rectangle);
+      return null;
+    }
+  };
+
   private static final float[] ANCHOR_HORIZONTAL = { Float.NaN, 0.0f, 1.0f, 0.5f };
   private static final float[] ANCHOR_VERTICAL = { Float.NaN, 0.0f, 0.5f, 1.0f };
 
@@ -554,6 +607,12 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void addFeature(final MapMarker aiMarker) {
+    if (!deferFeature(aiMarker)) {
+      createOverlay(aiMarker);
+    }
+  }
+
+  private void createOverlay(final MapMarker aiMarker) {
     createNativeMarker(aiMarker, new AsyncCallbackPair<Marker>() {
       @Override
       public void onFailure(String message) {
@@ -605,7 +664,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
             }
           }
         });
-        if (aiMarker.Visible()) {
+        if (isShown(aiMarker)) {
           showOverlay(overlay);
         } else {
           hideOverlay(overlay);
@@ -617,6 +676,12 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void addFeature(final MapLineString aiPolyline) {
+    if (!deferFeature(aiPolyline)) {
+      createOverlay(aiPolyline);
+    }
+  }
+
+  private void createOverlay(final MapLineString aiPolyline) {
     Polyline polyline = createNativePolyline(aiPolyline);
     featureOverlays.put(aiPolyline, polyline);
     polyline.setOnClickListener(new Polyline.OnClickListener() {
@@ -662,7 +727,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
         }
       }
     });
-    if (aiPolyline.Visible()) {
+    if (isShown(aiPolyline)) {
       showOverlay(polyline);
     } else {
       hideOverlay(polyline);
@@ -741,7 +806,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
         }
       }
     });
-    if (component.Visible()) {
+    if (isShown(component)) {
       showOverlay(polygon);
     } else {
       hideOverlay(polygon);
@@ -750,27 +815,176 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void addFeature(final MapPolygon aiPolygon) {
+    if (!deferFeature(aiPolygon)) {
+      createOverlay(aiPolygon);
+    }
+  }
+
+  private void createOverlay(final MapPolygon aiPolygon) {
     configurePolygon(aiPolygon, createNativePolygon(aiPolygon));
   }
 
   @Override
   public void addFeature(MapCircle aiCircle) {
+    if (!deferFeature(aiCircle)) {
+      createOverlay(aiCircle);
+    }
+  }
+
+  private void createOverlay(MapCircle aiCircle) {
     configurePolygon(aiCircle, createNativeCircle(aiCircle));
   }
 
   @Override
   public void addFeature(MapRectangle aiRectangle) {
+    if (!deferFeature(aiRectangle)) {
+      createOverlay(aiRectangle);
+    }
+  }
+
+  private void createOverlay(MapRectangle aiRectangle) {
     configurePolygon(aiRectangle, createNativeRectangle(aiRectangle));
   }
 
   @Override
   public void removeFeature(MapFeature aiFeature) {
-    view.getOverlayManager().remove(featureOverlays.get(aiFeature));
-    featureOverlays.remove(aiFeature);
+    featureIndex.remove(aiFeature);
+    deferredFeatures.remove(aiFeature);
+    OverlayWithIW overlay = featureOverlays.remove(aiFeature);
+    if (overlay != null) {
+      view.getOverlayManager().remove(overlay);
+    }
+  }
+
+  /**
+   * Indexes a feature that is being added to the map and decides whether to create its overlay
+   * now. The overlay is deferred when the feature lies well outside of the viewport, and is created
+   * by {@link #createVisibleFeatures()} once the feature comes into view. Until the map has been
+   * laid out, the viewport isn't known and overlays are always created.
+   *
+   * @return true if the overlay was deferred
+   */
+  private boolean deferFeature(MapFeature feature) {
+    double[] bounds = indexFeature(feature);
+    if (bounds == null || view.getWidth() == 0 || view.getHeight() == 0
+        || intersects(bounds, getViewportBounds())) {
+      deferredFeatures.remove(feature);
+      return false;
+    }
+    deferredFeatures.add(feature);
+    return true;
+  }
+
+  /**
+   * Updates the index after a feature on the map changed shape or moved, and creates its overlay
+   * if it was deferred and has moved into view.
+   */
+  private void featureMoved(MapFeature feature) {
+    if (!featureOverlays.containsKey(feature) && !deferredFeatures.contains(feature)) {
+      return;  // not yet added to the map
+    }
+    double[] bounds = indexFeature(feature);
+    if (deferredFeatures.contains(feature)
+        && (bounds == null || intersects(bounds, getViewportBounds()))) {
+      createDeferredFeature(feature);
+    }
+  }
+
+  /**
+   * Stores the bounding box of a feature in the index.
+   *
+   * @return the bounding box as {minX, minY, maxX, maxY}, or null if the feature has no valid
+   *     geometry (for example, a LineString with a single point)
+   */
+  private double[] indexFeature(MapFeature feature) {
+    Envelope envelope;
+    try {
+      envelope = feature.getGeometry().getEnvelopeInternal();
+    } catch (IllegalArgumentException e) {
+      envelope = null;
+    }
+    if (envelope == null || envelope.isNull()) {
+      featureIndex.remove(feature);
+      return null;
+    }
+    double[] bounds = new double[] {
+        envelope.getMinX(), envelope.getMinY(), envelope.getMaxX(), envelope.getMaxY()
+    };
+    if (feature instanceof MapCircle) {
+      // The geometry of a circle is its center
+      MapCircle circle = (MapCircle) feature;
+      double latRadius = circle.Radius() / METERS_PER_DEGREE;
+      double lonRadius = latRadius / Math.max(Math.cos(Math.toRadians(circle.Latitude())), 0.01);
+      bounds[0] -= lonRadius;
+      bounds[1] -= latRadius;
+      bounds[2] += lonRadius;
+      bounds[3] += latRadius;
+    }
+    featureIndex.insert(feature, bounds[0], bounds[1], bounds[2], bounds[3]);
+    return bounds;
+  }
+
+  /**
+   * Returns the region of the map in which overlays should exist: the viewport, extended by
+   * {@link #VIEWPORT_MARGIN} on each side so that features appear before they scroll into view.
+   */
+  private double[] getViewportBounds() {
+    BoundingBox box = view.getBoundingBox();
+    double latMargin = box.getLatitudeSpan() * VIEWPORT_MARGIN;
+    double west = box.getLonWest();
+    double east = box.getLonEast();
+    double[] bounds = new double[] {
+        west, box.getLatSouth() - latMargin, east, box.getLatNorth() + latMargin
+    };
+    if (east < west) {
+      // The viewport crosses the antimeridian
+      bounds[0] = -180;
+      bounds[2] = 180;
+    } else {
+      double lonMargin = (east - west) * VIEWPORT_MARGIN;
+      bounds[0] = west - lonMargin;
+      bounds[2] = east + lonMargin;
+      if (bounds[0] < -180 || bounds[2] > 180) {
+        // The margin wraps around to the other side of the map
+        bounds[0] = -180;
+        bounds[2] = 180;
+      }
+    }
+    return bounds;
+  }
+
+  private static boolean intersects(double[] a, double[] b) {
+    return a[0] <= b[2] && b[0] <= a[2] && a[1] <= b[3] && b[1] <= a[3];
+  }
+
+  /**
+   * Creates the overlays of the deferred features that are now near the viewport.
+   */
+  private void createVisibleFeatures() {
+    if (deferredFeatures.isEmpty() || view.getWidth() == 0 || view.getHeight() == 0) {
+      return;
+    }
+    double[] viewport = getViewportBounds();
+    for (MapFeature feature : featureIndex.search(viewport[0], viewport[1], viewport[2],
+        viewport[3])) {
+      if (deferredFeatures.contains(feature)) {
+        createDeferredFeature(feature);
+      }
+    }
+  }
+
+  private void createDeferredFeature(MapFeature feature) {
+    deferredFeatures.remove(feature);
+    feature.accept(overlayCreator);
+  }
+
+  private boolean isShown(MapFeature feature) {
+    return feature.Visible() && !hiddenFeatures.contains(feature);
   }
 
   @Override
   public void updateFeaturePosition(MapMarker aiMarker) {
+    featureMoved(aiMarker);
     Marker marker = (Marker)featureOverlays.get(aiMarker);
     if (marker != null) {
       marker.setAnchor(ANCHOR_HORIZONTAL[aiMarker.AnchorHorizontal()],
@@ -782,6 +996,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void updateFeaturePosition(MapLineString aiPolyline) {
+    featureMoved(aiPolyline);
     Polyline overlay = (Polyline) featureOverlays.get(aiPolyline);
     if (overlay != null) {
       overlay.setPoints(aiPolyline.getPoints());
@@ -791,6 +1006,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void updateFeaturePosition(MapPolygon aiPolygon) {
+    featureMoved(aiPolygon);
     MultiPolygon polygon = (MultiPolygon) featureOverlays.get(aiPolygon);
     if (polygon != null) {
       polygon.setMultiPoints(aiPolygon.getPoints());
@@ -809,6 +1025,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void updateFeaturePosition(MapCircle aiCircle) {
+    featureMoved(aiCircle);
     GeoPoint center = new GeoPoint(aiCircle.Latitude(), aiCircle.Longitude());
     Polygon polygon = (Polygon) featureOverlays.get(aiCircle);
     if (polygon != null) {
@@ -821,6 +1038,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   @Override
   @SuppressWarnings("unchecked")
   public void updateFeaturePosition(MapRectangle aiRectangle) {
+    featureMoved(aiRectangle);
     Polygon polygon = (Polygon) featureOverlays.get(aiRectangle);
     if (polygon != null) {
       List<GeoPoint> geopoints = (List) Polygon.pointsAsRect(new BoundingBox(aiRectangle.NorthLatitude(),
@@ -1199,8 +1417,10 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void showFeature(MapFeature feature) {
-    if (!hiddenFeatures.contains(feature)) {
-      showOverlay(featureOverlays.get(feature));
+    OverlayWithIW overlay = featureOverlays.get(feature);
+    // Deferred features are shown when their overlays are created
+    if (overlay != null && !hiddenFeatures.contains(feature)) {
+      showOverlay(overlay);
     }
   }
 
@@ -1211,7 +1431,10 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void hideFeature(MapFeature feature) {
-    hideOverlay(featureOverlays.get(feature));
+    OverlayWithIW overlay = featureOverlays.get(feature);
+    if (overlay != null) {
+      hideOverlay(overlay);
+    }
   }
 
   protected void hideOverlay(OverlayWithIW overlay) {
@@ -1256,8 +1479,13 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public void showInfobox(MapFeature feature) {
+    if (deferredFeatures.contains(feature)) {
+      createDeferredFeature(feature);
+    }
     OverlayWithIW overlay = featureOverlays.get(feature);
-    if (overlay instanceof org.osmdroid.views.overlay.Marker) {
+    if (overlay == null) {
+      return;
+    } else if (overlay instanceof org.osmdroid.views.overlay.Marker) {
       overlay.showInfoWindow();
     } else if (overlay instanceof org.osmdroid.views.overlay.Polyline) {
       org.osmdroid.views.overlay.Polyline polyOverlay =  (org.osmdroid.views.overlay.Polyline)overlay;
@@ -1271,7 +1499,9 @@ class NativeOpenStreetMapController implements MapController, MapListener {
   @Override
   public void hideInfobox(MapFeature feature) {
     OverlayWithIW overlay = featureOverlays.get(feature);
-    overlay.closeInfoWindow();
+    if (overlay != null) {
+      overlay.closeInfoWindow();
+    }
   }
 
   @Override
@@ -1293,6 +1523,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public boolean onScroll(ScrollEvent event) {
+    createVisibleFeatures();
     for (MapEventListener listener : eventListeners) {
       listener.onBoundsChanged();
     }
@@ -1301,6 +1532,7 @@ class NativeOpenStreetMapController implements MapController, MapListener {
 
   @Override
   public boolean onZoom(ZoomEvent event) {
+    createVisibleFeatures();
     zoomControls.updateButtons();
     for (MapEventListener listener : eventListeners) {
       listener.onZoom();
@@ -0,0 +1,351 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An R-tree of items keyed by axis aligned bounding boxes, used to find the items whose boxes
+ * intersect a region without looking at every item.
+ *
+ * <p>Nodes hold between {@link #MIN_CHILDREN} and {@link #MAX_CHILDREN} children, and overflowing
+ * nodes are divided with Guttman's quadratic split. Because many items (such as map markers) have
+ * empty boxes, choices that would tie on area are made on margin (half the perimeter) instead.
+ *
+ * <p>Each item is stored at most once. Inserting an item that is already in the tree moves it to
+ * the new box. This class is not thread safe.
+ *
+ * @param <T> the type of the items
+ */
+public final class RTree<T> {
+  private static final int MAX_CHILDREN = 16;
+  private static final int MIN_CHILDREN = 6;
+
+  private static final class Node {
+    double minX = Double.POSITIVE_INFINITY;
+    double minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY;
+    double maxY = Double.NEGATIVE_INFINITY;
+    Node parent;
+    final boolean leaf;
+    final List<Node> children;  // null for the entries that hold items
+    final Object item;
+
+    Node(boolean leaf) {
+      this.leaf = leaf;
+      this.children = new ArrayList<Node>(MAX_CHILDREN + 1);
+      this.item = null;
+    }
+
+    Node(Object item, double minX, double minY, double maxX, double maxY) {
+      this.leaf = false;
+      this.children = null;
+      this.item = item;
+      this.minX = minX;
+      this.minY = minY;
+      this.maxX = maxX;
+      this.maxY = maxY;
+    }
+
+    void add(Node child) {
+      children.add(child);
+      child.parent = this;
+      extend(child);
+    }
+
+    void extend(Node other) {
+      minX = Math.min(minX, other.minX);
+      minY = Math.min(minY, other.minY);
+      maxX = Math.max(maxX, other.maxX);
+      maxY = Math.max(maxY, other.maxY);
+    }
+
+    void recompute() {
+      minX = Double.POSITIVE_INFINITY;
+      minY = Double.POSITIVE_INFINITY;
+      maxX = Double.NEGATIVE_INFINITY;
+      maxY = Double.NEGATIVE_INFINITY;
+      for (Node child : children) {
+        extend(child);
+      }
+    }
+
+    boolean intersects(double minX, double minY, double maxX, double maxY) {
+      return this.minX <= maxX && minX <= this.maxX && this.minY <= maxY && minY <= this.maxY;
+    }
+  }
+
+  private final Map<T, Node> entries = new HashMap<T, Node>();
+  private Node root = new Node(true);
+
+  /**
+   * Adds an item with the given bounding box, or moves it there if it is already in the tree.
+   */
+  public void insert(T item, double minX, double minY, double maxX, double maxY) {
+    if (minX > maxX || minY > maxY) {
+      throw new IllegalArgumentException("Invalid bounding box");
+    }
+    remove(item);
+    Node entry = new Node(item, minX, minY, maxX, maxY);
+    entries.put(item, entry);
+    insertEntry(entry);
+  }
+
+  /**
+   * Removes an item from the tree.
+   *
+   * @return true if the item was in the tree
+   */
+  public boolean remove(T item) {
+    Node entry = entries.remove(item);
+    if (entry == null) {
+      return false;
+    }
+    Node node = entry.parent;
+    node.children.remove(entry);
+    // Dissolve the nodes that became too small and put their entries back in afterwards.
+    List<Node> orphans = new ArrayList<Node>();
+    while (node != root) {
+      Node parent = node.parent;
+      if (node.children.size() < MIN_CHILDREN) {
+        parent.children.remove(node);
+        collectEntries(node, orphans);
+      } else {
+        node.recompute();
+      }
+      node = parent;
+    }
+    root.recompute();
+    while (!root.leaf && root.children.size() == 1) {
+      root = root.children.get(0);
+      root.parent = null;
+    }
+    if (!root.leaf && root.children.isEmpty()) {
+      root = new Node(true);
+    }
+    for (Node orphan : orphans) {
+      insertEntry(orphan);
+    }
+    return true;
+  }
+
+  public boolean contains(T item) {
+    return entries.containsKey(item);
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public void clear() {
+    entries.clear();
+    root = new Node(true);
+  }
+
+  /**
+   * Returns the bounding box of all of the items as {minX, minY, maxX, maxY}, or null if the tree
+   * is empty.
+   */
+  public double[] getBounds() {
+    if (entries.isEmpty()) {
+      return null;
+    }
+    return new double[] { root.minX, root.minY, root.maxX, root.maxY };
+  }
+
+  /**
+   * Returns the items whose bounding boxes intersect the given box, including those that only
+   * touch it.
+   */
+  public List<T> search(double minX, double minY, double maxX, double maxY) {
+    List<T> results = new ArrayList<T>();
+    search(minX, minY, maxX, maxY, results);
+    return results;
+  }
+
+  /**
+   * Adds the items whose bounding boxes intersect the given box to {@code results}.
+   */
+  @SuppressWarnings("unchecked")
+  public void search(double minX, double minY, double maxX, double maxY, List<T> results) {
+    if (entries.isEmpty()) {
+      return;
+    }
+    List<Node> stack = new ArrayList<Node>();
+    stack.add(root);
+    while (!stack.isEmpty()) {
+      Node node = stack.remove(stack.size() - 1);
+      if (!node.intersects(minX, minY, maxX, maxY)) {
+        continue;
+      }
+      for (Node child : node.children) {
+        if (!child.intersects(minX, minY, maxX, maxY)) {
+          continue;
+        }
+        if (node.leaf) {
+          results.add((T) child.item);
+        } else {
+          stack.add(child);
+        }
+      }
+    }
+  }
+
+  private void insertEntry(Node entry) {
+    Node node = root;
+    while (!node.leaf) {
+      node = chooseSubtree(node, entry);
+    }
+    node.add(entry);
+    for (Node ancestor = node.parent; ancestor != null; ancestor = ancestor.parent) {
+      ancestor.extend(entry);
+    }
+    while (node != null && node.children.size() > MAX_CHILDREN) {
+      Node sibling = split(node);
+      if (node == root) {
+        root = new Node(false);
+        root.add(node);
+        root.add(sibling);
+        return;
+      }
+      node.parent.add(sibling);
+      node = node.parent;
+    }
+  }
+
+  private static Node chooseSubtree(Node node, Node entry) {
+    Node best = null;
+    double bestArea = 0;
+    double bestMargin = 0;
+    for (Node child : node.children) {
+      double area = enlargedArea(child, entry) - area(child);
+      double margin = enlargedMargin(child, entry) - margin(child);
+      if (best == null || area < bestArea || (area == bestArea && margin < bestMargin)) {
+        best = child;
+        bestArea = area;
+        bestMargin = margin;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * Divides the children of an overflowing node between the node and a new sibling, which is
+   * returned.
+   */
+  private static Node split(Node node) {
+    List<Node> remaining = new ArrayList<Node>(node.children);
+    int seed1 = 0;
+    int seed2 = 1;
+    double worstArea = Double.NEGATIVE_INFINITY;
+    double worstMargin = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < remaining.size(); i++) {
+      Node a = remaining.get(i);
+      for (int j = i + 1; j < remaining.size(); j++) {
+        Node b = remaining.get(j);
+        double area = enlargedArea(a, b) - area(a) - area(b);
+        double margin = enlargedMargin(a, b) - margin(a) - margin(b);
+        if (area > worstArea || (area == worstArea && margin > worstMargin)) {
+          seed1 = i;
+          seed2 = j;
+          worstArea = area;
+          worstMargin = margin;
+        }
+      }
+    }
+    Node first = remaining.get(seed1);
+    Node second = remaining.get(seed2);
+    remaining.remove(seed2);
+    remaining.remove(seed1);
+
+    node.children.clear();
+    node.recompute();
+    Node sibling = new Node(node.leaf);
+    node.add(first);
+    sibling.add(second);
+
+    while (!remaining.isEmpty()) {
+      if (node.children.size() + remaining.size() == MIN_CHILDREN) {
+        for (Node child : remaining) {
+          node.add(child);
+        }
+        break;
+      }
+      if (sibling.children.size() + remaining.size() == MIN_CHILDREN) {
+        for (Node child : remaining) {
+          sibling.add(child);
+        }
+        break;
+      }
+      // Place the child with the strongest preference for one group next.
+      int next = 0;
+      double bestDiff = -1;
+      double bestMarginDiff = -1;
+      for (int i = 0; i < remaining.size(); i++) {
+        Node child = remaining.get(i);
+        double diff = Math.abs((enlargedArea(node, child) - area(node))
+            - (enlargedArea(sibling, child) - area(sibling)));
+        double marginDiff = Math.abs((enlargedMargin(node, child) - margin(node))
+            - (enlargedMargin(sibling, child) - margin(sibling)));
+        if (diff > bestDiff || (diff == bestDiff && marginDiff > bestMarginDiff)) {
+          next = i;
+          bestDiff = diff;
+          bestMarginDiff = marginDiff;
+        }
+      }
+      Node child = remaining.remove(next);
+      double area1 = enlargedArea(node, child) - area(node);
+      double area2 = enlargedArea(sibling, child) - area(sibling);
+      double margin1 = enlargedMargin(node, child) - margin(node);
+      double margin2 = enlargedMargin(sibling, child) - margin(sibling);
+      boolean toFirst;
+      if (area1 != area2) {
+        toFirst = area1 < area2;
+      } else if (margin1 != margin2) {
+        toFirst = margin1 < margin2;
+      } else {
+        toFirst = node.children.size() <= sibling.children.size();
+      }
+      if (toFirst) {
+        node.add(child);
+      } else {
+        sibling.add(child);
+      }
+    }
+    return sibling;
+  }
+
+  private static void collectEntries(Node node, List<Node> out) {
+    for (Node child : node.children) {
+      if (node.leaf) {
+        out.add(child);
+      } else {
+        collectEntries(child, out);
+      }
+    }
+  }
+
+  private static double area(Node node) {
+    return (node.maxX - node.minX) * (node.maxY - node.minY);
+  }
+
+  private static double margin(Node node) {
+    return (node.maxX - node.minX) + (node.maxY - node.minY);
+  }
+
+  private static double enlargedArea(Node a, Node b) {
+    return (Math.max(a.maxX, b.maxX) - Math.min(a.minX, b.minX))
+        * (Math.max(a.maxY, b.maxY) - Math.min(a.minY, b.minY));
+  }
+
+  private static double enlargedMargin(Node a, Node b) {
+    return (Math.max(a.maxX, b.maxX) - Math.min(a.minX, b.minX))
+        + (Math.max(a.maxY, b.maxY) - Math.min(a.minY, b.minY));
+  }
+}
@@ -0,0 +1,140 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * A growable List backed by a circular array.
+ *
+ * <p>Behaves like an ArrayList, except that adding or removing at either end
+ * of the list is O(1). This makes it a good fit for real time Chart data,
+ * where a new entry is appended and the oldest one is evicted for every
+ * sample received. Insertion and removal in the middle of the list shift
+ * the shorter of the two halves.
+ *
+ * @param <E> type of the elements
+ */
+public class RingBufferList<E> extends AbstractList<E> implements RandomAccess {
+  private static final int DEFAULT_CAPACITY = 16;
+
+  // Capacity is always a power of two so that indexes can be wrapped with a mask
+  private Object[] elements;
+  private int head = 0;
+  private int size = 0;
+
+  public RingBufferList() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public RingBufferList(int initialCapacity) {
+    int capacity = DEFAULT_CAPACITY;
+    while (capacity < initialCapacity) {
+      capacity <<= 1;
+    }
+    elements = new Object[capacity];
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E get(int index) {
+    checkIndex(index, size);
+    return (E) elements[physicalIndex(index)];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E set(int index, E element) {
+    checkIndex(index, size);
+    int i = physicalIndex(index);
+    E old = (E) elements[i];
+    elements[i] = element;
+    return old;
+  }
+
+  @Override
+  public void add(int index, E element) {
+    checkIndex(index, size + 1);
+    ensureCapacity(size + 1);
+    if (index < size / 2) {
+      // Move the head back by one and shift the first half towards it
+      head = (head - 1) & (elements.length - 1);
+      for (int i = 0; i < index; i++) {
+        elements[physicalIndex(i)] = elements[physicalIndex(i + 1)];
+      }
+    } else {
+      // Shift the second half towards the tail
+      for (int i = size; i > index; i--) {
+        elements[physicalIndex(i)] = elements[physicalIndex(i - 1)];
+      }
+    }
+    elements[physicalIndex(index)] = element;
+    size++;
+    modCount++;
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public E remove(int index) {
+    checkIndex(index, size);
+    E removed = (E) elements[physicalIndex(index)];
+    if (index < size / 2) {
+      // Shift the first half forward and move the head along with it
+      for (int i = index; i > 0; i--) {
+        elements[physicalIndex(i)] = elements[physicalIndex(i - 1)];
+      }
+      elements[head] = null;
+      head = (head + 1) & (elements.length - 1);
+    } else {
+      // Shift the second half backward
+      for (int i = index; i < size - 1; i++) {
+        elements[physicalIndex(i)] = elements[physicalIndex(i + 1)];
+      }
+      elements[physicalIndex(size - 1)] = null;
+    }
+    size--;
+    modCount++;
+    return removed;
+  }
+
+  @Override
+  public void clear() {
+    for (int i = 0; i < size; i++) {
+      elements[physicalIndex(i)] = null;
+    }
+    head = 0;
+    size = 0;
+    modCount++;
+  }
+
+  private int physicalIndex(int index) {
+    return (head + index) & (elements.length - 1);
+  }
+
+  private void ensureCapacity(int capacity) {
+    if (capacity <= elements.length) {
+      return;
+    }
+    Object[] grown = new Object[elements.length << 1];
+    for (int i = 0; i < size; i++) {
+      grown[i] = elements[physicalIndex(i)];
+    }
+    elements = grown;
+    head = 0;
+  }
+
+  private void checkIndex(int index, int bound) {
+    if (index < 0 || index >= bound) {
+      throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+  }
+}
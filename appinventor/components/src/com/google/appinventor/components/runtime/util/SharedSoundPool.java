@@ -0,0 +1,221 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import android.media.AudioManager;
+import android.media.SoundPool;
+import android.util.Log;
+
+import com.google.appinventor.components.runtime.Form;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A SoundPool shared by all of the Sound components of a Form.
+ *
+ * <p>Samples are loaded once per Form and kept, keyed by media path, after the components that
+ * use them switch to another Source, so that switching back doesn't decode the sample again. Up to
+ * {@link #MAX_SAMPLES} samples are kept; beyond that, the least recently used samples that no
+ * component uses are unloaded.
+ *
+ * <p>All methods must be called on the UI thread.
+ */
+public final class SharedSoundPool {
+  private static final String LOG_TAG = "SharedSoundPool";
+
+  /**
+   * Notified when a sample finishes loading.
+   */
+  public interface LoadListener {
+    void onSampleLoaded(int sampleId, boolean success);
+  }
+
+  // Number of sounds that can play at the same time, across all Sound components of the Form.
+  // Beyond that, the SoundPool stops the oldest stream that is still playing.
+  private static final int MAX_STREAMS = 16;
+
+  // Number of samples kept loaded
+  private static final int MAX_SAMPLES = 32;
+
+  private static final Map<Form, SharedSoundPool> INSTANCES =
+      new HashMap<Form, SharedSoundPool>();
+
+  private static class Sample {
+    final String path;
+    final int id;
+    boolean loaded;
+    int users;
+
+    Sample(String path, int id) {
+      this.path = path;
+      this.id = id;
+    }
+  }
+
+  private final Form form;
+  private final SoundPool soundPool;
+
+  // Whether the SoundPool tells us when samples are loaded. Before API level 8, it doesn't.
+  private final boolean tracksLoading = (SdkLevel.getLevel() >= SdkLevel.LEVEL_FROYO);
+
+  // Media path -> sample, in least recently used order
+  private final LinkedHashMap<String, Sample> samples =
+      new LinkedHashMap<String, Sample>(16, 0.75f, true);
+  private final Map<Integer, Sample> samplesById = new HashMap<Integer, Sample>();
+
+  private final List<LoadListener> listeners = new ArrayList<LoadListener>();
+  private int users;
+
+  private SharedSoundPool(Form form) {
+    this.form = form;
+    soundPool = new SoundPool(MAX_STREAMS, AudioManager.STREAM_MUSIC, 0);
+    if (tracksLoading) {
+      FroyoUtil.setOnLoadCompleteListener(soundPool, this);
+    }
+  }
+
+  /**
+   * Returns the SharedSoundPool of the given Form, creating it if needed. Each call must be
+   * matched by a call to {@link #release()}.
+   */
+  public static SharedSoundPool acquire(Form form) {
+    SharedSoundPool pool = INSTANCES.get(form);
+    if (pool == null) {
+      pool = new SharedSoundPool(form);
+      INSTANCES.put(form, pool);
+    }
+    pool.users++;
+    return pool;
+  }
+
+  /**
+   * Releases the SoundPool once no component of the Form uses it.
+   */
+  public void release() {
+    if (--users > 0) {
+      return;
+    }
+    INSTANCES.remove(form);
+    listeners.clear();
+    samples.clear();
+    samplesById.clear();
+    soundPool.release();
+  }
+
+  public void addLoadListener(LoadListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeLoadListener(LoadListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the id of the sample for the given media path, starting to load it if it isn't loaded
+   * yet. Each call must be matched by a call to {@link #releaseSample(int)}.
+   *
+   * @return the sample id, or 0 if the sample could not be loaded
+   */
+  public int loadSample(String mediaPath) throws IOException {
+    Sample sample = samples.get(mediaPath);
+    if (sample == null) {
+      int id = MediaUtil.loadSoundPool(soundPool, form, mediaPath);
+      if (id == 0) {
+        return 0;
+      }
+      Log.i(LOG_TAG, "Began loading sample " + id + " for " + mediaPath + ".");
+      sample = new Sample(mediaPath, id);
+      sample.loaded = !tracksLoading;
+      samples.put(mediaPath, sample);
+      samplesById.put(id, sample);
+    }
+    sample.users++;
+    trimSamples();
+    return sample.id;
+  }
+
+  /**
+   * Tells the pool that a component no longer uses a sample. The sample stays loaded until it has
+   * to make room for other samples.
+   */
+  public void releaseSample(int sampleId) {
+    Sample sample = samplesById.get(sampleId);
+    if (sample != null && sample.users > 0) {
+      sample.users--;
+      trimSamples();
+    }
+  }
+
+  /**
+   * Returns whether the sample has finished loading and can be played.
+   */
+  public boolean isLoaded(int sampleId) {
+    Sample sample = samplesById.get(sampleId);
+    return sample != null && sample.loaded;
+  }
+
+  /**
+   * Plays a sample once at full volume.
+   *
+   * @return the stream id, or 0 if the sample could not be played
+   */
+  public int play(int sampleId) {
+    // Only the SoundPool knows which streams have finished, so it picks the stream to stop when
+    // MAX_STREAMS are playing.
+    return soundPool.play(sampleId, 1.0f, 1.0f, 0, 0, 1.0f);
+  }
+
+  public void pause(int streamId) {
+    soundPool.pause(streamId);
+  }
+
+  public void resume(int streamId) {
+    soundPool.resume(streamId);
+  }
+
+  public void stop(int streamId) {
+    soundPool.stop(streamId);
+  }
+
+  /**
+   * Called by the SoundPool when a sample has finished loading.
+   */
+  void onLoadComplete(int sampleId, boolean success) {
+    Sample sample = samplesById.get(sampleId);
+    if (sample == null) {
+      return;
+    }
+    if (success) {
+      sample.loaded = true;
+    } else {
+      // Forget the sample so that the next component to use the path tries again.
+      samples.remove(sample.path);
+      samplesById.remove(sampleId);
+    }
+    for (LoadListener listener : new ArrayList<LoadListener>(listeners)) {
+      listener.onSampleLoaded(sampleId, success);
+    }
+  }
+
+  private void trimSamples() {
+    Iterator<Sample> it = samples.values().iterator();
+    while (samples.size() > MAX_SAMPLES && it.hasNext()) {
+      Sample sample = it.next();
+      if (sample.users == 0) {
+        Log.i(LOG_TAG, "Unloading sample " + sample.id + " for " + sample.path + ".");
+        soundPool.unload(sample.id);
+        samplesById.remove(sample.id);
+        it.remove();
+      }
+    }
+  }
+}
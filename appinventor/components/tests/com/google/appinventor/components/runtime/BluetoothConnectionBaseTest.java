@@ -134,6 +134,24 @@ public class BluetoothConnectionBaseTest extends RobolectricTestBase {
     assertEquals((byte)  10, bytes[i++]);  // line feed
   }
 
+  @Test
+  public void testReceiveInBackground() {
+    connection.setReadInBackground(true);
+    connection.DelimiterByte(10);
+    connection.SendText("Hello\nWorld\n");
+    assertEquals("Hello", connection.ReceiveText(-1));
+    assertEquals("World", connection.ReceiveText(-1));
+
+    connection.SendText("abc");
+    connection.Send2ByteNumber("0x1234");
+    assertEquals("ab", connection.ReceiveText(2));
+    assertEquals("c", connection.ReceiveText(1));
+    assertEquals(0x1234, connection.ReceiveUnsigned2ByteNumber());
+
+    assertEquals(0, recordedErrorNumber);
+    connection.Disconnect();
+  }
+
   @Test
   public void testSendandReceive1ByteNumber() {
     connection.Send1ByteNumber("0");
@@ -33,6 +33,7 @@ import org.easymock.EasyMock;
 import org.junit.Test;
 
 import org.robolectric.android.util.concurrent.RoboExecutorService;
+import org.robolectric.shadows.ShadowLooper;
 
 /**
  * Test class for the ChartData2D component.
@@ -684,6 +685,9 @@ public class ChartData2DTest extends RobolectricTestBase {
 
     data.onReceiveValue(sensor, keyValue, 3f);
 
+    // Real time refreshes are batched and run on the next frame
+    ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+
     assertEquals(1, model.getDataset().getEntryCount());
   }
 
@@ -0,0 +1,156 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests EventDispatcher class.
+ *
+ * <p>The delegate below stands in for the form defined in runtime.scm: it
+ * binds component names to components and only runs a handler if the
+ * registered name is bound to the component raising the event.
+ */
+public class EventDispatcherTest extends TestCase {
+  private static final int COMPONENTS = 500;
+
+  private static class TestComponent implements Component {
+    private final HandlesEventDispatching delegate;
+
+    TestComponent(HandlesEventDispatching delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public HandlesEventDispatching getDispatchDelegate() {
+      return delegate;
+    }
+  }
+
+  private static class TestForm implements HandlesEventDispatching {
+    final Map<String, Component> environment = new HashMap<String, Component>();
+    final Map<String, Integer> handled = new HashMap<String, Integer>();
+    String failingHandler = null;
+    int dispatchCalls = 0;
+
+    @Override
+    public boolean canDispatchEvent(Component component, String eventName) {
+      return true;
+    }
+
+    @Override
+    public boolean dispatchEvent(Component component, String componentName, String eventName,
+        Object[] args) {
+      dispatchCalls++;
+      if (environment.get(componentName) != component) {
+        return false;
+      }
+      String handler = componentName + "$" + eventName;
+      Integer count = handled.get(handler);
+      handled.put(handler, count == null ? 1 : count + 1);
+      return !handler.equals(failingHandler);
+    }
+
+    @Override
+    public void dispatchErrorOccurredEvent(Component component, String functionName,
+        int errorCode, Object... args) {
+    }
+
+    @Override
+    public void dispatchGenericEvent(Component component, String eventName,
+        boolean notAlreadyHandled, Object[] args) {
+    }
+
+    int handledCount(String handler) {
+      Integer count = handled.get(handler);
+      return count == null ? 0 : count;
+    }
+  }
+
+  private TestForm form;
+  private TestComponent[] buttons;
+
+  @Override
+  protected void setUp() {
+    form = new TestForm();
+    buttons = new TestComponent[COMPONENTS];
+    for (int i = 0; i < COMPONENTS; i++) {
+      buttons[i] = new TestComponent(form);
+      form.environment.put("Button" + i, buttons[i]);
+      EventDispatcher.registerEventForDelegation(form, "Button" + i, "Click");
+    }
+  }
+
+  @Override
+  protected void tearDown() {
+    EventDispatcher.removeDispatchDelegate(form);
+  }
+
+  public void testDispatchToMatchingHandler() {
+    assertTrue(EventDispatcher.dispatchEvent(buttons[42], "Click"));
+    assertEquals(1, form.handledCount("Button42$Click"));
+    assertEquals(1, form.handled.size());
+    assertFalse(EventDispatcher.dispatchEvent(buttons[42], "LongClick"));
+  }
+
+  public void testDuplicateRegistrationIgnored() {
+    EventDispatcher.registerEventForDelegation(form, "Button1", "Click");
+    form.dispatchCalls = 0;
+    EventDispatcher.dispatchEvent(buttons[0], "Click");
+    assertEquals(COMPONENTS, form.dispatchCalls);
+  }
+
+  /**
+   * Once a handler has run for a component, later events from that component
+   * go straight to it instead of being offered to every handler for the event.
+   */
+  public void testRepeatedDispatchOffersEventToOneHandler() {
+    for (TestComponent button : buttons) {
+      EventDispatcher.dispatchEvent(button, "Click");
+    }
+    form.dispatchCalls = 0;
+    for (int round = 0; round < 10; round++) {
+      for (TestComponent button : buttons) {
+        int before = form.dispatchCalls;
+        assertTrue(EventDispatcher.dispatchEvent(button, "Click"));
+        assertEquals(before + 1, form.dispatchCalls);
+      }
+    }
+    assertEquals(10 * COMPONENTS, form.dispatchCalls);
+    assertEquals(COMPONENTS, form.handled.size());
+    for (int i = 0; i < COMPONENTS; i++) {
+      assertEquals(11, form.handledCount("Button" + i + "$Click"));
+    }
+  }
+
+  public void testLateBindingOfComponentNames() {
+    assertTrue(EventDispatcher.dispatchEvent(buttons[1], "Click"));
+    // Rebind Button1 to a new component, as the REPL does when a component
+    // is deleted and recreated.
+    TestComponent replacement = new TestComponent(form);
+    form.environment.put("Button1", replacement);
+    assertFalse(EventDispatcher.dispatchEvent(buttons[1], "Click"));
+    assertTrue(EventDispatcher.dispatchEvent(replacement, "Click"));
+    assertEquals(2, form.handledCount("Button1$Click"));
+  }
+
+  public void testFailedHandlerNotRunTwice() {
+    assertTrue(EventDispatcher.dispatchEvent(buttons[3], "Click"));
+    form.failingHandler = "Button3$Click";
+    assertFalse(EventDispatcher.dispatchEvent(buttons[3], "Click"));
+    assertEquals(2, form.handledCount("Button3$Click"));
+  }
+
+  public void testUnregister() {
+    assertTrue(EventDispatcher.dispatchEvent(buttons[5], "Click"));
+    EventDispatcher.unregisterEventForDelegation(form, "Button5", "Click");
+    assertFalse(EventDispatcher.dispatchEvent(buttons[5], "Click"));
+    assertEquals(1, form.handledCount("Button5$Click"));
+  }
+}
@@ -0,0 +1,246 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.runtime.shadows.ShadowEventDispatcher;
+import com.google.appinventor.components.runtime.util.ErrorMessages;
+import com.google.appinventor.components.runtime.util.MapFactory.MapFeature;
+import com.google.appinventor.components.runtime.util.YailList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.appinventor.components.runtime.util.GeometryUtil.ONE_DEG_IN_METERS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the spatial queries of {@link MapFeatureContainerBase}.
+ */
+public class MapSpatialQueryTest extends MapTestBase {
+
+  private static YailList box(double north, double west, double south, double east) {
+    return YailList.makeList(new Object[] {
+        YailList.makeList(new Object[] { north, west }),
+        YailList.makeList(new Object[] { south, east })
+    });
+  }
+
+  private static Set<Object> asSet(YailList list) {
+    Set<Object> result = new HashSet<Object>();
+    for (int i = 0; i < list.size(); i++) {
+      result.add(list.getObject(i));
+    }
+    return result;
+  }
+
+  @Test
+  public void testFeaturesInBoundingBox() {
+    Marker inside = new Marker(getMap());
+    inside.SetLocation(1.0, 1.0);
+    Marker outside = new Marker(getMap());
+    outside.SetLocation(10.0, 10.0);
+    LineString crossing = makeLineString(getMap(), 5.0, -5.0, 5.0, 5.0);
+    Polygon around = makePolygon(getMap(), 20.0, -20.0, -20.0, 20.0);
+    // The center of the circle is outside the box, but its edge is inside
+    Circle circle = makeCircle(getMap(), 0.0, 6.5, ONE_DEG_IN_METERS);
+    makeCircle(getMap(), 0.0, 8.0, ONE_DEG_IN_METERS);
+    Set<Object> expected = new HashSet<Object>();
+    expected.add(inside);
+    expected.add(crossing);
+    expected.add(around);
+    expected.add(circle);
+    assertEquals(expected, asSet(getMap().FeaturesInBoundingBox(box(6.0, -6.0, -6.0, 6.0))));
+  }
+
+  @Test
+  public void testFeaturesInBoundingBoxAcrossAntimeridian() {
+    Marker east = new Marker(getMap());
+    east.SetLocation(0.0, 179.0);
+    Marker west = new Marker(getMap());
+    west.SetLocation(0.0, -179.0);
+    Marker origin = new Marker(getMap());
+    Set<Object> expected = new HashSet<Object>();
+    expected.add(east);
+    expected.add(west);
+    assertEquals(expected, asSet(getMap().FeaturesInBoundingBox(box(1.0, 178.0, -1.0, -178.0))));
+  }
+
+  @Test
+  public void testFeaturesInBoundingBoxInvalid() {
+    getMap().FeaturesInBoundingBox(box(-1.0, 0.0, 1.0, 0.0));
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_INVALID_BOUNDING_BOX);
+  }
+
+  @Test
+  public void testFeaturesWithinDistance() {
+    Marker near = new Marker(getMap());
+    near.SetLocation(0.0, 1.0);
+    Marker nearer = new Marker(getMap());
+    nearer.SetLocation(0.0, 0.5);
+    Marker far = new Marker(getMap());
+    far.SetLocation(0.0, 3.0);
+    YailList result = getMap().FeaturesWithinDistance(0.0, 0.0, 1.5 * ONE_DEG_IN_METERS, false);
+    assertEquals(2, result.size());
+    assertSame(nearer, result.getObject(0));
+    assertSame(near, result.getObject(1));
+  }
+
+  @Test
+  public void testFeaturesWithinDistanceInvalid() {
+    new Marker(getMap());
+    assertEquals(0, getMap().FeaturesWithinDistance(0.0, 0.0, -1.0, false).size());
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_INVALID_DISTANCE);
+  }
+
+  @Test
+  public void testFeaturesWithinDistanceCentroids() {
+    Rectangle rect = makeRectangle(getMap(), 1.0, 1.0, -1.0, 5.0);
+    double edge = 1.5 * ONE_DEG_IN_METERS;
+    assertEquals(1, getMap().FeaturesWithinDistance(0.0, 0.0, edge, false).size());
+    assertEquals(0, getMap().FeaturesWithinDistance(0.0, 0.0, edge, true).size());
+    assertSame(rect,
+        getMap().FeaturesWithinDistance(0.0, 0.0, 3.5 * ONE_DEG_IN_METERS, true).getObject(0));
+  }
+
+  @Test
+  public void testNearestFeature() {
+    assertEquals("", getMap().NearestFeature(0.0, 0.0, false));
+    Marker marker = new Marker(getMap());
+    marker.SetLocation(10.0, 10.0);
+    LineString line = makeLineString(getMap(), 20.0, 0.0, -20.0, 0.0);
+    assertSame(line, getMap().NearestFeature(0.0, 1.0, false));
+    assertSame(marker, getMap().NearestFeature(10.0, 9.0, false));
+  }
+
+  @Test
+  public void testNearestFeatureInvalidLatitude() {
+    new Marker(getMap());
+    assertEquals("", getMap().NearestFeature(91.0, 0.0, false));
+    ShadowEventDispatcher.assertErrorOccurred(ErrorMessages.ERROR_INVALID_LATITUDE);
+  }
+
+  @Test
+  public void testQueriesFollowChanges() {
+    Marker marker = new Marker(getMap());
+    marker.SetLocation(1.0, 1.0);
+    assertEquals(1, getMap().FeaturesInBoundingBox(box(2.0, 0.0, 0.0, 2.0)).size());
+    marker.SetLocation(30.0, 30.0);
+    assertEquals(0, getMap().FeaturesInBoundingBox(box(2.0, 0.0, 0.0, 2.0)).size());
+    assertEquals(1, getMap().FeaturesInBoundingBox(box(31.0, 29.0, 29.0, 31.0)).size());
+    Circle circle = makeCircle(getMap(), 0.0, 0.0, 1.0);
+    assertSame(circle, getMap().NearestFeature(1.0, 1.0, false));
+    getMap().removeFeature(circle);
+    assertSame(marker, getMap().NearestFeature(1.0, 1.0, false));
+  }
+
+  @Test
+  public void testFeatureCollectionQueries() {
+    FeatureCollection collection = new FeatureCollection(getMap());
+    Marker inCollection = new Marker(collection);
+    inCollection.SetLocation(1.0, 1.0);
+    Marker onMap = new Marker(getMap());
+    onMap.SetLocation(1.0, 1.0);
+    YailList result = collection.FeaturesInBoundingBox(box(2.0, 0.0, 0.0, 2.0));
+    assertEquals(1, result.size());
+    assertSame(inCollection, result.getObject(0));
+  }
+
+  @Test
+  public void testMatchesBruteForce() {
+    Random random = new Random(7);
+    List<MapFeatureBase> features = new ArrayList<MapFeatureBase>();
+    for (int i = 0; i < 1000; i++) {
+      double lat = random.nextDouble() * 160 - 80;
+      double lon = random.nextDouble() * 360 - 180;
+      switch (i % 4) {
+        case 0:
+          features.add(makeCircle(getMap(), lat, lon, random.nextDouble() * 100000));
+          break;
+        case 1:
+          features.add(makeLineString(getMap(), lat, lon, lat + random.nextDouble(),
+              Math.min(180, lon + random.nextDouble())));
+          break;
+        default:
+          Marker marker = new Marker(getMap());
+          marker.SetLocation(lat, lon);
+          features.add(marker);
+      }
+    }
+    for (int q = 0; q < 50; q++) {
+      double lat = random.nextDouble() * 160 - 80;
+      double lon = random.nextDouble() * 360 - 180;
+      boolean centroids = q % 2 == 0;
+      double distance = random.nextDouble() * 1000000;
+      Set<Object> expected = new HashSet<Object>();
+      MapFeature nearest = null;
+      double nearestDistance = Double.POSITIVE_INFINITY;
+      for (MapFeatureBase feature : features) {
+        double d = feature.DistanceToPoint(lat, lon, centroids);
+        if (d <= distance) {
+          expected.add(feature);
+        }
+        if (d < nearestDistance) {
+          nearest = feature;
+          nearestDistance = d;
+        }
+      }
+      assertEquals(expected, asSet(getMap().FeaturesWithinDistance(lat, lon, distance, centroids)));
+      MapFeatureBase found = (MapFeatureBase) getMap().NearestFeature(lat, lon, centroids);
+      assertTrue(found == nearest
+          || found.DistanceToPoint(lat, lon, centroids) == nearestDistance);
+    }
+  }
+
+  @Test
+  public void testQueriesScaleSubLinearly() {
+    Random random = new Random(11);
+    addRandomMarkers(random, 1000);
+    long[] small = countQueryEvaluations(new Random(13), 1000);
+    addRandomMarkers(random, 9000);
+    long[] large = countQueryEvaluations(new Random(13), 10000);
+    // Measuring every feature would look at ten times as many with ten times the features. The
+    // index only looks at the features near each point, whose number doesn't grow when the
+    // search radius shrinks with the spacing of the features.
+    assertTrue("within distance: " + small[0] + " vs " + large[0], large[0] < 3 * small[0]);
+    assertTrue("nearest: " + small[1] + " vs " + large[1], large[1] < 3 * small[1]);
+    assertTrue(large[0] < 10000 && large[1] < 10000);
+  }
+
+  private void addRandomMarkers(Random random, int count) {
+    for (int i = 0; i < count; i++) {
+      Marker marker = new Marker(getMap());
+      marker.SetLocation(random.nextDouble() * 120 - 60, random.nextDouble() * 360 - 180);
+    }
+  }
+
+  /*
+   * Runs 20 FeaturesWithinDistance and 20 NearestFeature queries on a Map with the given number of
+   * features spread over latitudes -60 to 60, and returns how many distances each kind of query
+   * measured. The distance searched is such that about 5 features are found.
+   */
+  private long[] countQueryEvaluations(Random random, int features) {
+    double radius = ONE_DEG_IN_METERS * Math.sqrt(5 * 120 * 360 / (Math.PI * features));
+    MapFeatureIndex index = getMap().featureIndex;
+    long[] counts = new long[2];
+    for (int q = 0; q < 20; q++) {
+      double lat = random.nextDouble() * 100 - 50;
+      double lon = random.nextDouble() * 300 - 150;
+      long start = index.getDistanceEvaluations();
+      getMap().FeaturesWithinDistance(lat, lon, radius, false);
+      counts[0] += index.getDistanceEvaluations() - start;
+      start = index.getDistanceEvaluations();
+      getMap().NearestFeature(lat, lon, false);
+      counts[1] += index.getDistanceEvaluations() - start;
+    }
+    return counts;
+  }
+}
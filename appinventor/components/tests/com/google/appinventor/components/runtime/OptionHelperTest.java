@@ -0,0 +1,72 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import com.google.appinventor.components.annotations.Options;
+import com.google.appinventor.components.annotations.SimpleEvent;
+import com.google.appinventor.components.annotations.SimpleProperty;
+import com.google.appinventor.components.common.Direction;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests OptionHelper class.
+ */
+public class OptionHelperTest extends TestCase {
+
+  public static class TestComponent implements Component {
+    @SimpleEvent
+    public void EdgeReached(@Options(Direction.class) int edge, String other) {
+    }
+
+    @SimpleEvent
+    public void Touched(int x, int y) {
+    }
+
+    @SimpleProperty
+    public int Speed() {
+      return 1;
+    }
+
+    @Override
+    public HandlesEventDispatching getDispatchDelegate() {
+      throw new UnsupportedOperationException();
+    }
+  }
+
+  private final TestComponent component = new TestComponent();
+
+  public void testEventArgsConverted() {
+    Object[] args = OptionHelper.optionListsFromValues(component, "EdgeReached", 3, "East");
+    assertEquals(Direction.East, args[0]);
+    assertEquals("East", args[1]);
+  }
+
+  public void testUnknownValueKept() {
+    Object[] args = OptionHelper.optionListsFromValues(component, "EdgeReached", 42, "x");
+    assertEquals(42, args[0]);
+  }
+
+  public void testNoMatchingConverterKept() {
+    // Direction has no fromUnderlyingValue(String)
+    Object[] args = OptionHelper.optionListsFromValues(component, "EdgeReached", "3", "x");
+    assertEquals("3", args[0]);
+    args = OptionHelper.optionListsFromValues(component, "EdgeReached", null, "x");
+    assertNull(args[0]);
+  }
+
+  public void testNonOptionFunctionsUnchanged() {
+    Object[] args = OptionHelper.optionListsFromValues(component, "Touched", 1, 2);
+    assertEquals(1, args[0]);
+    assertEquals(2, args[1]);
+    args = OptionHelper.optionListsFromValues(component, "Unknown", 1);
+    assertEquals(1, args[0]);
+  }
+
+  public void testReturnValueWithoutOptionsUnchanged() {
+    assertEquals(1, OptionHelper.optionListFromValue(component, "Speed", 1));
+  }
+}
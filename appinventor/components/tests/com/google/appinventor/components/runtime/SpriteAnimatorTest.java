@@ -0,0 +1,101 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests SpriteAnimator.java.
+ *
+ */
+public class SpriteAnimatorTest extends RobolectricTestBase {
+
+  private Canvas canvas;
+  private Ball ball1;
+  private Ball ball2;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    canvas = new Canvas(getForm());
+    ball1 = new Ball(canvas);
+    ball2 = new Ball(canvas);
+  }
+
+  @Test
+  public void testStationarySpritesNotAnimated() {
+    // Sprites are enabled by default, but don't move until they have a speed.
+    assertTrue(ball1.Enabled());
+    assertNull(canvas.getSpriteAnimator());
+  }
+
+  @Test
+  public void testSpeedStartsAndStopsAnimation() {
+    ball1.Speed(10);
+    SpriteAnimator animator = canvas.getSpriteAnimator();
+    assertTrue(animator.isAnimating(ball1));
+    assertFalse(animator.isAnimating(ball2));
+    assertTrue(animator.getScheduledTime() >= 0);
+
+    ball1.Speed(0);
+    assertFalse(animator.isAnimating(ball1));
+    assertEquals(-1, animator.getScheduledTime());
+  }
+
+  @Test
+  public void testDisabledSpriteNotAnimated() {
+    ball1.Speed(10);
+    SpriteAnimator animator = canvas.getSpriteAnimator();
+    ball1.Enabled(false);
+    assertFalse(animator.isAnimating(ball1));
+    assertEquals(-1, animator.getScheduledTime());
+
+    ball1.Speed(20);
+    assertFalse(animator.isAnimating(ball1));
+    ball1.Enabled(true);
+    assertTrue(animator.isAnimating(ball1));
+  }
+
+  @Test
+  public void testScheduledForEarliestSprite() {
+    ball1.Interval(1000);
+    ball1.Speed(10);
+    SpriteAnimator animator = canvas.getSpriteAnimator();
+    long now = SystemClock.uptimeMillis();
+    assertTrue(animator.getScheduledTime() >= now + 900);
+
+    // A sprite due sooner moves the callback earlier.
+    ball2.Interval(50);
+    ball2.Speed(10);
+    assertTrue(animator.getScheduledTime() <= SystemClock.uptimeMillis() + 50);
+  }
+
+  @Test
+  public void testSpeedChangeKeepsTiming() {
+    ball1.Interval(1000);
+    ball1.Speed(10);
+    SpriteAnimator animator = canvas.getSpriteAnimator();
+    long scheduled = animator.getScheduledTime();
+    advance(500);
+    ball1.Speed(20);
+    assertEquals(scheduled, animator.getScheduledTime());
+  }
+
+  @Test
+  public void testDeletedSpriteNotAnimated() {
+    ball1.Speed(10);
+    ball1.onDelete();
+    assertFalse(canvas.getSpriteAnimator().isAnimating(ball1));
+  }
+}
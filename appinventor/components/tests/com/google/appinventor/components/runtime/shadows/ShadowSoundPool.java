@@ -0,0 +1,50 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.shadows;
+
+import android.media.SoundPool;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.annotation.Resetter;
+
+/**
+ * A shadow implementation of SoundPool that hands out a new stream id for every sound played and
+ * records which streams the app stops.
+ */
+@Implements(SoundPool.class)
+public class ShadowSoundPool {
+
+  private static int lastStreamId = 0;
+  private static final List<Integer> stoppedStreams = new ArrayList<Integer>();
+
+  @Implementation
+  public int play(int soundID, float leftVolume, float rightVolume, int priority, int loop,
+      float rate) {
+    return ++lastStreamId;
+  }
+
+  @Implementation
+  public void stop(int streamID) {
+    stoppedStreams.add(streamID);
+  }
+
+  /**
+   * Returns the ids of the streams stopped since the last reset, in order.
+   */
+  public static List<Integer> getStoppedStreams() {
+    return stoppedStreams;
+  }
+
+  @Resetter
+  public static void reset() {
+    lastStreamId = 0;
+    stoppedStreams.clear();
+  }
+}
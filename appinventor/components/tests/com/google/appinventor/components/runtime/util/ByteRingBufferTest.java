@@ -0,0 +1,78 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests ByteRingBuffer class.
+ */
+public class ByteRingBufferTest extends TestCase {
+
+  private static byte[] bytes(String s) {
+    return s.getBytes();
+  }
+
+  private static void write(ByteRingBuffer buffer, String s) {
+    byte[] b = bytes(s);
+    buffer.write(b, 0, b.length);
+  }
+
+  public void testReadFramesAcrossWrap() {
+    ByteRingBuffer buffer = new ByteRingBuffer(8);
+    write(buffer, "ab\ncd");
+    assertTrue(Arrays.equals(bytes("ab\n"), buffer.readFrame((byte) '\n')));
+    assertNull(buffer.readFrame((byte) '\n'));
+    write(buffer, "e\nfg");
+    assertEquals(6, buffer.available());
+    assertTrue(Arrays.equals(bytes("cde\n"), buffer.readFrame((byte) '\n')));
+    assertTrue(Arrays.equals(bytes("fg"), buffer.read(10)));
+    assertEquals(0, buffer.available());
+  }
+
+  public void testOverflowDropsOldest() {
+    ByteRingBuffer buffer = new ByteRingBuffer(4);
+    write(buffer, "abc");
+    assertEquals(2, buffer.write(bytes("de"), 0, 2) + buffer.write(bytes("f"), 0, 1));
+    assertTrue(Arrays.equals(bytes("cdef"), buffer.read(4)));
+    write(buffer, "0123456789");
+    assertEquals(8, buffer.getDroppedCount());
+    assertTrue(Arrays.equals(bytes("6789"), buffer.read(4)));
+  }
+
+  public void testUnread() {
+    ByteRingBuffer buffer = new ByteRingBuffer(8);
+    write(buffer, "xy\nz");
+    byte[] frame = buffer.readFrame((byte) '\n');
+    buffer.unread(frame);
+    assertEquals(4, buffer.available());
+    assertTrue(Arrays.equals(bytes("xy\nz"), buffer.read(8)));
+  }
+
+  public void testAwaitFrameWaitsForWriter() throws Exception {
+    final ByteRingBuffer buffer = new ByteRingBuffer(1024);
+    Thread writer = new Thread() {
+      @Override
+      public void run() {
+        for (int i = 0; i < 100; i++) {
+          write(buffer, "x");
+        }
+        write(buffer, ";rest");
+        buffer.close();
+      }
+    };
+    writer.start();
+    byte[] frame = buffer.awaitFrame((byte) ';');
+    assertEquals(101, frame.length);
+    assertEquals(';', frame[100]);
+    assertTrue(Arrays.equals(bytes("rest"), buffer.awaitBytes(10)));
+    writer.join();
+    assertTrue(buffer.isClosed());
+    assertEquals(0, buffer.awaitFrame((byte) ';').length);
+  }
+}
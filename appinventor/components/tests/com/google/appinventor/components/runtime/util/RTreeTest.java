@@ -0,0 +1,120 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests RTree class.
+ */
+public class RTreeTest extends TestCase {
+
+  private static List<Integer> bruteForce(Map<Integer, double[]> boxes, double minX, double minY,
+      double maxX, double maxY) {
+    List<Integer> results = new ArrayList<Integer>();
+    for (Map.Entry<Integer, double[]> entry : boxes.entrySet()) {
+      double[] box = entry.getValue();
+      if (box[0] <= maxX && minX <= box[2] && box[1] <= maxY && minY <= box[3]) {
+        results.add(entry.getKey());
+      }
+    }
+    Collections.sort(results);
+    return results;
+  }
+
+  private static List<Integer> sorted(List<Integer> items) {
+    Collections.sort(items);
+    return items;
+  }
+
+  public void testEmpty() {
+    RTree<String> tree = new RTree<String>();
+    assertEquals(0, tree.size());
+    assertTrue(tree.search(-180, -90, 180, 90).isEmpty());
+    assertFalse(tree.remove("a"));
+  }
+
+  public void testPointsAndBoxes() {
+    RTree<String> tree = new RTree<String>();
+    tree.insert("point", 1, 1, 1, 1);
+    tree.insert("box", 0, 0, 10, 10);
+    tree.insert("far", 50, 50, 60, 60);
+    assertEquals(3, tree.size());
+    List<String> results = tree.search(0.5, 0.5, 1.5, 1.5);
+    Collections.sort(results);
+    assertEquals(2, results.size());
+    assertEquals("box", results.get(0));
+    assertEquals("point", results.get(1));
+    // Boxes that only touch count as intersecting
+    assertEquals(Collections.singletonList("far"), tree.search(60, 60, 70, 70));
+  }
+
+  public void testInsertMovesItem() {
+    RTree<String> tree = new RTree<String>();
+    tree.insert("a", 0, 0, 1, 1);
+    tree.insert("a", 5, 5, 6, 6);
+    assertEquals(1, tree.size());
+    assertTrue(tree.search(0, 0, 1, 1).isEmpty());
+    assertEquals(Collections.singletonList("a"), tree.search(5, 5, 6, 6));
+  }
+
+  public void testMatchesBruteForce() {
+    Random random = new Random(42);
+    RTree<Integer> tree = new RTree<Integer>();
+    Map<Integer, double[]> boxes = new HashMap<Integer, double[]>();
+    for (int i = 0; i < 2000; i++) {
+      double x = random.nextDouble() * 360 - 180;
+      double y = random.nextDouble() * 180 - 90;
+      // A quarter of the items are points, like markers
+      double w = i % 4 == 0 ? 0 : random.nextDouble() * 5;
+      double h = i % 4 == 0 ? 0 : random.nextDouble() * 5;
+      boxes.put(i, new double[] { x, y, x + w, y + h });
+      tree.insert(i, x, y, x + w, y + h);
+    }
+    // Remove and move some of the items
+    for (int i = 0; i < 2000; i += 3) {
+      assertTrue(tree.remove(i));
+      boxes.remove(i);
+    }
+    for (int i = 1; i < 2000; i += 7) {
+      double x = random.nextDouble() * 360 - 180;
+      double y = random.nextDouble() * 180 - 90;
+      boxes.put(i, new double[] { x, y, x, y });
+      tree.insert(i, x, y, x, y);
+    }
+    assertEquals(boxes.size(), tree.size());
+    for (int q = 0; q < 200; q++) {
+      double x = random.nextDouble() * 360 - 180;
+      double y = random.nextDouble() * 180 - 90;
+      double w = random.nextDouble() * 40;
+      double h = random.nextDouble() * 20;
+      assertEquals(bruteForce(boxes, x, y, x + w, y + h), sorted(tree.search(x, y, x + w, y + h)));
+    }
+    assertEquals(boxes.size(), tree.search(-180, -90, 185, 95).size());
+  }
+
+  public void testRemoveAll() {
+    RTree<Integer> tree = new RTree<Integer>();
+    for (int i = 0; i < 500; i++) {
+      tree.insert(i, i, i, i + 1, i + 1);
+    }
+    for (int i = 0; i < 500; i++) {
+      assertTrue(tree.remove(i));
+      assertFalse(tree.contains(i));
+    }
+    assertEquals(0, tree.size());
+    assertTrue(tree.search(0, 0, 1000, 1000).isEmpty());
+    tree.insert(7, 1, 1, 2, 2);
+    assertEquals(Collections.singletonList(7), tree.search(0, 0, 3, 3));
+  }
+}
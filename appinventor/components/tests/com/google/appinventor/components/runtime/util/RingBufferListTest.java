@@ -0,0 +1,88 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * Tests RingBufferList class.
+ */
+public class RingBufferListTest extends TestCase {
+
+  public void testEvictOldest() {
+    List<Integer> list = new RingBufferList<Integer>(4);
+    for (int i = 0; i < 100; i++) {
+      if (list.size() >= 4) {
+        list.remove(0);
+      }
+      list.add(i);
+    }
+    assertEquals(Arrays.asList(96, 97, 98, 99), list);
+  }
+
+  public void testGrowWhileWrapped() {
+    List<Integer> list = new RingBufferList<Integer>();
+    for (int i = 0; i < 10; i++) {
+      list.add(i);
+    }
+    for (int i = 0; i < 8; i++) {
+      list.remove(0);
+    }
+    for (int i = 10; i < 40; i++) {
+      list.add(i);
+    }
+    assertEquals(32, list.size());
+    for (int i = 0; i < list.size(); i++) {
+      assertEquals(Integer.valueOf(i + 8), list.get(i));
+    }
+  }
+
+  public void testMatchesArrayList() {
+    Random random = new Random(42);
+    List<Integer> expected = new ArrayList<Integer>();
+    List<Integer> actual = new RingBufferList<Integer>();
+    for (int i = 0; i < 5000; i++) {
+      int op = random.nextInt(4);
+      if (op < 2 || expected.isEmpty()) {
+        int index = random.nextInt(expected.size() + 1);
+        expected.add(index, i);
+        actual.add(index, i);
+      } else if (op == 2) {
+        int index = random.nextInt(expected.size());
+        assertEquals(expected.remove(index), actual.remove(index));
+      } else {
+        int index = random.nextInt(expected.size());
+        assertEquals(expected.set(index, -i), actual.set(index, -i));
+      }
+      assertEquals(expected.size(), actual.size());
+    }
+    assertEquals(expected, actual);
+    actual.clear();
+    assertTrue(actual.isEmpty());
+  }
+
+  public void testIndexOutOfBounds() {
+    List<Integer> list = new RingBufferList<Integer>();
+    list.add(1);
+    try {
+      list.get(1);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+    try {
+      list.add(2, 2);
+      fail();
+    } catch (IndexOutOfBoundsException e) {
+      // expected
+    }
+  }
+}
@@ -0,0 +1,57 @@
+// -*- mode: java; c-basic-offset: 2; -*-
+// Copyright 2024 MIT, All rights reserved
+// Released under the Apache License, Version 2.0
+// http://www.apache.org/licenses/LICENSE-2.0
+
+package com.google.appinventor.components.runtime.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.appinventor.components.runtime.RobolectricTestBase;
+import com.google.appinventor.components.runtime.shadows.ShadowSoundPool;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.robolectric.annotation.Config;
+
+/**
+ * Tests SharedSoundPool.java.
+ */
+@Config(shadows = {ShadowSoundPool.class})
+public class SharedSoundPoolTest extends RobolectricTestBase {
+
+  private SharedSoundPool pool;
+
+  @Before
+  public void setUp() {
+    super.setUp();
+    ShadowSoundPool.reset();
+    pool = SharedSoundPool.acquire(getForm());
+  }
+
+  @After
+  public void tearDown() {
+    pool.release();
+  }
+
+  @Test
+  public void testLongSoundSurvivesShortSounds() {
+    int longStream = pool.play(1);
+    // Short sounds that finish on their own must not push the long one out
+    for (int i = 0; i < 16; i++) {
+      assertTrue(pool.play(2) != 0);
+    }
+    assertFalse(ShadowSoundPool.getStoppedStreams().contains(longStream));
+  }
+
+  @Test
+  public void testStop() {
+    int stream = pool.play(1);
+    pool.stop(stream);
+    assertEquals(1, ShadowSoundPool.getStoppedStreams().size());
+    assertEquals(stream, (int) ShadowSoundPool.getStoppedStreams().get(0));
+  }
+}